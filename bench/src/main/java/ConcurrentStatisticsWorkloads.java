@@ -0,0 +1,59 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import bench.Workload;
+
+/**
+ * Операции для bench.ConcurrentStatisticsBenchmark: запись готовых записей в {@link ConcurrentStatistics}
+ * или в одну {@link Statistics} под общей блокировкой из нескольких потоков замера.
+ * Операция snapshot пишет в ConcurrentStatistics, а каждая {@value #SNAPSHOT_INTERVAL}-я операция всех потоков
+ * вместо записи снимает {@link ConcurrentStatistics#snapshot()}: так видно, насколько снимки тормозят запись.
+ */
+public final class ConcurrentStatisticsWorkloads {
+    private static final int POOL_SIZE = 100_000;
+    private static final int SNAPSHOT_INTERVAL = 10_000;
+
+    private ConcurrentStatisticsWorkloads() {
+    }
+
+    /**
+     * @param operation synchronized, concurrent или snapshot
+     * @param params число потоков замера
+     */
+    public static Workload create(String operation, String... params) {
+        LogCorpusGenerator generator = new LogCorpusGenerator(1, 10_000, 50_000, 2_000, 0);
+        List<LogEntry> entries = new ArrayList<>(POOL_SIZE);
+        for (int i = 0; i < POOL_SIZE; i++) {
+            entries.add(new LogEntry(generator.nextLine()));
+        }
+        int threads = Integer.parseInt(params[0]);
+
+        switch (operation) {
+            case "synchronized":
+                Statistics locked = new Statistics();
+                return (index, blackhole) -> {
+                    synchronized (locked) {
+                        locked.addEntry(entries.get(index % POOL_SIZE));
+                    }
+                };
+            case "concurrent":
+                ConcurrentStatistics concurrent = new ConcurrentStatistics(2 * Math.max(threads,
+                        Runtime.getRuntime().availableProcessors()));
+                return (index, blackhole) -> concurrent.addEntry(entries.get(index % POOL_SIZE));
+            case "snapshot":
+                ConcurrentStatistics snapshotted = new ConcurrentStatistics(2 * Math.max(threads,
+                        Runtime.getRuntime().availableProcessors()));
+                AtomicLong operations = new AtomicLong();
+                return (index, blackhole) -> {
+                    if (operations.incrementAndGet() % SNAPSHOT_INTERVAL == 0) {
+                        blackhole.consume(snapshotted.snapshot());
+                    } else {
+                        snapshotted.addEntry(entries.get(index % POOL_SIZE));
+                    }
+                };
+            default:
+                throw new IllegalArgumentException("Неизвестная операция " + operation);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import bench.Workload;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Операции для bench.FileProcessingBenchmark и bench.MetricsOverheadBenchmark: полная обработка
+ * файла из {@link LogCorpusGenerator}, как в Main.processAccessLog, но без вывода отчёта.
+ * В файле нет испорченных строк, чтобы их вывод в stderr не смешивался с выводом JMH;
+ * разбор испорченных строк замеряет bench.ParserBenchmark.
+ */
+public final class FileWorkloads {
+    private FileWorkloads() {
+    }
+
+    /**
+     * @param operation process - обработка {@link ParallelLogProcessor} в заданное число потоков,
+     *                  filtered - то же с выборочным фильтром status=5xx, path=/api/,
+     *                  handler - чтение {@link MappedLineReader} в {@link StatisticsLineHandler} без метрик или с ними
+     * @param params число строк в файле и число потоков (process, filtered) или признак метрик (handler)
+     */
+    public static Workload create(String operation, String... params) throws IOException {
+        Path file = corpus(Long.parseLong(params[0]));
+        switch (operation) {
+            case "process":
+                ParallelLogProcessor processor = new ParallelLogProcessor(Integer.parseInt(params[1]));
+                return new FileWorkload(file, () -> processor.process(file.toString()), null);
+            case "filtered":
+                // Отвергнутые фильтром строки не декодируются в LogEntry
+                LogFilter.configure(LogFilter.parse("status=5xx").and(LogFilter.parse("path=/api/")));
+                ParallelLogProcessor filtered = new ParallelLogProcessor(Integer.parseInt(params[1]));
+                return new FileWorkload(file, () -> filtered.process(file.toString()),
+                        () -> LogFilter.configure(LogFilter.all()));
+            case "handler":
+                ProcessingMetrics metrics = Boolean.parseBoolean(params[1]) ? new ProcessingMetrics() : null;
+                return new FileWorkload(file, () -> {
+                    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                        ProcessingResult result = new ProcessingResult();
+                        new MappedLineReader(channel, 1024).read(0, channel.size(),
+                                new StatisticsLineHandler(result, file.toString(), metrics));
+                        return result;
+                    }
+                }, null);
+            default:
+                Files.delete(file);
+                throw new IllegalArgumentException("Неизвестная операция " + operation);
+        }
+    }
+
+    /**
+     * Записывает во временный файл лог из заданного числа строк без испорченных
+     */
+    static Path corpus(long lines) throws IOException {
+        Path file = Files.createTempFile("bench", ".log");
+        LogCorpusGenerator generator = new LogCorpusGenerator(1, 10_000, 50_000, 2_000, 0);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            generator.write(writer, lines);
+        }
+        return file;
+    }
+
+    interface Action {
+        Object run() throws IOException;
+    }
+
+    /**
+     * Операция над временным файлом, который удаляется при закрытии
+     */
+    static final class FileWorkload implements Workload {
+        private final Path file;
+        private final long size;
+        private final Action action;
+        private final Runnable cleanup;
+
+        /**
+         * @param cleanup что ещё сделать при закрытии, null - ничего
+         */
+        FileWorkload(Path file, Action action, Runnable cleanup) throws IOException {
+            this.file = file;
+            this.size = Files.size(file);
+            this.action = action;
+            this.cleanup = cleanup;
+        }
+
+        @Override
+        public void run(int index, Blackhole blackhole) throws IOException {
+            blackhole.consume(action.run());
+        }
+
+        @Override
+        public long bytesPerOperation() {
+            return size;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (cleanup != null) {
+                cleanup.run();
+            }
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Детерминированный генератор логов в формате combined для замеров производительности.
+ * При одинаковых параметрах и зерне всегда получается один и тот же файл.
+ * Страницы, IP-адреса и User-Agent выбираются из словарей заданного размера с перекосом
+ * в сторону первых элементов, как в реальных логах, где немногие страницы и клиенты дают
+ * большую часть запросов. Заданная доля строк портится одним из типичных способов.
+ *
+ * Запуск: java -cp bench/target/benchmarks.jar LogCorpusGenerator файл [--lines N] [--seed N] [--paths N] [--ips N]
+ *         [--user-agents N] [--malformed доля]
+ */
+public class LogCorpusGenerator {
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.ENGLISH);
+    private static final String[] METHODS = {"GET", "GET", "GET", "GET", "POST", "HEAD", "PUT", "DELETE"};
+    private static final int[] STATUSES = {200, 200, 200, 200, 200, 200, 200, 304, 301, 302, 404, 404, 403, 500, 502, 503};
+    private static final String[] SECTIONS = {"catalog", "product", "blog", "api/v1/items", "search", "static/js", "static/css", "user"};
+    private static final String[] REFERERS = {"-", "-", "-", "https://www.google.com/", "https://yandex.ru/search/?text=log",
+            "https://example.com/", "https://example.com/catalog", "https://t.me/"};
+    private static final String[] UA_TEMPLATES = {
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/%d.0.%d.0 Safari/537.36",
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/%d.0.%d.0 Safari/537.36 Edg/%1$d.0",
+            "Mozilla/5.0 (X11; Linux x86_64; rv:%d.0) Gecko/20100101 Firefox/%1$d.%d",
+            "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/%d.%d Safari/605.1.15",
+            "Mozilla/5.0 (iPhone; CPU iPhone OS %d_%d like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) Mobile/15E148 Safari/604.1",
+            "Mozilla/5.0 (Linux; Android %d; SM-G%d) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/105.0 Mobile Safari/537.36",
+            "Mozilla/5.0 (compatible; YandexBot/3.%d; +http://yandex.com/bots) v%d",
+            "Mozilla/5.0 (compatible; Googlebot/2.%d; +http://www.google.com/bot.html) v%d",
+            "curl/7.%d.%d",
+    };
+
+    private final SplittableRandom random;
+    private final String[] paths;
+    private final String[] ips;
+    private final String[] userAgents;
+    private final double malformedRate;
+    private final StringBuilder line = new StringBuilder(512);
+    private long epochSecond = ZonedDateTime.of(2022, 9, 25, 0, 0, 0, 0, ZoneOffset.ofHours(3)).toEpochSecond();
+    private long formattedSecond = Long.MIN_VALUE;
+    private String formattedTime;
+
+    /**
+     * @param seed зерно генератора случайных чисел
+     * @param pathCardinality число различных страниц
+     * @param ipCardinality число различных IP-адресов
+     * @param userAgentCardinality число различных строк User-Agent
+     * @param malformedRate доля испорченных строк от 0 до 1
+     */
+    public LogCorpusGenerator(long seed, int pathCardinality, int ipCardinality, int userAgentCardinality, double malformedRate) {
+        this.random = new SplittableRandom(seed);
+        this.malformedRate = malformedRate;
+
+        this.paths = new String[pathCardinality];
+        for (int i = 0; i < pathCardinality; i++) {
+            String section = SECTIONS[random.nextInt(SECTIONS.length)];
+            paths[i] = i == 0 ? "/" : "/" + section + "/" + Integer.toString(i, 36) + (random.nextInt(5) == 0 ? "?page=" + random.nextInt(10) : "");
+        }
+        this.ips = new String[ipCardinality];
+        for (int i = 0; i < ipCardinality; i++) {
+            ips[i] = (1 + random.nextInt(223)) + "." + random.nextInt(256) + "." + random.nextInt(256) + "." + (1 + random.nextInt(254));
+        }
+        this.userAgents = new String[userAgentCardinality];
+        for (int i = 0; i < userAgentCardinality; i++) {
+            String template = UA_TEMPLATES[i % UA_TEMPLATES.length];
+            userAgents[i] = String.format(template, 10 + random.nextInt(100), random.nextInt(10000));
+        }
+    }
+
+    public String nextLine() {
+        // Время растёт с неравномерными промежутками, как при переменной нагрузке
+        if (random.nextInt(4) == 0) {
+            epochSecond += random.nextInt(3);
+        }
+        if (epochSecond != formattedSecond) {
+            formattedSecond = epochSecond;
+            formattedTime = TIME_FORMAT.format(ZonedDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), ZoneOffset.ofHours(3)));
+        }
+
+        line.setLength(0);
+        line.append(pick(ips)).append(" - - [").append(formattedTime).append("] \"")
+                .append(METHODS[random.nextInt(METHODS.length)]).append(' ').append(pick(paths)).append(" HTTP/1.1\" ");
+        int status = STATUSES[random.nextInt(STATUSES.length)];
+        line.append(status).append(' ').append(status == 304 ? 0 : responseSize()).append(" \"")
+                .append(REFERERS[random.nextInt(REFERERS.length)]).append("\" \"").append(pick(userAgents)).append('"');
+
+        if (random.nextDouble() < malformedRate) {
+            corrupt();
+        }
+        return line.toString();
+    }
+
+    // Размер ответа с логнормальным распределением: медиана около 3 КБ с длинным хвостом
+    private long responseSize() {
+        double gaussian = Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+        return (long) Math.exp(8 + 1.5 * gaussian);
+    }
+
+    // Элемент словаря с перекосом к началу: первые 10% элементов дают около половины выборок
+    private String pick(String[] values) {
+        double u = random.nextDouble();
+        return values[(int) (values.length * u * u * u)];
+    }
+
+    private void corrupt() {
+        switch (random.nextInt(5)) {
+            case 0:
+                line.setLength(random.nextInt(line.length()));
+                break;
+            case 1:
+                line.deleteCharAt(line.indexOf("\""));
+                break;
+            case 2:
+                line.setLength(0);
+                line.append("garbage ").append(random.nextLong());
+                break;
+            case 3:
+                line.replace(line.indexOf("[") + 1, line.indexOf("[") + 3, "99");
+                break;
+            default:
+                line.setLength(0);
+                break;
+        }
+    }
+
+    public void write(Writer writer, long lines) throws IOException {
+        for (long i = 0; i < lines; i++) {
+            writer.write(nextLine());
+            writer.write('\n');
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Использование: LogCorpusGenerator файл [--lines N] [--seed N] [--paths N] [--ips N] [--user-agents N] [--malformed доля]");
+            return;
+        }
+        long lines = 1_000_000;
+        long seed = 1;
+        int pathCardinality = 10_000;
+        int ipCardinality = 50_000;
+        int userAgentCardinality = 2_000;
+        double malformedRate = 0.01;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--lines":
+                    lines = Long.parseLong(value);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "--paths":
+                    pathCardinality = Integer.parseInt(value);
+                    break;
+                case "--ips":
+                    ipCardinality = Integer.parseInt(value);
+                    break;
+                case "--user-agents":
+                    userAgentCardinality = Integer.parseInt(value);
+                    break;
+                case "--malformed":
+                    malformedRate = Double.parseDouble(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Неизвестный параметр " + args[i]);
+            }
+        }
+
+        LogCorpusGenerator generator = new LogCorpusGenerator(seed, pathCardinality, ipCardinality, userAgentCardinality, malformedRate);
+        try (BufferedWriter writer = Files.newBufferedWriter(Path.of(args[0]), StandardCharsets.UTF_8)) {
+            generator.write(writer, lines);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import bench.Workload;
+
+/**
+ * Операции для bench.ParserBenchmark и bench.StatisticsGettersBenchmark на пуле строк
+ * из {@link LogCorpusGenerator}: разбор строки в LogEntry, классификация User-Agent,
+ * добавление записи в Statistics и методы отчёта Statistics, заполненной заданным числом записей.
+ */
+public final class ParserWorkloads {
+    private static final int POOL_SIZE = 100_000;
+    private static final long SEED = 1;
+
+    private ParserWorkloads() {
+    }
+
+    /**
+     * @param operation LogEntry, UserAgent, Statistics.addEntry или имя метода Statistics
+     * @param params для методов Statistics - число записей в статистике
+     */
+    public static Workload create(String operation, String... params) {
+        LogCorpusGenerator generator = new LogCorpusGenerator(SEED, 10_000, 50_000, 2_000, 0.01);
+        String[] lines = new String[POOL_SIZE];
+        for (int i = 0; i < POOL_SIZE; i++) {
+            lines[i] = generator.nextLine();
+        }
+
+        switch (operation) {
+            case "LogEntry":
+                return (index, blackhole) -> {
+                    try {
+                        blackhole.consume(new LogEntry(lines[index % lines.length]));
+                    } catch (RuntimeException e) {
+                        // Испорченные строки тоже входят в замер
+                        blackhole.consume(e);
+                    }
+                };
+            case "UserAgent":
+                String[] userAgents = userAgents(lines);
+                return (index, blackhole) -> blackhole.consume(new UserAgent(userAgents[index % userAgents.length]));
+            case "Statistics.addEntry":
+                List<LogEntry> entries = parseAll(lines);
+                Statistics statistics = new Statistics();
+                return (index, blackhole) -> statistics.addEntry(entries.get(index % entries.size()));
+            default:
+                return getter(operation, fill(parseAll(lines), Integer.parseInt(params[0])));
+        }
+    }
+
+    private static Workload getter(String name, Statistics statistics) {
+        switch (name) {
+            case "getAverageVisitsPerHour":
+                return (index, blackhole) -> blackhole.consume(statistics.getAverageVisitsPerHour());
+            case "getAverageErrorRequestsPerHour":
+                return (index, blackhole) -> blackhole.consume(statistics.getAverageErrorRequestsPerHour());
+            case "getAverageVisitsPerUser":
+                return (index, blackhole) -> blackhole.consume(statistics.getAverageVisitsPerUser());
+            case "getTrafficRate":
+                return (index, blackhole) -> blackhole.consume(statistics.getTrafficRate());
+            case "getExistingPages":
+                return (index, blackhole) -> blackhole.consume(statistics.getExistingPages());
+            case "getNonExistentPages":
+                return (index, blackhole) -> blackhole.consume(statistics.getNonExistentPages());
+            case "getTopClients":
+                return (index, blackhole) -> blackhole.consume(statistics.getTopClients(10));
+            case "getTopReferers":
+                return (index, blackhole) -> blackhole.consume(statistics.getTopReferers(10));
+            case "getBrowserStatistics":
+                return (index, blackhole) -> blackhole.consume(statistics.getBrowserStatistics());
+            case "getOperatingSystemStatistics":
+                return (index, blackhole) -> blackhole.consume(statistics.getOperatingSystemStatistics());
+            case "getUniqueNonBotIps":
+                return (index, blackhole) -> blackhole.consume(statistics.getUniqueNonBotIps());
+            case "getResponseSizeQuantile":
+                return (index, blackhole) -> blackhole.consume(statistics.getResponseSizeQuantile(0.99));
+            case "getRecent":
+                return (index, blackhole) ->
+                        blackhole.consume(statistics.getRecent(TimeBuckets.Metric.REQUESTS, Duration.ofDays(1)));
+            case "getRecentUniqueNonBotIps":
+                return (index, blackhole) -> blackhole.consume(statistics.getRecentUniqueNonBotIps(Duration.ofDays(1)));
+            case "getHourlyBreakdown":
+                return (index, blackhole) ->
+                        blackhole.consume(statistics.getHourlyBreakdown(TimeBuckets.Metric.REQUESTS, 24));
+            default:
+                throw new IllegalArgumentException("Неизвестная операция " + name);
+        }
+    }
+
+    private static String[] userAgents(String[] lines) {
+        List<String> userAgents = new ArrayList<>();
+        for (String line : lines) {
+            int end = line.lastIndexOf('"');
+            int start = end > 0 ? line.lastIndexOf('"', end - 1) : -1;
+            if (start >= 0) {
+                userAgents.add(line.substring(start + 1, end));
+            }
+        }
+        return userAgents.toArray(new String[0]);
+    }
+
+    private static List<LogEntry> parseAll(String[] lines) {
+        List<LogEntry> entries = new ArrayList<>(lines.length);
+        for (String line : lines) {
+            try {
+                entries.add(new LogEntry(line));
+            } catch (RuntimeException e) {
+                // Испорченные строки в агрегацию не попадают
+            }
+        }
+        return entries;
+    }
+
+    private static Statistics fill(List<LogEntry> entries, int count) {
+        Statistics statistics = new Statistics();
+        for (int i = 0; i < count; i++) {
+            statistics.addEntry(entries.get(i % entries.size()));
+        }
+        return statistics;
+    }
+}
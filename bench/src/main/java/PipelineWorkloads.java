@@ -0,0 +1,108 @@
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import bench.Workload;
+
+/**
+ * Операции для bench.PipelineBenchmark: конвейер {@link LogPipeline} против последовательного цикла
+ * «прочитать пакет - разобрать его» на одном и том же файле. Медленный диск моделируется потоком,
+ * который отдаёт данные не быстрее заданной скорости: в последовательном цикле время чтения и разбора
+ * складывается, в конвейере чтение идёт одновременно с разбором.
+ */
+public final class PipelineWorkloads {
+    private static final int MAX_LINE_LENGTH = 1024;
+
+    private PipelineWorkloads() {
+    }
+
+    /**
+     * @param operation sequential или pipeline
+     * @param params число строк в файле, скорость диска в МБ/с (0 - файл в кэше) и число разборщиков конвейера
+     */
+    public static Workload create(String operation, String... params) throws IOException {
+        Path file = FileWorkloads.corpus(Long.parseLong(params[0]));
+        double speed = Double.parseDouble(params[1]);
+        switch (operation) {
+            case "sequential":
+                return new FileWorkloads.FileWorkload(file, () -> sequential(file, speed), null);
+            case "pipeline":
+                int parsers = Integer.parseInt(params[2]);
+                return new FileWorkloads.FileWorkload(file, () -> pipeline(file, speed, parsers), null);
+            default:
+                Files.delete(file);
+                throw new IllegalArgumentException("Неизвестная операция " + operation);
+        }
+    }
+
+    // Тот же размер пакета, что у конвейера, но чтение и разбор по очереди в одном потоке
+    private static ProcessingResult sequential(Path file, double speed) throws IOException {
+        ProcessingResult result = new ProcessingResult();
+        try (InputStream in = open(file, speed)) {
+            StatisticsLineHandler handler = new StatisticsLineHandler(result, file.toString(), null);
+            byte[] bytes = new byte[LogPipeline.DEFAULT_BATCH_SIZE];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            int tailLength = 0;
+            long position = 0;
+            while (true) {
+                int length = tailLength + in.readNBytes(bytes, tailLength, bytes.length - tailLength);
+                int end = length < bytes.length ? length : CompressedLineReader.lastIndexOf(bytes, length, '\n') + 1;
+                CompressedLineReader.emitLines(buffer, end, position, false, MAX_LINE_LENGTH, handler);
+                if (length < bytes.length) {
+                    break;
+                }
+                tailLength = length - end;
+                System.arraycopy(bytes, end, bytes, 0, tailLength);
+                position += end;
+            }
+        }
+        return result;
+    }
+
+    private static ProcessingResult pipeline(Path file, double speed, int parsers) throws IOException {
+        try (InputStream in = open(file, speed)) {
+            return new LogPipeline(parsers, LogPipeline.DEFAULT_BATCH_SIZE, LogPipeline.DEFAULT_QUEUE_DEPTH)
+                    .process(file.toString(), in);
+        }
+    }
+
+    private static InputStream open(Path file, double megabytesPerSecond) throws IOException {
+        InputStream in = Files.newInputStream(file);
+        return megabytesPerSecond > 0 ? new ThrottledInputStream(in, megabytesPerSecond * 1048576) : in;
+    }
+
+    /**
+     * Поток, каждое чтение из которого длится столько, сколько заняло бы чтение с диска заданной скорости;
+     * ожидание не занимает процессор, как и ожидание диска
+     */
+    private static final class ThrottledInputStream extends FilterInputStream {
+        private final double bytesPerNano;
+
+        ThrottledInputStream(InputStream in, double bytesPerSecond) {
+            super(in);
+            this.bytesPerNano = bytesPerSecond / 1e9;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, Math.min(length, 64 * 1024));
+            if (read > 0) {
+                long wait = (long) (read / bytesPerNano);
+                if (wait > 0) {
+                    try {
+                        Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                }
+            }
+            return read;
+        }
+    }
+}
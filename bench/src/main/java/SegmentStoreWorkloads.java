@@ -0,0 +1,100 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import bench.Workload;
+
+/**
+ * Операции для bench.SegmentStoreBenchmark: отчёт по хранилищу {@link SegmentStore} против повторного
+ * разбора лога за весь период, за два часа и за минуту. Повторный разбор за интервал идёт с фильтром
+ * времени {@link LogFilter}, то есть уже без построения записей вне интервала.
+ * Размер хранилища относительно лога выводится при подготовке.
+ */
+public final class SegmentStoreWorkloads {
+    // Корпус начинается 25.09.2022 00:00 +0300, то есть 24.09.2022 21:00 UTC, и идёт примерно по секунде на 14 строк
+    private static final LocalDateTime BEGIN = LocalDateTime.of(2022, 9, 24, 21, 0);
+
+    private SegmentStoreWorkloads() {
+    }
+
+    /**
+     * @param operation reparse - повторный разбор лога, store - отчёт по хранилищу
+     * @param params число строк в файле и интервал отчёта: all, 2h или 1m
+     */
+    public static Workload create(String operation, String... params) throws IOException {
+        Path file = FileWorkloads.corpus(Long.parseLong(params[0]));
+        Path store = Files.createTempDirectory("bench-store");
+        Runnable cleanup = () -> {
+            LogFilter.configure(LogFilter.all());
+            delete(store);
+        };
+        try {
+            try (SegmentStore.Writer writer = SegmentStore.openWriter(store)) {
+                SegmentStore.configure(writer);
+                new ParallelLogProcessor(1).process(file.toString());
+            } finally {
+                SegmentStore.configure(null);
+            }
+            long storeSize;
+            try (Stream<Path> segments = Files.list(store)) {
+                storeSize = segments.mapToLong(path -> path.toFile().length()).sum();
+            }
+            System.out.printf("хранилище %.1f МБ - %.1f%% от лога %.1f МБ%n", storeSize / 1048576.0,
+                    storeSize * 100.0 / Files.size(file), Files.size(file) / 1048576.0);
+
+            LocalDateTime from = null;
+            LocalDateTime to = null;
+            switch (params[1]) {
+                case "all":
+                    break;
+                case "2h":
+                    from = BEGIN.plusHours(10).plusMinutes(20);
+                    to = BEGIN.plusHours(12).plusMinutes(20);
+                    break;
+                case "1m":
+                    from = BEGIN.plusHours(10).plusMinutes(20);
+                    to = BEGIN.plusHours(10).plusMinutes(21);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Неизвестный интервал " + params[1]);
+            }
+            LocalDateTime reportFrom = from;
+            LocalDateTime reportTo = to;
+
+            LogFilter.configure(from != null ? LogFilter.timeRange(from, to) : LogFilter.all());
+            long entries = new ParallelLogProcessor(1).process(file.toString()).getStatistics().getEntryCount();
+            long stored = SegmentStore.report(store, from, to, null).getStatistics().getEntryCount();
+            if (stored != entries) {
+                throw new IllegalStateException("Разное число записей: " + entries + " и " + stored);
+            }
+
+            switch (operation) {
+                case "reparse":
+                    ParallelLogProcessor processor = new ParallelLogProcessor(1);
+                    return new FileWorkloads.FileWorkload(file, () -> processor.process(file.toString()), cleanup);
+                case "store":
+                    LogFilter.configure(LogFilter.all());
+                    return new FileWorkloads.FileWorkload(file,
+                            () -> SegmentStore.report(store, reportFrom, reportTo, null), cleanup);
+                default:
+                    throw new IllegalArgumentException("Неизвестная операция " + operation);
+            }
+        } catch (IOException | RuntimeException e) {
+            cleanup.run();
+            Files.delete(file);
+            throw e;
+        }
+    }
+
+    private static void delete(Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Генератор нагрузки syslog через loopback для {@link SyslogListener}.
+ * Без параметров поднимает приёмник на свободных портах 127.0.0.1 и по очереди отправляет ему
+ * строки из {@link LogCorpusGenerator}: по TCP с подсчётом октетов и заголовком RFC 5424, по TCP
+ * с переводом строки и заголовком RFC 3164, как у nginx, и по UDP без ограничения и с ограничением скорости.
+ * Для каждого прогона выводятся скорость, число принятых, отброшенных и разобранных сообщений,
+ * байты, выделенные потоком приёма на сообщение, и сверка числа записей и трафика с разбором того же файла.
+ *
+ * С параметрами нагружает уже запущенный приёмник, например Main --listen-udp 5514:
+ * java -cp bench/target/benchmarks.jar SyslogLoadGenerator udp|tcp узел:порт [строк] [сообщений в секунду]
+ *
+ * Запуск: java -cp bench/target/benchmarks.jar SyslogLoadGenerator [строк] 2>/dev/null
+ */
+public class SyslogLoadGenerator {
+    private static final String RFC3164_HEADER = "<190>Sep 25 10:00:00 web1 nginx: ";
+    private static final String RFC5424_HEADER = "<190>1 2022-09-25T10:00:00Z web1 nginx - - - ";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 2) {
+            String[] hostPort = args[1].split(":");
+            InetSocketAddress target = new InetSocketAddress(hostPort[0], Integer.parseInt(hostPort[1]));
+            List<String> lines = generate(args.length > 2 ? Integer.parseInt(args[2]) : 1_000_000);
+            long rate = args.length > 3 ? Long.parseLong(args[3]) : 0;
+            long start = System.nanoTime();
+            if (args[0].equals("udp")) {
+                sendUdp(target, lines, rate);
+            } else {
+                sendTcp(target, lines, false);
+            }
+            System.out.printf("Отправлено %d сообщений за %.0f мс%n", lines.size(), (System.nanoTime() - start) / 1e6);
+            return;
+        }
+
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        List<String> lines = generate(count);
+        Path file = Files.createTempFile("bench", ".log");
+        Statistics expected;
+        try {
+            Files.write(file, lines, StandardCharsets.UTF_8);
+            expected = new ParallelLogProcessor(1).process(file.toString()).getStatistics();
+        } finally {
+            Files.delete(file);
+        }
+        System.out.printf("%d строк, записей при разборе файла %d, трафик %d%n", count, expected.getEntryCount(),
+                expected.getTotalTraffic());
+
+        run("TCP, подсчёт октетов, RFC 5424", lines, expected, address -> sendTcp(address.tcp, lines, true));
+        run("TCP, перевод строки, RFC 3164", lines, expected, address -> sendTcp(address.tcp, lines, false));
+        run("UDP без ограничения", lines, expected, address -> sendUdp(address.udp, lines, 0));
+        run("UDP, 20000 сообщений/с", lines, expected, address -> sendUdp(address.udp, lines, 20_000));
+    }
+
+    private static List<String> generate(int count) throws IOException {
+        StringWriter text = new StringWriter();
+        try (BufferedWriter writer = new BufferedWriter(text)) {
+            new LogCorpusGenerator(1, 10_000, 50_000, 2_000, 0).write(writer, count);
+        }
+        List<String> lines = new ArrayList<>(count);
+        for (String line : text.toString().split("\n")) {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    private static final class Addresses {
+        private final InetSocketAddress udp;
+        private final InetSocketAddress tcp;
+
+        Addresses(InetSocketAddress udp, InetSocketAddress tcp) {
+            this.udp = udp;
+            this.tcp = tcp;
+        }
+    }
+
+    private interface Sender {
+        void send(Addresses addresses) throws IOException;
+    }
+
+    private static void run(String name, List<String> lines, Statistics expected, Sender sender) throws IOException {
+        InetSocketAddress loopback = new InetSocketAddress("127.0.0.1", 0);
+        try (SyslogListener listener = new SyslogListener(loopback, loopback, 1)) {
+            listener.start();
+            Thread receiver = findThread("syslog-receive");
+            com.sun.management.ThreadMXBean threads =
+                    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            long allocatedBefore = threads.getThreadAllocatedBytes(receiver.getId());
+
+            long start = System.nanoTime();
+            sender.send(new Addresses(listener.getUdpAddress(), listener.getTcpAddress()));
+            ProcessingResult result = awaitIdle(listener);
+            long nanos = System.nanoTime() - start;
+            long allocated = threads.getThreadAllocatedBytes(receiver.getId()) - allocatedBefore;
+
+            Statistics statistics = result.getStatistics();
+            long lost = lines.size() - listener.getMessages() - listener.getDroppedMessages();
+            System.out.printf("%-32s %6.0f тыс. сообщений/с: принято %d, отброшено приёмником %d, потеряно ядром %d, "
+                            + "записей %d, трафик %d%s; поток приёма выделил %.1f байт на сообщение%n",
+                    name, lines.size() / (nanos / 1e9) / 1000, listener.getMessages(), listener.getDroppedMessages(),
+                    lost, statistics.getEntryCount(), statistics.getTotalTraffic(),
+                    statistics.getEntryCount() == expected.getEntryCount()
+                            && statistics.getTotalTraffic() == expected.getTotalTraffic() ? " (совпадает с файлом)" : "",
+                    (double) allocated / Math.max(1, listener.getMessages()));
+        }
+    }
+
+    // Ждёт, пока всё принятое будет разобрано и новые сообщения перестанут приходить
+    private static ProcessingResult awaitIdle(SyslogListener listener) {
+        long previous = -1;
+        while (true) {
+            LockSupport.parkNanos(300_000_000L);
+            long received = listener.getMessages();
+            ProcessingResult result = listener.snapshot();
+            if (received == previous && result.getTotalLines() == received) {
+                return result;
+            }
+            previous = received;
+        }
+    }
+
+    private static Thread findThread(String name) {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals(name)) {
+                return thread;
+            }
+        }
+        throw new IllegalStateException("Нет потока " + name);
+    }
+
+    private static void sendTcp(InetSocketAddress target, List<String> lines, boolean octetCounting)
+            throws IOException {
+        try (Socket socket = new Socket(target.getAddress(), target.getPort())) {
+            OutputStream out = new java.io.BufferedOutputStream(socket.getOutputStream(), 1 << 16);
+            for (String line : lines) {
+                if (octetCounting) {
+                    byte[] message = (RFC5424_HEADER + line).getBytes(StandardCharsets.UTF_8);
+                    out.write((message.length + " ").getBytes(StandardCharsets.US_ASCII));
+                    out.write(message);
+                } else {
+                    out.write((RFC3164_HEADER + line + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            out.flush();
+        }
+    }
+
+    private static void sendUdp(InetSocketAddress target, List<String> lines, long messagesPerSecond)
+            throws IOException {
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            channel.connect(target);
+            long start = System.nanoTime();
+            long sent = 0;
+            for (String line : lines) {
+                if (messagesPerSecond > 0) {
+                    long due = start + sent * 1_000_000_000L / messagesPerSecond;
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+                channel.write(ByteBuffer.wrap((RFC3164_HEADER + line).getBytes(StandardCharsets.UTF_8)));
+                sent++;
+            }
+        }
+    }
+}
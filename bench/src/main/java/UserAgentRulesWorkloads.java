@@ -0,0 +1,53 @@
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+
+import bench.Workload;
+
+/**
+ * Операции для bench.UserAgentRulesBenchmark: классификация User-Agent набором из заданного числа
+ * случайных правил, чтобы видеть, как стоимость классификации зависит от размера набора.
+ */
+public final class UserAgentRulesWorkloads {
+    private static final String[] USER_AGENTS = {
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/105.0.0.0 Safari/537.36",
+            "Mozilla/5.0 (compatible; YandexBot/3.0; +http://yandex.com/bots)",
+            "Mozilla/5.0 (iPhone; CPU iPhone OS 15_6 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/15.6 Mobile/15E148 Safari/604.1",
+            "Mozilla/5.0 (X11; Linux x86_64; rv:104.0) Gecko/20100101 Firefox/104.0",
+            "Mozilla/5.0 (Linux; Android 12; SM-G991B) AppleWebKit/537.36 (KHTML, like Gecko) SamsungBrowser/18.0 Chrome/99.0 Mobile Safari/537.36",
+            "curl/7.68.0",
+    };
+
+    private UserAgentRulesWorkloads() {
+    }
+
+    /**
+     * @param operation classify
+     * @param params число правил
+     */
+    public static Workload create(String operation, String... params) throws IOException {
+        if (!operation.equals("classify")) {
+            throw new IllegalArgumentException("Неизвестная операция " + operation);
+        }
+        UserAgentRules rules = UserAgentRules.load(new StringReader(generateRules(Integer.parseInt(params[0]))));
+        return (index, blackhole) -> blackhole.consume(rules.classify(USER_AGENTS[index % USER_AGENTS.length]));
+    }
+
+    // Случайные сигнатуры из латинских букв и цифр с разными приоритетами и категориями
+    private static String generateRules(int count) {
+        Random random = new Random(count);
+        String[] categories = {"browser", "os", "bot"};
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            StringBuilder pattern = new StringBuilder();
+            int length = 5 + random.nextInt(10);
+            for (int j = 0; j < length; j++) {
+                pattern.append("abcdefghijklmnopqrstuvwxyz0123456789/".charAt(random.nextInt(37)));
+            }
+            text.append(categories[i % categories.length]).append(' ')
+                    .append(random.nextInt(100)).append(" Value").append(i).append(' ')
+                    .append(pattern).append('\n');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,27 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Точка входа benchmarks.jar: запускает JMH с теми же параметрами командной строки,
+ * но по умолчанию с профилировщиком gc, чтобы рядом со временем выводилось выделение памяти
+ * на операцию (gc.alloc.rate.norm), по которому видны регрессии в аллокациях.
+ * Если профилировщик указан через -prof, используется только он.
+ *
+ * Запуск: java -jar bench/target/benchmarks.jar [шаблон замеров] [параметры JMH, например -p threads=1 -f 1]
+ */
+public final class Benchmarks {
+    private Benchmarks() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        if (!arguments.contains("-prof")) {
+            arguments.add("-prof");
+            arguments.add("gc");
+        }
+        org.openjdk.jmh.Main.main(arguments.toArray(new String[0]));
+    }
+}
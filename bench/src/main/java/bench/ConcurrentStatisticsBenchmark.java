@@ -0,0 +1,65 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Масштабирование записи в статистику из многих потоков: ConcurrentStatistics против одной Statistics
+ * под общей блокировкой. Результат - суммарная пропускная способность всех потоков в записях в микросекунду;
+ * вложенные классы повторяют замер в 2, 4, 8, 16 и 32 потока. Операция snapshot - запись в ConcurrentStatistics,
+ * при которой каждый поток время от времени снимает снимок, пока остальные пишут.
+ * На машине с числом процессоров меньше числа потоков ускорение ограничено процессорами.
+ *
+ * Запуск: java -jar bench/target/benchmarks.jar ConcurrentStatisticsBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Threads(1)
+public class ConcurrentStatisticsBenchmark extends WorkloadBenchmark {
+    @Param({"synchronized", "concurrent", "snapshot"})
+    public String operation;
+
+    @Override
+    protected Workload create(BenchmarkParams params) throws Exception {
+        return Workload.create("ConcurrentStatisticsWorkloads", operation, String.valueOf(params.getThreads()));
+    }
+
+    @Benchmark
+    public void addEntry(Cursor cursor, Blackhole blackhole) throws Exception {
+        workload.run(cursor.next(), blackhole);
+    }
+
+    @Threads(2)
+    public static class Threads2 extends ConcurrentStatisticsBenchmark {
+    }
+
+    @Threads(4)
+    public static class Threads4 extends ConcurrentStatisticsBenchmark {
+    }
+
+    @Threads(8)
+    public static class Threads8 extends ConcurrentStatisticsBenchmark {
+    }
+
+    @Threads(16)
+    public static class Threads16 extends ConcurrentStatisticsBenchmark {
+    }
+
+    @Threads(32)
+    public static class Threads32 extends ConcurrentStatisticsBenchmark {
+    }
+}
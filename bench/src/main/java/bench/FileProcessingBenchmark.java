@@ -0,0 +1,48 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Полная обработка файла в строках и байтах в секунду, в том числе с выборочным фильтром
+ * status=5xx, path=/api/. Выделение памяти профилировщик gc считает по всем потокам.
+ *
+ * Запуск: java -jar bench/target/benchmarks.jar FileProcessingBenchmark [-p threads=4]
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FileProcessingBenchmark extends WorkloadBenchmark {
+    @Param({"process", "filtered"})
+    public String operation;
+
+    @Param({"1"})
+    public int threads;
+
+    @Param({"2000000"})
+    public long lines;
+
+    @Override
+    protected Workload create(BenchmarkParams params) throws Exception {
+        return Workload.create("FileWorkloads", operation, String.valueOf(lines), String.valueOf(threads));
+    }
+
+    @Benchmark
+    public void run(Cursor cursor, InputCounters counters, Blackhole blackhole) throws Exception {
+        workload.run(cursor.next(), blackhole);
+        counters.lines += lines;
+        counters.bytes += workload.bytesPerOperation();
+    }
+}
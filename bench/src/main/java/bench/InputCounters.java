@@ -0,0 +1,24 @@
+package bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Обработанные строки и байты лога: в режиме Throughput JMH выводит их рядом с основным результатом
+ * как строки и байты в секунду
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class InputCounters {
+    public long lines;
+    public long bytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        lines = 0;
+        bytes = 0;
+    }
+}
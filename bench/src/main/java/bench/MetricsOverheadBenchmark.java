@@ -0,0 +1,43 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Накладные расходы ProcessingMetrics: один и тот же файл обрабатывается обработчиком строк
+ * без метрик и с метриками.
+ *
+ * Запуск: java -jar bench/target/benchmarks.jar MetricsOverheadBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 7, time = 2)
+@Fork(2)
+public class MetricsOverheadBenchmark extends WorkloadBenchmark {
+    @Param({"false", "true"})
+    public boolean metrics;
+
+    @Param({"1000000"})
+    public long lines;
+
+    @Override
+    protected Workload create(BenchmarkParams params) throws Exception {
+        return Workload.create("FileWorkloads", "handler", String.valueOf(lines), String.valueOf(metrics));
+    }
+
+    @Benchmark
+    public void run(Cursor cursor, Blackhole blackhole) throws Exception {
+        workload.run(cursor.next(), blackhole);
+    }
+}
@@ -0,0 +1,40 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Разбор и агрегация одной записи на пуле строк синтетического лога: разбор строки в LogEntry
+ * (с долей испорченных строк), классификация User-Agent и добавление записи в Statistics.
+ *
+ * Запуск: java -jar bench/target/benchmarks.jar ParserBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+public class ParserBenchmark extends WorkloadBenchmark {
+    @Param({"LogEntry", "UserAgent", "Statistics.addEntry"})
+    public String operation;
+
+    @Override
+    protected Workload create(BenchmarkParams params) throws Exception {
+        return Workload.create("ParserWorkloads", operation);
+    }
+
+    @Benchmark
+    public void run(Cursor cursor, Blackhole blackhole) throws Exception {
+        workload.run(cursor.next(), blackhole);
+    }
+}
@@ -0,0 +1,52 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Конвейер LogPipeline против последовательного цикла «прочитать пакет - разобрать его»
+ * с файлом в кэше (speed=0) и с диском заданной скорости в МБ/с.
+ *
+ * Запуск: java -jar bench/target/benchmarks.jar PipelineBenchmark [-p parsers=4]
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PipelineBenchmark extends WorkloadBenchmark {
+    @Param({"sequential", "pipeline"})
+    public String operation;
+
+    @Param({"0", "100"})
+    public double speed;
+
+    @Param({"1"})
+    public int parsers;
+
+    @Param({"1000000"})
+    public long lines;
+
+    @Override
+    protected Workload create(BenchmarkParams params) throws Exception {
+        return Workload.create("PipelineWorkloads", operation, String.valueOf(lines), String.valueOf(speed),
+                String.valueOf(parsers));
+    }
+
+    @Benchmark
+    public void run(Cursor cursor, InputCounters counters, Blackhole blackhole) throws Exception {
+        workload.run(cursor.next(), blackhole);
+        counters.lines += lines;
+        counters.bytes += workload.bytesPerOperation();
+    }
+}
@@ -0,0 +1,45 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Отчёт по хранилищу SegmentStore против повторного разбора лога за весь период, за два часа и за минуту.
+ *
+ * Запуск: java -jar bench/target/benchmarks.jar SegmentStoreBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SegmentStoreBenchmark extends WorkloadBenchmark {
+    @Param({"reparse", "store"})
+    public String operation;
+
+    @Param({"all", "2h", "1m"})
+    public String range;
+
+    @Param({"1000000"})
+    public long lines;
+
+    @Override
+    protected Workload create(BenchmarkParams params) throws Exception {
+        return Workload.create("SegmentStoreWorkloads", operation, String.valueOf(lines), range);
+    }
+
+    @Benchmark
+    public void run(Cursor cursor, Blackhole blackhole) throws Exception {
+        workload.run(cursor.next(), blackhole);
+    }
+}
@@ -0,0 +1,45 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Методы отчёта Statistics на 1 и 10 млн записей: время не должно расти с числом записей.
+ *
+ * Запуск: java -jar bench/target/benchmarks.jar StatisticsGettersBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class StatisticsGettersBenchmark extends WorkloadBenchmark {
+    @Param({"getAverageVisitsPerHour", "getAverageErrorRequestsPerHour", "getAverageVisitsPerUser", "getTrafficRate",
+            "getExistingPages", "getNonExistentPages", "getTopClients", "getTopReferers", "getBrowserStatistics",
+            "getOperatingSystemStatistics", "getUniqueNonBotIps", "getResponseSizeQuantile", "getRecent",
+            "getRecentUniqueNonBotIps", "getHourlyBreakdown"})
+    public String getter;
+
+    @Param({"1000000", "10000000"})
+    public String entries;
+
+    @Override
+    protected Workload create(BenchmarkParams params) throws Exception {
+        return Workload.create("ParserWorkloads", getter, entries);
+    }
+
+    @Benchmark
+    public void run(Cursor cursor, Blackhole blackhole) throws Exception {
+        workload.run(cursor.next(), blackhole);
+    }
+}
@@ -0,0 +1,47 @@
+package bench;
+
+import java.lang.reflect.InvocationTargetException;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Измеряемая операция над классами парсера.
+ * JMH не принимает замеры в пакете по умолчанию, а из именованного пакета классы парсера недоступны,
+ * поэтому сами операции собирают фабрики в пакете по умолчанию ({@code ParserWorkloads} и другие),
+ * а замеры JMH из этого пакета получают их через этот интерфейс.
+ */
+@FunctionalInterface
+public interface Workload extends AutoCloseable {
+    /**
+     * Выполняет одну операцию
+     * @param index неотрицательный номер операции в потоке замера, по нему выбираются входные данные
+     * @param blackhole приёмник результатов, не дающий JIT выбросить вычисления
+     */
+    void run(int index, Blackhole blackhole) throws Exception;
+
+    /**
+     * Сколько байт входных данных обрабатывает одна операция, 0 - не считается
+     */
+    default long bytesPerOperation() {
+        return 0;
+    }
+
+    @Override
+    default void close() throws Exception {
+    }
+
+    /**
+     * Создаёт операцию статическим методом {@code create(String, String...)} фабрики из пакета по умолчанию
+     * @param factory имя класса фабрики
+     * @param operation имя операции
+     * @param params параметры операции в том виде, в каком их задаёт {@code @Param}
+     */
+    static Workload create(String factory, String operation, String... params) throws Exception {
+        try {
+            return (Workload) Class.forName(factory).getMethod("create", String.class, String[].class)
+                    .invoke(null, operation, params);
+        } catch (InvocationTargetException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Общая часть замеров: операция {@link Workload} создаётся до замера и закрывается после него,
+ * каждый поток замера проходит входные данные со своим курсором {@link Cursor}.
+ */
+@State(Scope.Benchmark)
+public abstract class WorkloadBenchmark {
+    protected Workload workload;
+
+    /**
+     * Создаёт операцию по параметрам замера
+     */
+    protected abstract Workload create(BenchmarkParams params) throws Exception;
+
+    @Setup
+    public void setUp(BenchmarkParams params) throws Exception {
+        workload = create(params);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        workload.close();
+    }
+
+    /**
+     * Номер следующей операции потока; потоки начинают с разных мест, чтобы не брать одни и те же записи
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        @Setup
+        public void setUp(ThreadParams params) {
+            next = params.getThreadIndex() * 7919;
+        }
+
+        public int next() {
+            int index = next;
+            next = next + 1 & Integer.MAX_VALUE;
+            return index;
+        }
+    }
+}
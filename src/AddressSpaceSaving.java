@@ -0,0 +1,305 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Самые частые адреса клиентов алгоритмом Space-Saving, как в {@link SpaceSaving}, но с ключом
+ * из упакованного адреса: старшие и младшие 64 бита IPv6, IPv4 - как ::ffff:a.b.c.d.
+ * Позиции ключей в куче хранятся в хэш-таблице с открытой адресацией на массивах примитивов,
+ * поэтому учёт адреса не создаёт строк и объектов, а память не зависит от длины записи адреса.
+ * Строка адреса строится только для ключей, которые попали в результат {@link #top(int)}.
+ */
+public final class AddressSpaceSaving {
+    private final int capacity;
+    // Двоичная куча по возрастанию счётчика: в корне ключ-кандидат на вытеснение
+    private final long[] highs;
+    private final long[] lows;
+    private final long[] counts;
+    private final long[] errors;
+    // Таблица с линейным пробированием: ключ и позиция в куче плюс один, 0 - пустая ячейка
+    private final long[] tableHighs;
+    private final long[] tableLows;
+    private final int[] tablePositions;
+    private final int tableMask;
+    private int size;
+    private long total;
+
+    public AddressSpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Ёмкость должна быть положительной: " + capacity);
+        }
+        this.capacity = capacity;
+        this.highs = new long[capacity];
+        this.lows = new long[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+        // Заполнение таблицы не выше половины, чтобы цепочки пробирования оставались короткими
+        int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        this.tableHighs = new long[tableSize];
+        this.tableLows = new long[tableSize];
+        this.tablePositions = new int[tableSize];
+        this.tableMask = tableSize - 1;
+    }
+
+    /**
+     * Учитывает одно появление разобранного адреса записи
+     * @param ipVersion 4 или 6, как {@link LogEntry#getIpVersion()}
+     */
+    public void add(int ipVersion, long high, long low) {
+        if (ipVersion == 4) {
+            add(0, IpAddress.MAPPED_IPV4_PREFIX | low, 1, 0);
+        } else {
+            add(high, low, 1, 0);
+        }
+    }
+
+    private void add(long high, long low, long count, long error) {
+        total += count;
+        int slot = find(high, low);
+        if (tablePositions[slot] != 0) {
+            int position = tablePositions[slot] - 1;
+            counts[position] += count;
+            errors[position] += error;
+            siftDown(position);
+            return;
+        }
+        if (size < capacity) {
+            highs[size] = high;
+            lows[size] = low;
+            counts[size] = count;
+            errors[size] = error;
+            put(slot, high, low, size);
+            siftUp(size++);
+            return;
+        }
+
+        // Вытесняем ключ с наименьшим счётчиком, его значение становится погрешностью нового
+        remove(highs[0], lows[0]);
+        highs[0] = high;
+        lows[0] = low;
+        errors[0] = counts[0] + error;
+        counts[0] += count;
+        put(find(high, low), high, low, 0);
+        siftDown(0);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return общее число учтённых появлений всех адресов
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return наибольшая оценка частоты среди отслеживаемых адресов или 0, если адресов нет
+     */
+    public long getMaxCount() {
+        long max = 0;
+        for (int i = 0; i < size; i++) {
+            max = Math.max(max, counts[i]);
+        }
+        return max;
+    }
+
+    /**
+     * @return до n самых частых адресов по убыванию оценки частоты, при равенстве - по возрастанию адреса;
+     *         IPv4 записывается как a.b.c.d, IPv6 - по RFC 5952
+     */
+    public List<SpaceSaving.Entry> top(int n) {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int byCount = Long.compare(counts[b], counts[a]);
+            if (byCount != 0) {
+                return byCount;
+            }
+            int byHigh = Long.compareUnsigned(highs[a], highs[b]);
+            return byHigh != 0 ? byHigh : Long.compareUnsigned(lows[a], lows[b]);
+        });
+        List<SpaceSaving.Entry> entries = new ArrayList<>(Math.min(n, size));
+        for (int i = 0; i < Math.min(n, size); i++) {
+            int position = order[i];
+            entries.add(new SpaceSaving.Entry(IpAddress.format(highs[position], lows[position]),
+                    counts[position], errors[position]));
+        }
+        return entries;
+    }
+
+    /**
+     * Объединяет с результатом по другой части потока так же, как {@link SpaceSaving#merge(SpaceSaving)}
+     */
+    public void merge(AddressSpaceSaving other) {
+        long thisMin = size == capacity ? counts[0] : 0;
+        long otherMin = other.size == other.capacity ? other.counts[0] : 0;
+
+        // Кандидаты: свои ключи с добавкой otherMin, затем ключи другого набора, которых нет у этого
+        int candidates = 0;
+        long[][] merged = new long[4][size + other.size];
+        for (int i = 0; i < size; i++) {
+            int slot = other.find(highs[i], lows[i]);
+            long count = counts[i];
+            long error = errors[i];
+            if (other.tablePositions[slot] != 0) {
+                int position = other.tablePositions[slot] - 1;
+                count += other.counts[position];
+                error += other.errors[position];
+            } else {
+                count += otherMin;
+                error += otherMin;
+            }
+            set(merged, candidates++, highs[i], lows[i], count, error);
+        }
+        for (int i = 0; i < other.size; i++) {
+            if (tablePositions[find(other.highs[i], other.lows[i])] == 0) {
+                set(merged, candidates++, other.highs[i], other.lows[i],
+                        other.counts[i] + thisMin, other.errors[i] + thisMin);
+            }
+        }
+
+        Integer[] order = new Integer[candidates];
+        for (int i = 0; i < candidates; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(merged[2][b], merged[2][a]));
+
+        long mergedTotal = total + other.total;
+        clear();
+        for (int i = 0; i < Math.min(capacity, candidates); i++) {
+            int candidate = order[i];
+            add(merged[0][candidate], merged[1][candidate], merged[2][candidate], merged[3][candidate]);
+        }
+        total = mergedTotal;
+    }
+
+    private static void set(long[][] merged, int index, long high, long low, long count, long error) {
+        merged[0][index] = high;
+        merged[1][index] = low;
+        merged[2][index] = count;
+        merged[3][index] = error;
+    }
+
+    private void clear() {
+        Arrays.fill(tablePositions, 0);
+        size = 0;
+        total = 0;
+    }
+
+    // Ячейка ключа или первая пустая ячейка на его пути пробирования
+    private int find(long high, long low) {
+        int slot = hash(high, low) & tableMask;
+        while (tablePositions[slot] != 0 && (tableHighs[slot] != high || tableLows[slot] != low)) {
+            slot = slot + 1 & tableMask;
+        }
+        return slot;
+    }
+
+    private void put(int slot, long high, long low, int position) {
+        tableHighs[slot] = high;
+        tableLows[slot] = low;
+        tablePositions[slot] = position + 1;
+    }
+
+    // Удаление со сдвигом назад: ключи за удалённым переносятся ближе к своей ячейке, без меток удаления
+    private void remove(long high, long low) {
+        int hole = find(high, low);
+        tablePositions[hole] = 0;
+        int slot = hole + 1 & tableMask;
+        while (tablePositions[slot] != 0) {
+            int home = hash(tableHighs[slot], tableLows[slot]) & tableMask;
+            // Ключ можно перенести в дыру, если она лежит на пути от его ячейки до текущей
+            if ((slot - home & tableMask) >= (slot - hole & tableMask)) {
+                tableHighs[hole] = tableHighs[slot];
+                tableLows[hole] = tableLows[slot];
+                tablePositions[hole] = tablePositions[slot];
+                tablePositions[slot] = 0;
+                hole = slot;
+            }
+            slot = slot + 1 & tableMask;
+        }
+    }
+
+    private static int hash(long high, long low) {
+        long h = HyperLogLog.hash(high, low);
+        return (int) (h ^ h >>> 32);
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (counts[parent] <= counts[position]) {
+                break;
+            }
+            swap(position, parent);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            int left = 2 * position + 1;
+            if (left >= size) {
+                break;
+            }
+            int right = left + 1;
+            int smallest = right < size && counts[right] < counts[left] ? right : left;
+            if (counts[position] <= counts[smallest]) {
+                break;
+            }
+            swap(position, smallest);
+            position = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        long high = highs[i];
+        highs[i] = highs[j];
+        highs[j] = high;
+        long low = lows[i];
+        lows[i] = lows[j];
+        lows[j] = low;
+        long count = counts[i];
+        counts[i] = counts[j];
+        counts[j] = count;
+        long error = errors[i];
+        errors[i] = errors[j];
+        errors[j] = error;
+        tablePositions[find(highs[i], lows[i])] = i + 1;
+        tablePositions[find(highs[j], lows[j])] = j + 1;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(capacity);
+        out.writeLong(total);
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeLong(highs[i]);
+            out.writeLong(lows[i]);
+            out.writeLong(counts[i]);
+            out.writeLong(errors[i]);
+        }
+    }
+
+    static AddressSpaceSaving readFrom(DataInputStream in) throws IOException {
+        AddressSpaceSaving sketch = new AddressSpaceSaving(in.readInt());
+        long total = in.readLong();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            sketch.add(in.readLong(), in.readLong(), in.readLong(), in.readLong());
+        }
+        sketch.total = total;
+        return sketch;
+    }
+}
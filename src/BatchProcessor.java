@@ -0,0 +1,265 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Пакетная обработка множества файлов в общем пуле потоков.
+ * Каждый файл делится на диапазоны, выровненные по переводам строк, так что большой файл
+ * разбирается несколькими потоками, а мелкие и сжатые файлы идут целиком. Все диапазоны всех файлов
+ * ставятся в очередь от самого большого к самому маленькому: длинные задачи начинаются первыми,
+ * а в конце прогона свободные потоки добирают мелкие, и прогон не ждёт одного отстающего файла.
+ * Когда разобраны все диапазоны файла, они объединяются в порядке следования в результат файла,
+ * а он присоединяется к общему результату.
+ */
+public class BatchProcessor {
+    // Диапазонов больше, чем потоков, чтобы нагрузка выравнивалась и при одном большом файле
+    private static final int CHUNKS_PER_THREAD = 4;
+    // Сжатый файл не делится на части; для очерёдности его размер умножается на типичную степень сжатия логов
+    private static final int COMPRESSION_RATIO_ESTIMATE = 10;
+
+    private final int threads;
+
+    public BatchProcessor(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Раскрывает пути в список файлов: каталог даёт все обычные файлы в нём и во вложенных каталогах,
+     * шаблон с символами *, ?, [ или { - подходящие файлы (синтаксис glob, ** проходит вложенные каталоги),
+     * остальные пути берутся как есть. Повторы убираются, порядок внутри каталога и шаблона - по имени.
+     * @throws IOException если каталог не удалось прочитать или путь не существует
+     */
+    public static List<Path> expand(Collection<String> patterns) throws IOException {
+        Set<Path> files = new LinkedHashSet<>();
+        for (String pattern : patterns) {
+            Path path = Path.of(pattern);
+            if (Files.isDirectory(path)) {
+                files.addAll(walk(path, Integer.MAX_VALUE, file -> true));
+            } else if (isGlob(pattern)) {
+                files.addAll(expandGlob(pattern));
+            } else if (Files.exists(path)) {
+                files.add(path);
+            } else {
+                throw new IOException("Файл не найден: " + pattern);
+            }
+        }
+        return new ArrayList<>(files);
+    }
+
+    private static boolean isGlob(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '*' || c == '?' || c == '[' || c == '{') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Обход начинается с самого длинного префикса шаблона без спецсимволов
+    private static List<Path> expandGlob(String pattern) throws IOException {
+        Path glob = Path.of(pattern);
+        Path base = glob.getRoot();
+        int depth = glob.getNameCount();
+        for (Path name : glob) {
+            if (isGlob(name.toString())) {
+                break;
+            }
+            base = base == null ? name : base.resolve(name);
+            depth--;
+        }
+        if (base == null) {
+            base = Path.of("");
+        }
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        return walk(base, pattern.contains("**") ? Integer.MAX_VALUE : depth, matcher);
+    }
+
+    private static List<Path> walk(Path base, int depth, PathMatcher matcher) throws IOException {
+        try (Stream<Path> stream = Files.walk(base, depth)) {
+            return stream.filter(Files::isRegularFile)
+                    .filter(matcher::matches)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Разбирает файлы и возвращает объединённый результат.
+     * Файлы, которые не удалось прочитать или разобрать целиком, пропускаются с сообщением в stderr.
+     * @param perFile получает результат каждого файла по мере готовности, вызовы не пересекаются; может быть null
+     * @throws MalformedLineException если строка не разобрана при политике {@link Quarantine.Policy#ABORT}:
+     *         остальные диапазоны отменяются, и результаты файлов после этого не передаются
+     */
+    public ProcessingResult process(List<Path> files, BiConsumer<Path, ProcessingResult> perFile) throws IOException {
+        CompressedLineReader.Compression[] compression = new CompressedLineReader.Compression[files.size()];
+        long totalBytes = 0;
+        for (int i = 0; i < files.size(); i++) {
+            compression[i] = CompressedLineReader.Compression.detect(files.get(i));
+            long size = Files.size(files.get(i));
+            totalBytes += compression[i] == CompressedLineReader.Compression.NONE ? size : size * COMPRESSION_RATIO_ESTIMATE;
+        }
+        // Размер диапазона такой, чтобы на поток приходилось несколько диапазонов
+        long chunkSize = Math.max(ParallelLogProcessor.MIN_CHUNK_SIZE, totalBytes / ((long) threads * CHUNKS_PER_THREAD));
+
+        List<Chunk> chunks = new ArrayList<>();
+        for (int f = 0; f < files.size(); f++) {
+            Path file = files.get(f);
+            if (compression[f] != CompressedLineReader.Compression.NONE) {
+                FileJob job = new FileJob(file, compression[f], 1);
+                chunks.add(new Chunk(job, 0, 0, Files.size(file) * COMPRESSION_RATIO_ESTIMATE));
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                int parts = (int) Math.min(Integer.MAX_VALUE, (channel.size() + chunkSize - 1) / chunkSize);
+                long[] bounds = ParallelLogProcessor.splitByLines(channel, parts);
+                FileJob job = new FileJob(file, compression[f], bounds.length - 1);
+                for (int i = 0; i + 1 < bounds.length; i++) {
+                    chunks.add(new Chunk(job, i, bounds[i], bounds[i + 1]));
+                }
+            }
+        }
+        chunks.sort(Comparator.comparingLong(Chunk::length).reversed());
+
+        ProcessingResult total = new ProcessingResult();
+        AtomicBoolean aborted = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        // Диапазоны ожидаются в порядке завершения, чтобы прерывание замечалось сразу, а не после предыдущих
+        CompletionService<Void> completion = new ExecutorCompletionService<>(executor);
+        List<Future<Void>> futures = new ArrayList<>();
+        try {
+            for (Chunk chunk : chunks) {
+                futures.add(completion.submit(() -> {
+                    chunk.process(total, perFile, aborted);
+                    return null;
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                completion.take().get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Пакетная обработка прервана", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        } finally {
+            // Уже идущие диапазоны дочитываются, но их результаты не передаются
+            aborted.set(true);
+            for (Future<Void> future : futures) {
+                future.cancel(true);
+            }
+            executor.shutdownNow();
+        }
+        return total;
+    }
+
+    /**
+     * Файл, диапазоны которого разбираются в пуле; результаты собираются по индексу диапазона
+     */
+    private static final class FileJob {
+        private final Path path;
+        private final CompressedLineReader.Compression compression;
+        private final ProcessingResult[] parts;
+        private final AtomicInteger remaining;
+        private volatile Exception error;
+
+        FileJob(Path path, CompressedLineReader.Compression compression, int chunks) {
+            this.path = path;
+            this.compression = compression;
+            this.parts = new ProcessingResult[chunks];
+            this.remaining = new AtomicInteger(chunks);
+        }
+
+        // Вызывается последним закончившим диапазоном: запись в parts видна через AtomicInteger
+        void complete(ProcessingResult total, BiConsumer<Path, ProcessingResult> perFile) {
+            if (error != null) {
+                System.err.println("Ошибка при чтении файла " + path + ": " + error.getMessage());
+                return;
+            }
+            ProcessingResult result = new ProcessingResult();
+            for (ProcessingResult part : parts) {
+                result.merge(part);
+            }
+            synchronized (total) {
+                if (perFile != null) {
+                    perFile.accept(path, result);
+                }
+                total.merge(result);
+            }
+        }
+    }
+
+    /**
+     * Диапазон файла; сжатый файл - один диапазон с оценкой распакованного размера
+     */
+    private static final class Chunk {
+        private final FileJob job;
+        private final int index;
+        private final long start;
+        private final long end;
+
+        Chunk(FileJob job, int index, long start, long end) {
+            this.job = job;
+            this.index = index;
+            this.start = start;
+            this.end = end;
+        }
+
+        long length() {
+            return end - start;
+        }
+
+        void process(ProcessingResult total, BiConsumer<Path, ProcessingResult> perFile, AtomicBoolean aborted) {
+            if (aborted.get()) {
+                return;
+            }
+            try {
+                job.parts[index] = read();
+            } catch (MalformedLineException e) {
+                // Политика ABORT прерывает весь прогон, а не один файл
+                aborted.set(true);
+                throw e;
+            } catch (IOException | RuntimeException e) {
+                // Ошибка одного файла (в том числе слишком длинная строка) не останавливает остальные
+                job.error = e;
+            }
+            if (job.remaining.decrementAndGet() == 0 && !aborted.get()) {
+                job.complete(total, perFile);
+            }
+        }
+
+        private ProcessingResult read() throws IOException {
+            if (job.compression != CompressedLineReader.Compression.NONE) {
+                return ParallelLogProcessor.processCompressed(job.path, job.compression);
+            }
+            try (FileChannel channel = FileChannel.open(job.path, StandardOpenOption.READ)) {
+                return ParallelLogProcessor.processRange(job.path.toString(), channel, start, end);
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Представление области байтового буфера в виде {@link CharSequence} без копирования.
+ * Служебные символы формата лога однобайтовые, поэтому разбор идёт прямо по байтам,
+ * а в строки UTF-8 декодируются только итоговые поля через {@link #subSequence(int, int)}.
+ * Экземпляр переиспользуется для каждой следующей строки и не является потокобезопасным.
+ */
+public final class ByteSlice implements CharSequence {
+    private static final Charset CHARSET = StandardCharsets.UTF_8;
+
+    private ByteBuffer buffer;
+    private int offset;
+    private int length;
+    private byte[] scratch = new byte[256];
+
+    public ByteSlice wrap(ByteBuffer buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (buffer.get(offset + index) & 0xFF);
+    }
+
+    /**
+     * Декодирует часть строки в {@link String}
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        int size = end - start;
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + offset + start, size, CHARSET);
+        }
+        if (scratch.length < size) {
+            scratch = new byte[Math.max(size, scratch.length * 2)];
+        }
+        buffer.get(offset + start, scratch, 0, size);
+        return new String(scratch, 0, size, CHARSET);
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length).toString();
+    }
+}
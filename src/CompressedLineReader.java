@@ -0,0 +1,249 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Чтение строк из сжатого файла без распаковки на диск.
+ * Распаковка идёт в отдельном потоке в буферы из небольшого пула; заполненный буфер
+ * обрезается по последнему переводу строки (хвост переносится в начало следующего)
+ * и передаётся через очередь потоку разбора, так что распаковка и разбор идут одновременно,
+ * а в буферах разбора всегда целые строки.
+ *
+ * gzip распаковывается {@link GZIPInputStream}, который читает и файлы из нескольких
+ * склеенных членов. Для zstd в JDK нет декодера, поэтому файл распаковывает внешняя
+ * программа zstd -dc, а её вывод читается как поток.
+ * Смещение строки, передаваемое обработчику, отсчитывается от начала распакованных данных.
+ */
+public class CompressedLineReader {
+    // Размер одного буфера распакованных данных и число буферов между потоками
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int BUFFERS = 4;
+
+    /**
+     * Способ сжатия файла, определяемый по первым байтам
+     */
+    public enum Compression {
+        NONE, GZIP, ZSTD;
+
+        /**
+         * @throws IOException если файл не удалось прочитать
+         */
+        public static Compression detect(Path path) throws IOException {
+            byte[] magic = new byte[4];
+            int read;
+            try (InputStream in = Files.newInputStream(path)) {
+                read = in.readNBytes(magic, 0, magic.length);
+            }
+            if (read >= 2 && (magic[0] & 0xFF) == 0x1F && (magic[1] & 0xFF) == 0x8B) {
+                return GZIP;
+            }
+            if (read == 4 && (magic[0] & 0xFF) == 0x28 && (magic[1] & 0xFF) == 0xB5
+                    && (magic[2] & 0xFF) == 0x2F && (magic[3] & 0xFF) == 0xFD) {
+                return ZSTD;
+            }
+            return NONE;
+        }
+    }
+
+    private final Path path;
+    private final Compression compression;
+    private final int maxLineLength;
+
+    /**
+     * @param compression GZIP или ZSTD
+     * @param maxLineLength максимальная длина строки в байтах без перевода строки
+     */
+    public CompressedLineReader(Path path, Compression compression, int maxLineLength) {
+        if (compression == Compression.NONE) {
+            throw new IllegalArgumentException("Файл не сжат: " + path);
+        }
+        if (maxLineLength + 2 > BUFFER_SIZE) {
+            throw new IllegalArgumentException("Максимальная длина строки больше буфера распаковки");
+        }
+        this.path = path;
+        this.compression = compression;
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * Передаёт обработчику все строки файла; слишком длинные строки передаются в {@link LineHandler#onLineTooLong}
+     * @throws IOException если файл повреждён или внешний распаковщик завершился с ошибкой
+     */
+    public void read(LineHandler handler) throws IOException {
+        Decompressor decompressor = new Decompressor();
+        Thread thread = new Thread(decompressor, "decompress-" + path.getFileName());
+        thread.setDaemon(true);
+        thread.start();
+        try {
+            long position = 0;
+            boolean skipping = false;
+            while (true) {
+                Chunk chunk = decompressor.filled.take();
+                if (chunk.length < 0) {
+                    break;
+                }
+                emitLines(chunk.buffer, chunk.length, position, skipping, maxLineLength, handler);
+                // Буфер без перевода строки - начало слишком длинной строки, её продолжение пропускается
+                skipping = chunk.partial;
+                position += chunk.length;
+                decompressor.free.put(chunk);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Распаковка прервана", e);
+        } finally {
+            // При ошибке разбора поток распаковки может ждать свободный буфер - прерываем его
+            thread.interrupt();
+            decompressor.destroy();
+        }
+        Throwable error = decompressor.error;
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        }
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        if (error instanceof Error) {
+            throw (Error) error;
+        }
+    }
+
+    /**
+     * Передаёт обработчику строки буфера, в котором нет незаконченной строки в конце
+     * @param position смещение начала буфера от начала входа
+     * @param skipping буфер начинается с продолжения слишком длинной строки, о которой уже сообщено
+     */
+    static void emitLines(ByteBuffer buffer, int limit, long position, boolean skipping, int maxLineLength,
+                          LineHandler handler) {
+        int lineStart = 0;
+        if (skipping) {
+            int newline = MappedLineReader.indexOfNewline(buffer, 0, limit);
+            lineStart = newline < 0 ? limit : newline + 1;
+        }
+        while (lineStart < limit) {
+            int newline = MappedLineReader.indexOfNewline(buffer, lineStart, limit);
+            int end = newline < 0 ? limit : newline;
+            int length = end - lineStart;
+            if (length > 0 && buffer.get(end - 1) == '\r') {
+                length--;
+            }
+            if (length > maxLineLength) {
+                handler.onLineTooLong(buffer, lineStart, maxLineLength, position + lineStart);
+            } else {
+                handler.onLine(buffer, lineStart, length, position + lineStart);
+            }
+            lineStart = end + 1;
+        }
+    }
+
+    /**
+     * Буфер распакованных данных; length < 0 означает конец файла
+     */
+    private static final class Chunk {
+        private final byte[] bytes;
+        private final ByteBuffer buffer;
+        private int length;
+        // Буфер кончается посреди строки
+        private boolean partial;
+
+        Chunk(int size) {
+            bytes = new byte[size];
+            buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    private final class Decompressor implements Runnable {
+        private final BlockingQueue<Chunk> free = new ArrayBlockingQueue<>(BUFFERS);
+        private final BlockingQueue<Chunk> filled = new ArrayBlockingQueue<>(BUFFERS + 1);
+        private volatile Process process;
+        // Любая ошибка распаковки, включая непроверяемые: поток разбора выбросит её после конца данных
+        private volatile Throwable error;
+
+        Decompressor() {
+            for (int i = 0; i < BUFFERS; i++) {
+                free.add(new Chunk(BUFFER_SIZE));
+            }
+        }
+
+        @Override
+        public void run() {
+            try (InputStream in = open()) {
+                byte[] tail = new byte[BUFFER_SIZE];
+                int tailLength = 0;
+                while (true) {
+                    Chunk chunk = free.take();
+                    System.arraycopy(tail, 0, chunk.bytes, 0, tailLength);
+                    int length = tailLength + in.readNBytes(chunk.bytes, tailLength, BUFFER_SIZE - tailLength);
+                    if (length < BUFFER_SIZE) {
+                        // Конец данных: отдаём всё, включая последнюю строку без перевода строки
+                        chunk.length = length;
+                        chunk.partial = false;
+                        if (length > 0) {
+                            filled.put(chunk);
+                        }
+                        break;
+                    }
+                    int lastNewline = lastIndexOf(chunk.bytes, length, '\n');
+                    // Буфер без единого перевода строки отдаётся целиком, разбор сообщит о слишком длинной строке
+                    chunk.length = lastNewline < 0 ? length : lastNewline + 1;
+                    chunk.partial = lastNewline < 0;
+                    tailLength = length - chunk.length;
+                    System.arraycopy(chunk.bytes, chunk.length, tail, 0, tailLength);
+                    filled.put(chunk);
+                }
+                waitForProcess();
+            } catch (InterruptedException e) {
+                // Прерывает только поток разбора, который уже не ждёт данных
+            } catch (Throwable e) {
+                error = e;
+            } finally {
+                // Признак конца ставится при любом исходе, иначе поток разбора ждал бы его вечно;
+                // в очереди всегда есть место: буферов данных в ней не больше BUFFERS
+                Chunk end = new Chunk(0);
+                end.length = -1;
+                filled.offer(end);
+            }
+        }
+
+        private InputStream open() throws IOException {
+            if (compression == Compression.GZIP) {
+                return new GZIPInputStream(Files.newInputStream(path), 1 << 16);
+            }
+            ProcessBuilder builder = new ProcessBuilder("zstd", "-dc", "--", path.toString())
+                    .redirectError(ProcessBuilder.Redirect.INHERIT);
+            try {
+                process = builder.start();
+            } catch (IOException e) {
+                throw new IOException("Для чтения файлов zstd нужна программа zstd в PATH: " + e.getMessage(), e);
+            }
+            return process.getInputStream();
+        }
+
+        private void waitForProcess() throws IOException, InterruptedException {
+            if (process != null && process.waitFor() != 0) {
+                throw new IOException("zstd завершился с кодом " + process.exitValue() + " для файла " + path);
+            }
+        }
+
+        void destroy() {
+            if (process != null) {
+                process.destroy();
+            }
+        }
+    }
+
+    static int lastIndexOf(byte[] bytes, int length, char c) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (bytes[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,175 @@
+import java.util.Collection;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Статистика, которую одновременно пополняют много потоков.
+ * Обычная {@link Statistics} не потокобезопасна, а общая блокировка вокруг неё выстроила бы
+ * все addEntry в очередь. Здесь записи распределяются по нескольким частичным статистикам
+ * (ячейкам), как слагаемые в {@link java.util.concurrent.atomic.LongAdder}: поток пишет в свою ячейку,
+ * а если она занята другим потоком, переходит на другую и запоминает её.
+ * Так у каждого потока обычно своя ячейка, её блокировка не оспаривается,
+ * а счётчики, частоты, оценки и минимальное и максимальное время внутри ячейки меняются без гонок.
+ *
+ * {@link #snapshot()} копирует ячейки по очереди, каждую под её блокировкой, и объединяет копии
+ * через {@link Statistics#merge(Statistics)} вне блокировок. Каждая запись входит в снимок целиком
+ * или не входит вовсе, но ячейки копируются в разные моменты: запись, добавленная во время снимка
+ * в уже скопированную ячейку, в него не попадёт, а в ещё не скопированную - попадёт.
+ */
+public final class ConcurrentStatistics {
+    // Номер ячейки потока; общий для всех экземпляров, как зонд потока в LongAdder
+    private static final ThreadLocal<int[]> PROBE =
+            ThreadLocal.withInitial(() -> new int[]{ThreadLocalRandom.current().nextInt() | 1});
+
+    // Каждая ячейка держит полную Statistics со скетчами и наборами самых частых значений, поэтому память
+    // растёт с числом ячеек; их не больше этого числа, свойство -Dparser.statisticsShards
+    private static final int MAX_SHARDS = Integer.getInteger("parser.statisticsShards", 16);
+
+    private final Shard[] shards;
+    private final int mask;
+
+    /**
+     * Число ячеек - степень двойки не меньше удвоенного числа процессоров, но не больше MAX_SHARDS
+     */
+    public ConcurrentStatistics() {
+        this(2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param shards наименьшее число ячеек; округляется вверх до степени двойки и ограничивается MAX_SHARDS
+     */
+    public ConcurrentStatistics(int shards) {
+        int limit = Integer.highestOneBit(Math.max(1, MAX_SHARDS));
+        int size = 1;
+        while (size < shards && size < limit) {
+            size <<= 1;
+        }
+        this.shards = new Shard[size];
+        for (int i = 0; i < size; i++) {
+            this.shards[i] = new Shard();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Добавляет запись; может вызываться из любого числа потоков
+     */
+    public void addEntry(LogEntry entry) {
+        Shard shard = lockShard();
+        try {
+            shard.statistics().addEntry(entry);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Добавляет записи пакета под одной блокировкой ячейки
+     */
+    public void addAll(Collection<LogEntry> entries) {
+        Shard shard = lockShard();
+        try {
+            Statistics statistics = shard.statistics();
+            for (LogEntry entry : entries) {
+                statistics.addEntry(entry);
+            }
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Присоединяет частичную статистику, например собранную потоком отдельно
+     */
+    public void merge(Statistics other) {
+        Shard shard = lockShard();
+        try {
+            shard.statistics().merge(other);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Снимок всех добавленных записей. Ячейки копируются по одной, каждая под своей блокировкой,
+     * а копии объединяются уже без блокировок, поэтому запись приостанавливается только в копируемой ячейке
+     * и только на время её копирования. Снимок не соответствует одному моменту: при одновременной записи
+     * в него могут войти записи, добавленные позже других, не вошедших
+     * @return новая статистика, не связанная с этим экземпляром
+     */
+    public Statistics snapshot() {
+        Statistics[] copies = new Statistics[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            Shard shard = shards[i];
+            shard.lock.lock();
+            try {
+                if (shard.statistics != null) {
+                    copies[i] = new Statistics();
+                    copies[i].merge(shard.statistics);
+                }
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+
+        Statistics snapshot = null;
+        for (Statistics copy : copies) {
+            if (copy == null) {
+                continue;
+            }
+            if (snapshot == null) {
+                snapshot = copy;
+            } else {
+                snapshot.merge(copy);
+            }
+        }
+        return snapshot != null ? snapshot : new Statistics();
+    }
+
+    /**
+     * @return число ячеек
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    // Блокирует ячейку потока; если она занята, поток переходит на следующую по своему зонду
+    private Shard lockShard() {
+        int[] probe = PROBE.get();
+        Shard shard = shards[probe[0] & mask];
+        if (shard.lock.tryLock()) {
+            return shard;
+        }
+        for (int attempt = 1; attempt < shards.length; attempt++) {
+            probe[0] = advance(probe[0]);
+            shard = shards[probe[0] & mask];
+            if (shard.lock.tryLock()) {
+                return shard;
+            }
+        }
+        // Все ячейки заняты: ждём последнюю выбранную
+        shard.lock.lock();
+        return shard;
+    }
+
+    // Сдвиговый генератор xorshift, как при смене зонда в LongAdder
+    private static int advance(int probe) {
+        probe ^= probe << 13;
+        probe ^= probe >>> 17;
+        probe ^= probe << 5;
+        return probe;
+    }
+
+    private static final class Shard {
+        private final ReentrantLock lock = new ReentrantLock();
+        // Создаётся при первой записи, чтобы неиспользуемые ячейки не занимали память
+        private Statistics statistics;
+
+        Statistics statistics() {
+            if (statistics == null) {
+                statistics = new Statistics();
+            }
+            return statistics;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Оценка квантилей распределения неотрицательных величин (например, размеров ответов) алгоритмом DDSketch.
+ * Положительное значение x попадает в интервал с номером ceil(log_gamma(x)), где gamma = (1 + a) / (1 - a),
+ * поэтому любой квантиль оценивается с относительной ошибкой не больше a независимо от распределения.
+ * Интервалы хранятся плотным массивом; если их становится больше maxBins, самые младшие сливаются,
+ * так что память ограничена, а точность теряют только самые маленькие значения.
+ * Нули (пустые ответы) считаются отдельно.
+ */
+public final class DDSketch {
+    private static final int INITIAL_BINS = 32;
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+    private final int maxBins;
+
+    // Счётчики интервалов с номерами от offset до offset + bins.length - 1
+    private long[] bins = new long[0];
+    private int offset;
+    private long zeroCount;
+    private long count;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+    private long sum;
+
+    /**
+     * @param relativeAccuracy допустимая относительная ошибка квантилей, например 0.01
+     * @param maxBins наибольшее число хранимых интервалов
+     */
+    public DDSketch(double relativeAccuracy, int maxBins) {
+        if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+            throw new IllegalArgumentException("Относительная точность должна быть в интервале (0, 1): " + relativeAccuracy);
+        }
+        if (maxBins < 1) {
+            throw new IllegalArgumentException("Число интервалов должно быть положительным: " + maxBins);
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+        this.maxBins = maxBins;
+    }
+
+    public void add(long value) {
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        if (value <= 0) {
+            zeroCount++;
+        } else {
+            increment((int) Math.ceil(Math.log(value) / logGamma), 1);
+        }
+    }
+
+    private void increment(int index, long n) {
+        if (bins.length == 0 || index < offset || index >= offset + bins.length) {
+            extend(index);
+        }
+        // Номер ниже хранимого диапазона означает слитые младшие интервалы
+        bins[Math.max(index, offset) - offset] += n;
+    }
+
+    private void extend(int index) {
+        if (bins.length == 0) {
+            bins = new long[INITIAL_BINS];
+            offset = index - INITIAL_BINS / 2;
+            return;
+        }
+        int low = Math.min(offset, index);
+        int high = Math.max(offset + bins.length - 1, index);
+        long span = (long) high - low + 1;
+        int length = (int) Math.min(maxBins, Math.max(span, 2L * bins.length));
+        // Запас оставляем в сторону роста
+        int newOffset = index < offset ? high - length + 1 : low;
+        if (newOffset + (long) length - 1 < high) {
+            newOffset = high - length + 1;
+        }
+
+        long[] extended = new long[length];
+        for (int i = 0; i < bins.length; i++) {
+            if (bins[i] != 0) {
+                int target = Math.max(offset + i, newOffset) - newOffset;
+                extended[target] += bins[i];
+            }
+        }
+        bins = extended;
+        offset = newOffset;
+    }
+
+    /**
+     * @param quantile доля от 0 до 1, например 0.5 для медианы или 0.99
+     * @return оценка квантиля или NaN, если значений не было
+     */
+    public double getQuantile(double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("Квантиль должен быть от 0 до 1: " + quantile);
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) (quantile * (count - 1));
+        if (rank < zeroCount) {
+            return 0;
+        }
+        long seen = zeroCount;
+        for (int i = 0; i < bins.length; i++) {
+            seen += bins[i];
+            if (seen > rank) {
+                double value = 2 * Math.pow(gamma, offset + i) / (gamma + 1);
+                return Math.max(min, Math.min(max, value));
+            }
+        }
+        return max;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMin() {
+        return min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public double getRelativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    /**
+     * Объединяет со скетчем той же точности: результат совпадает со скетчем по всем значениям сразу
+     */
+    public void merge(DDSketch other) {
+        if (other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("Нельзя объединить DDSketch с разной точностью");
+        }
+        if (other.count == 0) {
+            return;
+        }
+        count += other.count;
+        sum += other.sum;
+        zeroCount += other.zeroCount;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        // Сначала старшие интервалы, чтобы слияние младших шло так же, как при добавлении по одному
+        for (int i = other.bins.length - 1; i >= 0; i--) {
+            if (other.bins[i] != 0) {
+                increment(other.offset + i, other.bins[i]);
+            }
+        }
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeDouble(relativeAccuracy);
+        out.writeInt(maxBins);
+        out.writeLong(count);
+        out.writeLong(sum);
+        out.writeLong(min);
+        out.writeLong(max);
+        out.writeLong(zeroCount);
+        int used = 0;
+        for (long bin : bins) {
+            if (bin != 0) {
+                used++;
+            }
+        }
+        out.writeInt(used);
+        for (int i = bins.length - 1; i >= 0; i--) {
+            if (bins[i] != 0) {
+                out.writeInt(offset + i);
+                out.writeLong(bins[i]);
+            }
+        }
+    }
+
+    static DDSketch readFrom(DataInputStream in) throws IOException {
+        DDSketch sketch = new DDSketch(in.readDouble(), in.readInt());
+        sketch.count = in.readLong();
+        sketch.sum = in.readLong();
+        sketch.min = in.readLong();
+        sketch.max = in.readLong();
+        sketch.zeroCount = in.readLong();
+        int used = in.readInt();
+        for (int i = 0; i < used; i++) {
+            sketch.increment(in.readInt(), in.readLong());
+        }
+        return sketch;
+    }
+}
@@ -0,0 +1,136 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Кольцевой буфер оценок числа различных значений по интервалам времени, устроенный как {@link TimeBuckets}.
+ * Каждый интервал хранит свой {@link HyperLogLog}; почти пустые интервалы занимают мало памяти
+ * благодаря разреженному представлению. Оценка за окно из нескольких интервалов получается
+ * объединением их оценок, поэтому значение, встречавшееся в нескольких интервалах, считается один раз.
+ * Как и в {@link TimeBuckets}, результат не зависит от порядка, в котором добавляются значения.
+ */
+public final class DistinctBuckets {
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final long unitSeconds;
+    private final int size;
+    private final int precision;
+    private final long[] keys;
+    private final HyperLogLog[] sketches;
+
+    /**
+     * @param unitSeconds длина интервала в секундах
+     * @param size количество хранимых интервалов
+     * @param precision точность оценок {@link HyperLogLog}
+     */
+    public DistinctBuckets(long unitSeconds, int size, int precision) {
+        this.unitSeconds = unitSeconds;
+        this.size = size;
+        this.precision = precision;
+        this.keys = new long[size];
+        this.sketches = new HyperLogLog[size];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * @param hash хэш значения, см. {@link HyperLogLog#addHash(long)}
+     */
+    public void add(long epochSecond, long hash) {
+        long key = Math.floorDiv(epochSecond, unitSeconds);
+        int slot = (int) Math.floorMod(key, (long) size);
+        if (keys[slot] != key) {
+            if (keys[slot] > key) {
+                // Интервал уже вытеснен из кольца более новыми данными
+                return;
+            }
+            keys[slot] = key;
+            sketches[slot] = new HyperLogLog(precision);
+        }
+        sketches[slot].addHash(hash);
+    }
+
+    /**
+     * Оценка числа различных значений в интервале с данным номером или 0, если его нет в кольце
+     */
+    public long get(long key) {
+        int slot = (int) Math.floorMod(key, (long) size);
+        return keys[slot] == key ? sketches[slot].cardinality() : 0;
+    }
+
+    /**
+     * Оценка числа различных значений по интервалам, пересекающимся с [fromEpochSecond, toEpochSecond]
+     */
+    public long count(long fromEpochSecond, long toEpochSecond) {
+        long fromKey = Math.floorDiv(fromEpochSecond, unitSeconds);
+        long toKey = Math.floorDiv(toEpochSecond, unitSeconds);
+        fromKey = Math.max(fromKey, toKey - size + 1);
+        HyperLogLog union = new HyperLogLog(precision);
+        for (long key = fromKey; key <= toKey; key++) {
+            int slot = (int) Math.floorMod(key, (long) size);
+            if (keys[slot] == key) {
+                union.merge(sketches[slot]);
+            }
+        }
+        return union.cardinality();
+    }
+
+    public long getUnitSeconds() {
+        return unitSeconds;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Объединяет с кольцом той же конфигурации
+     */
+    public void merge(DistinctBuckets other) {
+        if (other.unitSeconds != unitSeconds || other.size != size || other.precision != precision) {
+            throw new IllegalArgumentException("Нельзя объединить кольца с разными интервалами, размером или точностью");
+        }
+        for (int slot = 0; slot < size; slot++) {
+            long otherKey = other.keys[slot];
+            if (otherKey == EMPTY || otherKey < keys[slot]) {
+                continue;
+            }
+            if (otherKey > keys[slot]) {
+                keys[slot] = otherKey;
+                sketches[slot] = new HyperLogLog(precision);
+            }
+            sketches[slot].merge(other.sketches[slot]);
+        }
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(unitSeconds);
+        out.writeInt(size);
+        out.writeByte(precision);
+        int used = 0;
+        for (long key : keys) {
+            if (key != EMPTY) {
+                used++;
+            }
+        }
+        out.writeInt(used);
+        for (int slot = 0; slot < size; slot++) {
+            if (keys[slot] != EMPTY) {
+                out.writeLong(keys[slot]);
+                sketches[slot].writeTo(out);
+            }
+        }
+    }
+
+    static DistinctBuckets readFrom(DataInputStream in) throws IOException {
+        DistinctBuckets buckets = new DistinctBuckets(in.readLong(), in.readInt(), in.readUnsignedByte());
+        int used = in.readInt();
+        for (int i = 0; i < used; i++) {
+            long key = in.readLong();
+            int slot = (int) Math.floorMod(key, (long) buckets.size);
+            buckets.keys[slot] = key;
+            buckets.sketches[slot] = HyperLogLog.readFrom(in);
+        }
+        return buckets;
+    }
+}
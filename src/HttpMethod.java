@@ -1,3 +1,30 @@
 public enum HttpMethod {
-    GET, POST, PUT, DELETE, HEAD, OPTIONS, PATCH, CONNECT, TRACE, UNKNOWN
+    GET, POST, PUT, DELETE, HEAD, OPTIONS, PATCH, CONNECT, TRACE, UNKNOWN;
+
+    private static final HttpMethod[] VALUES = values();
+
+    /**
+     * Определяет метод по фрагменту строки без создания подстроки и без исключений
+     * @return найденный метод или UNKNOWN
+     */
+    public static HttpMethod of(CharSequence text, int start, int end) {
+        int length = end - start;
+        for (HttpMethod method : VALUES) {
+            if (method == UNKNOWN) {
+                continue;
+            }
+            String name = method.name();
+            if (name.length() != length) {
+                continue;
+            }
+            int i = 0;
+            while (i < length && name.charAt(i) == text.charAt(start + i)) {
+                i++;
+            }
+            if (i == length) {
+                return method;
+            }
+        }
+        return UNKNOWN;
+    }
 }
\ No newline at end of file
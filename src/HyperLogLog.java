@@ -0,0 +1,286 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Оценка числа различных значений алгоритмом HyperLogLog++ с памятью, не зависящей от их количества.
+ * Значение хэшируется в 64 бита; первые p бит выбирают регистр, а регистр хранит наибольшую
+ * позицию первой единицы в оставшихся битах. Стандартная ошибка оценки 1.04 / sqrt(2^p):
+ * около 1.6% при p = 12, 0.8% при p = 14 и 0.4% при p = 16.
+ *
+ * Пока значений мало, используется разреженное представление: хранятся только занятые регистры
+ * с точностью 25 бит, и оценка почти точна. Когда разреженная таблица становится больше плотной,
+ * она переводится в массив из 2^p регистров.
+ * Вместо эмпирических таблиц поправок HyperLogLog++ плотная оценка считается по гистограмме
+ * регистров улучшенным методом О. Эртла, который несмещён во всём диапазоне мощностей.
+ */
+public final class HyperLogLog {
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 18;
+
+    // Точность разреженного представления
+    private static final int SPARSE_PRECISION = 25;
+    private static final int RHO_BITS = 6;
+    private static final int RHO_MASK = (1 << RHO_BITS) - 1;
+
+    private final int precision;
+    private byte[] registers;
+    // Разреженная таблица с открытой адресацией: (индекс << RHO_BITS | rho) + 1, 0 - пустая ячейка
+    private int[] sparse;
+    private int sparseSize;
+
+    /**
+     * @param precision число бит индекса регистра, от 4 до 18
+     */
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Точность HyperLogLog должна быть от " + MIN_PRECISION
+                    + " до " + MAX_PRECISION + ": " + precision);
+        }
+        this.precision = precision;
+        this.sparse = new int[16];
+    }
+
+    public void add(String value) {
+        addHash(hash(value));
+    }
+
+    public void addHash(long hash) {
+        if (registers != null) {
+            int index = (int) (hash >>> (64 - precision));
+            int rho = Math.min(Long.numberOfLeadingZeros(hash << precision), 64 - precision) + 1;
+            if (registers[index] < rho) {
+                registers[index] = (byte) rho;
+            }
+            return;
+        }
+        int index = (int) (hash >>> (64 - SPARSE_PRECISION));
+        int rho = Math.min(Long.numberOfLeadingZeros(hash << SPARSE_PRECISION), 64 - SPARSE_PRECISION) + 1;
+        addSparse(index, rho);
+    }
+
+    private void addSparse(int index, int rho) {
+        if (registers != null) {
+            addToRegisters(index, rho);
+            return;
+        }
+        int mask = sparse.length - 1;
+        int slot = mix(index) & mask;
+        while (true) {
+            int entry = sparse[slot];
+            if (entry == 0) {
+                sparse[slot] = (index << RHO_BITS | rho) + 1;
+                if (++sparseSize * 2 > sparse.length) {
+                    growSparse();
+                }
+                return;
+            }
+            if ((entry - 1) >>> RHO_BITS == index) {
+                if (((entry - 1) & RHO_MASK) < rho) {
+                    sparse[slot] = (index << RHO_BITS | rho) + 1;
+                }
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void growSparse() {
+        // Таблица из 2 * size целых чисел перестаёт быть выгоднее 2^p байт плотных регистров
+        if (sparse.length * 2 * Integer.BYTES > (1 << precision)) {
+            toDense();
+            return;
+        }
+        int[] old = sparse;
+        sparse = new int[old.length * 2];
+        sparseSize = 0;
+        for (int entry : old) {
+            if (entry != 0) {
+                addSparse((entry - 1) >>> RHO_BITS, (entry - 1) & RHO_MASK);
+            }
+        }
+    }
+
+    private void toDense() {
+        int[] old = sparse;
+        registers = new byte[1 << precision];
+        sparse = null;
+        sparseSize = 0;
+        for (int entry : old) {
+            if (entry != 0) {
+                addToRegisters((entry - 1) >>> RHO_BITS, (entry - 1) & RHO_MASK);
+            }
+        }
+    }
+
+    // Перевод регистра точности 25 бит в регистр точности p
+    private void addToRegisters(int sparseIndex, int sparseRho) {
+        int extraBits = SPARSE_PRECISION - precision;
+        int index = sparseIndex >>> extraBits;
+        int extra = sparseIndex & ((1 << extraBits) - 1);
+        int rho = extra != 0
+                ? Integer.numberOfLeadingZeros(extra) - (32 - extraBits) + 1
+                : extraBits + sparseRho;
+        if (registers[index] < rho) {
+            registers[index] = (byte) rho;
+        }
+    }
+
+    /**
+     * @return оценка числа различных добавленных значений
+     */
+    public long cardinality() {
+        if (registers == null) {
+            // Линейный подсчёт по 2^25 регистрам: при таком числе занятых регистров коллизии редки
+            double m = 1 << SPARSE_PRECISION;
+            return Math.round(m * Math.log(m / (m - sparseSize)));
+        }
+
+        int q = 64 - precision;
+        int[] histogram = new int[q + 2];
+        for (byte register : registers) {
+            histogram[register]++;
+        }
+        double m = registers.length;
+        double z = m * tau(1 - histogram[q + 1] / m);
+        for (int k = q; k >= 1; k--) {
+            z = 0.5 * (z + histogram[k]);
+        }
+        z += m * sigma(histogram[0] / m);
+        return Math.round(m * m / (2 * Math.log(2) * z));
+    }
+
+    private static double sigma(double x) {
+        if (x == 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double y = 1;
+        double z = x;
+        double previous;
+        do {
+            x *= x;
+            previous = z;
+            z += x * y;
+            y += y;
+        } while (z != previous);
+        return z;
+    }
+
+    private static double tau(double x) {
+        if (x == 0 || x == 1) {
+            return 0;
+        }
+        double y = 1;
+        double z = 1 - x;
+        double previous;
+        do {
+            x = Math.sqrt(x);
+            previous = z;
+            y *= 0.5;
+            z -= (1 - x) * (1 - x) * y;
+        } while (z != previous);
+        return z / 3;
+    }
+
+    /**
+     * @return теоретическая относительная стандартная ошибка оценки для этой точности
+     */
+    public double getStandardError() {
+        return 1.04 / Math.sqrt(1 << precision);
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Объединяет с оценкой по другой части данных: результат равен оценке по объединению значений
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Нельзя объединить HyperLogLog с разной точностью");
+        }
+        if (other.registers == null) {
+            for (int entry : other.sparse) {
+                if (entry != 0) {
+                    addSparse((entry - 1) >>> RHO_BITS, (entry - 1) & RHO_MASK);
+                }
+            }
+            return;
+        }
+        if (registers == null) {
+            toDense();
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (registers[i] < other.registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeByte(precision);
+        out.writeBoolean(registers != null);
+        if (registers != null) {
+            out.write(registers);
+            return;
+        }
+        out.writeInt(sparseSize);
+        for (int entry : sparse) {
+            if (entry != 0) {
+                out.writeInt(entry - 1);
+            }
+        }
+    }
+
+    static HyperLogLog readFrom(DataInputStream in) throws IOException {
+        HyperLogLog sketch = new HyperLogLog(in.readUnsignedByte());
+        if (in.readBoolean()) {
+            sketch.registers = new byte[1 << sketch.precision];
+            sketch.sparse = null;
+            in.readFully(sketch.registers);
+            return sketch;
+        }
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            int entry = in.readInt();
+            sketch.addSparse(entry >>> RHO_BITS, entry & RHO_MASK);
+        }
+        return sketch;
+    }
+
+    /**
+     * 64-битный хэш 128-битного значения, например адреса IPv6: перемешивание обеих половин и финальное
+     * перемешивание MurmurHash3; строка при этом не нужна
+     */
+    static long hash(long high, long low) {
+        long h = Long.rotateLeft(high * 0x9E3779B97F4A7C15L, 31) ^ low;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * 64-битный хэш строки: умножение с циклическим сдвигом по символам и финальное перемешивание MurmurHash3
+     */
+    static long hash(String value) {
+        long h = value.length();
+        for (int i = 0; i < value.length(); i++) {
+            h = (Long.rotateLeft(h, 26) ^ value.charAt(i)) * 0x9E3779B97F4A7C15L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static int mix(int value) {
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
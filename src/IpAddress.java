@@ -0,0 +1,208 @@
+/**
+ * Разбор и запись адресов IPv4 и IPv6 без создания объектов.
+ * IPv4 упаковывается в int (в long без знака там, где нужен признак ошибки -1),
+ * IPv6 - в два long: старшие и младшие 64 бита. Адрес IPv4, записанный как IPv6
+ * (::ffff:1.2.3.4), считается адресом IPv4, чтобы один клиент не учитывался дважды.
+ */
+public final class IpAddress {
+    // Младшие 64 бита адреса ::ffff:0:0/96 без самого IPv4
+    static final long MAPPED_IPV4_PREFIX = 0x0000FFFF00000000L;
+
+    private IpAddress() {
+    }
+
+    /**
+     * @return адрес IPv4 вида a.b.c.d из части текста числом без знака или -1
+     */
+    public static long parseIpv4(CharSequence text, int start, int end) {
+        long address = 0;
+        int pos = start;
+        for (int group = 0; group < 4; group++) {
+            if (group > 0) {
+                if (pos >= end || text.charAt(pos) != '.') {
+                    return -1;
+                }
+                pos++;
+            }
+            int value = 0;
+            int digitsStart = pos;
+            while (pos < end && isDigit(text.charAt(pos)) && pos - digitsStart < 3) {
+                value = value * 10 + (text.charAt(pos) - '0');
+                pos++;
+            }
+            if (pos == digitsStart || value > 255) {
+                return -1;
+            }
+            address = address << 8 | value;
+        }
+        return pos == end ? address : -1;
+    }
+
+    /**
+     * Разбирает адрес IPv6 в текстовой записи RFC 4291: группы до четырёх шестнадцатеричных цифр,
+     * одно сокращение ::, последние 32 бита могут быть записаны как IPv4
+     * @param result массив из двух элементов для старших и младших 64 бит
+     * @return удалось ли разобрать адрес
+     */
+    public static boolean parseIpv6(CharSequence text, int start, int end, long[] result) {
+        // Группы до :: и после него накапливаются в двух 128-битных регистрах, пропуск заполняется нулями
+        long headHigh = 0;
+        long headLow = 0;
+        long tailHigh = 0;
+        long tailLow = 0;
+        int head = 0;
+        int tail = 0;
+        boolean gap = false;
+        int pos = start;
+        if (end - start >= 2 && text.charAt(start) == ':' && text.charAt(start + 1) == ':') {
+            gap = true;
+            pos += 2;
+        }
+        while (pos < end) {
+            int groupStart = pos;
+            int value = 0;
+            while (pos < end && pos - groupStart < 4 && hexValue(text.charAt(pos)) >= 0) {
+                value = value << 4 | hexValue(text.charAt(pos));
+                pos++;
+            }
+            int added;
+            long bits;
+            if (pos < end && text.charAt(pos) == '.') {
+                // Встроенный IPv4 занимает две последние группы
+                bits = parseIpv4(text, groupStart, end);
+                if (bits < 0) {
+                    return false;
+                }
+                added = 2;
+                pos = end;
+            } else {
+                if (pos == groupStart) {
+                    return false;
+                }
+                bits = value;
+                added = 1;
+            }
+            if (head + tail + added > (gap ? 7 : 8)) {
+                return false;
+            }
+            int shift = 16 * added;
+            if (gap) {
+                tailHigh = tailHigh << shift | tailLow >>> (64 - shift);
+                tailLow = tailLow << shift | bits;
+                tail += added;
+            } else {
+                headHigh = headHigh << shift | headLow >>> (64 - shift);
+                headLow = headLow << shift | bits;
+                head += added;
+            }
+            if (pos == end) {
+                break;
+            }
+            if (text.charAt(pos) != ':' || added == 2) {
+                return false;
+            }
+            pos++;
+            if (pos < end && text.charAt(pos) == ':') {
+                if (gap) {
+                    return false;
+                }
+                gap = true;
+                pos++;
+            } else if (pos == end) {
+                // Одиночное двоеточие в конце
+                return false;
+            }
+        }
+        // Без :: групп ровно восемь, а :: заменяет хотя бы одну нулевую группу
+        if (gap ? head + tail > 7 : head != 8) {
+            return false;
+        }
+
+        // Сдвигаем группы до :: на их место в адресе
+        for (int i = head; i < 8; i++) {
+            headHigh = headHigh << 16 | headLow >>> 48;
+            headLow = headLow << 16;
+        }
+        result[0] = headHigh | tailHigh;
+        result[1] = headLow | tailLow;
+        return true;
+    }
+
+    /**
+     * @return является ли адрес IPv6 записью адреса IPv4 (::ffff:a.b.c.d)
+     */
+    public static boolean isMappedIpv4(long high, long low) {
+        return high == 0 && (low & 0xFFFFFFFF00000000L) == MAPPED_IPV4_PREFIX;
+    }
+
+    /**
+     * @return запись адреса из 128 бит: адрес IPv4, записанный как IPv6, - как a.b.c.d, остальные по RFC 5952
+     */
+    public static String format(long high, long low) {
+        return isMappedIpv4(high, low) ? formatIpv4((int) low) : formatIpv6(high, low);
+    }
+
+    public static String formatIpv4(int address) {
+        return (address >>> 24) + "." + (address >>> 16 & 0xFF) + "." + (address >>> 8 & 0xFF) + "." + (address & 0xFF);
+    }
+
+    /**
+     * Каноническая запись IPv6 по RFC 5952: строчные цифры без ведущих нулей,
+     * самая длинная серия из двух и более нулевых групп сокращается до ::
+     */
+    public static String formatIpv6(long high, long low) {
+        int[] groups = new int[8];
+        for (int i = 0; i < 4; i++) {
+            groups[i] = (int) (high >>> (48 - 16 * i)) & 0xFFFF;
+            groups[i + 4] = (int) (low >>> (48 - 16 * i)) & 0xFFFF;
+        }
+        int bestStart = -1;
+        int bestLength = 1;
+        for (int i = 0; i < 8; ) {
+            if (groups[i] != 0) {
+                i++;
+                continue;
+            }
+            int j = i;
+            while (j < 8 && groups[j] == 0) {
+                j++;
+            }
+            if (j - i > bestLength) {
+                bestStart = i;
+                bestLength = j - i;
+            }
+            i = j;
+        }
+
+        StringBuilder builder = new StringBuilder(39);
+        for (int i = 0; i < 8; i++) {
+            if (i == bestStart) {
+                builder.append("::");
+                i += bestLength - 1;
+                continue;
+            }
+            if (builder.length() > 0 && builder.charAt(builder.length() - 1) != ':') {
+                builder.append(':');
+            }
+            builder.append(Integer.toHexString(groups[i]));
+        }
+        return builder.toString();
+    }
+
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,28 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Получатель строк, найденных во входных байтах.
+ * Строка передаётся как область буфера без создания {@link String};
+ * буфер действителен только во время вызова.
+ */
+public interface LineHandler {
+    /**
+     * @param buffer буфер с содержимым файла
+     * @param offset позиция первого байта строки в буфере
+     * @param length длина строки в байтах без символов перевода строки
+     * @param position смещение начала строки от начала файла
+     */
+    void onLine(ByteBuffer buffer, int offset, int length, long position);
+
+    /**
+     * Строка длиннее допустимой; читатель пропускает её и продолжает со следующей строки.
+     * По умолчанию обработка прерывается исключением.
+     * @param offset позиция первого байта строки в буфере
+     * @param length сколько байт начала строки доступно в буфере
+     * @param position смещение начала строки от начала файла
+     * @throws LineTooLongException если обработчик не пропускает такие строки
+     */
+    default void onLineTooLong(ByteBuffer buffer, int offset, int length, long position) {
+        throw new LineTooLongException("Строка по смещению " + position + " превышает максимально допустимую длину.");
+    }
+}
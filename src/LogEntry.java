@@ -1,36 +1,148 @@
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
-import java.util.Locale;
+import java.time.ZoneOffset;
 
 public class LogEntry {
-    private final String ipAddr;
-    private final LocalDateTime time;
+    // Разборщик переиспользуется в пределах потока, чтобы не создавать его на каждую строку
+    private static final ThreadLocal<LogTokenizer> TOKENIZER = ThreadLocal.withInitial(LogTokenizer::new);
+
+    // Строка адреса для IPv4 и IPv6 строится из упакованного адреса только при вызове getIpAddr()
+    private String ipAddr;
+    // Упакованный адрес: 4 - IPv4 в младших 32 битах ipLow, 6 - IPv6 в ipHigh и ipLow, 0 - адреса нет
+    private final int ipVersion;
+    private final long ipHigh;
+    private final long ipLow;
+    // Секунды от 1970-01-01T00:00Z; LocalDateTime создаётся только по запросу getTime()
+    private final long epochSecond;
+    private LocalDateTime time;
     private final HttpMethod method;
     private final String path;
     private final String responseCode;
+    private final int statusCode;
     private final int responseSize;
     private final String referer;
     private final UserAgent userAgent;
-
+    // Поля расширенных форматов (--log-format); -1 или пустая строка, если их нет
+    private final String forwardedFor;
+    private final long requestTimeMicros;
+    private final long upstreamResponseTimeMicros;
+
+    /**
+     * @throws IllegalArgumentException если из строки нельзя построить запись (см. {@link MalformedReason})
+     */
     public LogEntry(String logLine) {
-        this.ipAddr = parseIpAddress(logLine);
-        this.time = parseTime(logLine);
-        this.method = parseMethod(logLine);
-        this.path = parsePath(logLine);
-        this.responseCode = parseResponseCode(logLine);
-        this.responseSize = parseResponseSize(logLine);
-        this.referer = parseReferer(logLine);
-        this.userAgent = new UserAgent(parseUserAgentString(logLine));
+        this(validated(TOKENIZER.get().tokenize(logLine)));
+    }
+
+    /**
+     * Создаёт запись из уже разобранной и проверенной через {@link LogTokenizer#validate()} строки
+     */
+    LogEntry(LogTokenizer tokens) {
+        this(tokens, tokens.parsedUserAgent());
+    }
+
+    /**
+     * Создаёт запись из уже разобранной и проверенной строки и уже классифицированного User-Agent
+     */
+    LogEntry(LogTokenizer tokens, UserAgent userAgent) {
+        this.ipVersion = tokens.ipVersion();
+        this.ipAddr = ipVersion == 0 ? tokens.ipAddr() : null;
+        this.ipHigh = tokens.ipHigh();
+        this.ipLow = tokens.ipLow();
+        this.epochSecond = tokens.epochSecond();
+        this.method = tokens.method();
+        this.path = tokens.path();
+        this.responseCode = tokens.responseCode();
+        this.statusCode = tokens.statusCode();
+        this.responseSize = tokens.responseSize();
+        this.referer = tokens.referer();
+        this.userAgent = userAgent;
+        this.forwardedFor = tokens.forwardedFor();
+        this.requestTimeMicros = tokens.requestTimeMicros();
+        this.upstreamResponseTimeMicros = tokens.upstreamResponseTimeMicros();
+    }
+
+    /**
+     * Создаёт запись из уже декодированных полей, например прочитанных из {@link SegmentStore}
+     */
+    LogEntry(String ipAddr, int ipVersion, long ipHigh, long ipLow, long epochSecond, HttpMethod method,
+             String path, int statusCode, int responseSize, String referer, UserAgent userAgent,
+             String forwardedFor, long requestTimeMicros, long upstreamResponseTimeMicros) {
+        this.ipAddr = ipAddr;
+        this.ipVersion = ipVersion;
+        this.ipHigh = ipHigh;
+        this.ipLow = ipLow;
+        this.epochSecond = epochSecond;
+        this.method = method;
+        this.path = path;
+        this.responseCode = LogTokenizer.responseCode(statusCode);
+        this.statusCode = statusCode;
+        this.responseSize = responseSize;
+        this.referer = referer;
+        this.userAgent = userAgent;
+        this.forwardedFor = forwardedFor;
+        this.requestTimeMicros = requestTimeMicros;
+        this.upstreamResponseTimeMicros = upstreamResponseTimeMicros;
+    }
+
+    private static LogTokenizer validated(LogTokenizer tokens) {
+        MalformedReason reason = tokens.validate();
+        if (reason != null) {
+            throw new IllegalArgumentException("Строка лога не разобрана: " + reason);
+        }
+        return tokens;
     }
 
+    /**
+     * @return адрес клиента; разобранный адрес в канонической записи: IPv4 как a.b.c.d, IPv6 по RFC 5952
+     */
     public String getIpAddr() {
-        return ipAddr;
+        String address = ipAddr;
+        if (address == null) {
+            address = ipVersion == 4 ? IpAddress.formatIpv4((int) ipLow) : IpAddress.formatIpv6(ipHigh, ipLow);
+            ipAddr = address;
+        }
+        return address;
+    }
+
+    /**
+     * @return 4 для IPv4, 6 для IPv6 или 0, если адрес не разобран
+     */
+    public int getIpVersion() {
+        return ipVersion;
+    }
+
+    /**
+     * @return старшие 64 бита адреса IPv6 или 0
+     */
+    public long getIpHigh() {
+        return ipHigh;
     }
 
+    /**
+     * @return младшие 64 бита адреса IPv6 или адрес IPv4 числом без знака
+     */
+    public long getIpLow() {
+        return ipLow;
+    }
+
+    /**
+     * @return время запроса в UTC
+     */
     public LocalDateTime getTime() {
-        return time;
+        // Гонка между потоками безвредна: объект неизменяемый и всегда одинаковый
+        LocalDateTime result = time;
+        if (result == null) {
+            result = LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+            time = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return время запроса в секундах от 1970-01-01T00:00Z
+     */
+    public long getEpochSecond() {
+        return epochSecond;
     }
 
     public HttpMethod getMethod() {
@@ -45,6 +157,13 @@ public class LogEntry {
         return responseCode;
     }
 
+    /**
+     * @return код ответа числом или -1, если он не найден в строке
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
     public int getResponseSize() {
         return responseSize;
     }
@@ -57,94 +176,32 @@ public class LogEntry {
         return userAgent;
     }
 
-    private String parseIpAddress(String logLine) {
-        Pattern pattern = Pattern.compile("^(\\d+\\.\\d+\\.\\d+\\.\\d+)");
-        Matcher matcher = pattern.matcher(logLine);
-        if (matcher.find()) {
-            return matcher.group(1);
-        }
-        return "Unknown";
-    }
-
-    private LocalDateTime parseTime(String logLine) {
-        Pattern pattern = Pattern.compile("\\[(.*?)\\]");
-        Matcher matcher = pattern.matcher(logLine);
-        if (matcher.find()) {
-            String timeString = matcher.group(1);
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.ENGLISH);
-            return LocalDateTime.parse(timeString, formatter);
-        }
-        return LocalDateTime.now();
-    }
-
-    private HttpMethod parseMethod(String logLine) {
-        Pattern pattern = Pattern.compile("\"([A-Z]+)");
-        Matcher matcher = pattern.matcher(logLine);
-        if (matcher.find()) {
-            try {
-                return HttpMethod.valueOf(matcher.group(1));
-            } catch (IllegalArgumentException e) {
-                return HttpMethod.UNKNOWN;
-            }
-        }
-        return HttpMethod.UNKNOWN;
-    }
-
-    private String parsePath(String logLine) {
-        Pattern pattern = Pattern.compile("\"[A-Z]+\\s+([^\\s?]+)");
-        Matcher matcher = pattern.matcher(logLine);
-        if (matcher.find()) {
-            return matcher.group(1);
-        }
-        return "";
-    }
-
-    private String parseResponseCode(String logLine) {
-        Pattern pattern = Pattern.compile("\"\\s+(\\d{3})\\s+");
-        Matcher matcher = pattern.matcher(logLine);
-        return matcher.find() ? matcher.group(1) : "";
-    }
-
-    private int parseResponseSize(String logLine) {
-        Pattern pattern = Pattern.compile("\\s+(\\d+)\\s+\"");
-        Matcher matcher = pattern.matcher(logLine);
-        if (matcher.find()) {
-            try {
-                String vResponseSize = matcher.group(1);
-                //System.out.println("vResponseSize " + vResponseSize);
-                return Integer.parseInt(vResponseSize);
-            } catch (NumberFormatException e) {
-                return 0;
-            }
-        }
-        return 0;
+    /**
+     * @return цепочка адресов из X-Forwarded-For или пустая строка
+     */
+    public String getForwardedFor() {
+        return forwardedFor;
     }
 
-    private String parseReferer(String logLine) {
-        Pattern pattern = Pattern.compile("\"([^\"]*)\"\\s+\"([^\"]*)\"$");
-        Matcher matcher = pattern.matcher(logLine);
-        if (matcher.find()) {
-            String referer = matcher.group(1);
-            return "-".equals(referer) ? "" : referer;
-        }
-        return "";
+    /**
+     * @return длительность обработки запроса в микросекундах или -1, если формат её не содержит
+     */
+    public long getRequestTimeMicros() {
+        return requestTimeMicros;
     }
 
-    private String parseUserAgentString(String logLine) {
-        Pattern pattern = Pattern.compile("\"([^\"]*)\"\\s+\"([^\"]*)\"$");
-        Matcher matcher = pattern.matcher(logLine);
-        if (matcher.find()) {
-            String userAgent = matcher.group(2);
-            return "-".equals(userAgent) ? "" : userAgent;
-        }
-        return "";
+    /**
+     * @return время ответа upstream в микросекундах (сумма при нескольких попытках) или -1
+     */
+    public long getUpstreamResponseTimeMicros() {
+        return upstreamResponseTimeMicros;
     }
 
     @Override
     public String toString() {
         return "LogEntry{" +
                 "ipAddr='" + ipAddr + '\'' +
-                ", time=" + time +
+                ", time=" + getTime() +
                 ", method=" + method +
                 ", path='" + path + '\'' +
                 ", responseCode=" + responseCode +
@@ -0,0 +1,464 @@
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Отбор строк лога до построения {@link LogEntry}.
+ * Условия проверяются на разобранной {@link LogTokenizer} строке, где известны только границы полей,
+ * и идут от дешёвых к дорогим: код ответа и метод уже декодированы, префикс пути и адрес
+ * сравниваются прямо с байтами строки, время разбирается только если строка прошла их,
+ * а User-Agent классифицируется последним. Разобранные время и User-Agent запоминаются в разборщике,
+ * так что для принятой строки они не декодируются повторно.
+ * Фильтр неизменяем и может использоваться несколькими потоками.
+ */
+public final class LogFilter {
+    private static final LogFilter ALL = new LogFilter(List.of());
+    private static volatile LogFilter configured = ALL;
+
+    private final List<Condition> conditions;
+
+    private LogFilter(List<Condition> conditions) {
+        this.conditions = conditions;
+    }
+
+    /**
+     * Фильтр, пропускающий все строки
+     */
+    public static LogFilter all() {
+        return ALL;
+    }
+
+    /**
+     * Фильтр, заданный параметрами --filter; по умолчанию пропускает все строки
+     */
+    public static LogFilter getConfigured() {
+        return configured;
+    }
+
+    /**
+     * Задаёт фильтр для всех обработчиков строк, созданных после вызова
+     */
+    public static void configure(LogFilter filter) {
+        configured = filter;
+    }
+
+    /**
+     * Время записи в полуинтервале [from, to) по UTC; любая граница может быть null
+     */
+    public static LogFilter timeRange(LocalDateTime from, LocalDateTime to) {
+        return of(new TimeRange(from, to));
+    }
+
+    /**
+     * Код ответа из набора
+     */
+    public static LogFilter status(Collection<Integer> codes) {
+        boolean[] accepted = new boolean[1000];
+        for (int code : codes) {
+            if (code < 0 || code >= accepted.length) {
+                throw new IllegalArgumentException("Неверный код ответа: " + code);
+            }
+            accepted[code] = true;
+        }
+        return of(new Status(accepted));
+    }
+
+    /**
+     * Метод запроса из набора
+     */
+    public static LogFilter method(Set<HttpMethod> methods) {
+        return of(new Method(EnumSet.copyOf(methods)));
+    }
+
+    /**
+     * Путь запроса (без query-параметров) начинается с префикса
+     */
+    public static LogFilter pathPrefix(String prefix) {
+        return of(new PathPrefix(prefix));
+    }
+
+    /**
+     * Адрес клиента совпадает с адресом или входит в подсеть вида 10.0.0.0/8 или 2001:db8::/32.
+     * Адрес IPv4, записанный как IPv6 (::ffff:1.2.3.4), сравнивается как IPv4
+     * @throws IllegalArgumentException если подсеть записана неверно
+     */
+    public static LogFilter ip(String addressOrCidr) {
+        int slash = addressOrCidr.indexOf('/');
+        int end = slash < 0 ? addressOrCidr.length() : slash;
+        int prefix = -1;
+        if (slash >= 0) {
+            try {
+                prefix = Integer.parseInt(addressOrCidr.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                prefix = -1;
+            }
+        }
+        long ipv4 = IpAddress.parseIpv4(addressOrCidr, 0, end);
+        if (ipv4 >= 0) {
+            if (slash >= 0 && (prefix < 0 || prefix > 32)) {
+                throw new IllegalArgumentException("Неверная подсеть IPv4: " + addressOrCidr);
+            }
+            return of(new Cidr(ipv4, slash < 0 ? 32 : prefix));
+        }
+        long[] ipv6 = new long[2];
+        if (IpAddress.parseIpv6(addressOrCidr, 0, end, ipv6)) {
+            if (slash >= 0 && (prefix < 0 || prefix > 128)) {
+                throw new IllegalArgumentException("Неверная подсеть IPv6: " + addressOrCidr);
+            }
+            if (IpAddress.isMappedIpv4(ipv6[0], ipv6[1]) && (slash < 0 || prefix >= 96)) {
+                return of(new Cidr(ipv6[1] & 0xFFFFFFFFL, slash < 0 ? 32 : prefix - 96));
+            }
+            return of(new Ipv6Cidr(ipv6[0], ipv6[1], slash < 0 ? 128 : prefix));
+        }
+        if (slash >= 0) {
+            throw new IllegalArgumentException("Неверная подсеть: " + addressOrCidr);
+        }
+        return of(new IpEquals(addressOrCidr));
+    }
+
+    /**
+     * Запросы ботов (bot = true) или только не-ботов (bot = false)
+     */
+    public static LogFilter bot(boolean bot) {
+        return of(new Bot(bot));
+    }
+
+    /**
+     * Разбирает условие вида имя=значение:
+     * time=2024-01-01T00:00/2024-01-01T01:00 (по UTC, граница может быть пустой), status=500,502,4xx,
+     * method=GET,POST, path=/api/, ip=10.0.0.0/8 или ip=2001:db8::/32, bot=true или bot=false
+     * @throws IllegalArgumentException если условие записано неверно
+     */
+    public static LogFilter parse(String expression) {
+        int eq = expression.indexOf('=');
+        if (eq < 0) {
+            throw new IllegalArgumentException("Условие фильтра должно иметь вид имя=значение: " + expression);
+        }
+        String name = expression.substring(0, eq).trim();
+        String value = expression.substring(eq + 1).trim();
+        switch (name) {
+            case "time":
+                int slash = value.indexOf('/');
+                if (slash < 0) {
+                    throw new IllegalArgumentException("Интервал времени должен иметь вид от/до: " + value);
+                }
+                return timeRange(parseTime(value.substring(0, slash)), parseTime(value.substring(slash + 1)));
+            case "status":
+                return status(parseStatusCodes(value));
+            case "method":
+                Set<HttpMethod> methods = EnumSet.noneOf(HttpMethod.class);
+                for (String method : value.split(",")) {
+                    methods.add(HttpMethod.valueOf(method.trim().toUpperCase()));
+                }
+                return method(methods);
+            case "path":
+                return pathPrefix(value);
+            case "ip":
+                return ip(value);
+            case "bot":
+                if (!value.equals("true") && !value.equals("false")) {
+                    throw new IllegalArgumentException("bot принимает значения true или false: " + value);
+                }
+                return bot(Boolean.parseBoolean(value));
+            default:
+                throw new IllegalArgumentException("Неизвестное условие фильтра: " + name);
+        }
+    }
+
+    /**
+     * Разбирает список кодов ответа вида 500,502,4xx
+     * @throws NumberFormatException если код записан неверно
+     */
+    static List<Integer> parseStatusCodes(String value) {
+        List<Integer> codes = new ArrayList<>();
+        for (String code : value.split(",")) {
+            code = code.trim();
+            if (code.length() == 3 && code.endsWith("xx") && Character.isDigit(code.charAt(0))) {
+                int first = (code.charAt(0) - '0') * 100;
+                for (int i = 0; i < 100; i++) {
+                    codes.add(first + i);
+                }
+            } else {
+                codes.add(Integer.parseInt(code));
+            }
+        }
+        return codes;
+    }
+
+    private static LocalDateTime parseTime(String value) {
+        if (value.isEmpty()) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Неверное время в фильтре: " + value, e);
+        }
+    }
+
+    private static LogFilter of(Condition condition) {
+        return new LogFilter(List.of(condition));
+    }
+
+    /**
+     * Фильтр, пропускающий строки, которые проходят и этот, и другой фильтр
+     */
+    public LogFilter and(LogFilter other) {
+        List<Condition> combined = new ArrayList<>(conditions);
+        combined.addAll(other.conditions);
+        combined.sort(Comparator.comparingInt(Condition::cost));
+        return new LogFilter(List.copyOf(combined));
+    }
+
+    /**
+     * @return пропускает ли фильтр все строки
+     */
+    public boolean isAll() {
+        return conditions.isEmpty();
+    }
+
+    /**
+     * Проверяет разобранную строку; декодирует только поля, нужные проверяемым условиям.
+     * Строку, из которой нельзя построить запись ({@link LogTokenizer#validate()}), фильтр не отбрасывает:
+     * её отвергнет разбор, и она попадёт в карантин так же, как если бы строки сначала разбирались,
+     * а потом отбирались
+     */
+    public boolean test(LogTokenizer tokens) {
+        for (Condition condition : conditions) {
+            if (!condition.test(tokens)) {
+                // Время декодируется с кэшем по минуте, так что проверка отброшенной строки обходится дёшево
+                return tokens.validate() != null;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return conditions.toString();
+    }
+
+    /**
+     * Условие фильтра; cost задаёт порядок проверки - чем меньше, тем раньше
+     */
+    private interface Condition {
+        boolean test(LogTokenizer tokens);
+
+        int cost();
+    }
+
+    private static final class Status implements Condition {
+        private final boolean[] accepted;
+
+        Status(boolean[] accepted) {
+            this.accepted = accepted;
+        }
+
+        @Override
+        public boolean test(LogTokenizer tokens) {
+            int code = tokens.statusCode();
+            return code >= 0 && accepted[code];
+        }
+
+        @Override
+        public int cost() {
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return "status";
+        }
+    }
+
+    private static final class Method implements Condition {
+        private final Set<HttpMethod> methods;
+
+        Method(Set<HttpMethod> methods) {
+            this.methods = methods;
+        }
+
+        @Override
+        public boolean test(LogTokenizer tokens) {
+            return methods.contains(tokens.method());
+        }
+
+        @Override
+        public int cost() {
+            return 1;
+        }
+
+        @Override
+        public String toString() {
+            return "method=" + methods;
+        }
+    }
+
+    private static final class PathPrefix implements Condition {
+        private final String prefix;
+
+        PathPrefix(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public boolean test(LogTokenizer tokens) {
+            return tokens.pathStartsWith(prefix);
+        }
+
+        @Override
+        public int cost() {
+            return 2;
+        }
+
+        @Override
+        public String toString() {
+            return "path=" + prefix;
+        }
+    }
+
+    private static final class Cidr implements Condition {
+        private final long network;
+        private final long mask;
+        private final int prefix;
+
+        Cidr(long network, int prefix) {
+            this.mask = prefix == 0 ? 0 : (0xFFFFFFFFL << (32 - prefix)) & 0xFFFFFFFFL;
+            this.network = network & mask;
+            this.prefix = prefix;
+        }
+
+        @Override
+        public boolean test(LogTokenizer tokens) {
+            long address = tokens.ipv4();
+            return address >= 0 && (address & mask) == network;
+        }
+
+        @Override
+        public int cost() {
+            return 3;
+        }
+
+        @Override
+        public String toString() {
+            return "ip=" + IpAddress.formatIpv4((int) network) + "/" + prefix;
+        }
+    }
+
+    private static final class Ipv6Cidr implements Condition {
+        private final long networkHigh;
+        private final long networkLow;
+        private final long maskHigh;
+        private final long maskLow;
+        private final int prefix;
+
+        Ipv6Cidr(long high, long low, int prefix) {
+            this.maskHigh = prefix == 0 ? 0 : prefix >= 64 ? -1L : -1L << (64 - prefix);
+            this.maskLow = prefix <= 64 ? 0 : prefix == 128 ? -1L : -1L << (128 - prefix);
+            this.networkHigh = high & maskHigh;
+            this.networkLow = low & maskLow;
+            this.prefix = prefix;
+        }
+
+        @Override
+        public boolean test(LogTokenizer tokens) {
+            return tokens.ipVersion() == 6
+                    && (tokens.ipHigh() & maskHigh) == networkHigh && (tokens.ipLow() & maskLow) == networkLow;
+        }
+
+        @Override
+        public int cost() {
+            return 3;
+        }
+
+        @Override
+        public String toString() {
+            return "ip=" + IpAddress.formatIpv6(networkHigh, networkLow) + "/" + prefix;
+        }
+    }
+
+    // Адрес, не являющийся ни IPv4, ни IPv6 (например, имя хоста), сравнивается как строка
+    private static final class IpEquals implements Condition {
+        private final String address;
+
+        IpEquals(String address) {
+            this.address = address;
+        }
+
+        @Override
+        public boolean test(LogTokenizer tokens) {
+            return tokens.ipEquals(address);
+        }
+
+        @Override
+        public int cost() {
+            return 3;
+        }
+
+        @Override
+        public String toString() {
+            return "ip=" + address;
+        }
+    }
+
+    private static final class TimeRange implements Condition {
+        private final LocalDateTime from;
+        private final LocalDateTime to;
+        // Границы в секундах от 1970-01-01T00:00Z, чтобы сравнивать их с временем строки без создания объектов
+        private final long fromSecond;
+        private final long toSecond;
+
+        TimeRange(LocalDateTime from, LocalDateTime to) {
+            this.from = from;
+            this.to = to;
+            this.fromSecond = from != null ? from.toEpochSecond(ZoneOffset.UTC) : Long.MIN_VALUE;
+            this.toSecond = to != null ? to.toEpochSecond(ZoneOffset.UTC) : Long.MAX_VALUE;
+        }
+
+        @Override
+        public boolean test(LogTokenizer tokens) {
+            long time = tokens.epochSecond();
+            // Строка без времени проходит дальше, чтобы разбор отправил её в карантин
+            return time == LogTokenizer.NO_TIME || time >= fromSecond && time < toSecond;
+        }
+
+        @Override
+        public int cost() {
+            return 4;
+        }
+
+        @Override
+        public String toString() {
+            return "time=" + (from != null ? from : "") + "/" + (to != null ? to : "");
+        }
+    }
+
+    private static final class Bot implements Condition {
+        private final boolean bot;
+
+        Bot(boolean bot) {
+            this.bot = bot;
+        }
+
+        @Override
+        public boolean test(LogTokenizer tokens) {
+            return tokens.parsedUserAgent().isBot() == bot;
+        }
+
+        @Override
+        public int cost() {
+            return 5;
+        }
+
+        @Override
+        public String toString() {
+            return "bot=" + bot;
+        }
+    }
+}
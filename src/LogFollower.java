@@ -0,0 +1,375 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.stream.Stream;
+
+/**
+ * Режим слежения за растущим файлом лога.
+ * Читаются только дописанные байты, статистика накапливается в одном экземпляре,
+ * а смещение, идентификатор файла (inode) и снимок статистики {@link StatisticsSnapshot}
+ * сохраняются в контрольную точку, чтобы после перезапуска продолжить с того же места
+ * с той же статистикой. Снимок пишется в отдельный файл с номером поколения, и только потом
+ * файл контрольной точки атомарно заменяется ссылкой на него, поэтому смещение и статистика
+ * всегда соответствуют друг другу. Контрольная точка сохраняется не чаще раза в
+ * {@value #CHECKPOINT_INTERVAL_MILLIS} мс; после сбоя строки с последней точки разбираются заново.
+ * Ротация переименованием определяется по смене идентификатора файла: старый файл
+ * дочитывается до конца, после чего чтение продолжается с начала нового.
+ * Ротация усечением (copytruncate) определяется по уменьшению размера файла или по смене
+ * контрольной суммы первых {@value #FINGERPRINT_SIZE} байт: файл могли усечь и дописать
+ * больше прочитанного между двумя опросами.
+ */
+public class LogFollower {
+    private static final int MAX_LINE_LENGTH = 1024;
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+    private static final int FINGERPRINT_SIZE = 256;
+    private static final long CHECKPOINT_INTERVAL_MILLIS = 5_000;
+
+    private final Path path;
+    private final Path checkpointPath;
+    private final long pollIntervalMillis;
+    private final ProcessingResult result = new ProcessingResult();
+    private final StatisticsLineHandler handler;
+    private final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private final ByteBuffer fingerprintBuffer = ByteBuffer.allocate(FINGERPRINT_SIZE);
+
+    private FileChannel channel;
+    private String fileKey;
+    private long offset;
+    // После слишком длинной строки байты пропускаются до следующего перевода строки
+    private boolean skipUntilNewline;
+    // Контрольная сумма первых fingerprintLength прочитанных байт файла; 0 байт - ещё не снята
+    private int fingerprintLength;
+    private long fingerprint;
+    private long statisticsGeneration;
+    private long lastCheckpointMillis;
+
+    public LogFollower(Path path, Path checkpointPath, long pollIntervalMillis) {
+        this.path = path;
+        this.handler = new StatisticsLineHandler(result, path.toString());
+        this.checkpointPath = checkpointPath;
+        this.pollIntervalMillis = pollIntervalMillis;
+    }
+
+    public ProcessingResult getResult() {
+        return result;
+    }
+
+    /**
+     * Следит за файлом, пока поток не будет прерван
+     * @param reportIntervalMillis как часто передавать накопленную статистику в reporter
+     * @param reporter получатель статистики; вызывается, только если с прошлого раза были новые строки
+     */
+    public void run(long reportIntervalMillis, Consumer<ProcessingResult> reporter) throws IOException {
+        resume();
+        long reportedLines = -1;
+        long nextReport = System.currentTimeMillis() + reportIntervalMillis;
+
+        try (WatchService watcher = path.getFileSystem().newWatchService()) {
+            Path directory = path.toAbsolutePath().getParent();
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+            while (!Thread.currentThread().isInterrupted()) {
+                poll();
+
+                long now = System.currentTimeMillis();
+                if (now >= nextReport) {
+                    if (result.getTotalLines() != reportedLines) {
+                        reporter.accept(result);
+                        reportedLines = result.getTotalLines();
+                    }
+                    nextReport = now + reportIntervalMillis;
+                }
+
+                // События файловой системы ускоряют реакцию, опрос по таймауту страхует от их потери
+                WatchKey key = watcher.poll(pollIntervalMillis, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (channel != null) {
+                try {
+                    saveCheckpoint();
+                } finally {
+                    channel.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Читает новые строки и обрабатывает ротацию файла
+     */
+    public void poll() throws IOException {
+        boolean progressed = readAvailable();
+
+        if (!Files.exists(path)) {
+            // Старый файл уже переименован, а новый ещё не создан
+            return;
+        }
+        String currentKey = fileKey(path);
+        // На новый файл переходим, только когда в старый перестали писать
+        if (!currentKey.equals(fileKey) && !progressed) {
+            flushLastLine();
+            channel.close();
+            open(path, currentKey, 0);
+            saveCheckpoint();
+            readAvailable();
+        }
+    }
+
+    // Открытие файла с учётом контрольной точки предыдущего запуска; run вызывает его перед слежением
+    void resume() throws IOException {
+        Properties checkpoint = loadCheckpoint();
+        String currentKey = fileKey(path);
+        if (checkpoint == null) {
+            open(path, currentKey, 0);
+            return;
+        }
+
+        restoreStatistics(checkpoint);
+        String savedKey = checkpoint.getProperty("fileKey");
+        long savedOffset = Long.parseLong(checkpoint.getProperty("offset", "0"));
+        int savedFingerprintLength = Integer.parseInt(checkpoint.getProperty("fingerprintLength", "0"));
+        long savedFingerprint = Long.parseLong(checkpoint.getProperty("fingerprint", "0"));
+        if (currentKey.equals(savedKey)) {
+            open(path, currentKey, savedOffset);
+            fingerprintLength = savedFingerprintLength;
+            fingerprint = savedFingerprint;
+            return;
+        }
+
+        // Файл ротирован, пока программа не работала: дочитываем его под новым именем, если он рядом
+        Path rotated = findRotated(savedKey);
+        if (rotated != null) {
+            open(rotated, savedKey, savedOffset);
+            fingerprintLength = savedFingerprintLength;
+            fingerprint = savedFingerprint;
+            readAvailable();
+            flushLastLine();
+            channel.close();
+        }
+        open(path, currentKey, 0);
+        saveCheckpoint();
+    }
+
+    private void open(Path file, String key, long position) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.fileKey = key;
+        this.offset = position;
+        this.skipUntilNewline = false;
+        this.fingerprintLength = 0;
+    }
+
+    // Обрабатывает все полные строки от сохранённого смещения до конца файла
+    private boolean readAvailable() throws IOException {
+        long size = channel.size();
+        if (size < offset || !fingerprintMatches(size)) {
+            // Файл усечён на месте: начинаем его заново
+            offset = 0;
+            skipUntilNewline = false;
+            fingerprintLength = 0;
+        }
+
+        long start = offset;
+        while (offset < size) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), size - offset));
+            int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                break;
+            }
+            int consumed = processLines(read);
+            if (consumed == 0) {
+                if (read < buffer.capacity()) {
+                    // Неполная последняя строка: ждём, пока её допишут
+                    break;
+                }
+                if (!skipUntilNewline) {
+                    handler.onLineTooLong(buffer, 0, MAX_LINE_LENGTH, offset);
+                    skipUntilNewline = true;
+                }
+                consumed = read;
+            }
+            offset += consumed;
+        }
+        if (offset == start) {
+            return false;
+        }
+        updateFingerprint();
+        if (System.currentTimeMillis() - lastCheckpointMillis >= CHECKPOINT_INTERVAL_MILLIS) {
+            saveCheckpoint();
+        }
+        return true;
+    }
+
+    // Совпадает ли начало файла с тем, что было прочитано раньше
+    private boolean fingerprintMatches(long size) throws IOException {
+        if (fingerprintLength == 0) {
+            return true;
+        }
+        return size >= fingerprintLength && checksum(fingerprintLength) == fingerprint;
+    }
+
+    // Снимает контрольную сумму начала файла, пока прочитано меньше FINGERPRINT_SIZE байт
+    private void updateFingerprint() throws IOException {
+        if (fingerprintLength < FINGERPRINT_SIZE && offset > fingerprintLength) {
+            int length = (int) Math.min(offset, FINGERPRINT_SIZE);
+            fingerprint = checksum(length);
+            fingerprintLength = length;
+        }
+    }
+
+    private long checksum(int length) throws IOException {
+        fingerprintBuffer.clear();
+        fingerprintBuffer.limit(length);
+        while (fingerprintBuffer.hasRemaining()) {
+            if (channel.read(fingerprintBuffer, fingerprintBuffer.position()) <= 0) {
+                // Файл оказался короче: такая сумма не совпадёт ни с одной снятой
+                return -1;
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(fingerprintBuffer.array(), 0, length);
+        return crc.getValue();
+    }
+
+    // Передаёт обработчику полные строки буфера и возвращает число использованных байт
+    private int processLines(int length) {
+        byte[] bytes = buffer.array();
+        int lineStart = 0;
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] != '\n') {
+                continue;
+            }
+            if (skipUntilNewline) {
+                skipUntilNewline = false;
+            } else {
+                emit(lineStart, i);
+            }
+            lineStart = i + 1;
+        }
+        return lineStart;
+    }
+
+    // Последняя строка без перевода строки в файле, который больше не будет дописываться
+    private void flushLastLine() throws IOException {
+        long size = channel.size();
+        if (offset >= size || skipUntilNewline) {
+            return;
+        }
+        buffer.clear();
+        buffer.limit((int) Math.min(buffer.capacity(), size - offset));
+        int read = channel.read(buffer, offset);
+        if (read > 0) {
+            emit(0, read);
+            offset += read;
+        }
+    }
+
+    private void emit(int from, int to) {
+        int length = to - from;
+        if (length > 0 && buffer.get(to - 1) == '\r') {
+            length--;
+        }
+        if (length > MAX_LINE_LENGTH) {
+            handler.onLineTooLong(buffer, from, MAX_LINE_LENGTH, offset + from);
+            return;
+        }
+        handler.onLine(buffer, from, length, offset + from);
+    }
+
+    private Properties loadCheckpoint() throws IOException {
+        if (!Files.exists(checkpointPath)) {
+            return null;
+        }
+        Properties checkpoint = new Properties();
+        try (Reader reader = Files.newBufferedReader(checkpointPath, StandardCharsets.UTF_8)) {
+            checkpoint.load(reader);
+        }
+        return checkpoint;
+    }
+
+    // Запись через временный файл, чтобы при сбое не остаться с наполовину записанной контрольной точкой.
+    // Снимок статистики нового поколения пишется до контрольной точки, а прежний удаляется после неё
+    private void saveCheckpoint() throws IOException {
+        long generation = statisticsGeneration + 1;
+        Path statistics = statisticsPath(generation);
+        StatisticsSnapshot.save(result.getStatistics(), statistics);
+
+        Properties checkpoint = new Properties();
+        checkpoint.setProperty("file", path.toString());
+        checkpoint.setProperty("fileKey", fileKey);
+        checkpoint.setProperty("offset", Long.toString(offset));
+        checkpoint.setProperty("fingerprintLength", Integer.toString(fingerprintLength));
+        checkpoint.setProperty("fingerprint", Long.toString(fingerprint));
+        checkpoint.setProperty("lines", Long.toString(result.getTotalLines()));
+        checkpoint.setProperty("statisticsGeneration", Long.toString(generation));
+        checkpoint.setProperty("statistics", statistics.getFileName().toString());
+
+        Path temporary = checkpointPath.resolveSibling(checkpointPath.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            checkpoint.store(writer, null);
+        }
+        Files.move(temporary, checkpointPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(statisticsPath(statisticsGeneration));
+        statisticsGeneration = generation;
+        lastCheckpointMillis = System.currentTimeMillis();
+    }
+
+    // Статистика, накопленная до контрольной точки; точки без снимка продолжают с пустой статистикой
+    private void restoreStatistics(Properties checkpoint) throws IOException {
+        String statistics = checkpoint.getProperty("statistics");
+        if (statistics == null) {
+            return;
+        }
+        statisticsGeneration = Long.parseLong(checkpoint.getProperty("statisticsGeneration", "0"));
+        Path file = checkpointPath.resolveSibling(statistics);
+        long lines = Long.parseLong(checkpoint.getProperty("lines", "0"));
+        result.merge(new ProcessingResult(lines, StatisticsSnapshot.load(file)));
+    }
+
+    private Path statisticsPath(long generation) {
+        return checkpointPath.resolveSibling(checkpointPath.getFileName() + "." + generation + ".statistics");
+    }
+
+    private Path findRotated(String key) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        String prefix = path.getFileName().toString();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path candidate : (Iterable<Path>) files::iterator) {
+                if (candidate.getFileName().toString().startsWith(prefix)
+                        && Files.isRegularFile(candidate)
+                        && key.equals(fileKey(candidate))) {
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+    // Идентификатор файла, не меняющийся при переименовании (на Linux - устройство и inode)
+    private static String fileKey(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        Object key = attributes.fileKey();
+        return key != null ? key.toString() : attributes.creationTime().toString();
+    }
+}
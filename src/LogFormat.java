@@ -0,0 +1,250 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Формат строки лога, заданный как log_format в nginx или LogFormat в Apache.
+ * Строка формата компилируется один раз в последовательность «литерал - поле - литерал ...»,
+ * где для каждого поля заранее известны его тип и литерал, которым оно заканчивается;
+ * символ после обратной косой черты внутри поля (экранированная кавычка \") поле не заканчивает.
+ * {@link LogTokenizer} проходит строку лога по этой программе за один проход без поиска с возвратом.
+ *
+ * Поддерживаемые переменные nginx: $remote_addr, $time_local, $request, $status, $body_bytes_sent,
+ * $bytes_sent, $http_referer, $http_user_agent, $request_time, $upstream_response_time,
+ * $http_x_forwarded_for; остальные переменные пропускаются.
+ * Поддерживаемые директивы Apache: %h, %a, %t, %r, %s, %>s, %b, %B, %{Referer}i, %{User-Agent}i,
+ * %{X-Forwarded-For}i, %D, %T, %{ms}T, %{us}T; остальные директивы пропускаются.
+ */
+public final class LogFormat {
+    /**
+     * Формат combined, одинаковый в nginx и Apache
+     */
+    public static final String COMBINED =
+            "$remote_addr - $remote_user [$time_local] \"$request\" $status $body_bytes_sent \"$http_referer\" \"$http_user_agent\"";
+    public static final String COMMON = "$remote_addr - $remote_user [$time_local] \"$request\" $status $body_bytes_sent";
+
+    /**
+     * Тип поля в строке лога
+     */
+    enum Field {
+        REMOTE_ADDR,
+        // Время без скобок ($time_local) и со скобками (%t)
+        TIME,
+        BRACKETED_TIME,
+        REQUEST,
+        STATUS,
+        BYTES,
+        REFERER,
+        USER_AGENT,
+        FORWARDED_FOR,
+        // Длительность запроса в секундах с дробной частью, в миллисекундах и в микросекундах
+        REQUEST_TIME_SECONDS,
+        REQUEST_TIME_MILLIS,
+        REQUEST_TIME_MICROS,
+        // Одно или несколько времён ответа upstream через ", " или " : "
+        UPSTREAM_RESPONSE_TIME,
+        SKIP
+    }
+
+    private static volatile LogFormat configured = fromProperty();
+
+    private final String format;
+    // literals[i] стоит перед fields[i], literals[fields.length] - после последнего поля
+    final String[] literals;
+    final Field[] fields;
+
+    private LogFormat(String format, List<String> literals, List<Field> fields) {
+        this.format = format;
+        this.literals = literals.toArray(new String[0]);
+        this.fields = fields.toArray(new Field[0]);
+    }
+
+    /**
+     * Формат, заданный параметром --log-format или свойством -Dparser.logFormat,
+     * либо null, если используется встроенный разбор формата combined
+     */
+    public static LogFormat getConfigured() {
+        return configured;
+    }
+
+    /**
+     * Задаёт формат для всех разборщиков, созданных после вызова
+     */
+    public static void configure(LogFormat format) {
+        configured = format;
+    }
+
+    private static LogFormat fromProperty() {
+        String format = System.getProperty("parser.logFormat");
+        return format != null ? compile(format) : null;
+    }
+
+    /**
+     * Компилирует строку формата nginx или Apache; вместо строки можно указать имя combined или common
+     * @throws IllegalArgumentException если два поля идут подряд без разделителя
+     */
+    public static LogFormat compile(String format) {
+        switch (format) {
+            case "combined":
+                format = COMBINED;
+                break;
+            case "common":
+                format = COMMON;
+                break;
+            default:
+                break;
+        }
+
+        List<String> literals = new ArrayList<>();
+        List<Field> fields = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int pos = 0;
+        while (pos < format.length()) {
+            char c = format.charAt(pos);
+            char next = pos + 1 < format.length() ? format.charAt(pos + 1) : 0;
+            if (c == '$' && (isVariableChar(next) || next == '{')) {
+                int end;
+                String name;
+                if (next == '{') {
+                    end = format.indexOf('}', pos);
+                    if (end < 0) {
+                        throw new IllegalArgumentException("Незакрытая переменная в формате: " + format.substring(pos));
+                    }
+                    name = format.substring(pos + 2, end);
+                    end++;
+                } else {
+                    end = pos + 1;
+                    while (end < format.length() && isVariableChar(format.charAt(end))) {
+                        end++;
+                    }
+                    name = format.substring(pos + 1, end);
+                }
+                addField(literals, fields, literal, nginxField(name), format);
+                pos = end;
+            } else if (c == '%' && next != 0) {
+                if (next == '%') {
+                    literal.append('%');
+                    pos += 2;
+                    continue;
+                }
+                int end = pos + 1;
+                while (end < format.length() && (format.charAt(end) == '>' || format.charAt(end) == '<')) {
+                    end++;
+                }
+                String argument = null;
+                if (end < format.length() && format.charAt(end) == '{') {
+                    int close = format.indexOf('}', end);
+                    if (close < 0) {
+                        throw new IllegalArgumentException("Незакрытая директива в формате: " + format.substring(pos));
+                    }
+                    argument = format.substring(end + 1, close);
+                    end = close + 1;
+                }
+                if (end >= format.length()) {
+                    throw new IllegalArgumentException("Неполная директива в конце формата: " + format.substring(pos));
+                }
+                addField(literals, fields, literal, apacheField(format.charAt(end), argument), format);
+                pos = end + 1;
+            } else {
+                literal.append(c);
+                pos++;
+            }
+        }
+        literals.add(literal.toString());
+        return new LogFormat(format, literals, fields);
+    }
+
+    private static void addField(List<String> literals, List<Field> fields, StringBuilder literal, Field field, String format) {
+        if (!fields.isEmpty() && literal.length() == 0) {
+            throw new IllegalArgumentException("Поля формата должны разделяться хотя бы одним символом: " + format);
+        }
+        literals.add(literal.toString());
+        literal.setLength(0);
+        fields.add(field);
+    }
+
+    private static Field nginxField(String name) {
+        switch (name) {
+            case "remote_addr":
+                return Field.REMOTE_ADDR;
+            case "time_local":
+                return Field.TIME;
+            case "request":
+                return Field.REQUEST;
+            case "status":
+                return Field.STATUS;
+            case "body_bytes_sent":
+            case "bytes_sent":
+                return Field.BYTES;
+            case "http_referer":
+                return Field.REFERER;
+            case "http_user_agent":
+                return Field.USER_AGENT;
+            case "http_x_forwarded_for":
+                return Field.FORWARDED_FOR;
+            case "request_time":
+                return Field.REQUEST_TIME_SECONDS;
+            case "upstream_response_time":
+                return Field.UPSTREAM_RESPONSE_TIME;
+            default:
+                return Field.SKIP;
+        }
+    }
+
+    private static Field apacheField(char directive, String argument) {
+        switch (directive) {
+            case 'h':
+            case 'a':
+                return Field.REMOTE_ADDR;
+            case 't':
+                return argument == null ? Field.BRACKETED_TIME : Field.SKIP;
+            case 'r':
+                return Field.REQUEST;
+            case 's':
+                return Field.STATUS;
+            case 'b':
+            case 'B':
+                return Field.BYTES;
+            case 'D':
+                return Field.REQUEST_TIME_MICROS;
+            case 'T':
+                if (argument == null || argument.equals("s")) {
+                    return Field.REQUEST_TIME_SECONDS;
+                }
+                if (argument.equals("ms")) {
+                    return Field.REQUEST_TIME_MILLIS;
+                }
+                return argument.equals("us") ? Field.REQUEST_TIME_MICROS : Field.SKIP;
+            case 'i':
+                if ("Referer".equalsIgnoreCase(argument)) {
+                    return Field.REFERER;
+                }
+                if ("User-Agent".equalsIgnoreCase(argument)) {
+                    return Field.USER_AGENT;
+                }
+                return "X-Forwarded-For".equalsIgnoreCase(argument) ? Field.FORWARDED_FOR : Field.SKIP;
+            default:
+                return Field.SKIP;
+        }
+    }
+
+    private static boolean isVariableChar(char c) {
+        return c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '_';
+    }
+
+    /**
+     * @return содержит ли формат поле данного типа
+     */
+    boolean has(Field field) {
+        for (Field candidate : fields) {
+            if (candidate == field) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return format;
+    }
+}
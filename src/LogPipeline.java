@@ -0,0 +1,302 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Обработка лога конвейером из трёх стадий: чтение, разбор и агрегация.
+ * Читатель заполняет пакеты байтов целыми строками, разборщики превращают строки пакета
+ * в {@link LogEntry}, а единственный агрегатор добавляет записи в общую {@link Statistics}.
+ * Стадии связаны очередями ограниченной длины: когда разбор не успевает за чтением,
+ * читатель ждёт свободный пакет, а не накапливает файл в памяти. Пакеты и списки записей
+ * переиспользуются по кругу, и передача между потоками идёт пакетами, а не строками,
+ * поэтому её стоимость делится на тысячи строк.
+ *
+ * Пока читатель ждёт диск, разборщики работают с уже прочитанными пакетами, поэтому конвейер
+ * выигрывает у последовательного цикла даже с одним разборщиком на медленном диске.
+ * Читатель занят в основном вводом-выводом и запускается в виртуальном потоке,
+ * если JVM их поддерживает (Java 21+), иначе в обычном. Все потоки конвейера - демоны, как и виртуальные:
+ * вызывающий поток сам дожидается их, а зависшая стадия не должна мешать завершению программы.
+ * Сжатые файлы читаются через {@link CompressedLineReader}, в котором распаковка уже идёт отдельно от разбора.
+ *
+ * Разборщики отдают пакеты агрегатору в произвольном порядке, поэтому записи приходят в статистику
+ * не по времени. Счётчики, оценки {@link HyperLogLog} и {@link DDSketch}, минимальное и максимальное время
+ * и кольца {@link TimeBuckets} и {@link DistinctBuckets} от порядка записей не зависят, так что результат
+ * совпадает с последовательным разбором. От порядка зависит только выбор вытесняемых ключей в наборах
+ * {@link SpaceSaving}, когда различных ключей больше ёмкости, и то в пределах их погрешности.
+ */
+public class LogPipeline {
+    private static final int MAX_LINE_LENGTH = 1024;
+    // Размер пакета и глубина очередей по умолчанию; задаются --pipeline-batch-size и --pipeline-queue-depth
+    public static final int DEFAULT_BATCH_SIZE = 256 * 1024;
+    public static final int DEFAULT_QUEUE_DEPTH = 8;
+
+    private final int parsers;
+    private final int batchSize;
+    private final int queueDepth;
+
+    /**
+     * @param parsers число потоков разбора
+     * @param batchSize размер пакета строк в байтах, не меньше максимальной длины строки
+     * @param queueDepth сколько пакетов может ждать в каждой очереди между стадиями
+     */
+    public LogPipeline(int parsers, int batchSize, int queueDepth) {
+        if (batchSize < MAX_LINE_LENGTH + 2) {
+            throw new IllegalArgumentException("Размер пакета меньше максимальной длины строки: " + batchSize);
+        }
+        this.parsers = Math.max(1, parsers);
+        this.batchSize = batchSize;
+        this.queueDepth = Math.max(1, queueDepth);
+    }
+
+    /**
+     * Разбирает файл, канал или устройство
+     * @throws IOException если вход не удалось прочитать
+     * @throws MalformedLineException если строка не разобрана при политике {@link Quarantine.Policy#ABORT}
+     */
+    public ProcessingResult process(String path) throws IOException {
+        Path file = Path.of(path);
+        if (Files.isRegularFile(file)) {
+            CompressedLineReader.Compression compression = CompressedLineReader.Compression.detect(file);
+            if (compression != CompressedLineReader.Compression.NONE) {
+                return ParallelLogProcessor.processCompressed(file, compression);
+            }
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            return process(path, in);
+        }
+    }
+
+    /**
+     * Разбирает несжатый поток строк
+     * @param source имя входа для записей карантина
+     */
+    ProcessingResult process(String source, InputStream in) throws IOException {
+        return new Run(source, in).execute();
+    }
+
+    /**
+     * Пакет байтов из целых строк; length < 0 означает конец входа
+     */
+    private static final class Batch {
+        private final byte[] bytes;
+        private final ByteBuffer buffer;
+        private int length;
+        // Смещение первого байта пакета от начала входа
+        private long position;
+        // Пакет начинается с продолжения слишком длинной строки из предыдущего пакета
+        private boolean continuation;
+
+        Batch(int size) {
+            bytes = new byte[size];
+            buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * Одна обработка входа: очереди, потоки стадий и первая ошибка
+     */
+    private final class Run {
+        private final String source;
+        private final InputStream in;
+        private final BlockingQueue<Batch> freeBatches = new ArrayBlockingQueue<>(queueDepth + parsers);
+        private final BlockingQueue<Batch> filledBatches = new ArrayBlockingQueue<>(queueDepth + parsers);
+        private final BlockingQueue<List<LogEntry>> freeEntries = new ArrayBlockingQueue<>(queueDepth + parsers);
+        private final BlockingQueue<List<LogEntry>> parsedEntries = new ArrayBlockingQueue<>(queueDepth + parsers);
+        private final List<Thread> threads = new ArrayList<>();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private final ProcessingResult result = new ProcessingResult();
+        private final ProcessingResult[] parserResults = new ProcessingResult[parsers];
+        // Маркеры конца: пакет для разборщиков и пустой список для агрегатора
+        private final Batch endOfInput = new Batch(0);
+        private final List<LogEntry> endOfEntries = new ArrayList<>(0);
+
+        Run(String source, InputStream in) {
+            this.source = source;
+            this.in = in;
+            endOfInput.length = -1;
+            for (int i = 0; i < queueDepth + parsers; i++) {
+                freeBatches.add(new Batch(batchSize));
+                freeEntries.add(new ArrayList<>());
+            }
+        }
+
+        ProcessingResult execute() throws IOException {
+            // Все потоки создаются до запуска первого, чтобы при ошибке было кого останавливать
+            threads.add(newIoThread(this::read, "pipeline-read"));
+            for (int i = 0; i < parsers; i++) {
+                ProcessingResult parserResult = new ProcessingResult();
+                parserResults[i] = parserResult;
+                threads.add(newThread(() -> parse(parserResult), "pipeline-parse-" + i));
+            }
+            threads.add(newThread(this::aggregate, "pipeline-aggregate"));
+            threads.forEach(Thread::start);
+
+            try {
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+            } catch (InterruptedException e) {
+                threads.forEach(Thread::interrupt);
+                Thread.currentThread().interrupt();
+                throw new IOException("Обработка файла прервана", e);
+            }
+
+            Throwable error = failure.get();
+            if (error instanceof IOException) {
+                throw (IOException) error;
+            }
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            }
+            if (error != null) {
+                throw new IOException(error.getMessage(), error);
+            }
+            for (ProcessingResult parserResult : parserResults) {
+                // У разборщиков только счётчики строк, их статистика пуста
+                result.merge(parserResult);
+            }
+            return result;
+        }
+
+        // Первая ошибка любой стадии останавливает все остальные
+        private void fail(Throwable error) {
+            if (failure.compareAndSet(null, error)) {
+                threads.forEach(Thread::interrupt);
+            }
+        }
+
+        private void read() {
+            try {
+                byte[] tail = new byte[batchSize];
+                int tailLength = 0;
+                long position = 0;
+                boolean continuation = false;
+                while (true) {
+                    Batch batch = freeBatches.take();
+                    System.arraycopy(tail, 0, batch.bytes, 0, tailLength);
+                    int length = tailLength + in.readNBytes(batch.bytes, tailLength, batchSize - tailLength);
+                    batch.position = position;
+                    batch.continuation = continuation;
+                    if (length < batchSize) {
+                        // Конец входа: отдаём всё, включая последнюю строку без перевода строки
+                        batch.length = length;
+                        if (length > 0) {
+                            filledBatches.put(batch);
+                        }
+                        break;
+                    }
+                    int lastNewline = CompressedLineReader.lastIndexOf(batch.bytes, length, '\n');
+                    // Пакет без перевода строки целиком занят слишком длинной строкой, её конец будет в следующих
+                    batch.length = lastNewline < 0 ? length : lastNewline + 1;
+                    continuation = lastNewline < 0;
+                    tailLength = length - batch.length;
+                    System.arraycopy(batch.bytes, batch.length, tail, 0, tailLength);
+                    position += batch.length;
+                    filledBatches.put(batch);
+                }
+                for (int i = 0; i < parsers; i++) {
+                    filledBatches.put(endOfInput);
+                }
+            } catch (InterruptedException e) {
+                // Остановлены из-за ошибки другой стадии
+            } catch (IOException | RuntimeException e) {
+                // Прерванное чтение канала тоже завершается IOException; тогда первая ошибка уже записана
+                fail(e);
+            }
+        }
+
+        private void parse(ProcessingResult parserResult) {
+            try {
+                EntryCollector collector = new EntryCollector(parserResult, source);
+                while (true) {
+                    Batch batch = filledBatches.take();
+                    if (batch.length < 0) {
+                        break;
+                    }
+                    collector.entries = freeEntries.take();
+                    CompressedLineReader.emitLines(batch.buffer, batch.length, batch.position, batch.continuation,
+                            MAX_LINE_LENGTH, collector);
+                    parsedEntries.put(collector.entries);
+                    freeBatches.put(batch);
+                }
+                parsedEntries.put(endOfEntries);
+            } catch (InterruptedException e) {
+                // Остановлены из-за ошибки другой стадии
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        private void aggregate() {
+            try {
+                Statistics statistics = result.getStatistics();
+                int finished = 0;
+                while (finished < parsers) {
+                    List<LogEntry> entries = parsedEntries.take();
+                    if (entries == endOfEntries) {
+                        finished++;
+                        continue;
+                    }
+                    for (LogEntry entry : entries) {
+                        statistics.addEntry(entry);
+                    }
+                    entries.clear();
+                    freeEntries.put(entries);
+                }
+            } catch (InterruptedException e) {
+                // Остановлены из-за ошибки другой стадии
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * Разборщик, который складывает записи в список пакета вместо статистики
+     */
+    private static final class EntryCollector extends StatisticsLineHandler {
+        private List<LogEntry> entries;
+
+        EntryCollector(ProcessingResult result, String source) {
+            super(result, source);
+        }
+
+        @Override
+        void accept(LogEntry entry) {
+            entries.add(entry);
+        }
+    }
+
+    private static Thread newThread(Runnable task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Поток для стадии, занятой вводом-выводом: виртуальный, если JVM их поддерживает, иначе обычный поток-демон.
+     * Сборка идёт с --release 17, поэтому виртуальный поток создаётся через отражение и только на Java 21+
+     */
+    static Thread newIoThread(Runnable task, String name) {
+        Thread thread = null;
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class).invoke(builder, name);
+            Method unstarted = builderClass.getMethod("unstarted", Runnable.class);
+            thread = (Thread) unstarted.invoke(builder, task);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // До Java 21 виртуальных потоков нет
+        }
+        return thread != null ? thread : newThread(task, name);
+    }
+}
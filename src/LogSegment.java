@@ -0,0 +1,447 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Колоночный сегмент разобранных записей одного часа для {@link SegmentStore}.
+ *
+ * Формат: 4 байта сигнатуры "ALSG", 2 байта версии, затем заголовок - число строк,
+ * минимальное и максимальное время (секунды эпохи по UTC) и сводка кодов ответа (код и число строк).
+ * По заголовку сегмент можно пропустить, не читая остального.
+ * Дальше идёт свёртка - {@link StatisticsSnapshot} всех записей сегмента; когда сегмент целиком входит
+ * в запрошенный интервал, отчёт получается объединением свёрток без чтения строк.
+ * Затем тело: словари строковых полей (адрес, путь, источник перехода, User-Agent, X-Forwarded-For)
+ * и колонки, каждая с длиной в байтах перед ней: время - разность с предыдущей строкой,
+ * метод - байт с номером {@link HttpMethod}, код ответа - байт с номером в сводке,
+ * строковые поля - номера в словарях, числа - в формате переменной длины (zigzag varint).
+ * Свёртка и тело сжаты deflate и записаны с длиной в байтах перед ними, поэтому свёртку можно пропустить.
+ * Сегменты другой версии не читаются.
+ */
+final class LogSegment {
+    private static final int MAGIC = 0x414C5347;
+    private static final int VERSION = 1;
+    // Предельное число строк в сегменте; больше - начинается следующий сегмент того же часа
+    static final int MAX_ROWS = 1 << 20;
+    // Код ответа хранится байтом, поэтому различных кодов в сегменте не больше 256
+    private static final int MAX_STATUSES = 256;
+    private static final HttpMethod[] METHODS = HttpMethod.values();
+    // Свёртка и тело сжимаются deflate: словари строк и почти постоянные колонки сжимаются в разы
+    private static final int DEFLATE_LEVEL = Integer.getInteger("parser.segmentDeflateLevel", Deflater.BEST_SPEED);
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private LogSegment() {
+    }
+
+    /**
+     * Сводка сегмента из заголовка
+     */
+    static final class Header {
+        private final int rows;
+        private final long minTime;
+        private final long maxTime;
+        private final int[] statuses;
+        private final int[] statusCounts;
+
+        Header(int rows, long minTime, long maxTime, int[] statuses, int[] statusCounts) {
+            this.rows = rows;
+            this.minTime = minTime;
+            this.maxTime = maxTime;
+            this.statuses = statuses;
+            this.statusCounts = statusCounts;
+        }
+
+        int getRows() {
+            return rows;
+        }
+
+        long getMinTime() {
+            return minTime;
+        }
+
+        long getMaxTime() {
+            return maxTime;
+        }
+
+        /**
+         * @param accepted принимаемые коды по индексу кода или null - все коды
+         * @return есть ли в сегменте хотя бы одна строка с принимаемым кодом
+         */
+        boolean hasAnyStatus(boolean[] accepted) {
+            if (accepted == null) {
+                return rows > 0;
+            }
+            for (int status : statuses) {
+                if (isAccepted(accepted, status)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return все ли строки сегмента имеют принимаемый код
+         */
+        boolean hasOnlyStatuses(boolean[] accepted) {
+            if (accepted == null) {
+                return true;
+            }
+            for (int status : statuses) {
+                if (!isAccepted(accepted, status)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    static boolean isAccepted(boolean[] accepted, int status) {
+        return accepted == null || status >= 0 && status < accepted.length && accepted[status];
+    }
+
+    /**
+     * Накопитель строк одного сегмента
+     */
+    static final class Builder {
+        private int rows;
+        private long minTime = Long.MAX_VALUE;
+        private long maxTime = Long.MIN_VALUE;
+        private long previousTime;
+        private final int[] statuses = new int[MAX_STATUSES];
+        private final int[] statusCounts = new int[MAX_STATUSES];
+        // Номер кода в сводке по самому коду; индекс 0 - код -1 (не найден в строке)
+        private final short[] statusIndex = new short[1001];
+        private int statusCount;
+
+        private final Column times = new Column();
+        private final Column methods = new Column();
+        private final Column statusColumn = new Column();
+        private final Column sizes = new Column();
+        private final Column ipIds = new Column();
+        private final Column pathIds = new Column();
+        private final Column refererIds = new Column();
+        private final Column userAgentIds = new Column();
+        private final Column forwardedIds = new Column();
+        private final Column requestTimes = new Column();
+        private final Column upstreamTimes = new Column();
+
+        private final Dictionary ips = new Dictionary();
+        private final Dictionary paths = new Dictionary();
+        private final Dictionary referers = new Dictionary();
+        private final Dictionary userAgents = new Dictionary();
+        private final Dictionary forwarded = new Dictionary();
+
+        private final Statistics rollup = new Statistics();
+
+        Builder() {
+            Arrays.fill(statusIndex, (short) -1);
+        }
+
+        /**
+         * @return поместится ли запись в сегмент
+         */
+        boolean canAdd(LogEntry entry) {
+            return rows < MAX_ROWS && (statusCount < MAX_STATUSES || statusIndex[entry.getStatusCode() + 1] >= 0);
+        }
+
+        int getRows() {
+            return rows;
+        }
+
+        void add(LogEntry entry) {
+            long time = entry.getEpochSecond();
+            minTime = Math.min(minTime, time);
+            maxTime = Math.max(maxTime, time);
+            times.writeSigned(time - previousTime);
+            previousTime = time;
+
+            methods.writeByte(entry.getMethod().ordinal());
+            int status = entry.getStatusCode();
+            int index = statusIndex[status + 1];
+            if (index < 0) {
+                index = statusCount++;
+                statusIndex[status + 1] = (short) index;
+                statuses[index] = status;
+            }
+            statusCounts[index]++;
+            statusColumn.writeByte(index);
+
+            sizes.writeSigned(entry.getResponseSize());
+            ipIds.writeUnsigned(ips.id(entry.getIpAddr()));
+            pathIds.writeUnsigned(paths.id(entry.getPath()));
+            refererIds.writeUnsigned(referers.id(entry.getReferer()));
+            userAgentIds.writeUnsigned(userAgents.id(entry.getUserAgent().getUserAgentString()));
+            forwardedIds.writeUnsigned(forwarded.id(entry.getForwardedFor()));
+            requestTimes.writeSigned(entry.getRequestTimeMicros());
+            upstreamTimes.writeSigned(entry.getUpstreamResponseTimeMicros());
+
+            rollup.addEntry(entry);
+            rows++;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(rows);
+            out.writeLong(minTime);
+            out.writeLong(maxTime);
+            out.writeShort(statusCount);
+            for (int i = 0; i < statusCount; i++) {
+                out.writeShort(statuses[i]);
+                out.writeInt(statusCounts[i]);
+            }
+
+            ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+            try (DeflaterOutputStream deflated = deflate(snapshot)) {
+                StatisticsSnapshot.write(rollup, deflated);
+            }
+            out.writeInt(snapshot.size());
+            snapshot.writeTo(out);
+
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (DataOutputStream deflated = new DataOutputStream(deflate(body))) {
+                for (Dictionary dictionary : new Dictionary[]{ips, paths, referers, userAgents, forwarded}) {
+                    StatisticsSnapshot.writeStrings(deflated, dictionary.values);
+                }
+                for (Column column : new Column[]{times, methods, statusColumn, sizes, ipIds, pathIds, refererIds,
+                        userAgentIds, forwardedIds, requestTimes, upstreamTimes}) {
+                    deflated.writeInt(column.size);
+                    deflated.write(column.bytes, 0, column.size);
+                }
+            }
+            out.writeInt(body.size());
+            body.writeTo(out);
+        }
+    }
+
+    private static DeflaterOutputStream deflate(OutputStream out) {
+        return new DeflaterOutputStream(out, new Deflater(DEFLATE_LEVEL), BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                def.end();
+            }
+        };
+    }
+
+    private static DataInputStream inflate(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(bytes), new Inflater(), BUFFER_SIZE));
+    }
+
+    /**
+     * Читает заголовок; поток остаётся перед свёрткой
+     * @throws IOException если данные не являются сегментом
+     * @throws UnsupportedVersionException если сегмент записан другой версией формата
+     */
+    static Header readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Данные не являются сегментом хранилища");
+        }
+        int version = in.readUnsignedShort();
+        if (version != VERSION) {
+            throw new UnsupportedVersionException("Неподдерживаемая версия сегмента: " + version
+                    + "; пересоздайте хранилище из исходных логов");
+        }
+        int rows = in.readInt();
+        long minTime = in.readLong();
+        long maxTime = in.readLong();
+        int count = in.readUnsignedShort();
+        int[] statuses = new int[count];
+        int[] statusCounts = new int[count];
+        for (int i = 0; i < count; i++) {
+            statuses[i] = in.readShort();
+            statusCounts[i] = in.readInt();
+        }
+        return new Header(rows, minTime, maxTime, statuses, statusCounts);
+    }
+
+    /**
+     * Читает свёртку сегмента; вызывается сразу после {@link #readHeader}
+     */
+    static Statistics readRollup(DataInputStream in) throws IOException {
+        return StatisticsSnapshot.read(inflate(in));
+    }
+
+    /**
+     * Пропускает свёртку; вызывается сразу после {@link #readHeader}
+     */
+    static void skipRollup(DataInputStream in) throws IOException {
+        in.skipNBytes(in.readInt());
+    }
+
+    /**
+     * Восстанавливает записи сегмента со временем в [from, to) и принимаемым кодом ответа;
+     * вызывается после чтения или пропуска свёртки. Строковые поля и User-Agent
+     * создаются один раз на значение словаря и разделяются записями
+     * @param accepted принимаемые коды по индексу кода или null - все коды
+     */
+    static void readRows(DataInputStream in, Header header, long from, long to, boolean[] accepted,
+                         Consumer<LogEntry> consumer) throws IOException {
+        DataInputStream body = inflate(in);
+        List<String> ips = new ArrayList<>();
+        List<String> paths = new ArrayList<>();
+        List<String> referers = new ArrayList<>();
+        List<String> userAgentStrings = new ArrayList<>();
+        List<String> forwarded = new ArrayList<>();
+        for (List<String> dictionary : List.of(ips, paths, referers, userAgentStrings, forwarded)) {
+            StatisticsSnapshot.readStrings(body, dictionary);
+        }
+        Cursor times = readColumn(body);
+        Cursor methods = readColumn(body);
+        Cursor statusColumn = readColumn(body);
+        Cursor sizes = readColumn(body);
+        Cursor ipIds = readColumn(body);
+        Cursor pathIds = readColumn(body);
+        Cursor refererIds = readColumn(body);
+        Cursor userAgentIds = readColumn(body);
+        Cursor forwardedIds = readColumn(body);
+        Cursor requestTimes = readColumn(body);
+        Cursor upstreamTimes = readColumn(body);
+
+        // Упакованные адреса и разобранные User-Agent - по одному на значение словаря
+        int[] ipVersions = new int[ips.size()];
+        long[] ipHighs = new long[ips.size()];
+        long[] ipLows = new long[ips.size()];
+        long[] scratch = new long[2];
+        for (int i = 0; i < ips.size(); i++) {
+            String ip = ips.get(i);
+            long ipv4 = IpAddress.parseIpv4(ip, 0, ip.length());
+            if (ipv4 >= 0) {
+                ipVersions[i] = 4;
+                ipLows[i] = ipv4;
+            } else if (IpAddress.parseIpv6(ip, 0, ip.length(), scratch)) {
+                ipVersions[i] = 6;
+                ipHighs[i] = scratch[0];
+                ipLows[i] = scratch[1];
+            }
+        }
+        UserAgent[] userAgents = new UserAgent[userAgentStrings.size()];
+        for (int i = 0; i < userAgents.length; i++) {
+            userAgents[i] = UserAgentCache.shared().get(userAgentStrings.get(i));
+        }
+
+        long time = 0;
+        for (int row = 0; row < header.rows; row++) {
+            time += times.readSigned();
+            int method = methods.readByte();
+            int status = header.statuses[statusColumn.readByte()];
+            long size = sizes.readSigned();
+            int ip = (int) ipIds.readUnsigned();
+            int path = (int) pathIds.readUnsigned();
+            int referer = (int) refererIds.readUnsigned();
+            int userAgent = (int) userAgentIds.readUnsigned();
+            int forwardedFor = (int) forwardedIds.readUnsigned();
+            long requestTime = requestTimes.readSigned();
+            long upstreamTime = upstreamTimes.readSigned();
+            if (time < from || time >= to || !isAccepted(accepted, status)) {
+                continue;
+            }
+            consumer.accept(new LogEntry(ips.get(ip), ipVersions[ip], ipHighs[ip], ipLows[ip], time,
+                    METHODS[method], paths.get(path), status, (int) size, referers.get(referer),
+                    userAgents[userAgent], forwarded.get(forwardedFor), requestTime, upstreamTime));
+        }
+    }
+
+    private static Cursor readColumn(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new Cursor(bytes);
+    }
+
+    /**
+     * Номера строковых значений в порядке первого появления
+     */
+    private static final class Dictionary {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int id(String value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = values.size();
+                ids.put(value, id);
+                values.add(value);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Растущий массив байтов колонки
+     */
+    private static final class Column {
+        private byte[] bytes = new byte[1024];
+        private int size;
+
+        void writeByte(int value) {
+            ensure(1);
+            bytes[size++] = (byte) value;
+        }
+
+        void writeSigned(long value) {
+            writeUnsigned(value << 1 ^ value >> 63);
+        }
+
+        void writeUnsigned(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+    }
+
+    /**
+     * Последовательное чтение колонки
+     */
+    private static final class Cursor {
+        private final byte[] bytes;
+        private int position;
+
+        Cursor(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int readByte() {
+            return bytes[position++] & 0xFF;
+        }
+
+        long readSigned() {
+            long value = readUnsigned();
+            return value >>> 1 ^ -(value & 1);
+        }
+
+        long readUnsigned() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+}
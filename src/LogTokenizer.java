@@ -0,0 +1,867 @@
+import java.time.Month;
+import java.time.Year;
+
+/**
+ * Однопроходный разбор строки в формате combined log без регулярных выражений.
+ * Строка просматривается один раз слева направо, границы полей определяются
+ * по скобкам и кавычкам, код ответа и размер сразу декодируются в примитивы,
+ * а строки создаются только для итоговых полей.
+ * Если задан {@link LogFormat}, строка разбирается по скомпилированному формату:
+ * поля идут в известном порядке, и каждое читается до своего разделителя.
+ * Экземпляр переиспользуется между строками и не является потокобезопасным.
+ */
+public final class LogTokenizer {
+    private static final String MONTHS = "JanFebMarAprMayJunJulAugSepOctNovDec";
+    // Длина времени вида 25/Sep/2022:06:25:04 +0300
+    private static final int TIME_LENGTH = 26;
+    // Позиция секунд во времени: при совпадении остального текста с предыдущей строкой пересчитываются только они
+    private static final int SECOND_POSITION = 18;
+
+    /**
+     * Значение {@link #epochSecond()}, если времени нет в строке или оно записано неверно
+     */
+    static final long NO_TIME = Long.MIN_VALUE;
+
+    // Строковые представления кодов ответа, чтобы не создавать их на каждую строку
+    private static final String[] STATUS_STRINGS = new String[1000];
+
+    static {
+        for (int i = 0; i < STATUS_STRINGS.length; i++) {
+            STATUS_STRINGS[i] = String.format("%03d", i);
+        }
+    }
+
+    private final LogFormat format;
+
+    private CharSequence line;
+    private int length;
+
+    private int ipStart;
+    private int ipEnd;
+    private int timeStart;
+    private int timeEnd;
+    private int methodStart;
+    private int methodEnd;
+    private int pathStart;
+    private int pathEnd;
+    private int statusCode;
+    private int responseSize;
+    private boolean sizeFound;
+    private int refererStart;
+    private int refererEnd;
+    private int userAgentStart;
+    private int userAgentEnd;
+    private int forwardedForStart;
+    private int forwardedForEnd;
+    private long requestTimeMicros;
+    private long upstreamResponseTimeMicros;
+    // Поля, декодированные при первом обращении; сбрасываются при разборе следующей строки
+    private int ipVersion;
+    private long ipHigh;
+    private long ipLow;
+    private final long[] ipScratch = new long[2];
+    private long epochSecond;
+    private boolean timeDecoded;
+    private UserAgent decodedUserAgent;
+    // Текст времени последней декодированной строки и начало его минуты; соседние строки почти всегда
+    // приходятся на ту же минуту, и для них достаточно сравнить текст и прочитать секунды
+    private final char[] cachedTime = new char[TIME_LENGTH];
+    private long cachedMinute = NO_TIME;
+
+    /**
+     * Разборщик для формата, заданного через {@link LogFormat#configure(LogFormat)}, или формата combined
+     */
+    public LogTokenizer() {
+        this(LogFormat.getConfigured());
+    }
+
+    /**
+     * @param format формат строк; null - встроенный разбор формата combined
+     */
+    public LogTokenizer(LogFormat format) {
+        this.format = format;
+    }
+
+    /**
+     * Разбирает строку и запоминает границы полей
+     * @return этот же экземпляр для чтения полей
+     */
+    public LogTokenizer tokenize(CharSequence logLine) {
+        this.line = logLine;
+        this.length = logLine.length();
+        this.ipStart = 0;
+        this.ipEnd = 0;
+        this.timeStart = -1;
+        this.timeEnd = -1;
+        this.methodStart = -1;
+        this.methodEnd = -1;
+        this.pathStart = -1;
+        this.pathEnd = -1;
+        this.statusCode = -1;
+        this.responseSize = 0;
+        this.sizeFound = false;
+        this.refererStart = -1;
+        this.refererEnd = -1;
+        this.userAgentStart = -1;
+        this.userAgentEnd = -1;
+        this.forwardedForStart = -1;
+        this.forwardedForEnd = -1;
+        this.requestTimeMicros = -1;
+        this.upstreamResponseTimeMicros = -1;
+        this.ipVersion = -1;
+        this.timeDecoded = false;
+        this.decodedUserAgent = null;
+        if (format != null) {
+            tokenizeFormat();
+            return this;
+        }
+
+        // Позиции четырёх последних кавычек: по ним определяются Referer и User-Agent
+        int q1 = -1;
+        int q2 = -1;
+        int q3 = -1;
+        int q4 = -1;
+
+        for (int pos = scanIpAddress(); pos < length; pos++) {
+            char c = line.charAt(pos);
+            if (c == '"') {
+                onQuote(pos);
+                q1 = q2;
+                q2 = q3;
+                q3 = q4;
+                q4 = pos;
+            } else if (c == '[') {
+                if (timeStart < 0) {
+                    timeStart = pos + 1;
+                }
+            } else if (c == ']') {
+                if (timeStart >= 0 && timeEnd < 0) {
+                    timeEnd = pos;
+                }
+            }
+        }
+        if (timeEnd < 0) {
+            timeStart = -1;
+        }
+        scanRefererAndUserAgent(q1, q2, q3, q4);
+        return this;
+    }
+
+    // Разбор по скомпилированному формату; при расхождении с форматом оставшиеся поля считаются отсутствующими
+    private void tokenizeFormat() {
+        int end = length > 0 && line.charAt(length - 1) == '\r' ? length - 1 : length;
+        String[] literals = format.literals;
+        LogFormat.Field[] fields = format.fields;
+        int pos = 0;
+        for (int i = 0; i < fields.length; i++) {
+            pos = skipLiteral(literals[i], pos, end);
+            if (pos < 0) {
+                return;
+            }
+
+            int fieldEnd;
+            LogFormat.Field field = fields[i];
+            if (field == LogFormat.Field.UPSTREAM_RESPONSE_TIME) {
+                fieldEnd = scanUpstreamTimes(pos, end);
+            } else if (field == LogFormat.Field.BRACKETED_TIME) {
+                fieldEnd = indexOf(']', pos, end);
+                fieldEnd = fieldEnd < 0 ? -1 : fieldEnd + 1;
+            } else {
+                String next = literals[i + 1];
+                fieldEnd = next.isEmpty() ? end : indexOfLiteral(next, pos, end);
+            }
+            if (fieldEnd < 0) {
+                return;
+            }
+            assignField(field, pos, fieldEnd);
+            pos = fieldEnd;
+        }
+    }
+
+    // Начало литерала целиком; символ после обратной косой черты (\" в кавычках Apache и nginx) пропускается,
+    // поэтому экранированная кавычка внутри поля не заканчивает его
+    private int indexOfLiteral(String literal, int from, int end) {
+        int last = end - literal.length();
+        for (int i = from; i <= last; i++) {
+            char c = line.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == literal.charAt(0) && skipLiteral(literal, i, end) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int skipLiteral(String literal, int pos, int end) {
+        if (end - pos < literal.length()) {
+            return -1;
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (line.charAt(pos + i) != literal.charAt(i)) {
+                return -1;
+            }
+        }
+        return pos + literal.length();
+    }
+
+    private void assignField(LogFormat.Field field, int start, int end) {
+        boolean dash = end - start == 1 && line.charAt(start) == '-';
+        switch (field) {
+            case REMOTE_ADDR:
+                if (!dash && end > start) {
+                    ipStart = start;
+                    ipEnd = end;
+                }
+                break;
+            case TIME:
+                timeStart = start;
+                timeEnd = end;
+                break;
+            case BRACKETED_TIME:
+                if (end - start >= 2 && line.charAt(start) == '[') {
+                    timeStart = start + 1;
+                    timeEnd = end - 1;
+                }
+                break;
+            case REQUEST:
+                int lettersEnd = start;
+                while (lettersEnd < end && isUpperLetter(line.charAt(lettersEnd))) {
+                    lettersEnd++;
+                }
+                if (lettersEnd > start) {
+                    methodStart = start;
+                    methodEnd = lettersEnd;
+                    int pathFrom = lettersEnd;
+                    while (pathFrom < end && isWhitespace(line.charAt(pathFrom))) {
+                        pathFrom++;
+                    }
+                    int pathTo = pathFrom;
+                    while (pathTo < end && !isWhitespace(line.charAt(pathTo)) && line.charAt(pathTo) != '?') {
+                        pathTo++;
+                    }
+                    if (pathFrom > lettersEnd && pathTo > pathFrom) {
+                        pathStart = pathFrom;
+                        pathEnd = pathTo;
+                    }
+                }
+                break;
+            case STATUS:
+                long code = parseNumber(start, end);
+                if (end - start == 3 && code >= 0) {
+                    statusCode = (int) code;
+                }
+                break;
+            case BYTES:
+                long size = parseNumber(start, end);
+                responseSize = size >= 0 && size <= Integer.MAX_VALUE ? (int) size : 0;
+                break;
+            case REFERER:
+                refererStart = start;
+                refererEnd = end;
+                break;
+            case USER_AGENT:
+                userAgentStart = start;
+                userAgentEnd = end;
+                break;
+            case FORWARDED_FOR:
+                forwardedForStart = start;
+                forwardedForEnd = end;
+                break;
+            case REQUEST_TIME_SECONDS:
+                requestTimeMicros = parseDecimal(start, end, 1_000_000);
+                break;
+            case REQUEST_TIME_MILLIS:
+                requestTimeMicros = parseDecimal(start, end, 1_000);
+                break;
+            case REQUEST_TIME_MICROS:
+                requestTimeMicros = parseNumber(start, end);
+                break;
+            case UPSTREAM_RESPONSE_TIME:
+                upstreamResponseTimeMicros = sumUpstreamTimes(start, end);
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Времена upstream: "0.010", "0.010, 0.020" при повторных попытках, "0.010 : 0.020" при внутренних перенаправлениях
+    private int scanUpstreamTimes(int pos, int end) {
+        int valueEnd = scanTimeValue(pos, end);
+        while (valueEnd > pos) {
+            int separatorEnd;
+            if (valueEnd + 2 <= end && line.charAt(valueEnd) == ',' && line.charAt(valueEnd + 1) == ' ') {
+                separatorEnd = valueEnd + 2;
+            } else if (valueEnd + 3 <= end && line.charAt(valueEnd) == ' ' && line.charAt(valueEnd + 1) == ':'
+                    && line.charAt(valueEnd + 2) == ' ') {
+                separatorEnd = valueEnd + 3;
+            } else {
+                break;
+            }
+            int next = scanTimeValue(separatorEnd, end);
+            if (next == separatorEnd) {
+                break;
+            }
+            valueEnd = next;
+        }
+        return valueEnd;
+    }
+
+    private int scanTimeValue(int pos, int end) {
+        if (pos < end && line.charAt(pos) == '-') {
+            return pos + 1;
+        }
+        while (pos < end && (isDigit(line.charAt(pos)) || line.charAt(pos) == '.')) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private long sumUpstreamTimes(int start, int end) {
+        long total = -1;
+        int pos = start;
+        while (pos < end) {
+            int valueEnd = scanTimeValue(pos, end);
+            long value = parseDecimal(pos, valueEnd, 1_000_000);
+            if (value >= 0) {
+                total = Math.max(total, 0) + value;
+            }
+            pos = valueEnd;
+            while (pos < end && !isDigit(line.charAt(pos)) && line.charAt(pos) != '-') {
+                pos++;
+            }
+        }
+        return total;
+    }
+
+    // Целое неотрицательное число или -1, если поле не число
+    private long parseNumber(int start, int end) {
+        if (start == end || end - start > 18) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    // Десятичная дробь вида 12.345, умноженная на scale с отбрасыванием лишних знаков, или -1
+    private long parseDecimal(int start, int end, long scale) {
+        long integer = 0;
+        long fraction = 0;
+        long fractionScale = 1;
+        boolean point = false;
+        boolean digits = false;
+        for (int i = start; i < end; i++) {
+            char c = line.charAt(i);
+            if (c == '.' && !point) {
+                point = true;
+            } else if (isDigit(c)) {
+                digits = true;
+                if (!point) {
+                    integer = integer * 10 + (c - '0');
+                } else if (fractionScale < scale) {
+                    fraction = fraction * 10 + (c - '0');
+                    fractionScale *= 10;
+                }
+            } else {
+                return -1;
+            }
+        }
+        if (!digits || integer > Long.MAX_VALUE / scale - 1) {
+            return -1;
+        }
+        return integer * scale + fraction * (scale / fractionScale);
+    }
+
+    private int indexOf(char c, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (line.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // IPv4 в начале строки: четыре группы цифр через точку; иначе IPv6 - слово из шестнадцатеричных цифр,
+    // двоеточий и точек до пробела
+    private int scanIpAddress() {
+        int pos = 0;
+        for (int group = 0; group < 4; group++) {
+            if (group > 0) {
+                if (pos >= length || line.charAt(pos) != '.') {
+                    return scanIpv6Address();
+                }
+                pos++;
+            }
+            int digitsStart = pos;
+            while (pos < length && isDigit(line.charAt(pos))) {
+                pos++;
+            }
+            if (pos == digitsStart) {
+                return scanIpv6Address();
+            }
+        }
+        ipEnd = pos;
+        return pos;
+    }
+
+    private int scanIpv6Address() {
+        int end = 0;
+        boolean colon = false;
+        while (end < length && !isWhitespace(line.charAt(end))) {
+            colon |= line.charAt(end) == ':';
+            end++;
+        }
+        if (!colon || end > 45 || !IpAddress.parseIpv6(line, 0, end, ipScratch)) {
+            return 0;
+        }
+        ipEnd = end;
+        return end;
+    }
+
+    // Каждая кавычка может открывать строку запроса, предшествовать коду ответа или завершать размер
+    private void onQuote(int quote) {
+        if (!sizeFound) {
+            scanSizeBefore(quote);
+        }
+        if (methodStart >= 0 && pathStart >= 0 && statusCode >= 0) {
+            return;
+        }
+
+        int pos = quote + 1;
+        int lettersEnd = pos;
+        while (lettersEnd < length && isUpperLetter(line.charAt(lettersEnd))) {
+            lettersEnd++;
+        }
+        if (lettersEnd > pos) {
+            if (methodStart < 0) {
+                methodStart = pos;
+                methodEnd = lettersEnd;
+            }
+            if (pathStart < 0) {
+                scanPathAfter(lettersEnd);
+            }
+        } else if (statusCode < 0) {
+            scanStatusAfter(pos);
+        }
+    }
+
+    // Путь идёт после метода и пробелов, до пробела или начала query-параметров
+    private void scanPathAfter(int pos) {
+        int start = skipWhitespace(pos);
+        if (start == pos) {
+            return;
+        }
+        int end = start;
+        while (end < length) {
+            char c = line.charAt(end);
+            if (isWhitespace(c) || c == '?') {
+                break;
+            }
+            end++;
+        }
+        if (end > start) {
+            pathStart = start;
+            pathEnd = end;
+        }
+    }
+
+    // Трёхзначный код ответа, отделённый пробелами от закрывающей кавычки запроса
+    private void scanStatusAfter(int pos) {
+        int start = skipWhitespace(pos);
+        if (start == pos || start + 3 >= length) {
+            return;
+        }
+        int code = 0;
+        for (int i = start; i < start + 3; i++) {
+            char c = line.charAt(i);
+            if (!isDigit(c)) {
+                return;
+            }
+            code = code * 10 + (c - '0');
+        }
+        if (isWhitespace(line.charAt(start + 3))) {
+            statusCode = code;
+        }
+    }
+
+    // Размер ответа - число между пробелами непосредственно перед кавычкой Referer
+    private void scanSizeBefore(int quote) {
+        int digitsEnd = quote;
+        while (digitsEnd > 0 && isWhitespace(line.charAt(digitsEnd - 1))) {
+            digitsEnd--;
+        }
+        if (digitsEnd == quote) {
+            return;
+        }
+        int digitsStart = digitsEnd;
+        while (digitsStart > 0 && isDigit(line.charAt(digitsStart - 1))) {
+            digitsStart--;
+        }
+        if (digitsStart == digitsEnd || digitsStart == 0 || !isWhitespace(line.charAt(digitsStart - 1))) {
+            return;
+        }
+        sizeFound = true;
+        long size = 0;
+        for (int i = digitsStart; i < digitsEnd && size <= Integer.MAX_VALUE; i++) {
+            size = size * 10 + (line.charAt(i) - '0');
+        }
+        responseSize = size <= Integer.MAX_VALUE ? (int) size : 0;
+    }
+
+    // Referer и User-Agent - два последних поля в кавычках, разделённые пробелами, в самом конце строки
+    private void scanRefererAndUserAgent(int q1, int q2, int q3, int q4) {
+        if (q1 < 0) {
+            return;
+        }
+        boolean atEnd = q4 == length - 1 || (q4 == length - 2 && line.charAt(length - 1) == '\r');
+        if (!atEnd || q3 == q2 + 1) {
+            return;
+        }
+        for (int i = q2 + 1; i < q3; i++) {
+            if (!isWhitespace(line.charAt(i))) {
+                return;
+            }
+        }
+        refererStart = q1 + 1;
+        refererEnd = q2;
+        userAgentStart = q3 + 1;
+        userAgentEnd = q4;
+    }
+
+    /**
+     * @return адрес клиента как в строке; IPv6 - в канонической записи, чтобы разные записи одного адреса совпадали
+     */
+    public String ipAddr() {
+        switch (ipVersion()) {
+            case 6:
+                return IpAddress.formatIpv6(ipHigh, ipLow);
+            case 4:
+                // Адрес IPv4, записанный как IPv6, приводится к обычному виду
+                return line.charAt(ipStart) == ':' || ipEnd - ipStart > 15
+                        ? IpAddress.formatIpv4((int) ipLow)
+                        : line.subSequence(ipStart, ipEnd).toString();
+            default:
+                return ipEnd > 0 ? line.subSequence(ipStart, ipEnd).toString() : "Unknown";
+        }
+    }
+
+    /**
+     * Разбирает адрес клиента в упакованный вид при первом обращении
+     * @return 4 для IPv4 (в том числе записанного как ::ffff:a.b.c.d), 6 для IPv6 или 0, если адреса нет
+     */
+    public int ipVersion() {
+        if (ipVersion < 0) {
+            ipVersion = 0;
+            ipHigh = 0;
+            ipLow = 0;
+            if (ipEnd > 0) {
+                long ipv4 = IpAddress.parseIpv4(line, ipStart, ipEnd);
+                if (ipv4 >= 0) {
+                    ipVersion = 4;
+                    ipLow = ipv4;
+                } else if (IpAddress.parseIpv6(line, ipStart, ipEnd, ipScratch)) {
+                    ipHigh = ipScratch[0];
+                    ipLow = ipScratch[1];
+                    ipVersion = 6;
+                    if (IpAddress.isMappedIpv4(ipHigh, ipLow)) {
+                        ipVersion = 4;
+                        ipHigh = 0;
+                        ipLow &= 0xFFFFFFFFL;
+                    }
+                }
+            }
+        }
+        return ipVersion;
+    }
+
+    /**
+     * @return старшие 64 бита адреса IPv6 или 0
+     */
+    public long ipHigh() {
+        ipVersion();
+        return ipHigh;
+    }
+
+    /**
+     * @return младшие 64 бита адреса IPv6 или адрес IPv4 числом без знака
+     */
+    public long ipLow() {
+        ipVersion();
+        return ipLow;
+    }
+
+    /**
+     * @return адрес IPv4 клиента числом без знака или -1, если адрес не IPv4
+     */
+    long ipv4() {
+        return ipVersion() == 4 ? ipLow : -1;
+    }
+
+    /**
+     * Сравнивает адрес клиента со строкой без создания подстроки
+     */
+    boolean ipEquals(String address) {
+        if (ipEnd == 0 || ipEnd - ipStart != address.length()) {
+            return false;
+        }
+        return regionMatches(ipStart, address);
+    }
+
+    /**
+     * Проверяет, можно ли построить из строки запись; при необходимости декодирует время
+     * @return причина, по которой строка не подходит, или null
+     */
+    public MalformedReason validate() {
+        if (timeStart < 0) {
+            return MalformedReason.MISSING_TIME;
+        }
+        return epochSecond() == NO_TIME ? MalformedReason.INVALID_TIME : null;
+    }
+
+    /**
+     * @return время запроса в секундах от 1970-01-01T00:00Z с учётом смещения из строки
+     * или {@link #NO_TIME}, если его нет в строке или оно записано неверно
+     */
+    public long epochSecond() {
+        if (!timeDecoded) {
+            epochSecond = timeStart >= 0 ? decodeTime(timeStart, timeEnd) : NO_TIME;
+            timeDecoded = true;
+        }
+        return epochSecond;
+    }
+
+    // Если текст времени до секунд и смещение совпадают с предыдущей строкой, время считается от начала её минуты
+    private long decodeTime(int start, int end) {
+        if (end - start != TIME_LENGTH) {
+            return NO_TIME;
+        }
+        if (cachedMinute != NO_TIME && matchesCachedMinute(start)) {
+            int second = parseDigits(start + SECOND_POSITION, 2);
+            return second >= 0 && second <= 59 ? cachedMinute + second : NO_TIME;
+        }
+        long time = parseTime(start);
+        // 24:00:00 допустимо только с нулевыми секундами, поэтому такая минута не запоминается
+        if (time != NO_TIME && parseDigits(start + 12, 2) != 24) {
+            for (int i = 0; i < TIME_LENGTH; i++) {
+                cachedTime[i] = line.charAt(start + i);
+            }
+            cachedMinute = time - parseDigits(start + SECOND_POSITION, 2);
+        }
+        return time;
+    }
+
+    private boolean matchesCachedMinute(int start) {
+        // Сначала минуты и часы: они меняются чаще остального
+        for (int i = SECOND_POSITION - 1; i >= 0; i--) {
+            if (line.charAt(start + i) != cachedTime[i]) {
+                return false;
+            }
+        }
+        for (int i = SECOND_POSITION + 2; i < TIME_LENGTH; i++) {
+            if (line.charAt(start + i) != cachedTime[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Время вида 25/Sep/2022:06:25:04 +0300 без исключений и промежуточных объектов. Число месяца за концом
+    // месяца сдвигается на последний день, 24:00:00 - на начало следующих суток, как при разборе
+    // DateTimeFormatter в режиме SMART
+    private long parseTime(int start) {
+        if (line.charAt(start + 2) != '/' || line.charAt(start + 6) != '/' || line.charAt(start + 11) != ':'
+                || line.charAt(start + 14) != ':' || line.charAt(start + 17) != ':' || line.charAt(start + 20) != ' ') {
+            return NO_TIME;
+        }
+        int day = parseDigits(start, 2);
+        int month = parseMonth(start + 3);
+        int year = parseDigits(start + 7, 4);
+        int hour = parseDigits(start + 12, 2);
+        int minute = parseDigits(start + 15, 2);
+        int second = parseDigits(start + 18, 2);
+        char sign = line.charAt(start + 21);
+        int offsetHours = parseDigits(start + 22, 2);
+        int offsetMinutes = parseDigits(start + 24, 2);
+        if (day < 1 || day > 31 || month < 1 || year < 1 || hour < 0 || hour > 24 || minute < 0 || minute > 59
+                || second < 0 || second > 59 || (sign != '+' && sign != '-')
+                || offsetHours < 0 || offsetMinutes < 0 || offsetMinutes > 59 || offsetHours * 60 + offsetMinutes > 18 * 60) {
+            return NO_TIME;
+        }
+        if (hour == 24 && (minute != 0 || second != 0)) {
+            return NO_TIME;
+        }
+        day = Math.min(day, Month.of(month).length(Year.isLeap(year)));
+        int offset = (offsetHours * 3600 + offsetMinutes * 60) * (sign == '-' ? -1 : 1);
+        return epochDay(year, month, day) * 86400 + hour * 3600 + minute * 60 + second - offset;
+    }
+
+    /**
+     * Номер дня от 1970-01-01 по григорианскому календарю, как {@link java.time.LocalDate#toEpochDay()},
+     * но без создания даты
+     */
+    static long epochDay(int year, int month, int day) {
+        // Год считается с марта, чтобы 29 февраля было последним днём года
+        int shiftedYear = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(shiftedYear, 400);
+        int yearOfEra = shiftedYear - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    // Число из count цифр или -1
+    private int parseDigits(int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = line.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    // Номер месяца по трём буквам английского названия (Jan, Feb, ...) или -1
+    private int parseMonth(int start) {
+        char c0 = line.charAt(start);
+        char c1 = line.charAt(start + 1);
+        char c2 = line.charAt(start + 2);
+        for (int i = 0; i < MONTHS.length(); i += 3) {
+            if (MONTHS.charAt(i) == c0 && MONTHS.charAt(i + 1) == c1 && MONTHS.charAt(i + 2) == c2) {
+                return i / 3 + 1;
+            }
+        }
+        return -1;
+    }
+
+    public HttpMethod method() {
+        return methodStart >= 0 ? HttpMethod.of(line, methodStart, methodEnd) : HttpMethod.UNKNOWN;
+    }
+
+    public String path() {
+        return pathStart >= 0 ? line.subSequence(pathStart, pathEnd).toString() : "";
+    }
+
+    /**
+     * Проверяет начало пути без создания подстроки; префикс не из ASCII сравнивается с декодированным путём,
+     * так как строка может быть байтами UTF-8
+     */
+    boolean pathStartsWith(String prefix) {
+        if (pathStart < 0) {
+            return prefix.isEmpty();
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (prefix.charAt(i) >= 0x80) {
+                return path().startsWith(prefix);
+            }
+        }
+        return pathEnd - pathStart >= prefix.length() && regionMatches(pathStart, prefix);
+    }
+
+    /**
+     * @return код ответа или -1, если его не удалось найти
+     */
+    public int statusCode() {
+        return statusCode;
+    }
+
+    public String responseCode() {
+        return responseCode(statusCode);
+    }
+
+    /**
+     * @return код ответа строкой из трёх цифр или пустая строка для -1
+     */
+    static String responseCode(int statusCode) {
+        return statusCode >= 0 ? STATUS_STRINGS[statusCode] : "";
+    }
+
+    public int responseSize() {
+        return responseSize;
+    }
+
+    public String referer() {
+        return quotedField(refererStart, refererEnd);
+    }
+
+    public String userAgent() {
+        return quotedField(userAgentStart, userAgentEnd);
+    }
+
+    /**
+     * @return классифицированный через общий кэш User-Agent; классифицируется один раз на строку
+     */
+    UserAgent parsedUserAgent() {
+        if (decodedUserAgent == null) {
+            decodedUserAgent = UserAgentCache.shared().get(userAgent());
+        }
+        return decodedUserAgent;
+    }
+
+    /**
+     * @return значение X-Forwarded-For или пустая строка, если его нет в формате или в строке
+     */
+    public String forwardedFor() {
+        return quotedField(forwardedForStart, forwardedForEnd);
+    }
+
+    /**
+     * @return длительность обработки запроса в микросекундах или -1, если её нет
+     */
+    public long requestTimeMicros() {
+        return requestTimeMicros;
+    }
+
+    /**
+     * @return суммарное время ответа upstream в микросекундах или -1, если его нет
+     */
+    public long upstreamResponseTimeMicros() {
+        return upstreamResponseTimeMicros;
+    }
+
+    private String quotedField(int start, int end) {
+        if (start < 0 || end == start) {
+            return "";
+        }
+        if (end - start == 1 && line.charAt(start) == '-') {
+            return "";
+        }
+        return line.subSequence(start, end).toString();
+    }
+
+    private boolean regionMatches(int start, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (line.charAt(start + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int skipWhitespace(int pos) {
+        while (pos < length && isWhitespace(line.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isUpperLetter(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == 0x0B;
+    }
+}
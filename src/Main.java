@@ -1,10 +1,24 @@
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
 import java.util.Scanner;
 import java.io.File;
-import java.io.FileReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 public class Main {
+    // Сколько самых частых страниц, клиентов и источников выводить в отчёте
+    private static final int TOP_SIZE = 10;
+    // Квантили распределения из меньшего числа значений не выводятся: p99 по десятку ответов - это максимум
+    private static final long MIN_QUANTILE_SAMPLES = 100;
 
     public static class LineTooLongException extends RuntimeException {
         public LineTooLongException(String message) {
@@ -13,53 +27,424 @@ public class Main {
     }
 
     public static void processAccessLog(String path) {
-        Statistics statistics = new Statistics();
-        int totalLines = 0;
+        processAccessLog(path, 1);
+    }
+
+    // Построчное чтение через Reader для файлов, которые нельзя отобразить в память (каналы, устройства)
+    private static ProcessingResult processWithReader(String path) throws IOException {
+        ProcessingResult result = new ProcessingResult();
+        Statistics statistics = result.getStatistics();
+        LogTokenizer tokenizer = new LogTokenizer();
+        LogFilter filter = LogFilter.getConfigured();
+
+        Quarantine quarantine = Quarantine.getConfigured();
+        SegmentStore.Writer store = SegmentStore.getConfiguredWriter();
 
         try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
             String line;
+            // Смещение считается в символах: Reader уже декодировал байты
+            long position = 0;
             while ((line = reader.readLine()) != null) {
-                // Проверка на максимальную длину строки
+                long lineStart = position;
+                position += line.length() + 1;
+                result.countLine();
+                ProcessingMetrics.global().countLine(line.length() + 1);
+
+                LogEntry entry = null;
+                MalformedReason reason;
                 if (line.length() > 1024) {
-                    throw new LineTooLongException(
-                            "Строка #" + (totalLines + 1) + " превышает максимально допустимую длину 1024 символа."
-                    );
+                    reason = MalformedReason.LINE_TOO_LONG;
+                    line = line.substring(0, 1024);
+                } else {
+                    try {
+                        LogTokenizer tokens = tokenizer.tokenize(line);
+                        if (!filter.test(tokens)) {
+                            continue;
+                        }
+                        reason = tokens.validate();
+                        if (reason == null) {
+                            entry = new LogEntry(tokens);
+                        }
+                    } catch (RuntimeException e) {
+                        reason = MalformedReason.UNEXPECTED;
+                    }
+                }
+                if (entry == null) {
+                    ProcessingMetrics.global().countMalformed(reason);
+                    quarantine.record(path, lineStart, reason, line);
+                    continue;
+                }
+                if (store != null) {
+                    store.add(entry);
                 }
+                statistics.addEntry(entry);
+            }
+        }
+        return result;
+    }
 
-                totalLines++;
+    /**
+     * Разбирает файл и выводит статистику; обычные файлы читаются через отображение в память
+     * в заданном числе потоков
+     * @return результат обработки или null, если файл не удалось прочитать
+     */
+    public static ProcessingResult processAccessLog(String path, int threads) {
+        return processAccessLog(path, threads, null);
+    }
 
-                try {
-                    LogEntry entry = new LogEntry(line);
-                    statistics.addEntry(entry);
+    /**
+     * То же, но при заданном конвейере файл любого типа разбирается им
+     * @param pipeline конвейер чтения, разбора и агрегации или null
+     */
+    public static ProcessingResult processAccessLog(String path, int threads, LogPipeline pipeline) {
+        try {
+            ProcessingResult result;
+            if (pipeline != null) {
+                result = pipeline.process(path);
+            } else if (Files.isRegularFile(Path.of(path))) {
+                result = new ParallelLogProcessor(threads).process(path);
+            } else {
+                result = processWithReader(path);
+            }
 
+            // Вывод результатов
+            printStatistics(result.getTotalLines(), result.getStatistics());
+            return result;
+        } catch (IOException e) {
+            System.err.println("Ошибка при чтении файла: " + e.getMessage());
+            e.printStackTrace();
+            return null;
+        } catch (MalformedLineException e) {
+            System.err.println(e.getMessage());
+            return null;
+        }
+    }
 
-                } catch (Exception e) {
-                    System.err.println("Ошибка при обработке строки #" + totalLines + ": " + e.getMessage());
-                }
+    private static void printStatistics(long totalLines, Statistics statistics) {
+        printStatistics(System.out, totalLines, statistics);
+
+        ProcessingMetrics metrics = ProcessingMetrics.global();
+        if (metrics.getMalformedLines() > 0) {
+            System.out.println("Ошибок разбора по причинам: " + metrics.getMalformedLinesByReason());
+        }
+
+        UserAgentCache cache = UserAgentCache.shared();
+        System.out.printf("Кэш User-Agent: попаданий %d, промахов %d, доля попаданий %.2f%%\n",
+                cache.getHits(), cache.getMisses(), cache.getHitRate() * 100);
+    }
+
+    // Отчёт по одной статистике, без общих для процесса метрик
+    private static void printStatistics(PrintStream out, long totalLines, Statistics statistics) {
+        out.println("Общее количество строк в файле: " + totalLines);
+        out.println("Успешно обработано записей: " + statistics.getEntryCount());
+        out.println("Общий трафик: " + statistics.getTotalTraffic() + " bytes");
+        out.println("Период логов (UTC): от " + statistics.getMinTime() + " до " + statistics.getMaxTime());
+        out.printf("Средний часовой трафик: %.2f bytes/hour\n", statistics.getTrafficRate());
+        out.println("Существующие страницы (топ " + TOP_SIZE + ") " + statistics.getTopExistingPages(TOP_SIZE));
+        out.println("Статистика ОС " + statistics.getOperatingSystemStatistics().toString());
+        out.println("Неуществующие страницы (топ " + TOP_SIZE + ") " + statistics.getTopNonExistentPages(TOP_SIZE));
+        out.println("Статистика браузеров " + statistics.getBrowserStatistics().toString());
+        out.println("Самые активные клиенты (топ " + TOP_SIZE + ") " + statistics.getTopClients(TOP_SIZE));
+        out.println("Источники переходов (топ " + TOP_SIZE + ") " + statistics.getTopReferers(TOP_SIZE));
+
+        out.println("Cреднее количество посещений сайта за час " + statistics.getAverageVisitsPerHour());
+        out.println("Cреднее количество ошибочных запросов в час " + statistics.getAverageErrorRequestsPerHour());
+        out.println("Cредняя посещаемость одним пользователем " + statistics.getAverageVisitsPerUser());
+        out.println("Наибольшая посещаемость одним пользователем " + statistics.getMaxVisitsPerUser());
+        printResponseSizes(out, statistics);
+        if (!Double.isNaN(statistics.getRequestTimeQuantile(0.5))) {
+            out.printf("Длительность запроса: медиана %.3f, p95 %.3f, p99 %.3f с\n",
+                    statistics.getRequestTimeQuantile(0.5), statistics.getRequestTimeQuantile(0.95),
+                    statistics.getRequestTimeQuantile(0.99));
+        }
+        if (!Double.isNaN(statistics.getUpstreamResponseTimeQuantile(0.5))) {
+            out.printf("Время ответа upstream: медиана %.3f, p95 %.3f, p99 %.3f с\n",
+                    statistics.getUpstreamResponseTimeQuantile(0.5), statistics.getUpstreamResponseTimeQuantile(0.95),
+                    statistics.getUpstreamResponseTimeQuantile(0.99));
+        }
+        out.printf("Уникальных IP-адресов не-ботов: %d (за последние сутки %d, погрешность оценки %.1f%%)\n",
+                statistics.getUniqueNonBotIps(), statistics.getRecentUniqueNonBotIps(Duration.ofDays(1)),
+                statistics.getUniqueNonBotIpsError() * 100);
+        printRecent(out, statistics, "За последние 5 минут", Duration.ofMinutes(5));
+        printRecent(out, statistics, "За последний час", Duration.ofHours(1));
+        printRecent(out, statistics, "За последние сутки", Duration.ofDays(1));
+    }
+
+    private static void printResponseSizes(PrintStream out, Statistics statistics) {
+        out.printf("Размер ответа: медиана %.0f, p95 %.0f, p99 %.0f bytes\n",
+                statistics.getResponseSizeQuantile(0.5), statistics.getResponseSizeQuantile(0.95),
+                statistics.getResponseSizeQuantile(0.99));
+        for (int statusClass = 1; statusClass <= 5; statusClass++) {
+            if (statistics.getResponseSizeCount(statusClass) >= MIN_QUANTILE_SAMPLES) {
+                out.printf("  %dxx: медиана %.0f, p95 %.0f, p99 %.0f bytes\n", statusClass,
+                        statistics.getResponseSizeQuantile(statusClass, 0.5),
+                        statistics.getResponseSizeQuantile(statusClass, 0.95),
+                        statistics.getResponseSizeQuantile(statusClass, 0.99));
+            }
+        }
+        for (SpaceSaving.Entry page : statistics.getTopSizedPaths(TOP_SIZE)) {
+            if (statistics.getPathResponseSizeCount(page.getKey()) < MIN_QUANTILE_SAMPLES) {
+                continue;
             }
+            out.printf("  %s: медиана %.0f, p95 %.0f, p99 %.0f bytes\n", page.getKey(),
+                    statistics.getPathResponseSizeQuantile(page.getKey(), 0.5),
+                    statistics.getPathResponseSizeQuantile(page.getKey(), 0.95),
+                    statistics.getPathResponseSizeQuantile(page.getKey(), 0.99));
+        }
+    }
 
-            // Вывод результатов
-            System.out.println("Общее количество строк в файле: " + totalLines);
-            System.out.println("Успешно обработано записей: " + statistics.getEntryCount());
-            System.out.println("Общий трафик: " + statistics.getTotalTraffic() + " bytes");
-            System.out.println("Период логов: от " + statistics.getMinTime() + " до " + statistics.getMaxTime());
-            System.out.printf("Средний часовой трафик: %.2f bytes/hour\n", statistics.getTrafficRate());
-            System.out.println("Существующие страницы " + statistics.getExistingPages().toString());
-            System.out.println("Статистика ОС " + statistics.getOperatingSystemStatistics().toString());
-            System.out.println("Неуществующие страницы " + statistics.getNonExistentPages().toString());
-            System.out.println("Статистика браузеров " + statistics.getBrowserStatistics().toString());
-
-            System.out.println("Cреднее количество посещений сайта за час " + statistics.getAverageVisitsPerHour());
-            System.out.println("Cреднее количество ошибочных запросов в час " + statistics.getAverageErrorRequestsPerHour());
-            System.out.println("Cредняя посещаемость одним пользователем " + statistics.getAverageVisitsPerUser());
+    private static void printRecent(PrintStream out, Statistics statistics, String title, Duration window) {
+        out.println(title + ": запросов " + statistics.getRecent(TimeBuckets.Metric.REQUESTS, window)
+                + ", посещений " + statistics.getRecent(TimeBuckets.Metric.NON_BOT_VISITS, window)
+                + ", ошибок " + statistics.getRecent(TimeBuckets.Metric.ERRORS, window)
+                + ", трафик " + statistics.getRecent(TimeBuckets.Metric.BYTES, window) + " bytes");
+    }
 
+    /**
+     * Режим слежения: дописываемые строки добавляются в статистику, которая периодически выводится
+     */
+    private static void follow(Options options) {
+        Path path = Path.of(options.getFollowPath());
+        LogFollower follower = new LogFollower(path, Path.of(options.getCheckpointPath()), options.getPollIntervalMillis());
+        try {
+            follower.run(options.getReportIntervalSeconds() * 1000, result -> {
+                printStatistics(result.getTotalLines(), result.getStatistics());
+                saveSnapshot(options, result.getStatistics());
+            });
         } catch (IOException e) {
             System.err.println("Ошибка при чтении файла: " + e.getMessage());
             e.printStackTrace();
         }
     }
 
+    /**
+     * Приём строк по syslog: статистика накапливается по мере поступления сообщений и периодически выводится
+     */
+    private static void listen(Options options) {
+        try (SyslogListener listener = new SyslogListener(options.getListenUdp(), options.getListenTcp(),
+                options.getThreads())) {
+            System.err.println("Приём syslog: UDP " + listener.getUdpAddress() + ", TCP " + listener.getTcpAddress());
+            listener.run(options.getReportIntervalSeconds() * 1000, result -> {
+                printStatistics(result.getTotalLines(), result.getStatistics());
+                System.out.println("Принято сообщений: " + listener.getMessages()
+                        + ", отброшено при перегрузке: " + listener.getDroppedMessages());
+                saveSnapshot(options, result.getStatistics());
+            });
+        } catch (IOException e) {
+            System.err.println("Ошибка приёма syslog: " + e.getMessage());
+        } catch (MalformedLineException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Объединяет снимки статистики, снятые на разных узлах, и выводит общий отчёт
+     */
+    private static void mergeSnapshots(Options options) {
+        Statistics merged = new Statistics();
+        try {
+            for (String snapshot : options.getLoadSnapshotPaths()) {
+                merged.merge(StatisticsSnapshot.load(Path.of(snapshot)));
+            }
+        } catch (IOException e) {
+            System.err.println("Ошибка при чтении снимка статистики: " + e.getMessage());
+            return;
+        }
+        printStatistics(merged.getEntryCount(), merged);
+        saveSnapshot(options, merged);
+    }
+
+    /**
+     * Пакетный режим: разбирает все файлы из каталогов и шаблонов --batch и выводит общий отчёт;
+     * отчёты по отдельным файлам пишутся в каталог --per-file-reports или в stdout
+     */
+    private static void batch(Options options) {
+        try {
+            List<Path> files = BatchProcessor.expand(options.getBatchPaths());
+            if (files.isEmpty()) {
+                System.err.println("Не найдено ни одного файла: " + options.getBatchPaths());
+                return;
+            }
+            String reports = options.getPerFileReports();
+            if (reports != null && !reports.equals("-")) {
+                Files.createDirectories(Path.of(reports));
+            }
+            Set<String> reportNames = new HashSet<>();
+            ProcessingResult result = new BatchProcessor(options.getBatchThreads()).process(files,
+                    reports == null ? null : (file, fileResult) -> printFileReport(reports, reportNames, file, fileResult));
+
+            System.out.println("Обработано файлов: " + files.size());
+            printStatistics(result.getTotalLines(), result.getStatistics());
+            saveSnapshot(options, result.getStatistics());
+            flushStore();
+        } catch (IOException e) {
+            System.err.println("Ошибка при чтении файлов: " + e.getMessage());
+        } catch (MalformedLineException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    // Отчёт по файлу; одноимённые файлы из разных каталогов получают номер в имени отчёта
+    private static void printFileReport(String reports, Set<String> reportNames, Path file, ProcessingResult result) {
+        if (reports.equals("-")) {
+            System.out.println("=== " + file + " ===");
+            printStatistics(System.out, result.getTotalLines(), result.getStatistics());
+            return;
+        }
+        String name = file.getFileName() + ".report.txt";
+        for (int i = 1; !reportNames.add(name); i++) {
+            name = file.getFileName() + "." + i + ".report.txt";
+        }
+        try (PrintStream out = new PrintStream(Files.newOutputStream(Path.of(reports, name)), false, "UTF-8")) {
+            out.println("Файл: " + file);
+            printStatistics(out, result.getTotalLines(), result.getStatistics());
+        } catch (IOException e) {
+            System.err.println("Ошибка при записи отчёта по файлу " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Отчёт за интервал --from/--to по хранилищу разобранных записей без разбора логов
+     */
+    private static void queryStore(Options options) {
+        try {
+            SegmentStore.Report report = SegmentStore.report(Path.of(options.getStoreQueryPath()),
+                    options.getFrom(), options.getTo(), options.getStoreStatuses());
+            System.out.println("Сегментов: " + report.getSegments() + ", пропущено по заголовку " + report.getSkipped()
+                    + ", из свёрток " + report.getRolledUp() + ", прочитано построчно " + report.getScanned());
+            Statistics statistics = report.getStatistics();
+            printStatistics(statistics.getEntryCount(), statistics);
+            saveSnapshot(options, statistics);
+        } catch (IOException e) {
+            System.err.println("Ошибка при чтении хранилища: " + e.getMessage());
+        }
+    }
+
+    private static void saveSnapshot(Options options, Statistics statistics) {
+        if (options.getSaveSnapshotPath() == null) {
+            return;
+        }
+        try {
+            StatisticsSnapshot.save(statistics, Path.of(options.getSaveSnapshotPath()));
+        } catch (IOException e) {
+            System.err.println("Ошибка при сохранении снимка статистики: " + e.getMessage());
+        }
+    }
+
+    // Файл карантина дописывается до выхода из программы, в том числе по Ctrl+C в интерактивном режиме
+    private static void configureQuarantine(Options options) {
+        Path file = options.getQuarantinePath() != null ? Path.of(options.getQuarantinePath()) : null;
+        Quarantine quarantine;
+        try {
+            quarantine = Quarantine.open(options.getMalformedPolicy(), file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть файл карантина: " + e.getMessage(), e);
+        }
+        Quarantine.configure(quarantine);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                quarantine.close();
+            } catch (IOException e) {
+                System.err.println("Ошибка при записи файла карантина: " + e.getMessage());
+            }
+        }));
+    }
+
+    // Накопленные сегменты дописываются после каждого файла и при выходе из программы
+    private static void configureStore(Options options) {
+        if (options.getStorePath() == null) {
+            return;
+        }
+        SegmentStore.Writer store;
+        try {
+            store = SegmentStore.openWriter(Path.of(options.getStorePath()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть хранилище: " + e.getMessage(), e);
+        }
+        SegmentStore.configure(store);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                store.close();
+            } catch (IOException e) {
+                System.err.println("Ошибка при записи хранилища: " + e.getMessage());
+            }
+        }));
+    }
+
+    private static void flushStore() {
+        SegmentStore.Writer store = SegmentStore.getConfiguredWriter();
+        if (store == null) {
+            return;
+        }
+        try {
+            store.flush();
+        } catch (IOException e) {
+            System.err.println("Ошибка при записи хранилища: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Периодически выводит в stderr строку прогресса со скоростью за последний интервал
+     */
+    private static void startProgressReporter(long intervalSeconds) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ProcessingMetrics metrics = ProcessingMetrics.global();
+        long[] previousLines = {metrics.getLinesRead()};
+        scheduler.scheduleAtFixedRate(() -> {
+            long lines = metrics.getLinesRead();
+            System.err.println(metrics.formatProgress((double) (lines - previousLines[0]) / intervalSeconds));
+            previousLines[0] = lines;
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
     public static void main(String[] args) {
+        Options options = Options.parse(args);
+        if (options.getLogFormat() != null) {
+            LogFormat.configure(LogFormat.compile(options.getLogFormat()));
+        }
+        LogFilter filter = LogFilter.all();
+        for (String expression : options.getFilters()) {
+            filter = filter.and(LogFilter.parse(expression));
+        }
+        LogFilter.configure(filter);
+        // Ошибку в файле правил User-Agent выводим до начала разбора, а не на первой строке лога
+        try {
+            UserAgentRules.getDefault();
+        } catch (UncheckedIOException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+        configureQuarantine(options);
+        configureStore(options);
+        ProcessingMetrics.registerMBean();
+        if (options.getProgressIntervalSeconds() > 0) {
+            startProgressReporter(options.getProgressIntervalSeconds());
+        }
+        if (!options.getLoadSnapshotPaths().isEmpty()) {
+            mergeSnapshots(options);
+            return;
+        }
+        if (options.getStoreQueryPath() != null) {
+            queryStore(options);
+            return;
+        }
+        if (options.getListenUdp() != null || options.getListenTcp() != null) {
+            listen(options);
+            return;
+        }
+        if (options.getFollowPath() != null) {
+            follow(options);
+            return;
+        }
+        if (!options.getBatchPaths().isEmpty()) {
+            batch(options);
+            return;
+        }
+
         Scanner scanner = new Scanner(System.in);
         int correctFileCount = 0;
 
@@ -83,7 +468,11 @@ public class Main {
             System.out.println("Это файл номер " + correctFileCount);
 
             try {
-                processAccessLog(filePath);
+                ProcessingResult result = processAccessLog(filePath, options.getThreads(), options.getPipeline());
+                if (result != null) {
+                    saveSnapshot(options, result.getStatistics());
+                }
+                flushStore();
             } catch (Exception ex) {
                 ex.printStackTrace();
             }
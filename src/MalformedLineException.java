@@ -0,0 +1,13 @@
+// Исключение для прерывания обработки файла на первой испорченной строке (политика ABORT)
+class MalformedLineException extends RuntimeException {
+    private final MalformedReason reason;
+
+    public MalformedLineException(String message, MalformedReason reason) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public MalformedReason getReason() {
+        return reason;
+    }
+}
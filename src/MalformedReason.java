@@ -0,0 +1,14 @@
+/**
+ * Причина, по которой строка лога не превращается в запись статистики.
+ * Ожидаемые нарушения формата определяются разбором без исключений и сообщаются этим кодом.
+ */
+public enum MalformedReason {
+    // Строка длиннее максимально допустимой
+    LINE_TOO_LONG,
+    // В строке нет времени запроса
+    MISSING_TIME,
+    // Время запроса не в формате dd/MMM/yyyy:HH:mm:ss Z или вне допустимых значений
+    INVALID_TIME,
+    // Непредвиденная ошибка при обработке строки
+    UNEXPECTED
+}
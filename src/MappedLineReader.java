@@ -0,0 +1,131 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Чтение строк из отображённого в память файла.
+ * Файл отображается сегментами, поэтому поддерживаются файлы больше 2 ГБ;
+ * границы строк ищутся прямо в байтах, а каждая строка передаётся обработчику
+ * как область буфера без декодирования в {@link String}.
+ */
+public class MappedLineReader {
+    // Размер одного отображаемого сегмента; строка, не поместившаяся в сегмент, переносится в следующий
+    private static final long SEGMENT_SIZE = 64L << 20;
+
+    private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+    private static final long LOW_BITS = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private final FileChannel channel;
+    private final int maxLineLength;
+    private final long segmentSize;
+
+    /**
+     * @param maxLineLength максимальная длина строки в байтах без перевода строки
+     */
+    public MappedLineReader(FileChannel channel, int maxLineLength) {
+        this(channel, maxLineLength, SEGMENT_SIZE);
+    }
+
+    /**
+     * @param segmentSize размер отображаемого сегмента, больше строки максимальной длины с '\r' и '\n';
+     *                    маленькие сегменты нужны, чтобы проверять их границы без файлов в сотни мегабайт
+     */
+    MappedLineReader(FileChannel channel, int maxLineLength, long segmentSize) {
+        if (segmentSize <= maxLineLength + 2L) {
+            throw new IllegalArgumentException("Сегмент меньше максимальной длины строки: " + segmentSize);
+        }
+        this.channel = channel;
+        this.maxLineLength = maxLineLength;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Передаёт обработчику все строки, начинающиеся в диапазоне [start, end).
+     * Диапазон должен начинаться с начала строки. Строка длиннее допустимой передаётся
+     * в {@link LineHandler#onLineTooLong} и пропускается до следующего перевода строки.
+     */
+    public void read(long start, long end, LineHandler handler) throws IOException {
+        long segmentStart = start;
+        // Продолжение слишком длинной строки, начавшейся в предыдущем сегменте
+        boolean skipping = false;
+        while (segmentStart < end) {
+            long mappedSize = Math.min(segmentSize, end - segmentStart);
+            boolean lastSegment = segmentStart + mappedSize >= end;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, mappedSize);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+            int limit = (int) mappedSize;
+            int lineStart = 0;
+            if (skipping) {
+                int newline = indexOfNewline(buffer, 0, limit);
+                if (newline < 0) {
+                    segmentStart += limit;
+                    continue;
+                }
+                skipping = false;
+                lineStart = newline + 1;
+            }
+            while (lineStart < limit) {
+                // Перевод строки ищем не дальше максимальной длины строки и возможного '\r'
+                int searchEnd = (int) Math.min(limit, (long) lineStart + maxLineLength + 2);
+                int newline = indexOfNewline(buffer, lineStart, searchEnd);
+                if (newline < 0) {
+                    if (searchEnd < limit) {
+                        handler.onLineTooLong(buffer, lineStart, maxLineLength, segmentStart + lineStart);
+                        int next = indexOfNewline(buffer, searchEnd, limit);
+                        if (next < 0) {
+                            skipping = true;
+                            lineStart = limit;
+                            break;
+                        }
+                        lineStart = next + 1;
+                        continue;
+                    }
+                    if (!lastSegment) {
+                        break;
+                    }
+                    // Последняя строка файла без перевода строки
+                    emit(buffer, lineStart, limit, segmentStart, handler);
+                    lineStart = limit;
+                    break;
+                }
+                emit(buffer, lineStart, newline, segmentStart, handler);
+                lineStart = newline + 1;
+            }
+            segmentStart += lineStart;
+        }
+    }
+
+    private void emit(MappedByteBuffer buffer, int from, int to, long segmentStart, LineHandler handler) {
+        int length = to - from;
+        if (length > 0 && buffer.get(to - 1) == '\r') {
+            length--;
+        }
+        if (length > maxLineLength) {
+            handler.onLineTooLong(buffer, from, maxLineLength, segmentStart + from);
+            return;
+        }
+        handler.onLine(buffer, from, length, segmentStart + from);
+    }
+
+    // Поиск '\n' по восемь байт за раз с побайтовой проверкой хвоста; буфер должен быть в порядке LITTLE_ENDIAN
+    static int indexOfNewline(ByteBuffer buffer, int from, int to) {
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            long word = buffer.getLong(i) ^ NEWLINES;
+            long found = (word - LOW_BITS) & ~word & HIGH_BITS;
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (buffer.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,304 @@
+import java.net.InetSocketAddress;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Параметры запуска из командной строки
+ */
+public class Options {
+    // null, если --threads не указан
+    private Integer threads;
+    private String followPath;
+    private String checkpointPath;
+    private long pollIntervalMillis = 1000;
+    private long reportIntervalSeconds = 60;
+    private long progressIntervalSeconds;
+    private String logFormat;
+    private String saveSnapshotPath;
+    private final List<String> loadSnapshotPaths = new ArrayList<>();
+    private final List<String> batchPaths = new ArrayList<>();
+    private String perFileReports;
+    private final List<String> filters = new ArrayList<>();
+    private Quarantine.Policy malformedPolicy = Quarantine.Policy.SKIP;
+    private String quarantinePath;
+    private boolean pipeline;
+    private int pipelineBatchSize = LogPipeline.DEFAULT_BATCH_SIZE;
+    private int pipelineQueueDepth = LogPipeline.DEFAULT_QUEUE_DEPTH;
+    private String storePath;
+    private String storeQueryPath;
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private String storeStatuses;
+    private InetSocketAddress listenUdp;
+    private InetSocketAddress listenTcp;
+
+    /**
+     * Разбирает аргументы вида --имя значение
+     * @throws IllegalArgumentException при неизвестном параметре или отсутствии значения
+     */
+    public static Options parse(String[] args) {
+        Options options = new Options();
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Не указано значение параметра " + name);
+            }
+            String value = args[++i];
+            switch (name) {
+                case "--threads":
+                    int threads = Integer.parseInt(value);
+                    options.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+                    break;
+                case "--follow":
+                    options.followPath = value;
+                    break;
+                case "--checkpoint":
+                    options.checkpointPath = value;
+                    break;
+                case "--poll-interval":
+                    options.pollIntervalMillis = Long.parseLong(value);
+                    break;
+                case "--report-interval":
+                    options.reportIntervalSeconds = Long.parseLong(value);
+                    break;
+                case "--log-format":
+                    options.logFormat = value;
+                    break;
+                case "--progress":
+                    options.progressIntervalSeconds = Long.parseLong(value);
+                    break;
+                case "--save-snapshot":
+                    options.saveSnapshotPath = value;
+                    break;
+                case "--load-snapshot":
+                    options.loadSnapshotPaths.add(value);
+                    break;
+                case "--batch":
+                    options.batchPaths.add(value);
+                    break;
+                case "--on-malformed":
+                    options.malformedPolicy = Quarantine.Policy.valueOf(value.toUpperCase());
+                    break;
+                case "--quarantine":
+                    options.quarantinePath = value;
+                    break;
+                case "--filter":
+                    options.filters.add(value);
+                    break;
+                case "--per-file-reports":
+                    options.perFileReports = value;
+                    break;
+                case "--pipeline":
+                    if (!value.equals("true") && !value.equals("false")) {
+                        throw new IllegalArgumentException("--pipeline принимает значения true или false: " + value);
+                    }
+                    options.pipeline = Boolean.parseBoolean(value);
+                    break;
+                case "--pipeline-batch-size":
+                    options.pipelineBatchSize = Integer.parseInt(value);
+                    break;
+                case "--pipeline-queue-depth":
+                    options.pipelineQueueDepth = Integer.parseInt(value);
+                    break;
+                case "--store":
+                    options.storePath = value;
+                    break;
+                case "--store-query":
+                    options.storeQueryPath = value;
+                    break;
+                case "--from":
+                    options.from = LocalDateTime.parse(value);
+                    break;
+                case "--to":
+                    options.to = LocalDateTime.parse(value);
+                    break;
+                case "--store-status":
+                    options.storeStatuses = value;
+                    break;
+                case "--listen-udp":
+                    options.listenUdp = parseAddress(value);
+                    break;
+                case "--listen-tcp":
+                    options.listenTcp = parseAddress(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Неизвестный параметр " + name);
+            }
+        }
+        return options;
+    }
+
+    // Адрес вида порт, узел:порт или [IPv6]:порт; без узла - все интерфейсы
+    private static InetSocketAddress parseAddress(String value) {
+        int colon = value.lastIndexOf(':');
+        if (colon < 0) {
+            return new InetSocketAddress(Integer.parseInt(value));
+        }
+        String host = value.substring(0, colon);
+        if (host.startsWith("[") && host.endsWith("]")) {
+            host = host.substring(1, host.length() - 1);
+        }
+        return new InetSocketAddress(host, Integer.parseInt(value.substring(colon + 1)));
+    }
+
+    /**
+     * @return количество потоков разбора одного файла
+     */
+    public int getThreads() {
+        return threads != null ? threads : 1;
+    }
+
+    /**
+     * @return количество потоков пакетного режима; по умолчанию по числу процессоров
+     */
+    public int getBatchThreads() {
+        return threads != null ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * @return путь к файлу для режима слежения или null, если режим не включён
+     */
+    public String getFollowPath() {
+        return followPath;
+    }
+
+    /**
+     * @return путь к файлу контрольной точки; по умолчанию рядом с отслеживаемым файлом
+     */
+    public String getCheckpointPath() {
+        if (checkpointPath == null && followPath != null) {
+            return followPath + ".checkpoint";
+        }
+        return checkpointPath;
+    }
+
+    public long getPollIntervalMillis() {
+        return pollIntervalMillis;
+    }
+
+    public long getReportIntervalSeconds() {
+        return reportIntervalSeconds;
+    }
+
+    /**
+     * @return формат строк лога в синтаксисе nginx log_format или Apache LogFormat, или null для формата combined
+     */
+    public String getLogFormat() {
+        return logFormat;
+    }
+
+    /**
+     * @return как часто выводить строку прогресса, в секундах; 0 - не выводить
+     */
+    public long getProgressIntervalSeconds() {
+        return progressIntervalSeconds;
+    }
+
+    /**
+     * @return файл, в который сохраняется снимок статистики, или null
+     */
+    public String getSaveSnapshotPath() {
+        return saveSnapshotPath;
+    }
+
+    /**
+     * @return снимки статистики для объединения; параметр --load-snapshot можно указать несколько раз
+     */
+    public List<String> getLoadSnapshotPaths() {
+        return loadSnapshotPaths;
+    }
+
+    /**
+     * @return каталоги, файлы и glob-шаблоны для пакетного режима; параметр --batch можно указать несколько раз
+     */
+    public List<String> getBatchPaths() {
+        return batchPaths;
+    }
+
+    /**
+     * @return каталог для отчётов по отдельным файлам, "-" для вывода их в stdout или null, если они не нужны
+     */
+    public String getPerFileReports() {
+        return perFileReports;
+    }
+
+    /**
+     * @return условия отбора строк вида имя=значение (см. {@link LogFilter#parse(String)});
+     * параметр --filter можно указать несколько раз, условия объединяются через «и»
+     */
+    public List<String> getFilters() {
+        return filters;
+    }
+
+    /**
+     * @return что делать со строкой, которую не удалось разобрать: skip (по умолчанию) или abort
+     */
+    public Quarantine.Policy getMalformedPolicy() {
+        return malformedPolicy;
+    }
+
+    /**
+     * @return файл для строк, которые не удалось разобрать, или null, чтобы сообщать о них в stderr
+     */
+    public String getQuarantinePath() {
+        return quarantinePath;
+    }
+
+    /**
+     * @return конвейер чтения, разбора и агрегации для одного файла с числом разборщиков по --threads
+     * или null, если конвейер не включён параметром --pipeline true
+     */
+    public LogPipeline getPipeline() {
+        return pipeline ? new LogPipeline(getThreads(), pipelineBatchSize, pipelineQueueDepth) : null;
+    }
+
+    /**
+     * @return каталог хранилища {@link SegmentStore}, в который сохраняются разобранные записи, или null
+     */
+    public String getStorePath() {
+        return storePath;
+    }
+
+    /**
+     * @return каталог хранилища, по которому строится отчёт за интервал --from/--to, или null
+     */
+    public String getStoreQueryPath() {
+        return storeQueryPath;
+    }
+
+    /**
+     * @return начало интервала отчёта по хранилищу (ISO по UTC, например 2024-01-01T00:00) или null
+     */
+    public LocalDateTime getFrom() {
+        return from;
+    }
+
+    /**
+     * @return конец интервала отчёта по хранилищу, не включая его, или null
+     */
+    public LocalDateTime getTo() {
+        return to;
+    }
+
+    /**
+     * @return коды ответа для отчёта по хранилищу вида 500,502,5xx или null - все коды
+     */
+    public List<Integer> getStoreStatuses() {
+        return storeStatuses != null ? LogFilter.parseStatusCodes(storeStatuses) : null;
+    }
+
+    /**
+     * @return адрес приёма syslog по UDP ([узел:]порт) или null
+     */
+    public InetSocketAddress getListenUdp() {
+        return listenUdp;
+    }
+
+    /**
+     * @return адрес приёма syslog по TCP ([узел:]порт) или null
+     */
+    public InetSocketAddress getListenTcp() {
+        return listenTcp;
+    }
+}
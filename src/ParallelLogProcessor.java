@@ -0,0 +1,134 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Обработка одного файла лога через отображение в память, при необходимости параллельная.
+ * Сжатые файлы читаются через {@link CompressedLineReader}.
+ * Файл делится на диапазоны байтов, границы которых выровнены по переводам строк,
+ * каждый диапазон разбирается в пуле потоков в собственную статистику,
+ * после чего частичные результаты объединяются через {@link Statistics#merge(Statistics)}.
+ */
+public class ParallelLogProcessor {
+    private static final int MAX_LINE_LENGTH = 1024;
+    // Диапазоны меньше этого размера не делятся дальше, чтобы не тратить время на координацию
+    static final long MIN_CHUNK_SIZE = 1 << 20;
+    // Диапазонов больше, чем потоков, чтобы быстрые потоки забирали работу у медленных
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final int threads;
+
+    public ParallelLogProcessor(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Разбирает файл; сжатые gzip и zstd файлы распаковываются на лету в одном потоке разбора
+     */
+    public ProcessingResult process(String path) throws IOException {
+        CompressedLineReader.Compression compression = CompressedLineReader.Compression.detect(Path.of(path));
+        if (compression != CompressedLineReader.Compression.NONE) {
+            return processCompressed(Path.of(path), compression);
+        }
+        try (FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.READ)) {
+            if (threads == 1) {
+                return processRange(path, channel, 0, channel.size());
+            }
+            long[] bounds = splitByLines(channel, threads * CHUNKS_PER_THREAD);
+
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<ProcessingResult>> futures = new ArrayList<>();
+                for (int i = 0; i + 1 < bounds.length; i++) {
+                    long start = bounds[i];
+                    long end = bounds[i + 1];
+                    futures.add(executor.submit(() -> processRange(path, channel, start, end)));
+                }
+
+                // Объединяем в порядке диапазонов, чтобы результат не зависел от расписания потоков
+                ProcessingResult result = new ProcessingResult();
+                for (Future<ProcessingResult> future : futures) {
+                    result.merge(future.get());
+                }
+                return result;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Обработка файла прервана", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IOException(cause.getMessage(), cause);
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Делит файл на диапазоны, каждый из которых начинается с начала строки
+     * @return отсортированные границы диапазонов, первая равна 0, последняя - размеру файла
+     */
+    static long[] splitByLines(FileChannel channel, int parts) throws IOException {
+        long size = channel.size();
+        int count = (int) Math.max(1, Math.min(parts, size / MIN_CHUNK_SIZE));
+        long[] bounds = new long[count + 1];
+        int found = 1;
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+        for (int i = 1; i < count; i++) {
+            long candidate = nextLineStart(channel, size * i / count, buffer);
+            if (candidate > bounds[found - 1] && candidate < size) {
+                bounds[found++] = candidate;
+            }
+        }
+        bounds[found++] = size;
+        return Arrays.copyOf(bounds, found);
+    }
+
+    // Позиция первого байта строки, начинающейся не раньше position
+    private static long nextLineStart(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        long pos = position - 1;
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, pos);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += read;
+        }
+    }
+
+    /**
+     * Разбирает сжатый файл целиком: сжатый поток нельзя начать читать с середины
+     */
+    static ProcessingResult processCompressed(Path path, CompressedLineReader.Compression compression) throws IOException {
+        ProcessingResult result = new ProcessingResult();
+        new CompressedLineReader(path, compression, MAX_LINE_LENGTH).read(new StatisticsLineHandler(result, path.toString()));
+        return result;
+    }
+
+    /**
+     * Разбирает диапазон байтов файла, начинающийся с начала строки
+     */
+    static ProcessingResult processRange(String path, FileChannel channel, long start, long end) throws IOException {
+        ProcessingResult result = new ProcessingResult();
+        new MappedLineReader(channel, MAX_LINE_LENGTH).read(start, end, new StatisticsLineHandler(result, path));
+        return result;
+    }
+}
@@ -0,0 +1,177 @@
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Метрики обработки: прочитанные строки и байты, ошибки разбора по причинам и время этапов.
+ * Счётчики - {@link LongAdder}, поэтому потоки разбора не конкурируют за одну ячейку памяти.
+ * Время этапов (чтение, разбор, классификация User-Agent, агрегация) замеряется не на каждой строке,
+ * а на каждой {@value #SAMPLE_INTERVAL}-й, и по выборке оценивается среднее время на строку,
+ * так что System.nanoTime почти не добавляет работы на горячем пути.
+ */
+public final class ProcessingMetrics implements ProcessingMetricsMXBean {
+    public static final String OBJECT_NAME = "accesslog:type=ProcessingMetrics";
+    // Замеряется одна строка из SAMPLE_INTERVAL, значение - степень двойки
+    static final int SAMPLE_INTERVAL = 64;
+
+    /**
+     * Этапы обработки строки
+     */
+    public enum Stage {
+        READ, PARSE, USER_AGENT, AGGREGATE
+    }
+
+    private static final ProcessingMetrics GLOBAL = new ProcessingMetrics();
+
+    private final LongAdder linesRead = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder malformedLines = new LongAdder();
+    private final Map<String, LongAdder> malformedByReason = new ConcurrentHashMap<>();
+    private final LongAdder[] stageNanos = new LongAdder[Stage.values().length];
+    private final LongAdder[] stageSamples = new LongAdder[Stage.values().length];
+    private volatile long startNanos = System.nanoTime();
+
+    ProcessingMetrics() {
+        for (int i = 0; i < stageNanos.length; i++) {
+            stageNanos[i] = new LongAdder();
+            stageSamples[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Общие метрики процесса, в них пишут все обработчики строк
+     */
+    public static ProcessingMetrics global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Регистрирует общие метрики в платформенном MBean-сервере; повторный вызов ничего не делает
+     */
+    public static void registerMBean() {
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(GLOBAL, name);
+            }
+        } catch (JMException e) {
+            System.err.println("Не удалось зарегистрировать метрики в JMX: " + e.getMessage());
+        }
+    }
+
+    public void countLine(int bytes) {
+        linesRead.increment();
+        bytesRead.add(bytes);
+    }
+
+    /**
+     * Учитывает строку, которую не удалось разобрать
+     */
+    public void countMalformed(MalformedReason reason) {
+        malformedLines.increment();
+        malformedByReason.computeIfAbsent(reason.name(), name -> new LongAdder()).increment();
+    }
+
+    /**
+     * Добавляет один замер времени этапа
+     */
+    public void recordStage(Stage stage, long nanos) {
+        stageNanos[stage.ordinal()].add(nanos);
+        stageSamples[stage.ordinal()].increment();
+    }
+
+    @Override
+    public long getLinesRead() {
+        return linesRead.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public double getLinesPerSecond() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return seconds > 0 ? getLinesRead() / seconds : 0;
+    }
+
+    @Override
+    public long getMalformedLines() {
+        return malformedLines.sum();
+    }
+
+    @Override
+    public Map<String, Long> getMalformedLinesByReason() {
+        Map<String, Long> result = new TreeMap<>();
+        malformedByReason.forEach((reason, count) -> result.put(reason, count.sum()));
+        return result;
+    }
+
+    /**
+     * @return среднее время этапа на строку по выборке замеров, нс
+     */
+    public double getNanosPerLine(Stage stage) {
+        long samples = stageSamples[stage.ordinal()].sum();
+        return samples > 0 ? (double) stageNanos[stage.ordinal()].sum() / samples : 0;
+    }
+
+    @Override
+    public double getReadNanosPerLine() {
+        return getNanosPerLine(Stage.READ);
+    }
+
+    @Override
+    public double getParseNanosPerLine() {
+        return getNanosPerLine(Stage.PARSE);
+    }
+
+    @Override
+    public double getUserAgentNanosPerLine() {
+        return getNanosPerLine(Stage.USER_AGENT);
+    }
+
+    @Override
+    public double getAggregateNanosPerLine() {
+        return getNanosPerLine(Stage.AGGREGATE);
+    }
+
+    @Override
+    public double getUserAgentCacheHitRate() {
+        return UserAgentCache.shared().getHitRate();
+    }
+
+    @Override
+    public long getUserAgentCacheSize() {
+        return UserAgentCache.shared().size();
+    }
+
+    @Override
+    public void reset() {
+        linesRead.reset();
+        bytesRead.reset();
+        malformedLines.reset();
+        malformedByReason.clear();
+        for (int i = 0; i < stageNanos.length; i++) {
+            stageNanos[i].reset();
+            stageSamples[i].reset();
+        }
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * Строка прогресса для периодического вывода
+     * @param linesPerSecond скорость за последний интервал
+     */
+    public String formatProgress(double linesPerSecond) {
+        return String.format("Прогресс: строк %d, %.1f МБ, %.0f строк/с, ошибок разбора %d;"
+                        + " нс на строку: чтение %.0f, разбор %.0f, User-Agent %.0f, агрегация %.0f; кэш User-Agent %.1f%%",
+                getLinesRead(), getBytesRead() / (double) (1 << 20), linesPerSecond, getMalformedLines(),
+                getReadNanosPerLine(), getParseNanosPerLine(), getUserAgentNanosPerLine(), getAggregateNanosPerLine(),
+                getUserAgentCacheHitRate() * 100);
+    }
+}
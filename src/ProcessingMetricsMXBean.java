@@ -0,0 +1,49 @@
+import java.util.Map;
+
+/**
+ * Метрики обработки логов, доступные через JMX (jconsole, VisualVM) под именем
+ * {@value ProcessingMetrics#OBJECT_NAME}
+ */
+public interface ProcessingMetricsMXBean {
+    long getLinesRead();
+
+    long getBytesRead();
+
+    /**
+     * @return средняя скорость с момента запуска или сброса
+     */
+    double getLinesPerSecond();
+
+    long getMalformedLines();
+
+    /**
+     * @return число строк, которые не удалось разобрать, по причинам
+     */
+    Map<String, Long> getMalformedLinesByReason();
+
+    /**
+     * @return среднее время поиска следующей строки в файле на строку, нс
+     */
+    double getReadNanosPerLine();
+
+    /**
+     * @return среднее время разбора строки без классификации User-Agent, нс
+     */
+    double getParseNanosPerLine();
+
+    /**
+     * @return среднее время классификации User-Agent с учётом кэша, нс
+     */
+    double getUserAgentNanosPerLine();
+
+    /**
+     * @return среднее время добавления записи в статистику, нс
+     */
+    double getAggregateNanosPerLine();
+
+    double getUserAgentCacheHitRate();
+
+    long getUserAgentCacheSize();
+
+    void reset();
+}
@@ -0,0 +1,40 @@
+/**
+ * Результат обработки лога или его части: число прочитанных строк и собранная статистика
+ */
+public class ProcessingResult {
+    private long totalLines;
+    private final Statistics statistics;
+
+    public ProcessingResult() {
+        this.totalLines = 0;
+        this.statistics = new Statistics();
+    }
+
+    /**
+     * Результат из уже собранной статистики, например снимка {@link ConcurrentStatistics}
+     */
+    ProcessingResult(long totalLines, Statistics statistics) {
+        this.totalLines = totalLines;
+        this.statistics = statistics;
+    }
+
+    public void countLine() {
+        totalLines++;
+    }
+
+    public long getTotalLines() {
+        return totalLines;
+    }
+
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Присоединяет результат обработки другой части лога
+     */
+    public void merge(ProcessingResult other) {
+        this.totalLines += other.totalLines;
+        this.statistics.merge(other.statistics);
+    }
+}
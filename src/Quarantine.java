@@ -0,0 +1,159 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Учёт строк, которые не удалось превратить в запись статистики.
+ * Политика SKIP пропускает такую строку и продолжает обработку, ABORT прерывает обработку файла.
+ * Если задан файл карантина, каждая строка пишется в него через буфер записью
+ * «источник TAB смещение TAB причина TAB исходные байты строки»; слишком длинная строка обрезается
+ * до максимальной длины. Без файла карантина строки только подсчитываются по причинам,
+ * а при закрытии в stderr выводится одна сводка, а не сообщение на каждую строку.
+ * Запись синхронизирована, так что один экземпляр используется всеми потоками разбора.
+ */
+public final class Quarantine implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte[] NEWLINE = {'\n'};
+
+    /**
+     * Что делать со строкой, которую не удалось разобрать
+     */
+    public enum Policy {
+        SKIP, ABORT
+    }
+
+    private static volatile Quarantine configured = new Quarantine(Policy.SKIP, null);
+
+    private final Policy policy;
+    private final OutputStream out;
+    // Число не разобранных строк по причинам, индекс - MalformedReason.ordinal()
+    private final AtomicLongArray counts = new AtomicLongArray(MalformedReason.values().length);
+
+    private Quarantine(Policy policy, OutputStream out) {
+        this.policy = policy;
+        this.out = out;
+    }
+
+    /**
+     * @param file файл карантина (перезаписывается) или null, чтобы вывести при закрытии сводку в stderr
+     */
+    public static Quarantine open(Policy policy, Path file) throws IOException {
+        OutputStream out = file != null ? new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE) : null;
+        return new Quarantine(policy, out);
+    }
+
+    /**
+     * Карантин, заданный параметрами --on-malformed и --quarantine; по умолчанию строки пропускаются
+     */
+    public static Quarantine getConfigured() {
+        return configured;
+    }
+
+    /**
+     * Задаёт карантин для всех обработчиков строк, созданных после вызова
+     */
+    public static void configure(Quarantine quarantine) {
+        configured = quarantine;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Учитывает строку, заданную областью буфера
+     * @throws MalformedLineException при политике ABORT
+     */
+    public void record(String source, long position, MalformedReason reason, ByteBuffer buffer, int offset, int length) {
+        if (out != null) {
+            byte[] bytes = new byte[length];
+            buffer.get(offset, bytes, 0, length);
+            write(source, position, reason, bytes);
+        }
+        counts.incrementAndGet(reason.ordinal());
+        abortIfRequired(source, position, reason);
+    }
+
+    /**
+     * Учитывает строку, прочитанную как текст
+     * @throws MalformedLineException при политике ABORT
+     */
+    public void record(String source, long position, MalformedReason reason, CharSequence line) {
+        if (out != null) {
+            write(source, position, reason, line.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        counts.incrementAndGet(reason.ordinal());
+        abortIfRequired(source, position, reason);
+    }
+
+    private synchronized void write(String source, long position, MalformedReason reason, byte[] line) {
+        try {
+            out.write((source + '\t' + position + '\t' + reason + '\t').getBytes(StandardCharsets.UTF_8));
+            out.write(line);
+            out.write(NEWLINE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Ошибка при записи в файл карантина: " + e.getMessage(), e);
+        }
+    }
+
+    private void abortIfRequired(String source, long position, MalformedReason reason) {
+        if (policy == Policy.ABORT) {
+            throw new MalformedLineException("Строка по смещению " + position + " в " + source
+                    + " не разобрана (" + reason + "), обработка прервана", reason);
+        }
+    }
+
+    /**
+     * @return число не разобранных строк с этой причиной
+     */
+    public long getCount(MalformedReason reason) {
+        return counts.get(reason.ordinal());
+    }
+
+    /**
+     * @return сводка вида «Не разобрано строк: 3 (MISSING_TIME: 2, UNEXPECTED: 1)» или null, если таких строк нет
+     */
+    String summary() {
+        StringBuilder reasons = new StringBuilder();
+        long total = 0;
+        for (MalformedReason reason : MalformedReason.values()) {
+            long count = counts.get(reason.ordinal());
+            if (count > 0) {
+                reasons.append(reasons.length() > 0 ? ", " : "").append(reason).append(": ").append(count);
+                total += count;
+            }
+        }
+        return total > 0 ? "Не разобрано строк: " + total + " (" + reasons + ")" : null;
+    }
+
+    /**
+     * Сбрасывает буфер в файл карантина
+     */
+    public synchronized void flush() throws IOException {
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    /**
+     * Закрывает файл карантина, а без него выводит в stderr сводку по не разобранным строкам
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            return;
+        }
+        String summary = summary();
+        if (summary != null) {
+            System.err.println(summary + "; задайте --quarantine, чтобы сохранить сами строки");
+        }
+    }
+}
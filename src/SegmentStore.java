@@ -0,0 +1,253 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище разобранных записей в колоночных сегментах {@link LogSegment}, разбитых по часам.
+ * Записи пишутся параллельно с обычной обработкой (--store), а отчёт за интервал времени (--store-query)
+ * строится по сегментам без повторного разбора текста: сегменты вне интервала и без нужных
+ * кодов ответа пропускаются по заголовку, сегменты целиком внутри интервала дают готовую свёртку,
+ * и только сегменты на границах интервала читаются построчно.
+ *
+ * Файлы сегментов называются по часу UTC записей: 20240101-13.0.seg, 20240101-13.1.seg и так далее.
+ */
+public final class SegmentStore {
+    private static final String SUFFIX = ".seg";
+    private static final DateTimeFormatter PARTITION_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HH");
+    private static final int BUFFER_SIZE = 1 << 16;
+    // Сколько часов одновременно накапливается в памяти; строки логов почти упорядочены по времени
+    private static final int MAX_OPEN_PARTITIONS = 4;
+
+    private static volatile Writer configured;
+
+    private SegmentStore() {
+    }
+
+    /**
+     * @return хранилище, в которое обработчики строк пишут записи, или null
+     */
+    public static Writer getConfiguredWriter() {
+        return configured;
+    }
+
+    /**
+     * Задаёт хранилище для всех обработчиков строк, созданных после вызова; null - не сохранять записи
+     */
+    public static void configure(Writer writer) {
+        configured = writer;
+    }
+
+    /**
+     * Открывает хранилище для записи, создавая каталог при необходимости
+     */
+    public static Writer openWriter(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        return new Writer(directory);
+    }
+
+    /**
+     * Пишет записи в сегменты по часам. Потокобезопасен: обработчики строк разных потоков пишут в один экземпляр
+     */
+    public static final class Writer implements Closeable {
+        private final Path directory;
+        // Открытые сегменты по номеру часа в порядке последнего обращения
+        private final Map<Long, LogSegment.Builder> open = new LinkedHashMap<>(16, 0.75f, true);
+
+        private Writer(Path directory) {
+            this.directory = directory;
+        }
+
+        /**
+         * @throws UncheckedIOException если заполненный сегмент не удалось записать
+         */
+        public synchronized void add(LogEntry entry) {
+            long partition = Math.floorDiv(entry.getEpochSecond(), 3600L);
+            try {
+                LogSegment.Builder builder = open.get(partition);
+                if (builder != null && !builder.canAdd(entry)) {
+                    write(partition, builder);
+                    builder = null;
+                }
+                if (builder == null) {
+                    if (open.size() >= MAX_OPEN_PARTITIONS) {
+                        // Вытесняем час, к которому дольше всего не обращались
+                        Iterator<Map.Entry<Long, LogSegment.Builder>> eldest = open.entrySet().iterator();
+                        Map.Entry<Long, LogSegment.Builder> entryToWrite = eldest.next();
+                        eldest.remove();
+                        write(entryToWrite.getKey(), entryToWrite.getValue());
+                    }
+                    builder = new LogSegment.Builder();
+                }
+                builder.add(entry);
+                open.put(partition, builder);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Ошибка при записи сегмента в " + directory + ": " + e.getMessage(), e);
+            }
+        }
+
+        /**
+         * Записывает все накопленные сегменты
+         */
+        public synchronized void flush() throws IOException {
+            for (Map.Entry<Long, LogSegment.Builder> entry : open.entrySet()) {
+                write(entry.getKey(), entry.getValue());
+            }
+            open.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+
+        // Сегмент пишется во временный файл и переименовывается, чтобы запросы не увидели его недописанным
+        private void write(long partition, LogSegment.Builder builder) throws IOException {
+            if (builder.getRows() == 0) {
+                return;
+            }
+            String name = LocalDateTime.ofEpochSecond(partition * 3600, 0, ZoneOffset.UTC).format(PARTITION_FORMAT);
+            Path path;
+            for (int sequence = 0; ; sequence++) {
+                path = directory.resolve(name + "." + sequence + SUFFIX);
+                if (!Files.exists(path)) {
+                    break;
+                }
+            }
+            Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+            try (OutputStream stream = Files.newOutputStream(temporary)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE));
+                builder.writeTo(out);
+                out.flush();
+            }
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Статистика за интервал и то, сколько сегментов понадобилось прочитать
+     */
+    public static final class Report {
+        private final Statistics statistics = new Statistics();
+        private int segments;
+        private int skipped;
+        private int rolledUp;
+        private int scanned;
+
+        public Statistics getStatistics() {
+            return statistics;
+        }
+
+        /**
+         * @return всего сегментов в хранилище
+         */
+        public int getSegments() {
+            return segments;
+        }
+
+        /**
+         * @return сегментов, пропущенных по заголовку
+         */
+        public int getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * @return сегментов, взятых готовой свёрткой
+         */
+        public int getRolledUp() {
+            return rolledUp;
+        }
+
+        /**
+         * @return сегментов, прочитанных построчно
+         */
+        public int getScanned() {
+            return scanned;
+        }
+    }
+
+    /**
+     * Строит статистику по записям хранилища со временем в [from, to) и кодом ответа из набора
+     * @param from начало интервала или null
+     * @param to конец интервала или null
+     * @param statuses принимаемые коды ответа или null - все коды
+     * @throws IOException если каталог не удалось прочитать; повреждённые сегменты пропускаются с сообщением в stderr
+     * @throws UnsupportedVersionException если в хранилище есть сегмент другой версии формата:
+     *                                     без него отчёт был бы неполным
+     */
+    public static Report report(Path directory, LocalDateTime from, LocalDateTime to, Collection<Integer> statuses)
+            throws IOException {
+        long fromSecond = from != null ? from.toEpochSecond(ZoneOffset.UTC) : Long.MIN_VALUE;
+        long toSecond = to != null ? to.toEpochSecond(ZoneOffset.UTC) : Long.MAX_VALUE;
+        boolean[] accepted = null;
+        if (statuses != null) {
+            accepted = new boolean[1000];
+            for (int status : statuses) {
+                if (status < 0 || status >= accepted.length) {
+                    throw new IllegalArgumentException("Неверный код ответа: " + status);
+                }
+                accepted[status] = true;
+            }
+        }
+
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).sorted()
+                    .collect(Collectors.toList());
+        }
+        Report report = new Report();
+        for (Path file : files) {
+            report.segments++;
+            try {
+                readSegment(file, fromSecond, toSecond, accepted, report);
+            } catch (UnsupportedVersionException e) {
+                throw new UnsupportedVersionException("Сегмент " + file + ": " + e.getMessage());
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Сегмент " + file + " пропущен: " + e.getMessage());
+            }
+        }
+        return report;
+    }
+
+    private static void readSegment(Path file, long from, long to, boolean[] accepted, Report report)
+            throws IOException {
+        try (InputStream stream = Files.newInputStream(file)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(stream, BUFFER_SIZE));
+            LogSegment.Header header = LogSegment.readHeader(in);
+            if (header.getMaxTime() < from || header.getMinTime() >= to || !header.hasAnyStatus(accepted)) {
+                report.skipped++;
+                return;
+            }
+            if (header.getMinTime() >= from && header.getMaxTime() < to && header.hasOnlyStatuses(accepted)) {
+                report.statistics.merge(LogSegment.readRollup(in));
+                report.rolledUp++;
+                return;
+            }
+            LogSegment.skipRollup(in);
+            // Строки собираются отдельно, чтобы повреждённый сегмент не попал в отчёт частично
+            Statistics statistics = new Statistics();
+            LogSegment.readRows(in, header, from, to, accepted, statistics::addEntry);
+            report.statistics.merge(statistics);
+            report.scanned++;
+        }
+    }
+}
@@ -0,0 +1,300 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Поиск самых частых ключей (heavy hitters) алгоритмом Space-Saving с фиксированной памятью.
+ * Отслеживается не больше capacity ключей; когда места нет, новый ключ вытесняет ключ
+ * с наименьшим счётчиком и наследует его значение как погрешность.
+ * Для любого ключа оценка не меньше истинной частоты и превышает её не больше чем на
+ * {@link Entry#getError()}, а погрешность не превосходит N / capacity, где N - число добавлений.
+ * Если различных ключей не больше capacity, результат точный.
+ */
+public final class SpaceSaving {
+    private final int capacity;
+    // Двоичная куча по возрастанию счётчика: в корне ключ-кандидат на вытеснение
+    private final String[] keys;
+    private final long[] counts;
+    private final long[] errors;
+    private final Map<String, Integer> positions;
+    private int size;
+    private long total;
+
+    public SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Ёмкость должна быть положительной: " + capacity);
+        }
+        this.capacity = capacity;
+        this.keys = new String[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+        this.positions = new HashMap<>(capacity * 2);
+    }
+
+    /**
+     * Учитывает одно появление ключа
+     * @return ключ, вытесненный из отслеживаемых, или null
+     */
+    public String add(String key) {
+        return add(key, 1, 0);
+    }
+
+    private String add(String key, long count, long error) {
+        total += count;
+        Integer position = positions.get(key);
+        if (position != null) {
+            counts[position] += count;
+            errors[position] += error;
+            siftDown(position);
+            return null;
+        }
+        if (size < capacity) {
+            keys[size] = key;
+            counts[size] = count;
+            errors[size] = error;
+            positions.put(key, size);
+            siftUp(size++);
+            return null;
+        }
+
+        // Вытесняем ключ с наименьшим счётчиком, его значение становится погрешностью нового
+        String evicted = keys[0];
+        positions.remove(evicted);
+        keys[0] = key;
+        errors[0] = counts[0] + error;
+        counts[0] += count;
+        positions.put(key, 0);
+        siftDown(0);
+        return evicted;
+    }
+
+    public boolean contains(String key) {
+        return positions.containsKey(key);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return общее число учтённых появлений всех ключей
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @return наибольшая оценка частоты среди отслеживаемых ключей или 0, если ключей нет
+     */
+    public long getMaxCount() {
+        long max = 0;
+        for (int i = 0; i < size; i++) {
+            max = Math.max(max, counts[i]);
+        }
+        return max;
+    }
+
+    /**
+     * @return отслеживаемые ключи; при числе различных ключей не больше ёмкости - все ключи
+     */
+    public Set<String> keys() {
+        Set<String> result = new LinkedHashSet<>();
+        for (int i = 0; i < size; i++) {
+            result.add(keys[i]);
+        }
+        return result;
+    }
+
+    /**
+     * @return до n самых частых ключей по убыванию оценки частоты
+     */
+    public List<Entry> top(int n) {
+        List<Entry> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            entries.add(new Entry(keys[i], counts[i], errors[i]));
+        }
+        entries.sort((a, b) -> Long.compare(b.count, a.count));
+        return entries.subList(0, Math.min(n, entries.size()));
+    }
+
+    /**
+     * До n ключей по убыванию гарантированной частоты (оценка минус погрешность), при равенстве - по ключу.
+     * Ключ, недавно вытеснивший другой, получает большую оценку за счёт погрешности и в {@link #top(int)}
+     * может обогнать действительно частые ключи, и какой ключ вытеснил последним, зависит от того,
+     * как поток был разбит на части перед объединением. Гарантированная частота от вытеснений не растёт
+     */
+    public List<Entry> topGuaranteed(int n) {
+        List<Entry> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            entries.add(new Entry(keys[i], counts[i], errors[i]));
+        }
+        entries.sort((a, b) -> {
+            int order = Long.compare(b.getGuaranteedCount(), a.getGuaranteedCount());
+            return order != 0 ? order : a.key.compareTo(b.key);
+        });
+        return entries.subList(0, Math.min(n, entries.size()));
+    }
+
+    /**
+     * Объединяет с результатом по другой части потока.
+     * Ключ, отсутствующий в заполненном наборе, мог встречаться там не чаще его минимального счётчика,
+     * поэтому минимальный счётчик добавляется к оценке и погрешности; из объединения остаются
+     * capacity ключей с наибольшими оценками.
+     */
+    public void merge(SpaceSaving other) {
+        long thisMin = size == capacity ? counts[0] : 0;
+        long otherMin = other.size == other.capacity ? other.counts[0] : 0;
+
+        Map<String, long[]> merged = new HashMap<>((size + other.size) * 2);
+        for (int i = 0; i < size; i++) {
+            merged.put(keys[i], new long[]{counts[i] + otherMin, errors[i] + otherMin});
+        }
+        for (int i = 0; i < other.size; i++) {
+            long[] value = merged.get(other.keys[i]);
+            if (value == null) {
+                merged.put(other.keys[i], new long[]{other.counts[i] + thisMin, other.errors[i] + thisMin});
+            } else {
+                value[0] += other.counts[i] - otherMin;
+                value[1] += other.errors[i] - otherMin;
+            }
+        }
+
+        List<Map.Entry<String, long[]>> candidates = new ArrayList<>(merged.entrySet());
+        candidates.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+
+        long mergedTotal = total + other.total;
+        clear();
+        for (int i = 0; i < Math.min(capacity, candidates.size()); i++) {
+            long[] value = candidates.get(i).getValue();
+            add(candidates.get(i).getKey(), value[0], value[1]);
+        }
+        total = mergedTotal;
+    }
+
+    private void clear() {
+        positions.clear();
+        for (int i = 0; i < size; i++) {
+            keys[i] = null;
+        }
+        size = 0;
+        total = 0;
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (counts[parent] <= counts[position]) {
+                break;
+            }
+            swap(position, parent);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            int left = 2 * position + 1;
+            if (left >= size) {
+                break;
+            }
+            int right = left + 1;
+            int smallest = right < size && counts[right] < counts[left] ? right : left;
+            if (counts[position] <= counts[smallest]) {
+                break;
+            }
+            swap(position, smallest);
+            position = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        String key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        long count = counts[i];
+        counts[i] = counts[j];
+        counts[j] = count;
+        long error = errors[i];
+        errors[i] = errors[j];
+        errors[j] = error;
+        positions.put(keys[i], i);
+        positions.put(keys[j], j);
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(capacity);
+        out.writeLong(total);
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeUTF(keys[i]);
+            out.writeLong(counts[i]);
+            out.writeLong(errors[i]);
+        }
+    }
+
+    static SpaceSaving readFrom(DataInputStream in) throws IOException {
+        SpaceSaving sketch = new SpaceSaving(in.readInt());
+        long total = in.readLong();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            sketch.add(in.readUTF(), in.readLong(), in.readLong());
+        }
+        sketch.total = total;
+        return sketch;
+    }
+
+    /**
+     * Ключ с оценкой частоты и её максимальной погрешностью
+     */
+    public static final class Entry {
+        private final String key;
+        private final long count;
+        private final long error;
+
+        Entry(String key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return оценка частоты сверху
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return на сколько оценка может превышать истинную частоту
+         */
+        public long getError() {
+            return error;
+        }
+
+        /**
+         * @return оценка частоты снизу: ключ встретился не меньше этого числа раз
+         */
+        public long getGuaranteedCount() {
+            return count - error;
+        }
+
+        @Override
+        public String toString() {
+            return error == 0 ? key + "=" + count : key + "=" + count + "±" + error;
+        }
+    }
+}
@@ -1,33 +1,87 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.Duration;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
 import java.util.stream.Collectors;
 
 public class Statistics {
+    private static final long NO_TIME = LogTokenizer.NO_TIME;
+
     private long totalTraffic;
-    private LocalDateTime minTime;
-    private LocalDateTime maxTime;
+    // Секунды от 1970-01-01T00:00Z; NO_TIME, пока записей нет
+    private long minTime;
+    private long maxTime;
     private int entryCount;
-    private List<LogEntry> entries = new ArrayList<>();
     private int errorRequestsCount = 0; // Количество ошибочных запросов
+    private long nonBotVisits = 0; // Количество посещений не-ботами
+
+    // Точность оценки уникальных IP-адресов; задаётся свойством -Dparser.hllPrecision
+    private static final int HLL_PRECISION = Integer.getInteger("parser.hllPrecision", 14);
+
+    // Оценка числа уникальных IP-адресов не-ботов для расчёта посещаемости одним пользователем
+    private HyperLogLog nonBotIps = new HyperLogLog(HLL_PRECISION);
+    // То же по часам за последнюю неделю
+    private DistinctBuckets hourlyNonBotIps = new DistinctBuckets(3600, 7 * 24, HLL_PRECISION);
+
+    // Ёмкость наборов самых частых значений; задаётся свойством -Dparser.topCapacity
+    private static final int TOP_CAPACITY = Integer.getInteger("parser.topCapacity", 1000);
+
+    // Самые активные адреса не-ботов для наибольшей посещаемости одним пользователем; память ограничена
+    // TOP_CAPACITY ключами, общее число посещений - в nonBotVisits
+    private AddressSpaceSaving nonBotClients = new AddressSpaceSaving(TOP_CAPACITY);
 
-    // Переменная для хранения несуществующих страниц (404)
-    private Set<String> nonExistentPages = new HashSet<>();
+    // Самые частые несуществующие страницы (404); память ограничена TOP_CAPACITY ключами
+    private SpaceSaving nonExistentPages = new SpaceSaving(TOP_CAPACITY);
 
     // Переменная для подсчета частоты браузеров
     private Map<String, Integer> browserFrequency = new HashMap<>();
 
-    // Переменная для хранения существующих страниц сайта (код ответа 200)
-    private Set<String> existingPages = new HashSet<>();
+    // Самые частые существующие страницы сайта (код ответа 200)
+    private SpaceSaving existingPages = new SpaceSaving(TOP_CAPACITY);
+
+    // Самые активные клиенты по упакованному IP-адресу, без строки адреса на каждую запись;
+    // записи с неразобранным адресом считаются отдельно по его тексту
+    private AddressSpaceSaving topClients = new AddressSpaceSaving(TOP_CAPACITY);
+    private SpaceSaving unparsedClients = new SpaceSaving(TOP_CAPACITY);
+    // Самые частые источники переходов
+    private SpaceSaving topReferers = new SpaceSaving(TOP_CAPACITY);
 
     // Переменная для подсчета частоты операционных систем
     private Map<String, Integer> osFrequency = new HashMap<>();
 
+    // Квантили размеров ответов: относительная точность 1%, не больше 2048 интервалов на скетч
+    private static final double SIZE_ACCURACY = 0.01;
+    private static final int SIZE_MAX_BINS = 2048;
+    // Для скольких самых частых страниц хранить распределение размеров; свойство -Dparser.pathSizeSketches,
+    // 0 отключает распределения по страницам. Набор в десять раз больше числа страниц в отчёте, чтобы страницы
+    // из отчёта не вытеснялись редкими и их распределения не начинались заново. Набор есть у каждой частичной
+    // статистики (диапазона, ячейки, сегмента), поэтому он не больше, чем нужно для отчёта
+    private static final int PATH_SIZE_SKETCHES = Integer.getInteger("parser.pathSizeSketches", 100);
+
+    private DDSketch responseSizes = newQuantileSketch();
+    // По классам кодов ответа: индекс - первая цифра кода (1xx-5xx)
+    private DDSketch[] responseSizesByClass = new DDSketch[6];
+    // Распределения размеров только для самых частых страниц, чтобы память оставалась ограниченной;
+    // набор создаётся с первой страницей, так что статистика без записей (например, у потоков разбора) его не держит
+    private SpaceSaving sizedPaths;
+    private Map<String, DDSketch> responseSizesByPath = new HashMap<>();
+
+    // Квантили длительности запросов и времени ответа upstream в микросекундах, если формат их содержит
+    private DDSketch requestTimes = newQuantileSketch();
+    private DDSketch upstreamResponseTimes = newQuantileSketch();
+
+    // Счётчики по минутам за последние сутки (с запасом на неполную первую минуту окна)
+    // и по часам за последнюю неделю
+    private TimeBuckets minuteBuckets = new TimeBuckets(60, 25 * 60);
+    private TimeBuckets hourBuckets = new TimeBuckets(3600, 7 * 24);
+
     public Statistics() {
         this.totalTraffic = 0;
-        this.minTime = null;
-        this.maxTime = null;
+        this.minTime = NO_TIME;
+        this.maxTime = NO_TIME;
         this.entryCount = 0;
     }
 
@@ -35,17 +89,17 @@ public class Statistics {
         this.totalTraffic += entry.getResponseSize();
         this.entryCount++;
 
-        LocalDateTime entryTime = entry.getTime();
+        long epochSecond = entry.getEpochSecond();
 
-        if (minTime == null || entryTime.isBefore(minTime)) {
-            minTime = entryTime;
+        if (minTime == NO_TIME || epochSecond < minTime) {
+            minTime = epochSecond;
         }
 
-        if (maxTime == null || entryTime.isAfter(maxTime)) {
-            maxTime = entryTime;
+        if (maxTime == NO_TIME || epochSecond > maxTime) {
+            maxTime = epochSecond;
         }
         // Добавляем страницу с кодом ответа 200 в список существующих страниц
-        if (Objects.equals(entry.getResponseCode(), "200")) {
+        if (entry.getStatusCode() == 200) {
             existingPages.add(entry.getPath());
         }
 
@@ -54,7 +108,7 @@ public class Statistics {
         osFrequency.put(os, osFrequency.getOrDefault(os, 0) + 1);
 
         // Проверяем код ответа и добавляем в nonExistentPages если 404
-        if (Objects.equals(entry.getResponseCode(), "404")) {
+        if (entry.getStatusCode() == 404) {
             nonExistentPages.add(entry.getPath());
         }
 
@@ -62,58 +116,159 @@ public class Statistics {
         String browser = entry.getUserAgent().getBrowser(); // или метод для получения браузера
         browserFrequency.put(browser, browserFrequency.getOrDefault(browser, 0) + 1);
 
-        entries.add(entry);
         // Проверяем на ошибочный код ответа (4xx или 5xx)
-        if (isErrorResponse( entry.getResponseCode())) {
+        boolean error = isErrorResponse(entry.getStatusCode());
+        if (error) {
             errorRequestsCount++;
         }
+
+        addResponseSize(entry);
+        if (entry.getRequestTimeMicros() >= 0) {
+            requestTimes.add(entry.getRequestTimeMicros());
+        }
+        if (entry.getUpstreamResponseTimeMicros() >= 0) {
+            upstreamResponseTimes.add(entry.getUpstreamResponseTimeMicros());
+        }
+
+        if (entry.getIpVersion() != 0) {
+            topClients.add(entry.getIpVersion(), entry.getIpHigh(), entry.getIpLow());
+        } else {
+            unparsedClients.add(entry.getIpAddr());
+        }
+        if (!entry.getReferer().isEmpty()) {
+            topReferers.add(entry.getReferer());
+        }
+
+        // Посещения не-ботами считаем сразу, чтобы не хранить сами записи
+        boolean nonBot = !entry.getUserAgent().isBot();
+        if (nonBot) {
+            nonBotVisits++;
+            long ipHash = addressHash(entry);
+            nonBotIps.addHash(ipHash);
+            hourlyNonBotIps.add(epochSecond, ipHash);
+            if (entry.getIpVersion() != 0) {
+                nonBotClients.add(entry.getIpVersion(), entry.getIpHigh(), entry.getIpLow());
+            }
+        }
+
+        minuteBuckets.add(epochSecond, nonBot, error, entry.getResponseSize());
+        hourBuckets.add(epochSecond, nonBot, error, entry.getResponseSize());
+    }
+
+    // Хэш разобранного адреса без обхода строки: IPv4 хэшируется как тот же адрес в IPv6 (::ffff:a.b.c.d),
+    // строка нужна только для записей без адреса
+    private static long addressHash(LogEntry entry) {
+        switch (entry.getIpVersion()) {
+            case 4:
+                return HyperLogLog.hash(0, IpAddress.MAPPED_IPV4_PREFIX | entry.getIpLow());
+            case 6:
+                return HyperLogLog.hash(entry.getIpHigh(), entry.getIpLow());
+            default:
+                return HyperLogLog.hash(entry.getIpAddr());
+        }
     }
+
+    private void addResponseSize(LogEntry entry) {
+        long size = entry.getResponseSize();
+        responseSizes.add(size);
+
+        int statusClass = entry.getStatusCode() / 100;
+        if (statusClass >= 1 && statusClass <= 5) {
+            if (responseSizesByClass[statusClass] == null) {
+                responseSizesByClass[statusClass] = newQuantileSketch();
+            }
+            responseSizesByClass[statusClass].add(size);
+        }
+
+        String path = entry.getPath();
+        if (!path.isEmpty() && PATH_SIZE_SKETCHES > 0) {
+            if (sizedPaths == null) {
+                sizedPaths = new SpaceSaving(PATH_SIZE_SKETCHES);
+            }
+            String evicted = sizedPaths.add(path);
+            if (evicted != null) {
+                responseSizesByPath.remove(evicted);
+            }
+            responseSizesByPath.computeIfAbsent(path, key -> newQuantileSketch()).add(size);
+        }
+    }
+
+    private static DDSketch newQuantileSketch() {
+        return new DDSketch(SIZE_ACCURACY, SIZE_MAX_BINS);
+    }
+
     /**
-     * Проверяет, является ли код ответа ошибочным (4xx или 5xx)
+     * Объединяет с этой статистикой частичную статистику, собранную по другой части лога.
+     * Результат совпадает с тем, как если бы все записи были добавлены в один экземпляр.
+     * @param other статистика, которую нужно присоединить
      */
-    private boolean isErrorResponse(String event) {
-        if (event == null || event.trim().isEmpty()) {
-            return false;
+    public void merge(Statistics other) {
+        this.totalTraffic += other.totalTraffic;
+        this.entryCount += other.entryCount;
+        this.errorRequestsCount += other.errorRequestsCount;
+        this.nonBotVisits += other.nonBotVisits;
+
+        if (other.minTime != NO_TIME && (minTime == NO_TIME || other.minTime < minTime)) {
+            minTime = other.minTime;
+        }
+        if (other.maxTime != NO_TIME && (maxTime == NO_TIME || other.maxTime > maxTime)) {
+            maxTime = other.maxTime;
         }
 
-        try {
-            // Предполагаем, что event содержит HTTP код ответа
-            // Например: "GET /page 404", "POST /api 500", etc.
-            String[] parts = event.split(" ");
-            for (String part : parts) {
-                if (part.matches("^[45]\\d\\d$")) {
-                    return true;
-                }
+        existingPages.merge(other.existingPages);
+        nonExistentPages.merge(other.nonExistentPages);
+        topClients.merge(other.topClients);
+        unparsedClients.merge(other.unparsedClients);
+        topReferers.merge(other.topReferers);
+        other.osFrequency.forEach((os, count) -> osFrequency.merge(os, count, Integer::sum));
+        other.browserFrequency.forEach((browser, count) -> browserFrequency.merge(browser, count, Integer::sum));
+        responseSizes.merge(other.responseSizes);
+        for (int statusClass = 1; statusClass <= 5; statusClass++) {
+            DDSketch sketch = other.responseSizesByClass[statusClass];
+            if (sketch == null) {
+                continue;
+            }
+            if (responseSizesByClass[statusClass] == null) {
+                responseSizesByClass[statusClass] = newQuantileSketch();
             }
-        } catch (Exception e) {
-            // В случае ошибки парсинга считаем не ошибочным
+            responseSizesByClass[statusClass].merge(sketch);
         }
-        return false;
+        requestTimes.merge(other.requestTimes);
+        upstreamResponseTimes.merge(other.upstreamResponseTimes);
+        if (other.sizedPaths != null) {
+            if (sizedPaths == null) {
+                sizedPaths = new SpaceSaving(other.sizedPaths.getCapacity());
+            }
+            sizedPaths.merge(other.sizedPaths);
+            other.responseSizesByPath.forEach((path, sketch) ->
+                    responseSizesByPath.computeIfAbsent(path, key -> newQuantileSketch()).merge(sketch));
+            // Остаются распределения только тех страниц, которые попали в объединённый набор самых частых
+            responseSizesByPath.keySet().removeIf(path -> !sizedPaths.contains(path));
+        }
+
+        nonBotIps.merge(other.nonBotIps);
+        nonBotClients.merge(other.nonBotClients);
+        hourlyNonBotIps.merge(other.hourlyNonBotIps);
+        minuteBuckets.merge(other.minuteBuckets);
+        hourBuckets.merge(other.hourBuckets);
+    }
+    /**
+     * Проверяет, является ли код ответа ошибочным (4xx или 5xx)
+     */
+    private boolean isErrorResponse(int statusCode) {
+        return statusCode >= 400 && statusCode < 600;
     }
     /**
      * Метод подсчёта среднего количества посещений сайта за час
      * @return среднее количество посещений в час (только не боты)
      */
     public double getAverageVisitsPerHour() {
-        if (entries.isEmpty()) {
-            return 0.0;
-        }
-
-        // Фильтруем только не-боты
-        long nonBotVisits = entries.stream()
-                .filter(entry -> !entry.getUserAgent().isBot())
-                .count();
-
         if (nonBotVisits == 0) {
             return 0.0;
         }
 
-        // Находим временной диапазон
-        LocalDateTime minTime = getMinTime();
-        LocalDateTime maxTime = getMaxTime();
-
         // Вычисляем период в часах
-        long hours = ChronoUnit.HOURS.between(minTime, maxTime);
+        long hours = (maxTime - minTime) / 3600;
         if (hours == 0) {
             hours = 1; // Минимум 1 час чтобы избежать деления на 0
         }
@@ -126,16 +281,12 @@ public class Statistics {
      * @return среднее количество ошибочных запросов в час
      */
     public double getAverageErrorRequestsPerHour() {
-        if (entries.isEmpty() || errorRequestsCount == 0) {
+        if (entryCount == 0 || errorRequestsCount == 0) {
             return 0.0;
         }
 
-        // Находим временной диапазон
-        LocalDateTime minTime = getMinTime();
-        LocalDateTime maxTime = getMaxTime();
-
         // Вычисляем период в часах
-        long hours = ChronoUnit.HOURS.between(minTime, maxTime);
+        long hours = (maxTime - minTime) / 3600;
         if (hours == 0) {
             hours = 1;
         }
@@ -148,44 +299,196 @@ public class Statistics {
      * @return средняя посещаемость на одного пользователя (не бота)
      */
     public double getAverageVisitsPerUser() {
-        if (entries.isEmpty()) {
+        // Количество уникальных IP-адресов не-ботов
+        long uniqueNonBotIps = nonBotIps.cardinality();
+
+        if (nonBotVisits == 0 || uniqueNonBotIps == 0) {
             return 0.0;
         }
 
-        // Фильтруем только не-боты
-        List<LogEntry> nonBotEntries = entries.stream()
-                .filter(entry -> !entry.getUserAgent().isBot())
-                .collect(Collectors.toList());
+        return (double) nonBotVisits / uniqueNonBotIps;
+    }
 
-        if (nonBotEntries.isEmpty()) {
-            return 0.0;
-        }
+    /**
+     * @return наибольшее число посещений с одного адреса не-бота; точное, пока различных адресов
+     * не больше ёмкости набора самых частых значений, иначе оценка сверху с погрешностью не больше
+     * числа посещений, делённого на эту ёмкость
+     */
+    public int getMaxVisitsPerUser() {
+        return (int) Math.min(Integer.MAX_VALUE, nonBotClients.getMaxCount());
+    }
+
+    /**
+     * @return общее число посещений не-ботами
+     */
+    public long getNonBotVisits() {
+        return nonBotVisits;
+    }
 
-        // Количество посещений не-ботами
-        long nonBotVisits = nonBotEntries.size();
 
-        // Количество уникальных IP-адресов не-ботов
-        long uniqueNonBotIps = nonBotEntries.stream()
-                .map(LogEntry::getIpAddr)
-                .distinct()
-                .count();
 
-        if (uniqueNonBotIps == 0) {
-            return 0.0;
+
+    /**
+     * Квантиль размера ответа по всем записям с относительной ошибкой не больше 1%
+     * @param quantile доля от 0 до 1, например 0.5, 0.95 или 0.99
+     * @return размер в байтах или NaN, если записей не было
+     */
+    public double getResponseSizeQuantile(double quantile) {
+        return responseSizes.getQuantile(quantile);
+    }
+
+    /**
+     * Квантиль размера ответа для класса кодов ответа
+     * @param statusClass первая цифра кода: 2 для 2xx, 4 для 4xx и т.д.
+     * @return размер в байтах или NaN, если записей этого класса не было
+     */
+    public double getResponseSizeQuantile(int statusClass, double quantile) {
+        if (statusClass < 1 || statusClass > 5 || responseSizesByClass[statusClass] == null) {
+            return Double.NaN;
         }
+        return responseSizesByClass[statusClass].getQuantile(quantile);
+    }
 
-        return (double) nonBotVisits / uniqueNonBotIps;
+    /**
+     * @return число записей класса кодов ответа в распределении размеров
+     */
+    public long getResponseSizeCount(int statusClass) {
+        if (statusClass < 1 || statusClass > 5 || responseSizesByClass[statusClass] == null) {
+            return 0;
+        }
+        return responseSizesByClass[statusClass].getCount();
     }
 
+    /**
+     * Квантиль размера ответа для страницы. Распределение хранится только для самых частых страниц
+     * и начинает накапливаться с момента, когда страница попала в их число
+     * @return размер в байтах или NaN, если для страницы распределение не хранится
+     */
+    public double getPathResponseSizeQuantile(String path, double quantile) {
+        DDSketch sketch = responseSizesByPath.get(path);
+        return sketch != null ? sketch.getQuantile(quantile) : Double.NaN;
+    }
 
+    /**
+     * @return число размеров в распределении страницы или 0, если распределение не хранится
+     */
+    public long getPathResponseSizeCount(String path) {
+        DDSketch sketch = responseSizesByPath.get(path);
+        return sketch != null ? sketch.getCount() : 0;
+    }
+
+    /**
+     * До n самых частых страниц, для которых хранится распределение размеров ответов.
+     * Страницы упорядочены по гарантированному числу запросов {@link SpaceSaving#topGuaranteed(int)},
+     * поэтому страница, только что попавшая в набор, не обгоняет действительно частые
+     * при любом числе потоков и размере пакетов при разборе
+     */
+    public List<SpaceSaving.Entry> getTopSizedPaths(int n) {
+        return sizedPaths != null ? sizedPaths.topGuaranteed(n) : List.of();
+    }
+
+    /**
+     * Квантиль длительности обработки запроса с относительной ошибкой не больше 1%
+     * @return длительность в секундах или NaN, если формат лога её не содержит
+     */
+    public double getRequestTimeQuantile(double quantile) {
+        return requestTimes.getQuantile(quantile) / 1e6;
+    }
+
+    /**
+     * Квантиль времени ответа upstream
+     * @return время в секундах или NaN, если формат лога его не содержит
+     */
+    public double getUpstreamResponseTimeQuantile(double quantile) {
+        return upstreamResponseTimes.getQuantile(quantile) / 1e6;
+    }
+
+    /**
+     * Оценка числа уникальных IP-адресов не-ботов за всё время.
+     * Относительная ошибка порядка {@link #getUniqueNonBotIpsError()}; небольшие количества считаются почти точно
+     */
+    public long getUniqueNonBotIps() {
+        return nonBotIps.cardinality();
+    }
+
+    /**
+     * @return стандартная относительная ошибка оценок уникальных IP-адресов
+     */
+    public double getUniqueNonBotIpsError() {
+        return nonBotIps.getStandardError();
+    }
+
+    /**
+     * Оценка числа уникальных IP-адресов не-ботов за скользящее окно, заканчивающееся временем
+     * последней записи, с точностью до часа (не больше недели)
+     */
+    public long getRecentUniqueNonBotIps(Duration window) {
+        if (maxTime == NO_TIME) {
+            return 0;
+        }
+        long to = maxTime;
+        return hourlyNonBotIps.count(to - window.getSeconds() + 1, to);
+    }
 
+    /**
+     * Оценка числа уникальных IP-адресов не-ботов по часам за последние hours часов
+     * @return Map от начала часа к оценке, упорядоченная по времени
+     */
+    public Map<LocalDateTime, Long> getHourlyUniqueNonBotIps(int hours) {
+        Map<LocalDateTime, Long> breakdown = new LinkedHashMap<>();
+        if (maxTime == NO_TIME) {
+            return breakdown;
+        }
+        long unit = hourlyNonBotIps.getUnitSeconds();
+        long lastHour = Math.floorDiv(maxTime, unit);
+        long firstHour = lastHour - Math.min(hours, hourlyNonBotIps.size()) + 1;
+        for (long hour = firstHour; hour <= lastHour; hour++) {
+            breakdown.put(LocalDateTime.ofEpochSecond(hour * unit, 0, ZoneOffset.UTC), hourlyNonBotIps.get(hour));
+        }
+        return breakdown;
+    }
 
     /**
-     * Возвращает список всех несуществующих страниц сайта (код ответа 404)
+     * Возвращает список несуществующих страниц сайта (код ответа 404).
+     * Список полный, пока различных страниц не больше ёмкости набора, иначе - самые частые из них
      * @return Set<String> с адресами несуществующих страниц
      */
     public Set<String> getNonExistentPages() {
-        return new HashSet<>(nonExistentPages);
+        return nonExistentPages.keys();
+    }
+
+    /**
+     * @return до n самых частых несуществующих страниц с оценкой числа запросов
+     */
+    public List<SpaceSaving.Entry> getTopNonExistentPages(int n) {
+        return nonExistentPages.top(n);
+    }
+
+    /**
+     * @return до n самых частых страниц с кодом ответа 200 с оценкой числа запросов
+     */
+    public List<SpaceSaving.Entry> getTopExistingPages(int n) {
+        return existingPages.top(n);
+    }
+
+    /**
+     * @return до n IP-адресов с наибольшим числом запросов
+     */
+    public List<SpaceSaving.Entry> getTopClients(int n) {
+        List<SpaceSaving.Entry> clients = new ArrayList<>(topClients.top(n));
+        if (unparsedClients.size() == 0) {
+            return clients;
+        }
+        clients.addAll(unparsedClients.top(n));
+        clients.sort((a, b) -> Long.compare(b.getCount(), a.getCount()));
+        return clients.subList(0, Math.min(n, clients.size()));
+    }
+
+    /**
+     * @return до n самых частых источников переходов (Referer)
+     */
+    public List<SpaceSaving.Entry> getTopReferers(int n) {
+        return topReferers.top(n);
     }
 
     /**
@@ -220,12 +523,11 @@ public class Statistics {
 
 
     public double getTrafficRate() {
-        if (minTime == null || maxTime == null || minTime.equals(maxTime)) {
+        if (minTime == NO_TIME || maxTime == NO_TIME || minTime == maxTime) {
             return 0.0;
         }
 
-        Duration duration = Duration.between(minTime, maxTime);
-        double hours = duration.toHours();
+        double hours = (maxTime - minTime) / 3600;
 
         if (hours == 0) {
             // Если разница меньше часа, считаем как минимум 1 час
@@ -235,16 +537,56 @@ public class Statistics {
         return totalTraffic / hours;
     }
 
+    /**
+     * Сумма метрики за скользящее окно, заканчивающееся временем последней записи.
+     * Окна до суток считаются по минутам, более длинные - по часам, с точностью до интервала.
+     * @param metric метрика: запросы, посещения не-ботами, ошибки или трафик
+     * @param window длина окна, например 5 минут, 1 час или 24 часа
+     */
+    public long getRecent(TimeBuckets.Metric metric, Duration window) {
+        if (maxTime == NO_TIME) {
+            return 0;
+        }
+        long to = maxTime;
+        long from = to - window.getSeconds() + 1;
+        boolean fitsMinutes = window.getSeconds() < minuteBuckets.getUnitSeconds() * minuteBuckets.size();
+        return (fitsMinutes ? minuteBuckets : hourBuckets).sum(metric, from, to);
+    }
+
+    /**
+     * Разбивка метрики по часам за последние hours часов (не больше недели)
+     * @return Map от начала часа к значению метрики, упорядоченная по времени
+     */
+    public Map<LocalDateTime, Long> getHourlyBreakdown(TimeBuckets.Metric metric, int hours) {
+        Map<LocalDateTime, Long> breakdown = new LinkedHashMap<>();
+        if (maxTime == NO_TIME) {
+            return breakdown;
+        }
+        long unit = hourBuckets.getUnitSeconds();
+        long lastHour = Math.floorDiv(maxTime, unit);
+        long firstHour = lastHour - Math.min(hours, hourBuckets.size()) + 1;
+        for (long hour = firstHour; hour <= lastHour; hour++) {
+            breakdown.put(LocalDateTime.ofEpochSecond(hour * unit, 0, ZoneOffset.UTC), hourBuckets.get(metric, hour));
+        }
+        return breakdown;
+    }
+
     public long getTotalTraffic() {
         return totalTraffic;
     }
 
+    /**
+     * @return время первой записи в UTC или null, если записей нет
+     */
     public LocalDateTime getMinTime() {
-        return minTime;
+        return minTime != NO_TIME ? LocalDateTime.ofEpochSecond(minTime, 0, ZoneOffset.UTC) : null;
     }
 
+    /**
+     * @return время последней записи в UTC или null, если записей нет
+     */
     public LocalDateTime getMaxTime() {
-        return maxTime;
+        return maxTime != NO_TIME ? LocalDateTime.ofEpochSecond(maxTime, 0, ZoneOffset.UTC) : null;
     }
 
     public int getEntryCount() {
@@ -252,11 +594,12 @@ public class Statistics {
     }
 
     /**
-     * Возвращает список всех существующих страниц сайта (с кодом ответа 200)
+     * Возвращает список существующих страниц сайта (с кодом ответа 200).
+     * Список полный, пока различных страниц не больше ёмкости набора, иначе - самые частые из них
      * @return Set<String> уникальных адресов существующих страниц
      */
     public Set<String> getExistingPages() {
-        return new HashSet<>(existingPages); // Возвращаем копию для безопасности
+        return existingPages.keys(); // Возвращаем копию для безопасности
     }
 
     /**
@@ -290,12 +633,96 @@ public class Statistics {
                 ));
     }
 
+    /**
+     * Записывает полное состояние статистики в двоичном виде, формат описан в {@link StatisticsSnapshot}
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(totalTraffic);
+        out.writeInt(entryCount);
+        out.writeInt(errorRequestsCount);
+        out.writeLong(nonBotVisits);
+        StatisticsSnapshot.writeTime(out, minTime);
+        StatisticsSnapshot.writeTime(out, maxTime);
+        existingPages.writeTo(out);
+        nonExistentPages.writeTo(out);
+        StatisticsSnapshot.writeCounts(out, browserFrequency);
+        StatisticsSnapshot.writeCounts(out, osFrequency);
+        nonBotIps.writeTo(out);
+        minuteBuckets.writeTo(out);
+        hourBuckets.writeTo(out);
+        topClients.writeTo(out);
+        unparsedClients.writeTo(out);
+        topReferers.writeTo(out);
+        hourlyNonBotIps.writeTo(out);
+        responseSizes.writeTo(out);
+        for (int statusClass = 1; statusClass <= 5; statusClass++) {
+            DDSketch sketch = responseSizesByClass[statusClass];
+            out.writeBoolean(sketch != null);
+            if (sketch != null) {
+                sketch.writeTo(out);
+            }
+        }
+        out.writeBoolean(sizedPaths != null);
+        if (sizedPaths != null) {
+            sizedPaths.writeTo(out);
+            out.writeInt(responseSizesByPath.size());
+            for (Map.Entry<String, DDSketch> entry : responseSizesByPath.entrySet()) {
+                out.writeUTF(entry.getKey());
+                entry.getValue().writeTo(out);
+            }
+        }
+        requestTimes.writeTo(out);
+        upstreamResponseTimes.writeTo(out);
+        nonBotClients.writeTo(out);
+    }
+
+    /**
+     * Восстанавливает статистику, записанную {@link #writeTo(DataOutputStream)}
+     */
+    static Statistics readFrom(DataInputStream in) throws IOException {
+        Statistics statistics = new Statistics();
+        statistics.totalTraffic = in.readLong();
+        statistics.entryCount = in.readInt();
+        statistics.errorRequestsCount = in.readInt();
+        statistics.nonBotVisits = in.readLong();
+        statistics.minTime = StatisticsSnapshot.readTime(in);
+        statistics.maxTime = StatisticsSnapshot.readTime(in);
+        statistics.existingPages = SpaceSaving.readFrom(in);
+        statistics.nonExistentPages = SpaceSaving.readFrom(in);
+        StatisticsSnapshot.readCounts(in, statistics.browserFrequency);
+        StatisticsSnapshot.readCounts(in, statistics.osFrequency);
+        statistics.nonBotIps = HyperLogLog.readFrom(in);
+        statistics.minuteBuckets = TimeBuckets.readFrom(in);
+        statistics.hourBuckets = TimeBuckets.readFrom(in);
+        statistics.topClients = AddressSpaceSaving.readFrom(in);
+        statistics.unparsedClients = SpaceSaving.readFrom(in);
+        statistics.topReferers = SpaceSaving.readFrom(in);
+        statistics.hourlyNonBotIps = DistinctBuckets.readFrom(in);
+        statistics.responseSizes = DDSketch.readFrom(in);
+        for (int statusClass = 1; statusClass <= 5; statusClass++) {
+            if (in.readBoolean()) {
+                statistics.responseSizesByClass[statusClass] = DDSketch.readFrom(in);
+            }
+        }
+        if (in.readBoolean()) {
+            statistics.sizedPaths = SpaceSaving.readFrom(in);
+            int paths = in.readInt();
+            for (int i = 0; i < paths; i++) {
+                statistics.responseSizesByPath.put(in.readUTF(), DDSketch.readFrom(in));
+            }
+        }
+        statistics.requestTimes = DDSketch.readFrom(in);
+        statistics.upstreamResponseTimes = DDSketch.readFrom(in);
+        statistics.nonBotClients = AddressSpaceSaving.readFrom(in);
+        return statistics;
+    }
+
     @Override
     public String toString() {
         return "Statistics{" +
                 "totalTraffic=" + totalTraffic +
-                ", minTime=" + minTime +
-                ", maxTime=" + maxTime +
+                ", minTime=" + getMinTime() +
+                ", maxTime=" + getMaxTime() +
                 ", entryCount=" + entryCount +
                 ", trafficRate=" + getTrafficRate() +
                 " bytes/hour}" +
@@ -0,0 +1,164 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Обработчик строк, который разбирает каждую строку и добавляет запись в статистику.
+ * Строка разбирается прямо из байтового буфера через переиспользуемые {@link ByteSlice}
+ * и {@link LogTokenizer}, поэтому один экземпляр должен использоваться одним потоком.
+ * Строки, не прошедшие {@link LogFilter#getConfigured()}, отбрасываются до построения {@link LogEntry}.
+ * Строки, из которых нельзя построить запись, передаются в {@link Quarantine#getConfigured()} без исключений.
+ * Построенные записи, кроме того, сохраняются в {@link SegmentStore#getConfiguredWriter()}, если оно задано.
+ * Прочитанные строки, ошибки разбора и выборочное время этапов пишутся в {@link ProcessingMetrics}.
+ */
+public class StatisticsLineHandler implements LineHandler {
+    private static final int SAMPLE_MASK = ProcessingMetrics.SAMPLE_INTERVAL - 1;
+
+    private final ProcessingResult result;
+    private final String source;
+    private final ProcessingMetrics metrics;
+    private final LogFilter filter = LogFilter.getConfigured();
+    private final Quarantine quarantine = Quarantine.getConfigured();
+    private final SegmentStore.Writer store = SegmentStore.getConfiguredWriter();
+    private final ByteSlice slice = new ByteSlice();
+    private final LogTokenizer tokenizer = new LogTokenizer();
+    private int lineCounter;
+    // Время окончания обработки предыдущей строки, если следующая строка замеряется
+    private long previousLineEnd;
+
+    public StatisticsLineHandler(ProcessingResult result) {
+        this(result, "-");
+    }
+
+    /**
+     * @param source имя файла для записей карантина
+     */
+    public StatisticsLineHandler(ProcessingResult result, String source) {
+        this(result, source, ProcessingMetrics.global());
+    }
+
+    /**
+     * @param metrics куда писать метрики; null - не собирать их
+     */
+    StatisticsLineHandler(ProcessingResult result, String source, ProcessingMetrics metrics) {
+        this.result = result;
+        this.source = source;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void onLine(ByteBuffer buffer, int offset, int length, long position) {
+        result.countLine();
+        if (metrics == null) {
+            process(buffer, offset, length, position);
+            return;
+        }
+
+        metrics.countLine(length + 1);
+        int sample = ++lineCounter & SAMPLE_MASK;
+        if (sample == 0) {
+            processSampled(buffer, offset, length, position);
+        } else {
+            process(buffer, offset, length, position);
+            if (sample == SAMPLE_MASK) {
+                previousLineEnd = System.nanoTime();
+            }
+        }
+    }
+
+    @Override
+    public void onLineTooLong(ByteBuffer buffer, int offset, int length, long position) {
+        result.countLine();
+        if (metrics != null) {
+            metrics.countLine(length + 1);
+        }
+        reportMalformed(buffer, offset, length, position, MalformedReason.LINE_TOO_LONG);
+    }
+
+    private void process(ByteBuffer buffer, int offset, int length, long position) {
+        LogEntry entry = null;
+        MalformedReason reason;
+        // Исключение ловится только при разборе строки: ошибки хранилища и статистики не относятся к строке
+        try {
+            LogTokenizer tokens = tokenizer.tokenize(slice.wrap(buffer, offset, length));
+            if (!filter.test(tokens)) {
+                return;
+            }
+            reason = tokens.validate();
+            if (reason == null) {
+                entry = new LogEntry(tokens);
+            }
+        } catch (RuntimeException e) {
+            // Ожидаемые нарушения формата сообщаются кодом причины, исключение - признак ошибки в разборе
+            reason = MalformedReason.UNEXPECTED;
+        }
+        if (entry == null) {
+            reportMalformed(buffer, offset, length, position, reason);
+            return;
+        }
+        if (store != null) {
+            store.add(entry);
+        }
+        accept(entry);
+    }
+
+    // То же, что process, но с замером каждого этапа
+    private void processSampled(ByteBuffer buffer, int offset, int length, long position) {
+        long start = System.nanoTime();
+        if (previousLineEnd != 0) {
+            // Между концом предыдущей строки и началом этой читатель искал её границы в файле
+            metrics.recordStage(ProcessingMetrics.Stage.READ, start - previousLineEnd);
+        }
+        previousLineEnd = 0;
+        LogEntry entry = null;
+        MalformedReason reason;
+        long tokenized = 0;
+        long classified = 0;
+        try {
+            LogTokenizer tokens = tokenizer.tokenize(slice.wrap(buffer, offset, length));
+            if (!filter.test(tokens)) {
+                metrics.recordStage(ProcessingMetrics.Stage.PARSE, System.nanoTime() - start);
+                return;
+            }
+            reason = tokens.validate();
+            if (reason == null) {
+                tokenized = System.nanoTime();
+                UserAgent userAgent = tokens.parsedUserAgent();
+                classified = System.nanoTime();
+                entry = new LogEntry(tokens, userAgent);
+            }
+        } catch (RuntimeException e) {
+            reason = MalformedReason.UNEXPECTED;
+        }
+        if (entry == null) {
+            reportMalformed(buffer, offset, length, position, reason);
+            return;
+        }
+        long parsed = System.nanoTime();
+        if (store != null) {
+            store.add(entry);
+        }
+        accept(entry);
+        long aggregated = System.nanoTime();
+
+        metrics.recordStage(ProcessingMetrics.Stage.PARSE, (tokenized - start) + (parsed - classified));
+        metrics.recordStage(ProcessingMetrics.Stage.USER_AGENT, classified - tokenized);
+        metrics.recordStage(ProcessingMetrics.Stage.AGGREGATE, aggregated - parsed);
+    }
+
+    /**
+     * Получает каждую построенную запись; по умолчанию добавляет её в статистику результата
+     */
+    void accept(LogEntry entry) {
+        result.getStatistics().addEntry(entry);
+    }
+
+    private void reportMalformed(ByteBuffer buffer, int offset, int length, long position, MalformedReason reason) {
+        if (metrics != null) {
+            metrics.countMalformed(reason);
+        }
+        quarantine.record(source, position, reason, buffer, offset, length);
+    }
+
+    public ProcessingResult getResult() {
+        return result;
+    }
+}
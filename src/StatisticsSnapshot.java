@@ -0,0 +1,123 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Компактный версионированный двоичный снимок {@link Statistics}.
+ * Снимок содержит всё состояние статистики: счётчики, минимальное и максимальное время,
+ * множества страниц и частоты браузеров и ОС, поэтому снимки, снятые на разных узлах,
+ * можно загрузить и объединить через {@link Statistics#merge(Statistics)} так,
+ * как если бы все их входные данные были разобраны вместе.
+ *
+ * Формат: 4 байта сигнатуры "ALPS", 2 байта версии, затем поля статистики.
+ * Числа записываются в big-endian, строки - в модифицированном UTF-8 ({@link DataOutputStream#writeUTF}),
+ * коллекции - количеством элементов и самими элементами.
+ * Снимок хранит: счётчики, время в секундах эпохи по UTC, наборы самых частых страниц, клиентов и источников
+ * {@link SpaceSaving}, частоты браузеров и ОС, оценки уникальных адресов {@link HyperLogLog}
+ * и {@link DistinctBuckets}, поминутные и почасовые счётчики {@link TimeBuckets} и распределения
+ * {@link DDSketch} размеров ответов, длительности запросов и времени ответа upstream.
+ * Снимки другой версии не читаются: формат не переводится из одной версии в другую.
+ */
+public final class StatisticsSnapshot {
+    private static final int MAGIC = 0x414C5053;
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private StatisticsSnapshot() {
+    }
+
+    public static void write(Statistics statistics, OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, BUFFER_SIZE));
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        statistics.writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * @throws IOException если данные не являются снимком
+     * @throws UnsupportedVersionException если снимок записан другой версией формата
+     */
+    public static Statistics read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream, BUFFER_SIZE));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Данные не являются снимком статистики");
+        }
+        int version = in.readUnsignedShort();
+        if (version != VERSION) {
+            throw new UnsupportedVersionException("Неподдерживаемая версия снимка статистики: " + version
+                    + "; пересоздайте снимок из исходных логов");
+        }
+        return Statistics.readFrom(in);
+    }
+
+    /**
+     * Сохраняет снимок через временный файл, чтобы читатели не увидели его частично записанным
+     */
+    public static void save(Statistics statistics, Path path) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (OutputStream stream = Files.newOutputStream(temporary)) {
+            write(statistics, stream);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static Statistics load(Path path) throws IOException {
+        try (InputStream stream = Files.newInputStream(path)) {
+            return read(stream);
+        }
+    }
+
+    // Время в секундах от 1970-01-01T00:00Z или NO_TIME
+    static void writeTime(DataOutputStream out, long epochSecond) throws IOException {
+        out.writeBoolean(epochSecond != LogTokenizer.NO_TIME);
+        if (epochSecond != LogTokenizer.NO_TIME) {
+            out.writeLong(epochSecond);
+        }
+    }
+
+    static long readTime(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return LogTokenizer.NO_TIME;
+        }
+        return in.readLong();
+    }
+
+    static void writeStrings(DataOutputStream out, Collection<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            out.writeUTF(value);
+        }
+    }
+
+    static void readStrings(DataInputStream in, Collection<String> target) throws IOException {
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            target.add(in.readUTF());
+        }
+    }
+
+    static void writeCounts(DataOutputStream out, Map<String, Integer> counts) throws IOException {
+        out.writeInt(counts.size());
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+    }
+
+    static void readCounts(DataInputStream in, Map<String, Integer> target) throws IOException {
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            target.put(in.readUTF(), in.readInt());
+        }
+    }
+}
@@ -0,0 +1,673 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Приём строк лога по syslog через UDP и TCP без промежуточного файла
+ * (nginx: access_log syslog:server=адрес:порт).
+ * Один поток с {@link Selector} принимает датаграммы и данные соединений, выделяет сообщения
+ * (одно на датаграмму; в TCP - по длине в начале кадра или по переводу строки, RFC 6587),
+ * отрезает заголовок syslog (RFC 3164 и RFC 5424) и копирует текст сообщений в пакеты строк.
+ * Буферы приёма и пакеты переиспользуются, поэтому на сообщение ничего не создаётся.
+ * Потоки разбора обрабатывают пакеты так же, как {@link LogPipeline}, через {@link StatisticsLineHandler}
+ * и добавляют записи пакета в общую {@link ConcurrentStatistics}, снимок которой доступен в любой момент.
+ *
+ * Когда разбор не успевает и свободных пакетов нет, датаграммы отбрасываются и считаются
+ * в {@link #getDroppedMessages()}, а чтение соединений TCP приостанавливается до освобождения пакета,
+ * и отправитель притормаживается самим TCP. Датаграммы, отброшенные ядром из-за переполнения
+ * буфера сокета, отсюда не видны.
+ */
+public final class SyslogListener implements Closeable {
+    private static final int MAX_LINE_LENGTH = 1024;
+    // Наибольшая датаграмма UDP
+    private static final int DATAGRAM_SIZE = 65536;
+    private static final int STREAM_BUFFER_SIZE = 16 * 1024;
+    private static final int RECEIVE_BUFFER_SIZE = 4 << 20;
+    private static final int BATCH_SIZE = 64 * 1024;
+    // Пакетов в обороте на каждый поток разбора
+    private static final int BATCHES_PER_PARSER = 8;
+    // Неполный пакет отдаётся в разбор не позже чем через это время, чтобы статистика не отставала
+    private static final long FLUSH_INTERVAL_MILLIS = 100;
+    // Сколько датаграмм принимать подряд, прежде чем обслужить соединения
+    private static final int DATAGRAMS_PER_SELECT = 256;
+    private static final String SOURCE = "syslog";
+    // Результаты octetCount, кроме длины кадра
+    private static final long NOT_COUNTED = -1;
+    private static final long MORE_DATA = -2;
+
+    private final Selector selector;
+    private final DatagramChannel udp;
+    private final ServerSocketChannel tcp;
+    private final int parsers;
+    private final ConcurrentStatistics statistics = new ConcurrentStatistics();
+    private final BlockingQueue<Batch> freeBatches;
+    private final BlockingQueue<Batch> filledBatches;
+    private final Batch endOfInput = new Batch(0);
+    private final List<Thread> threads = new ArrayList<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final AtomicLong processedLines = new AtomicLong();
+
+    // Меняются только потоком приёма
+    private final ByteBuffer datagram = ByteBuffer.allocate(DATAGRAM_SIZE);
+    private final List<SelectionKey> paused = new ArrayList<>();
+    private Batch current;
+    private long streamPosition;
+    private volatile long messages;
+    private volatile long droppedMessages;
+    // Есть соединения, ждущие свободного пакета: потоки разбора будят поток приёма
+    private volatile boolean waitingForBatch;
+    private volatile boolean closed;
+
+    /**
+     * Открывает сокеты; приём начинается после {@link #start()}
+     * @param udpAddress адрес приёма датаграмм или null
+     * @param tcpAddress адрес приёма соединений или null
+     * @param parsers число потоков разбора
+     * @throws IOException если адрес занят или недоступен
+     */
+    public SyslogListener(InetSocketAddress udpAddress, InetSocketAddress tcpAddress, int parsers) throws IOException {
+        if (udpAddress == null && tcpAddress == null) {
+            throw new IllegalArgumentException("Не указан ни адрес UDP, ни адрес TCP");
+        }
+        this.parsers = Math.max(1, parsers);
+        int batches = this.parsers * BATCHES_PER_PARSER;
+        freeBatches = new ArrayBlockingQueue<>(batches);
+        // Место и для маркеров конца, чтобы их добавление никогда не ждало
+        filledBatches = new ArrayBlockingQueue<>(batches + this.parsers);
+        for (int i = 0; i < batches; i++) {
+            freeBatches.add(new Batch(BATCH_SIZE));
+        }
+
+        selector = Selector.open();
+        DatagramChannel udpChannel = null;
+        ServerSocketChannel tcpChannel = null;
+        try {
+            if (udpAddress != null) {
+                udpChannel = DatagramChannel.open();
+                udpChannel.setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER_SIZE);
+                udpChannel.bind(udpAddress);
+                udpChannel.configureBlocking(false);
+                udpChannel.register(selector, SelectionKey.OP_READ);
+            }
+            if (tcpAddress != null) {
+                tcpChannel = ServerSocketChannel.open();
+                tcpChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+                tcpChannel.bind(tcpAddress);
+                tcpChannel.configureBlocking(false);
+                tcpChannel.register(selector, SelectionKey.OP_ACCEPT);
+            }
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(udpChannel);
+            closeQuietly(tcpChannel);
+            closeQuietly(selector);
+            throw e;
+        }
+        udp = udpChannel;
+        tcp = tcpChannel;
+    }
+
+    /**
+     * @return адрес, на котором принимаются датаграммы, или null; с портом 0 в конструкторе - выбранный системой порт
+     */
+    public InetSocketAddress getUdpAddress() throws IOException {
+        return udp != null ? (InetSocketAddress) udp.getLocalAddress() : null;
+    }
+
+    /**
+     * @return адрес, на котором принимаются соединения, или null
+     */
+    public InetSocketAddress getTcpAddress() throws IOException {
+        return tcp != null ? (InetSocketAddress) tcp.getLocalAddress() : null;
+    }
+
+    /**
+     * Запускает поток приёма и потоки разбора
+     */
+    public synchronized void start() {
+        if (!threads.isEmpty() || closed) {
+            return;
+        }
+        threads.add(new Thread(this::receive, "syslog-receive"));
+        for (int i = 0; i < parsers; i++) {
+            threads.add(new Thread(this::parse, "syslog-parse-" + i));
+        }
+        threads.forEach(Thread::start);
+    }
+
+    /**
+     * Принимает сообщения, пока приём не будет остановлен {@link #close()} или прерыванием потока
+     * @param reportIntervalMillis как часто передавать статистику в reporter
+     * @param reporter получатель снимка статистики; вызывается, только если с прошлого раза были новые строки
+     * @throws IOException если приём остановлен ошибкой сокета
+     * @throws MalformedLineException если строка не разобрана при политике {@link Quarantine.Policy#ABORT}
+     */
+    public void run(long reportIntervalMillis, Consumer<ProcessingResult> reporter) throws IOException {
+        start();
+        if (threads.isEmpty()) {
+            return;
+        }
+        Thread receiver = threads.get(0);
+        long reportedLines = 0;
+        try {
+            while (receiver.isAlive()) {
+                receiver.join(reportIntervalMillis);
+                ProcessingResult result = snapshot();
+                if (result.getTotalLines() != reportedLines) {
+                    reporter.accept(result);
+                    reportedLines = result.getTotalLines();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            close();
+        }
+        Throwable error = failure.get();
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        }
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        if (error != null) {
+            throw new IOException(error.getMessage(), error);
+        }
+    }
+
+    /**
+     * Снимок статистики по уже разобранным сообщениям; можно вызывать из любого потока.
+     * Ячейки статистики и счётчик строк читаются не одновременно (см. {@link ConcurrentStatistics#snapshot()}),
+     * поэтому при непрерывном приёме число строк и записи в статистике могут немного расходиться
+     */
+    public ProcessingResult snapshot() {
+        return new ProcessingResult(processedLines.get(), statistics.snapshot());
+    }
+
+    /**
+     * @return сообщений, переданных в разбор
+     */
+    public long getMessages() {
+        return messages;
+    }
+
+    /**
+     * @return датаграмм, отброшенных из-за того, что разбор не успевал
+     */
+    public long getDroppedMessages() {
+        return droppedMessages;
+    }
+
+    /**
+     * Останавливает приём, дожидается разбора уже принятых сообщений и закрывает сокеты
+     */
+    @Override
+    public void close() throws IOException {
+        List<Thread> started;
+        synchronized (this) {
+            closed = true;
+            started = new ArrayList<>(threads);
+        }
+        selector.wakeup();
+        if (started.isEmpty()) {
+            closeChannels();
+            return;
+        }
+        try {
+            for (Thread thread : started) {
+                if (thread != Thread.currentThread()) {
+                    thread.join();
+                }
+            }
+        } catch (InterruptedException e) {
+            started.forEach(Thread::interrupt);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Ошибка любого потока останавливает приём; остальные потоки разбора дорабатывают принятое
+    private void fail(Throwable error) {
+        if (failure.compareAndSet(null, error)) {
+            closed = true;
+            selector.wakeup();
+        }
+    }
+
+    private void receive() {
+        try {
+            while (!closed) {
+                selector.select(FLUSH_INTERVAL_MILLIS);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.channel() == udp) {
+                        receiveDatagrams();
+                    } else if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isReadable()) {
+                        readStream(key);
+                    }
+                }
+                resumePaused();
+                if (current != null && current.length > 0
+                        && System.nanoTime() - current.started >= FLUSH_INTERVAL_MILLIS * 1_000_000) {
+                    publish();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        } finally {
+            if (current != null && current.length > 0) {
+                publish();
+            }
+            closeChannels();
+            for (int i = 0; i < parsers; i++) {
+                filledBatches.add(endOfInput);
+            }
+        }
+    }
+
+    private void receiveDatagrams() throws IOException {
+        for (int i = 0; i < DATAGRAMS_PER_SELECT; i++) {
+            datagram.clear();
+            // Адрес отправителя не нужен; JDK переиспользует его объект, пока отправитель тот же
+            if (udp.receive(datagram) == null) {
+                return;
+            }
+            if (!deliver(datagram.array(), 0, datagram.position())) {
+                droppedMessages++;
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = tcp.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ, new Connection());
+    }
+
+    private void readStream(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection connection = (Connection) key.attachment();
+        int read;
+        try {
+            read = channel.read(connection.buffer);
+        } catch (IOException e) {
+            // Разрыв соединения отправителем не останавливает приём
+            read = -1;
+        }
+        if (read < 0) {
+            if (!frame(connection, true)) {
+                // Свободного пакета нет, а ждать данных закрытого соединения нельзя
+                droppedMessages++;
+            }
+            key.cancel();
+            channel.close();
+            return;
+        }
+        if (!frame(connection, false)) {
+            key.interestOps(0);
+            paused.add(key);
+            waitingForBatch = true;
+        }
+    }
+
+    // Соединения, остановленные из-за нехватки пакетов, продолжают с места остановки
+    private void resumePaused() {
+        while (!paused.isEmpty() && !freeBatches.isEmpty()) {
+            SelectionKey key = paused.get(0);
+            if (!frame((Connection) key.attachment(), false)) {
+                return;
+            }
+            paused.remove(0);
+            if (key.isValid()) {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+        waitingForBatch = !paused.isEmpty();
+    }
+
+    /**
+     * Выделяет из принятых байтов соединения целые сообщения и передаёт их в пакеты
+     * @param end соединение закрыто, и последнее сообщение может быть без перевода строки
+     * @return false, если свободного пакета нет; необработанные байты остаются в буфере соединения
+     */
+    private boolean frame(Connection connection, boolean end) {
+        byte[] bytes = connection.bytes;
+        int limit = connection.buffer.position();
+        int start = connection.start;
+        while (start < limit) {
+            if (connection.skip > 0) {
+                int skipped = (int) Math.min(connection.skip, limit - start);
+                start += skipped;
+                connection.skip -= skipped;
+                continue;
+            }
+            if (connection.skipLine) {
+                int newline = indexOf(bytes, start, limit, (byte) '\n');
+                start = newline < 0 ? limit : newline + 1;
+                connection.skipLine = newline < 0;
+                continue;
+            }
+
+            long frameLength = octetCount(bytes, start, limit);
+            if (frameLength == MORE_DATA && !end) {
+                break;
+            }
+            if (frameLength >= 0) {
+                int messageStart = indexOf(bytes, start, limit, (byte) ' ') + 1;
+                long messageEnd = messageStart + frameLength;
+                if (messageEnd <= limit) {
+                    if (!deliver(bytes, messageStart, (int) messageEnd)) {
+                        connection.start = start;
+                        return false;
+                    }
+                    start = (int) messageEnd;
+                } else if (messageEnd - start > bytes.length || end) {
+                    // Кадр не поместится в буфер: его начала хватит, чтобы отправить строку в карантин
+                    if (!deliver(bytes, messageStart, limit)) {
+                        connection.start = start;
+                        return false;
+                    }
+                    connection.skip = messageEnd - limit;
+                    start = limit;
+                } else {
+                    break;
+                }
+                continue;
+            }
+
+            int newline = indexOf(bytes, start, limit, (byte) '\n');
+            if (newline < 0) {
+                boolean full = start == 0 && limit == bytes.length;
+                if (!end && !full) {
+                    break;
+                }
+                if (!deliver(bytes, start, limit)) {
+                    connection.start = start;
+                    return false;
+                }
+                // Сообщение длиннее буфера: остаток до перевода строки пропускается
+                connection.skipLine = !end;
+                start = limit;
+                continue;
+            }
+            if (!deliver(bytes, start, newline)) {
+                connection.start = start;
+                return false;
+            }
+            start = newline + 1;
+        }
+        System.arraycopy(bytes, start, bytes, 0, limit - start);
+        connection.buffer.position(limit - start);
+        connection.start = 0;
+        return true;
+    }
+
+    /**
+     * Длина кадра при передаче с подсчётом октетов (RFC 6587): «ДЛИНА SP &lt;PRI&gt;...»
+     * @return длина сообщения, {@link #NOT_COUNTED}, если кадр обычный, разделённый переводом строки,
+     * или {@link #MORE_DATA}, если байтов для решения пока мало
+     */
+    static long octetCount(byte[] bytes, int start, int limit) {
+        long length = 0;
+        int i = start;
+        while (i < limit && i - start < 8 && bytes[i] >= '0' && bytes[i] <= '9') {
+            length = length * 10 + (bytes[i] - '0');
+            i++;
+        }
+        if (i == start || i - start >= 8) {
+            return NOT_COUNTED;
+        }
+        if (i + 1 >= limit) {
+            return MORE_DATA;
+        }
+        // Строка лога без заголовка тоже может начинаться с цифр адреса, но после них идёт точка или двоеточие
+        return bytes[i] == ' ' && bytes[i + 1] == '<' ? length : NOT_COUNTED;
+    }
+
+    /**
+     * Копирует текст сообщения без заголовка syslog в текущий пакет
+     * @return false, если пакет заполнен, а свободного нет
+     */
+    private boolean deliver(byte[] bytes, int start, int end) {
+        while (end > start && (bytes[end - 1] == '\n' || bytes[end - 1] == '\r' || bytes[end - 1] == 0)) {
+            end--;
+        }
+        start = messageStart(bytes, start, end);
+        // Длиннее максимума строка всё равно уйдёт в карантин, и от неё нужно только начало
+        int length = Math.min(end - start, MAX_LINE_LENGTH + 1);
+        if (length <= 0) {
+            return true;
+        }
+        if (current != null && current.length + length + 1 > current.bytes.length) {
+            publish();
+        }
+        if (current == null) {
+            current = freeBatches.poll();
+            if (current == null) {
+                return false;
+            }
+            current.position = streamPosition;
+            current.started = System.nanoTime();
+        }
+        System.arraycopy(bytes, start, current.bytes, current.length, length);
+        current.length += length;
+        current.bytes[current.length++] = '\n';
+        current.messages++;
+        streamPosition += length + 1;
+        messages++;
+        return true;
+    }
+
+    private void publish() {
+        filledBatches.add(current);
+        current = null;
+    }
+
+    /**
+     * Начало текста сообщения после заголовка syslog.
+     * RFC 5424: &lt;PRI&gt;1 ВРЕМЯ УЗЕЛ ПРИЛОЖЕНИЕ PID ID [СТРУКТУРИРОВАННЫЕ-ДАННЫЕ] ТЕКСТ;
+     * RFC 3164 (так пишет nginx): &lt;PRI&gt;Mmm dd hh:mm:ss УЗЕЛ ТЕГ: ТЕКСТ.
+     * Сообщение без &lt;PRI&gt; считается строкой лога целиком
+     */
+    static int messageStart(byte[] bytes, int start, int end) {
+        if (start >= end || bytes[start] != '<') {
+            return start;
+        }
+        int i = start + 1;
+        while (i < end && i - start <= 3 && isDigit(bytes[i])) {
+            i++;
+        }
+        if (i == start + 1 || i >= end || bytes[i] != '>') {
+            return start;
+        }
+        i++;
+
+        if (i + 1 < end && isDigit(bytes[i]) && bytes[i + 1] == ' ') {
+            i += 2;
+            for (int field = 0; field < 5; field++) {
+                i = skipField(bytes, i, end);
+            }
+            if (i < end && bytes[i] == '-') {
+                i++;
+            } else {
+                while (i < end && bytes[i] == '[') {
+                    i = skipElement(bytes, i, end);
+                }
+            }
+            if (i < end && bytes[i] == ' ') {
+                i++;
+            }
+            // Метка порядка байтов UTF-8 перед текстом
+            if (i + 2 < end && bytes[i] == (byte) 0xEF && bytes[i + 1] == (byte) 0xBB && bytes[i + 2] == (byte) 0xBF) {
+                i += 3;
+            }
+            return i;
+        }
+
+        if (i + 16 <= end && bytes[i + 3] == ' ' && bytes[i + 6] == ' ' && bytes[i + 9] == ':'
+                && bytes[i + 12] == ':' && bytes[i + 15] == ' ') {
+            i = skipField(bytes, i + 16, end);
+        }
+        // Тег без пробелов и двоеточий, за которым идут двоеточие и пробел; IPv6-адрес в начале строки так не выглядит
+        int limit = Math.min(end - 1, i + 64);
+        for (int j = i; j < limit; j++) {
+            if (bytes[j] == ' ') {
+                break;
+            }
+            if (bytes[j] == ':') {
+                return bytes[j + 1] == ' ' ? j + 2 : i;
+            }
+        }
+        return i;
+    }
+
+    // Пропускает поле заголовка и пробел после него
+    private static int skipField(byte[] bytes, int i, int end) {
+        int space = indexOf(bytes, i, end, (byte) ' ');
+        return space < 0 ? end : space + 1;
+    }
+
+    // Пропускает элемент структурированных данных [id имя="значение"], в значениях которого ] экранируется
+    private static int skipElement(byte[] bytes, int i, int end) {
+        for (i++; i < end; i++) {
+            if (bytes[i] == '\\') {
+                i++;
+            } else if (bytes[i] == ']') {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+
+    private static int indexOf(byte[] bytes, int start, int end, byte value) {
+        for (int i = start; i < end; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isDigit(byte value) {
+        return value >= '0' && value <= '9';
+    }
+
+    private void parse() {
+        try {
+            EntryCollector collector = new EntryCollector(new ProcessingResult(), SOURCE);
+            while (true) {
+                Batch batch = filledBatches.take();
+                if (batch == endOfInput) {
+                    break;
+                }
+                CompressedLineReader.emitLines(batch.buffer, batch.length, batch.position, false, MAX_LINE_LENGTH,
+                        collector);
+                statistics.addAll(collector.entries);
+                collector.entries.clear();
+                processedLines.addAndGet(batch.messages);
+                batch.length = 0;
+                batch.messages = 0;
+                freeBatches.put(batch);
+                if (waitingForBatch) {
+                    selector.wakeup();
+                }
+            }
+        } catch (InterruptedException e) {
+            // Закрытие прервано
+        } catch (RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    private void closeChannels() {
+        for (SelectionKey key : selector.keys()) {
+            closeQuietly(key.channel());
+        }
+        closeQuietly(udp);
+        closeQuietly(tcp);
+        closeQuietly(selector);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // Закрываем при остановке, ошибка уже ничего не меняет
+        }
+    }
+
+    /**
+     * Пакет сообщений, разделённых переводом строки
+     */
+    private static final class Batch {
+        private final byte[] bytes;
+        private final ByteBuffer buffer;
+        private int length;
+        private int messages;
+        // Смещение пакета в потоке принятых сообщений, для записей карантина
+        private long position;
+        private long started;
+
+        Batch(int size) {
+            bytes = new byte[size];
+            buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * Принятые, но ещё не разделённые на сообщения байты соединения TCP
+     */
+    private static final class Connection {
+        private final byte[] bytes = new byte[STREAM_BUFFER_SIZE];
+        private final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        // Начало первого ещё не переданного сообщения
+        private int start;
+        // Сколько байт слишком длинного кадра с подсчётом октетов ещё пропустить
+        private long skip;
+        // Пропускать байты до перевода строки после слишком длинного сообщения
+        private boolean skipLine;
+    }
+
+    /**
+     * Разборщик, который складывает записи пакета в список, чтобы добавить их под одной блокировкой
+     */
+    private static final class EntryCollector extends StatisticsLineHandler {
+        private final List<LogEntry> entries = new ArrayList<>();
+
+        EntryCollector(ProcessingResult result, String source) {
+            super(result, source);
+        }
+
+        @Override
+        void accept(LogEntry entry) {
+            entries.add(entry);
+        }
+    }
+}
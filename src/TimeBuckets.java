@@ -0,0 +1,156 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Кольцевой буфер счётчиков по интервалам времени фиксированной длины (минута, час).
+ * Ячейка кольца хранит номер интервала от начала эпохи и счётчики всех метрик за этот интервал,
+ * поэтому запрос за скользящее окно стоит O(число интервалов в окне) и не требует хранить записи,
+ * а память ограничена размером кольца при сколь угодно долгой работе.
+ * Записи старше самого старого интервала кольца отбрасываются.
+ * Ячейка всегда хранит самый новый из попавших в неё интервалов со всеми его записями, поэтому
+ * результат не зависит от порядка добавления: записи могут приходить не по времени, как из конвейера.
+ */
+public final class TimeBuckets {
+    /**
+     * Метрики, которые считаются в каждом интервале
+     */
+    public enum Metric {
+        REQUESTS, NON_BOT_VISITS, ERRORS, BYTES
+    }
+
+    private static final int METRICS = Metric.values().length;
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final long unitSeconds;
+    private final int size;
+    // Номер интервала, которому сейчас принадлежит ячейка, или EMPTY
+    private final long[] keys;
+    // Счётчики: counters[slot * METRICS + metric.ordinal()]
+    private final long[] counters;
+
+    /**
+     * @param unitSeconds длина интервала в секундах
+     * @param size количество хранимых интервалов
+     */
+    public TimeBuckets(long unitSeconds, int size) {
+        this.unitSeconds = unitSeconds;
+        this.size = size;
+        this.keys = new long[size];
+        this.counters = new long[size * METRICS];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    public void add(long epochSecond, boolean nonBotVisit, boolean error, long bytes) {
+        long key = Math.floorDiv(epochSecond, unitSeconds);
+        int slot = (int) Math.floorMod(key, (long) size);
+        if (keys[slot] != key) {
+            if (keys[slot] > key) {
+                // Интервал уже вытеснен из кольца более новыми данными
+                return;
+            }
+            keys[slot] = key;
+            Arrays.fill(counters, slot * METRICS, slot * METRICS + METRICS, 0);
+        }
+        int base = slot * METRICS;
+        counters[base + Metric.REQUESTS.ordinal()]++;
+        if (nonBotVisit) {
+            counters[base + Metric.NON_BOT_VISITS.ordinal()]++;
+        }
+        if (error) {
+            counters[base + Metric.ERRORS.ordinal()]++;
+        }
+        counters[base + Metric.BYTES.ordinal()] += bytes;
+    }
+
+    /**
+     * Сумма метрики по интервалам, пересекающимся с [fromEpochSecond, toEpochSecond]
+     */
+    public long sum(Metric metric, long fromEpochSecond, long toEpochSecond) {
+        long fromKey = Math.floorDiv(fromEpochSecond, unitSeconds);
+        long toKey = Math.floorDiv(toEpochSecond, unitSeconds);
+        fromKey = Math.max(fromKey, toKey - size + 1);
+        long total = 0;
+        for (long key = fromKey; key <= toKey; key++) {
+            total += get(metric, key);
+        }
+        return total;
+    }
+
+    /**
+     * Значение метрики в интервале с данным номером или 0, если его нет в кольце
+     */
+    public long get(Metric metric, long key) {
+        int slot = (int) Math.floorMod(key, (long) size);
+        return keys[slot] == key ? counters[slot * METRICS + metric.ordinal()] : 0;
+    }
+
+    public long getUnitSeconds() {
+        return unitSeconds;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Добавляет счётчики другого кольца той же конфигурации
+     */
+    public void merge(TimeBuckets other) {
+        if (other.unitSeconds != unitSeconds || other.size != size) {
+            throw new IllegalArgumentException("Нельзя объединить кольца с разными интервалами или размером");
+        }
+        for (int slot = 0; slot < size; slot++) {
+            long otherKey = other.keys[slot];
+            if (otherKey == EMPTY || otherKey < keys[slot]) {
+                continue;
+            }
+            int base = slot * METRICS;
+            if (otherKey > keys[slot]) {
+                keys[slot] = otherKey;
+                System.arraycopy(other.counters, base, counters, base, METRICS);
+            } else {
+                for (int i = 0; i < METRICS; i++) {
+                    counters[base + i] += other.counters[base + i];
+                }
+            }
+        }
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(unitSeconds);
+        out.writeInt(size);
+        int used = 0;
+        for (long key : keys) {
+            if (key != EMPTY) {
+                used++;
+            }
+        }
+        // Записываются только занятые ячейки
+        out.writeInt(used);
+        for (int slot = 0; slot < size; slot++) {
+            if (keys[slot] == EMPTY) {
+                continue;
+            }
+            out.writeLong(keys[slot]);
+            for (int i = 0; i < METRICS; i++) {
+                out.writeLong(counters[slot * METRICS + i]);
+            }
+        }
+    }
+
+    static TimeBuckets readFrom(DataInputStream in) throws IOException {
+        TimeBuckets buckets = new TimeBuckets(in.readLong(), in.readInt());
+        int used = in.readInt();
+        for (int i = 0; i < used; i++) {
+            long key = in.readLong();
+            int slot = (int) Math.floorMod(key, (long) buckets.size);
+            buckets.keys[slot] = key;
+            for (int j = 0; j < METRICS; j++) {
+                buckets.counters[slot * METRICS + j] = in.readLong();
+            }
+        }
+        return buckets;
+    }
+}
@@ -0,0 +1,8 @@
+import java.io.IOException;
+
+// Снимок или сегмент записан версией формата, которую эта сборка не читает
+class UnsupportedVersionException extends IOException {
+    public UnsupportedVersionException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,105 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Потокобезопасный ограниченный по размеру кэш классифицированных User-Agent.
+ * Различных строк User-Agent в реальном трафике немного, поэтому каждая из них
+ * разбирается один раз, а дальше все записи лога разделяют один неизменяемый {@link UserAgent}.
+ * Кэш разбит на сегменты с собственной блокировкой и вытеснением по LRU внутри сегмента,
+ * чтобы потоки, разбирающие разные части файла, не конкурировали за одну блокировку.
+ */
+public class UserAgentCache {
+    private static final int DEFAULT_CAPACITY = 4096;
+    private static final int SEGMENTS = 16;
+
+    private static final UserAgentCache SHARED =
+            new UserAgentCache(Integer.getInteger("parser.userAgentCacheSize", DEFAULT_CAPACITY));
+
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public UserAgentCache(int capacity) {
+        int segmentCapacity = Math.max(1, (capacity + SEGMENTS - 1) / SEGMENTS);
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    /**
+     * Общий кэш процесса; размер задаётся свойством -Dparser.userAgentCacheSize
+     */
+    public static UserAgentCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Возвращает классифицированный User-Agent, разбирая строку только при промахе
+     */
+    public UserAgent get(String userAgentString) {
+        String key = userAgentString != null ? userAgentString : "";
+        int hash = key.hashCode();
+        Segment segment = segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+
+        UserAgent cached;
+        synchronized (segment) {
+            cached = segment.get(key);
+        }
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        misses.increment();
+        // Разбор выполняется вне блокировки; при гонке оба потока получат равноценный результат
+        UserAgent parsed = new UserAgent(key);
+        synchronized (segment) {
+            segment.put(key, parsed);
+        }
+        return parsed;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return доля попаданий от 0 до 1
+     */
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    // Сегмент кэша: LinkedHashMap в порядке доступа вытесняет давно не использованные записи
+    private static final class Segment extends LinkedHashMap<String, UserAgent> {
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, UserAgent> eldest) {
+            return size() > capacity;
+        }
+    }
+}
@@ -0,0 +1,330 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Набор правил классификации User-Agent, скомпилированный в автомат Ахо-Корасик.
+ * Правила загружаются из файла useragent-rules.txt; строка User-Agent просматривается
+ * один раз, и для каждой категории выбирается найденное правило с наибольшим приоритетом.
+ * Стоимость классификации зависит от длины строки, а не от количества правил.
+ */
+public final class UserAgentRules {
+    public static final int BROWSER = 0;
+    public static final int OS = 1;
+    public static final int BOT = 2;
+    private static final int CATEGORIES = 3;
+
+    private static final String RESOURCE = "/useragent-rules.txt";
+    private static final int NONE = Integer.MAX_VALUE;
+
+    // Основные правила useragent-rules.txt на случай сборки без ресурса: классы браузеров
+    // и ОС те же, но без редких браузеров и отдельных имён роботов
+    static final String[] BUILT_IN_RULES = {
+            "browser 100 GoogleBot googlebot",
+            "browser 100 BingBot bingbot",
+            "browser 100 YandexBot yandexbot",
+            "browser 80 Edge edge",
+            "browser 80 Edge edg/",
+            "browser 75 Opera opr/",
+            "browser 75 Yandex yabrowser/",
+            "browser 75 Samsung samsungbrowser/",
+            "browser 75 Vivaldi vivaldi/",
+            "browser 70 Firefox firefox",
+            "browser 70 Firefox fxios",
+            "browser 65 Other chromium",
+            "browser 60 Chrome chrome",
+            "browser 60 Chrome crios/",
+            "browser 50 Safari safari",
+            "browser 40 Opera opera",
+            "browser 40 Opera presto",
+            "browser 30 Yandex yandex",
+            "os 70 iOS iphone",
+            "os 70 iOS ipad",
+            "os 65 Android android",
+            "os 60 Windows windows",
+            "os 50 macOS mac",
+            "os 50 macOS os x",
+            "os 30 Linux linux",
+            "os 20 iOS ios",
+            "bot 0 Bot bot",
+            "bot 0 Bot crawler",
+            "bot 0 Bot spider",
+            "bot 0 Bot slurp",
+            "bot 0 Bot facebookexternalhit"
+    };
+
+    private static volatile UserAgentRules defaultRules;
+
+    private final Rule[] rules;
+    // Класс символа для ASCII; 0 - символ не встречается ни в одной сигнатуре
+    private final byte[] charClasses;
+    private final int classCount;
+    // Переходы детерминированного автомата: transitions[state * classCount + class]
+    private final int[] transitions;
+    // Лучшее (с наименьшим рангом) правило каждой категории, оканчивающееся в состоянии
+    private final int[] best;
+
+    private UserAgentRules(List<Rule> ruleList) {
+        // Ранг правила - его место после сортировки по убыванию приоритета и порядку в файле
+        ruleList.sort(Comparator.comparingInt((Rule rule) -> -rule.priority).thenComparingInt(rule -> rule.order));
+        this.rules = ruleList.toArray(new Rule[0]);
+
+        this.charClasses = new byte[128];
+        int classes = 1;
+        for (Rule rule : rules) {
+            for (int i = 0; i < rule.pattern.length(); i++) {
+                char c = rule.pattern.charAt(i);
+                if (charClasses[c] == 0) {
+                    if (classes == 127) {
+                        throw new IllegalArgumentException("Слишком много различных символов в сигнатурах");
+                    }
+                    charClasses[c] = (byte) classes++;
+                }
+            }
+        }
+        this.classCount = classes;
+
+        // Бор сигнатур
+        int capacity = 1;
+        for (Rule rule : rules) {
+            capacity += rule.pattern.length();
+        }
+        int[] trie = new int[capacity * classCount];
+        Arrays.fill(trie, -1);
+        int[] bestByState = new int[capacity * CATEGORIES];
+        Arrays.fill(bestByState, NONE);
+        int states = 1;
+        for (int rank = 0; rank < rules.length; rank++) {
+            Rule rule = rules[rank];
+            int state = 0;
+            for (int i = 0; i < rule.pattern.length(); i++) {
+                int index = state * classCount + charClasses[rule.pattern.charAt(i)];
+                if (trie[index] < 0) {
+                    trie[index] = states++;
+                }
+                state = trie[index];
+            }
+            int slot = state * CATEGORIES + rule.category;
+            bestByState[slot] = Math.min(bestByState[slot], rank);
+        }
+
+        // Суффиксные ссылки обходом в ширину; недостающие переходы берутся у суффиксного состояния
+        int[] fail = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < classCount; c++) {
+            int next = trie[c];
+            if (next < 0) {
+                trie[c] = 0;
+            } else {
+                fail[next] = 0;
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int category = 0; category < CATEGORIES; category++) {
+                int slot = state * CATEGORIES + category;
+                bestByState[slot] = Math.min(bestByState[slot], bestByState[fail[state] * CATEGORIES + category]);
+            }
+            for (int c = 0; c < classCount; c++) {
+                int index = state * classCount + c;
+                int next = trie[index];
+                if (next < 0) {
+                    trie[index] = trie[fail[state] * classCount + c];
+                } else {
+                    fail[next] = trie[fail[state] * classCount + c];
+                    queue.add(next);
+                }
+            }
+        }
+
+        this.transitions = Arrays.copyOf(trie, states * classCount);
+        this.best = Arrays.copyOf(bestByState, states * CATEGORIES);
+    }
+
+    /**
+     * Правила по умолчанию: файл из свойства -Dparser.userAgentRules или встроенный ресурс.
+     * Без ресурса в classpath используется сокращённый набор {@link #BUILT_IN_RULES}.
+     * Ошибка чтения или разбора файла из свойства выбрасывается при первом обращении,
+     * поэтому Main загружает правила при запуске, до разбора строк.
+     */
+    public static UserAgentRules getDefault() {
+        UserAgentRules rules = defaultRules;
+        if (rules == null) {
+            synchronized (UserAgentRules.class) {
+                rules = defaultRules;
+                if (rules == null) {
+                    rules = loadDefault();
+                    defaultRules = rules;
+                }
+            }
+        }
+        return rules;
+    }
+
+    private static UserAgentRules loadDefault() {
+        try {
+            String path = System.getProperty("parser.userAgentRules");
+            if (path != null) {
+                try (Reader reader = Files.newBufferedReader(Path.of(path), StandardCharsets.UTF_8)) {
+                    return load(reader);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Файл правил User-Agent " + path + ": " + e.getMessage(), e);
+                }
+            }
+            InputStream stream = UserAgentRules.class.getResourceAsStream(RESOURCE);
+            if (stream == null) {
+                System.err.println("Не найден файл правил User-Agent " + RESOURCE
+                        + ", используются встроенные правила (" + BUILT_IN_RULES.length + ")");
+                return load(new StringReader(String.join("\n", BUILT_IN_RULES)));
+            }
+            try (Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+                return load(reader);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось загрузить правила User-Agent: " + e.getMessage(), e);
+        }
+    }
+
+    public static UserAgentRules load(Reader reader) throws IOException {
+        List<Rule> rules = new ArrayList<>();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            rules.add(parseRule(line, lineNumber, rules.size()));
+        }
+        return new UserAgentRules(rules);
+    }
+
+    private static Rule parseRule(String line, int lineNumber, int order) {
+        String[] parts = line.split("\\s+", 4);
+        if (parts.length < 4) {
+            throw new IllegalArgumentException("Строка правил #" + lineNumber + " должна содержать категорию, приоритет, значение и сигнатуру");
+        }
+        int category;
+        switch (parts[0]) {
+            case "browser":
+                category = BROWSER;
+                break;
+            case "os":
+                category = OS;
+                break;
+            case "bot":
+                category = BOT;
+                break;
+            default:
+                throw new IllegalArgumentException("Неизвестная категория в строке правил #" + lineNumber + ": " + parts[0]);
+        }
+        int priority;
+        try {
+            priority = Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Некорректный приоритет в строке правил #" + lineNumber + ": " + parts[1]);
+        }
+        String pattern = parts[3].toLowerCase();
+        for (int i = 0; i < pattern.length(); i++) {
+            if (pattern.charAt(i) >= 128) {
+                throw new IllegalArgumentException("Сигнатура в строке правил #" + lineNumber + " должна состоять из ASCII-символов");
+            }
+        }
+        return new Rule(category, priority, parts[2], pattern, order);
+    }
+
+    /**
+     * Классифицирует строку User-Agent за один проход
+     */
+    public Classification classify(CharSequence userAgent) {
+        if (userAgent.length() == 0) {
+            return new Classification("Unknown", "Unknown", false);
+        }
+
+        int browser = NONE;
+        int os = NONE;
+        int bot = NONE;
+        int state = 0;
+        for (int i = 0; i < userAgent.length(); i++) {
+            char c = userAgent.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            int charClass = c < 128 ? charClasses[c] : 0;
+            state = transitions[state * classCount + charClass];
+
+            int slot = state * CATEGORIES;
+            browser = Math.min(browser, best[slot + BROWSER]);
+            os = Math.min(os, best[slot + OS]);
+            bot = Math.min(bot, best[slot + BOT]);
+        }
+
+        return new Classification(
+                browser != NONE ? rules[browser].value : "Other",
+                os != NONE ? rules[os].value : "Unknown",
+                bot != NONE
+        );
+    }
+
+    public int size() {
+        return rules.length;
+    }
+
+    /**
+     * Результат классификации строки User-Agent
+     */
+    public static final class Classification {
+        private final String browser;
+        private final String operatingSystem;
+        private final boolean bot;
+
+        Classification(String browser, String operatingSystem, boolean bot) {
+            this.browser = browser;
+            this.operatingSystem = operatingSystem;
+            this.bot = bot;
+        }
+
+        public String getBrowser() {
+            return browser;
+        }
+
+        public String getOperatingSystem() {
+            return operatingSystem;
+        }
+
+        public boolean isBot() {
+            return bot;
+        }
+    }
+
+    private static final class Rule {
+        final int category;
+        final int priority;
+        final String value;
+        final String pattern;
+        final int order;
+
+        Rule(int category, int priority, String value, String pattern, int order) {
+            this.category = category;
+            this.priority = priority;
+            this.value = value;
+            this.pattern = pattern;
+            this.order = order;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+class AddressSpaceSavingTest {
+
+    @Test
+    void tracksSameKeysAsStringSpaceSavingUnderEvictions() {
+        // Порядок операций с кучей одинаков, поэтому после каждого вытеснения наборы совпадают
+        AddressSpaceSaving addresses = new AddressSpaceSaving(100);
+        SpaceSaving strings = new SpaceSaving(100);
+        Random random = new Random(7);
+        for (int i = 0; i < 50_000; i++) {
+            int address = 0x0A000000 | (int) Math.abs(random.nextGaussian() * 800);
+            if (i % 3 == 0) {
+                long low = random.nextInt(2_000);
+                addresses.add(6, 0x20010DB800000000L, low);
+                strings.add(IpAddress.formatIpv6(0x20010DB800000000L, low));
+            } else {
+                addresses.add(4, 0, address);
+                strings.add(IpAddress.formatIpv4(address));
+            }
+        }
+
+        assertEquals(strings.getTotal(), addresses.getTotal());
+        assertEquals(strings.getMaxCount(), addresses.getMaxCount());
+        assertEquals(describe(strings.top(100)), describe(addresses.top(100)));
+    }
+
+    @Test
+    void ipv4AndMappedIpv6AreOneKey() {
+        AddressSpaceSaving addresses = new AddressSpaceSaving(10);
+        addresses.add(4, 0, 0x0A000007L);
+        addresses.add(6, 0, IpAddress.MAPPED_IPV4_PREFIX | 0x0A000007L);
+        addresses.add(6, 0x20010DB800000000L, 1);
+
+        List<SpaceSaving.Entry> top = addresses.top(10);
+        assertEquals(2, top.size());
+        assertEquals("10.0.0.7=2", top.get(0).toString());
+        assertEquals("2001:db8::1=1", top.get(1).toString());
+    }
+
+    @Test
+    void mergeKeepsHeavyHittersAndSurvivesRoundTrip() throws IOException {
+        AddressSpaceSaving left = new AddressSpaceSaving(50);
+        AddressSpaceSaving right = new AddressSpaceSaving(50);
+        for (int i = 0; i < 10_000; i++) {
+            (i % 2 == 0 ? left : right).add(4, 0, 0x0A000000 | i);
+            if (i % 10 == 0) {
+                (i % 20 == 0 ? left : right).add(4, 0, 0xC0A80001L);
+            }
+        }
+        left.merge(right);
+
+        SpaceSaving.Entry heavy = left.top(1).get(0);
+        assertEquals("192.168.0.1", heavy.getKey());
+        assertTrue(heavy.getGuaranteedCount() <= 1_000 && heavy.getCount() >= 1_000, heavy.toString());
+        assertEquals(11_000, left.getTotal());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        left.writeTo(new DataOutputStream(bytes));
+        AddressSpaceSaving restored = AddressSpaceSaving.readFrom(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(left.getTotal(), restored.getTotal());
+        assertEquals(describe(left.top(50)), describe(restored.top(50)));
+    }
+
+    private static TreeSet<String> describe(List<SpaceSaving.Entry> entries) {
+        TreeSet<String> result = new TreeSet<>();
+        for (SpaceSaving.Entry entry : entries) {
+            result.add(entry.getKey() + " " + entry.getCount() + " " + entry.getError());
+        }
+        return result;
+    }
+}
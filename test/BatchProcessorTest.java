@@ -0,0 +1,90 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BatchProcessorTest {
+    private static final String LINE = "10.0.0.%d - - [25/Sep/2022:10:00:00 +0000] \"GET /page HTTP/1.1\" 200 100 \"-\" \"-\"";
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void restoreDefault() throws IOException {
+        Quarantine.configure(Quarantine.open(Quarantine.Policy.SKIP, null));
+    }
+
+    @Test
+    void expandsDirectoriesAndGlobs() throws IOException {
+        Path a = write("logs/a.log", 1);
+        Path b = write("logs/nested/b.log", 1);
+        Path c = write("logs/nested/c.gz", 1);
+        Path d = write("other/d.log", 1);
+
+        // Каталог даёт файлы на любой глубине, * - только на своём уровне, ** - во вложенных каталогах
+        assertEquals(List.of(a, b, c), BatchProcessor.expand(List.of(directory.resolve("logs").toString())));
+        assertEquals(List.of(a), BatchProcessor.expand(List.of(directory + "/logs/*.log")));
+        assertEquals(List.of(b), BatchProcessor.expand(List.of(directory + "/logs/**/*.log")));
+        assertEquals(List.of(a, b, d), BatchProcessor.expand(List.of(directory + "/*/{*,nested/*}.log")));
+        // Повторы убираются, порядок - по первому упоминанию
+        assertEquals(List.of(d, a, b, c), BatchProcessor.expand(List.of(d.toString(), directory.resolve("logs").toString(),
+                a.toString())));
+        assertThrows(IOException.class, () -> BatchProcessor.expand(List.of(directory + "/missing.log")));
+    }
+
+    @Test
+    void reportsEachFileLargestFirst() throws IOException {
+        Path small = write("small.log", 10);
+        Path large = write("large.log", 300);
+        Path medium = write("medium.log", 50);
+
+        // В одном потоке диапазоны разбираются строго по убыванию размера
+        Map<Path, Long> perFile = new LinkedHashMap<>();
+        ProcessingResult total = new BatchProcessor(1).process(List.of(small, large, medium),
+                (file, result) -> perFile.put(file, result.getTotalLines()));
+
+        assertEquals(List.of(large, medium, small), new ArrayList<>(perFile.keySet()));
+        assertEquals(List.of(300L, 50L, 10L), new ArrayList<>(perFile.values()));
+        assertEquals(360, total.getTotalLines());
+        assertEquals(360, total.getStatistics().getEntryCount());
+    }
+
+    @Test
+    void abortStopsWholeBatch() throws IOException {
+        Quarantine.configure(Quarantine.open(Quarantine.Policy.ABORT, null));
+        Path broken = write("broken.log", 100);
+        Files.writeString(broken, "испорченная строка\n", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        Path other = write("other.log", 10);
+
+        List<Path> reported = new ArrayList<>();
+        MalformedLineException e = assertThrows(MalformedLineException.class,
+                () -> new BatchProcessor(1).process(List.of(other, broken), (file, result) -> reported.add(file)));
+
+        assertEquals(MalformedReason.MISSING_TIME, e.getReason());
+        assertTrue(reported.isEmpty(), "после прерывания переданы результаты " + reported);
+    }
+
+    private Path write(String name, int lines) throws IOException {
+        Path file = directory.resolve(name);
+        Files.createDirectories(file.getParent());
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            text.append(String.format(LINE, i % 250)).append('\n');
+        }
+        Files.writeString(file, text, StandardCharsets.UTF_8);
+        return file;
+    }
+}
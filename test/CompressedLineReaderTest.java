@@ -0,0 +1,134 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CompressedLineReaderTest {
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void gzipRoundTripKeepsLinesAndPositions() throws IOException {
+        // Больше нескольких буферов распаковки (1 МиБ), чтобы строки попадали на их границы
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 3 << 20) {
+            for (String line : LogEntryGoldenTest.read("golden/access.log")) {
+                text.append(line).append(text.length() % 7 == 0 ? "\r\n" : "\n");
+            }
+        }
+        text.append("последняя строка без перевода");
+        byte[] plain = text.toString().getBytes(StandardCharsets.UTF_8);
+        Path file = directory.resolve("access.log.gz");
+        Files.write(file, gzip(plain));
+
+        assertEquals(CompressedLineReader.Compression.GZIP, CompressedLineReader.Compression.detect(file));
+        assertEquals(splitLines(plain), readLines(file));
+    }
+
+    @Test
+    void gzipReadsConcatenatedMembers() throws IOException {
+        Path file = directory.resolve("rotated.log.gz");
+        ByteArrayOutputStream members = new ByteArrayOutputStream();
+        members.write(gzip("первая\nвторая\n".getBytes(StandardCharsets.UTF_8)));
+        members.write(gzip("третья\n".getBytes(StandardCharsets.UTF_8)));
+        Files.write(file, members.toByteArray());
+
+        assertEquals(List.of("0 первая", "13 вторая", "26 третья"), readLines(file));
+    }
+
+    @Test
+    void truncatedGzipFailsInsteadOfHanging() throws IOException {
+        byte[] compressed = gzip("10.0.0.1 - - строка\n".repeat(100_000).getBytes(StandardCharsets.UTF_8));
+        Path file = directory.resolve("truncated.log.gz");
+        Files.write(file, Arrays.copyOf(compressed, compressed.length / 2));
+
+        assertTimeoutPreemptively(Duration.ofSeconds(30),
+                () -> assertThrows(IOException.class, () -> readLines(file)));
+    }
+
+    @Test
+    void handlerFailureStopsDecompression() throws IOException {
+        Path file = directory.resolve("access.log.gz");
+        Files.write(file, gzip("строка\n".repeat(1_000_000).getBytes(StandardCharsets.UTF_8)));
+        CompressedLineReader reader = new CompressedLineReader(file, CompressedLineReader.Compression.GZIP, MAX_LINE_LENGTH);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> assertThrows(IllegalStateException.class,
+                () -> reader.read((buffer, offset, length, position) -> {
+                    throw new IllegalStateException("ошибка разбора");
+                })));
+    }
+
+    @Test
+    void detectsCompressionByMagicBytes() throws IOException {
+        assertEquals(CompressedLineReader.Compression.GZIP, detect(new byte[]{0x1F, (byte) 0x8B, 8, 0}));
+        assertEquals(CompressedLineReader.Compression.ZSTD, detect(new byte[]{0x28, (byte) 0xB5, 0x2F, (byte) 0xFD, 0}));
+        assertEquals(CompressedLineReader.Compression.NONE, detect("10.0.0.1 - -".getBytes(StandardCharsets.US_ASCII)));
+        // Файлы короче сигнатуры, в том числе пустые, не сжаты
+        assertEquals(CompressedLineReader.Compression.NONE, detect(new byte[]{0x1F}));
+        assertEquals(CompressedLineReader.Compression.NONE, detect(new byte[]{0x28, (byte) 0xB5, 0x2F}));
+        assertEquals(CompressedLineReader.Compression.NONE, detect(new byte[0]));
+    }
+
+    private CompressedLineReader.Compression detect(byte[] content) throws IOException {
+        Path file = Files.createTempFile(directory, "detect", ".log");
+        Files.write(file, content);
+        return CompressedLineReader.Compression.detect(file);
+    }
+
+    private static byte[] gzip(byte[] plain) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(plain);
+        }
+        return bytes.toByteArray();
+    }
+
+    // Строки со смещениями от начала распакованных данных
+    private static List<String> readLines(Path file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        new CompressedLineReader(file, CompressedLineReader.Compression.detect(file), MAX_LINE_LENGTH)
+                .read((buffer, offset, length, position) -> lines.add(position + " " + decode(buffer, offset, length)));
+        return lines;
+    }
+
+    private static List<String> splitLines(byte[] plain) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        while (start < plain.length) {
+            int end = start;
+            while (end < plain.length && plain[end] != '\n') {
+                end++;
+            }
+            int length = end - start;
+            if (length > 0 && plain[end - 1] == '\r') {
+                length--;
+            }
+            lines.add(start + " " + new String(plain, start, length, StandardCharsets.UTF_8));
+            start = end + 1;
+        }
+        return lines;
+    }
+
+    private static String decode(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
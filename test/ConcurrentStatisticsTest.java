@@ -0,0 +1,66 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class ConcurrentStatisticsTest {
+    @Test
+    void snapshotsDuringWritesEndWithAllEntries() throws InterruptedException {
+        List<LogEntry> entries = new ArrayList<>();
+        LogTokenizer tokens = new LogTokenizer();
+        for (String line : LogEntryGoldenTest.read("golden/access.log")) {
+            if (tokens.tokenize(line).validate() == null) {
+                entries.add(new LogEntry(tokens));
+            }
+        }
+
+        ConcurrentStatistics concurrent = new ConcurrentStatistics(4);
+        int rounds = 200;
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread writer = new Thread(() -> {
+                for (int round = 0; round < rounds; round++) {
+                    entries.forEach(concurrent::addEntry);
+                }
+            });
+            writers.add(writer);
+            writer.start();
+        }
+        // Снимки во время записи не должны ломать ни ячейки, ни сам снимок
+        long previous = 0;
+        while (writers.stream().anyMatch(Thread::isAlive)) {
+            long count = concurrent.snapshot().getEntryCount();
+            assertEquals(true, count >= previous, "снимок меньше предыдущего");
+            previous = count;
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        Statistics expected = new Statistics();
+        for (int i = 0; i < 4 * rounds; i++) {
+            entries.forEach(expected::addEntry);
+        }
+        Statistics snapshot = concurrent.snapshot();
+        assertEquals(expected.getEntryCount(), snapshot.getEntryCount());
+        assertEquals(expected.getTotalTraffic(), snapshot.getTotalTraffic());
+        // Порядок клиентов с равным числом посещений зависит от порядка объединения ячеек
+        assertEquals(sorted(LogEntryGoldenTest.describe(expected)), sorted(LogEntryGoldenTest.describe(snapshot)));
+    }
+
+    @Test
+    void shardCountIsRoundedAndCapped() {
+        assertEquals(1, new ConcurrentStatistics(1).getShardCount());
+        assertEquals(8, new ConcurrentStatistics(5).getShardCount());
+        // Без -Dparser.statisticsShards ячеек не больше 16, сколько бы ни было процессоров
+        assertEquals(16, new ConcurrentStatistics(1000).getShardCount());
+    }
+
+    private static List<String> sorted(List<String> lines) {
+        List<String> copy = new ArrayList<>(lines);
+        copy.sort(null);
+        return copy;
+    }
+}
@@ -0,0 +1,73 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class DistinctBucketsTest {
+    private static final int SIZE = 4;
+    private static final int PRECISION = 14;
+
+    @Test
+    void wrapKeepsOnlyNewestIntervals() {
+        // Минута m: сто своих значений и одно общее для всех минут
+        DistinctBuckets buckets = new DistinctBuckets(60, SIZE, PRECISION);
+        for (int minute = 0; minute < 10; minute++) {
+            for (int i = 0; i < 100; i++) {
+                buckets.add(minute * 60L + i % 60, HyperLogLog.hash(0, minute * 100L + i));
+            }
+            buckets.add(minute * 60L, HyperLogLog.hash(0, -1));
+        }
+
+        for (int minute = 0; minute < 10; minute++) {
+            long count = buckets.get(minute);
+            if (minute < 10 - SIZE) {
+                assertEquals(0, count, "минута " + minute);
+            } else {
+                assertEquals(101, count, 2, "минута " + minute);
+            }
+        }
+        // Общее значение в окне считается один раз, окно шире кольца обрезается до его размера
+        assertEquals(SIZE * 100 + 1, buckets.count(0, 10 * 60 - 1), 8);
+        assertEquals(201, buckets.count(8 * 60, 9 * 60 + 59), 4);
+
+        // Запоздавшее значение вытесненной минуты не попадает в минуту, занявшую её ячейку
+        long before = buckets.get(6);
+        for (int i = 0; i < 50; i++) {
+            buckets.add(2 * 60, HyperLogLog.hash(1, i));
+        }
+        assertEquals(before, buckets.get(6));
+        assertEquals(0, buckets.get(2));
+    }
+
+    @Test
+    void resultDoesNotDependOnOrderOrSplit() {
+        List<long[]> values = new ArrayList<>();
+        Random random = new Random(11);
+        for (int i = 0; i < 5000; i++) {
+            values.add(new long[]{random.nextInt(60 * 3 * SIZE), random.nextInt(3000)});
+        }
+        DistinctBuckets sequential = new DistinctBuckets(60, SIZE, PRECISION);
+        values.stream().sorted((a, b) -> Long.compare(a[0], b[0]))
+                .forEach(value -> sequential.add(value[0], HyperLogLog.hash(0, value[1])));
+
+        Collections.shuffle(values, random);
+        DistinctBuckets first = new DistinctBuckets(60, SIZE, PRECISION);
+        DistinctBuckets second = new DistinctBuckets(60, SIZE, PRECISION);
+        for (int i = 0; i < values.size(); i++) {
+            long[] value = values.get(i);
+            (i % 3 == 0 ? first : second).add(value[0], HyperLogLog.hash(0, value[1]));
+        }
+        first.merge(second);
+
+        // Регистры оценок объединяются без потерь, поэтому оценки совпадают точно
+        for (long minute = 0; minute < 3 * SIZE; minute++) {
+            assertEquals(sequential.get(minute), first.get(minute), "минута " + minute);
+        }
+        long end = 3 * SIZE * 60 - 1;
+        assertEquals(sequential.count(0, end), first.count(0, end));
+    }
+}
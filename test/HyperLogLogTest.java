@@ -0,0 +1,87 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+class HyperLogLogTest {
+    private static final int PRECISION = 12;
+
+    @Test
+    void sparseCountIsNearlyExact() throws IOException {
+        // При точности 12 разреженная таблица выгоднее плотных регистров до 512 значений
+        HyperLogLog sketch = sketch(0, 500);
+        assertEquals(false, isDense(sketch));
+        assertEquals(500, sketch.cardinality(), 1);
+        // Повторы не меняют оценку
+        sketch.merge(sketch(0, 500));
+        assertEquals(500, sketch.cardinality(), 1);
+    }
+
+    @Test
+    void switchToDenseKeepsRegisters() throws IOException {
+        // Регистры, полученные переводом разреженной таблицы, совпадают с регистрами, заполненными напрямую:
+        // в двух оценках до перевода попадают разные значения, а итог одинаковый
+        HyperLogLog forward = new HyperLogLog(PRECISION);
+        HyperLogLog backward = new HyperLogLog(PRECISION);
+        int count = 100_000;
+        for (int i = 0; i < count; i++) {
+            forward.addHash(HyperLogLog.hash(0, i));
+            backward.addHash(HyperLogLog.hash(0, count - 1 - i));
+        }
+        assertEquals(true, isDense(forward));
+        assertArrayEquals(bytes(forward), bytes(backward));
+        assertEquals(count, forward.cardinality(), count * 3 * forward.getStandardError());
+    }
+
+    @Test
+    void mergeMatchesSketchOfUnion() throws IOException {
+        // Все сочетания представлений: разреженное с разреженным, с плотным и плотное с плотным
+        long[][] cases = {{0, 100, 50, 150}, {0, 100, 50, 50_000}, {0, 50_000, 25_000, 25_100}, {0, 60_000, 40_000, 100_000}};
+        for (long[] bounds : cases) {
+            HyperLogLog left = sketch(bounds[0], bounds[1]);
+            HyperLogLog right = sketch(bounds[2], bounds[3]);
+            HyperLogLog union = sketch(Math.min(bounds[0], bounds[2]), Math.max(bounds[1], bounds[3]));
+            left.merge(right);
+            String name = bounds[1] + " + " + (bounds[3] - bounds[2]);
+            assertEquals(isDense(union), isDense(left), name);
+            assertEquals(union.cardinality(), left.cardinality(), name);
+
+            long expected = Math.max(bounds[1], bounds[3]) - Math.min(bounds[0], bounds[2]);
+            assertEquals(expected, left.cardinality(), Math.max(2, expected * 3 * left.getStandardError()), name);
+        }
+    }
+
+    @Test
+    void roundTripKeepsBothRepresentations() throws IOException {
+        for (HyperLogLog sketch : new HyperLogLog[]{sketch(0, 300), sketch(0, 30_000)}) {
+            HyperLogLog copy = HyperLogLog.readFrom(new DataInputStream(new ByteArrayInputStream(bytes(sketch))));
+            assertEquals(isDense(sketch), isDense(copy));
+            assertEquals(sketch.cardinality(), copy.cardinality());
+        }
+    }
+
+    private static HyperLogLog sketch(long from, long to) {
+        HyperLogLog sketch = new HyperLogLog(PRECISION);
+        for (long value = from; value < to; value++) {
+            sketch.addHash(HyperLogLog.hash(0, value));
+        }
+        return sketch;
+    }
+
+    private static byte[] bytes(HyperLogLog sketch) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        sketch.writeTo(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    // В записи за точностью идёт признак плотного представления
+    private static boolean isDense(HyperLogLog sketch) throws IOException {
+        return bytes(sketch)[1] != 0;
+    }
+}
@@ -0,0 +1,76 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class IpAddressTest {
+
+    @Test
+    void parsesIpv4AndRejectsMalformed() {
+        assertEquals(0x0A000001L, parseIpv4("10.0.0.1"));
+        assertEquals(0xFFFFFFFFL, parseIpv4("255.255.255.255"));
+        for (String text : new String[]{"256.0.0.1", "10.0.0", "10.0.0.1.2", "10..0.1", "1000.0.0.1", "10.0.0.1 ", ""}) {
+            assertEquals(-1, parseIpv4(text), text);
+        }
+    }
+
+    @Test
+    void parsesIpv6Abbreviations() {
+        assertArrayEquals(new long[]{0, 0}, parseIpv6("::"));
+        assertArrayEquals(new long[]{0, 1}, parseIpv6("::1"));
+        assertArrayEquals(new long[]{0x20010DB800000000L, 1}, parseIpv6("2001:db8::1"));
+        assertArrayEquals(new long[]{0xFE80000000000000L, 0}, parseIpv6("fe80::"));
+        assertArrayEquals(new long[]{0x20010DB800010002L, 0x0003000400050006L}, parseIpv6("2001:DB8:1:2:3:4:5:6"));
+    }
+
+    @Test
+    void parsesEmbeddedIpv4() {
+        long[] mapped = parseIpv6("::ffff:10.0.0.7");
+        assertArrayEquals(new long[]{0, IpAddress.MAPPED_IPV4_PREFIX | 0x0A000007L}, mapped);
+        assertTrue(IpAddress.isMappedIpv4(mapped[0], mapped[1]));
+        assertEquals("10.0.0.7", IpAddress.format(mapped[0], mapped[1]));
+
+        assertArrayEquals(new long[]{0x0064FF9B00000000L, 0xC0000201L}, parseIpv6("64:ff9b::192.0.2.1"));
+        assertFalse(IpAddress.isMappedIpv4(0x0064FF9B00000000L, 0xC0000201L));
+    }
+
+    @Test
+    void rejectsInvalidGroupCounts() {
+        for (String text : new String[]{"1:2:3:4:5:6:7", "1:2:3:4:5:6:7:8:9", "1::2::3", "1:2:3:4:5:6:7::8",
+                "1:2:3:4:5:6:7:8::", ":1:2:3:4:5:6:7", "1:2:3:4:5:6:7:", "12345::1", "::g", "::1.2.3.4:5",
+                "1:2:3:4:5:6:7:1.2.3.4", "::ffff:10.0.0.256"}) {
+            assertFalse(IpAddress.parseIpv6(text, 0, text.length(), new long[2]), text);
+        }
+    }
+
+    @Test
+    void formatsIpv6ByRfc5952() {
+        assertEquals("::", format("::"));
+        assertEquals("::1", format("0:0:0:0:0:0:0:1"));
+        assertEquals("2001:db8::1", format("2001:0DB8:0000:0000:0000:0000:0000:0001"));
+        // Сокращается самая длинная серия нулей, при равной длине - первая
+        assertEquals("2001:0:0:1::1", format("2001:0:0:1:0:0:0:1"));
+        assertEquals("2001:db8::1:0:0:1", format("2001:db8:0:0:1:0:0:1"));
+        // Одна нулевая группа не сокращается
+        assertEquals("2001:db8:0:1:1:1:1:1", format("2001:db8::1:1:1:1:1"));
+        assertEquals("fe80::", format("fe80:0:0:0:0:0:0:0"));
+        assertEquals("::ffff:a00:7", IpAddress.formatIpv6(0, IpAddress.MAPPED_IPV4_PREFIX | 0x0A000007L));
+    }
+
+    private static long parseIpv4(String text) {
+        return IpAddress.parseIpv4(text, 0, text.length());
+    }
+
+    private static long[] parseIpv6(String text) {
+        long[] result = new long[2];
+        assertTrue(IpAddress.parseIpv6(text, 0, text.length(), result), text);
+        return result;
+    }
+
+    private static String format(String text) {
+        long[] address = parseIpv6(text);
+        return IpAddress.formatIpv6(address[0], address[1]);
+    }
+}
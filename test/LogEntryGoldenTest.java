@@ -0,0 +1,122 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Эталонная проверка разбора строк {@link LogTokenizer}. Корпус golden/access.log - строки
+ * из LogCorpusGenerator с долей испорченных и строки с граничными случаями: IPv6, запрос "-",
+ * размер "-" и больше int, формат common без Referer и User-Agent, кавычки в User-Agent,
+ * разные смещения времени, несуществующие даты, строки без времени и мусор.
+ *
+ * Эталоны golden/entries.txt (поля каждой строки) и golden/statistics.txt (агрегаты Statistics)
+ * получены прежним разбором на регулярных выражениях из LogEntry до перехода на LogTokenizer,
+ * с изменениями, внесёнными позже намеренно: время переводится в UTC, строки без времени
+ * или с неверным временем отвергаются с причиной {@link MalformedReason}, адреса IPv6
+ * и IPv4, записанные как IPv6, разбираются как адреса, браузер, ОС и признак бота определяются
+ * правилами useragent-rules.txt (curl и Wget считаются ботами).
+ */
+class LogEntryGoldenTest {
+    @Test
+    void entriesMatchRegexParser() {
+        List<String> lines = read("golden/access.log");
+        List<String> expected = read("golden/entries.txt");
+        assertEquals(expected.size(), lines.size(), "строк в эталоне");
+        for (int i = 0; i < lines.size(); i++) {
+            assertEquals(expected.get(i), describe(lines.get(i)), "строка " + (i + 1) + ": " + lines.get(i));
+        }
+    }
+
+    @Test
+    void statisticsMatchRegexParser() {
+        Statistics statistics = new Statistics();
+        LogTokenizer tokens = new LogTokenizer();
+        for (String line : read("golden/access.log")) {
+            if (tokens.tokenize(line).validate() == null) {
+                statistics.addEntry(new LogEntry(tokens));
+            }
+        }
+        assertEquals(read("golden/statistics.txt"), describe(statistics));
+    }
+
+    /**
+     * Поля записи одной строкой или ERROR с причиной, по которой строка отвергнута
+     */
+    static String describe(String line) {
+        LogTokenizer tokens = new LogTokenizer().tokenize(line);
+        MalformedReason reason = tokens.validate();
+        return reason != null ? "ERROR " + reason : describe(new LogEntry(tokens));
+    }
+
+    static String describe(LogEntry entry) {
+        UserAgent userAgent = entry.getUserAgent();
+        return String.join(" | ", entry.getIpAddr(), "v" + entry.getIpVersion(), String.valueOf(entry.getTime()),
+                String.valueOf(entry.getMethod()), entry.getPath(), entry.getResponseCode(),
+                String.valueOf(entry.getResponseSize()), entry.getReferer(), userAgent.getUserAgentString(),
+                userAgent.getBrowser(), userAgent.getOperatingSystem(), userAgent.isBot() ? "bot" : "human");
+    }
+
+    static List<String> describe(Statistics statistics) {
+        List<String> lines = new ArrayList<>();
+        lines.add("entries: " + statistics.getEntryCount());
+        lines.add("totalTraffic: " + statistics.getTotalTraffic());
+        lines.add("minTime: " + statistics.getMinTime());
+        lines.add("maxTime: " + statistics.getMaxTime());
+        lines.add("trafficRate: " + format(statistics.getTrafficRate()));
+        lines.add("averageVisitsPerHour: " + format(statistics.getAverageVisitsPerHour()));
+        lines.add("averageErrorRequestsPerHour: " + format(statistics.getAverageErrorRequestsPerHour()));
+        lines.add("averageVisitsPerUser: " + format(statistics.getAverageVisitsPerUser()));
+        lines.add("maxVisitsPerUser: " + statistics.getMaxVisitsPerUser());
+        lines.add("uniqueNonBotIps: " + statistics.getUniqueNonBotIps());
+        lines.add("existingPages: " + new TreeSet<>(statistics.getExistingPages()));
+        lines.add("nonExistentPages: " + new TreeSet<>(statistics.getNonExistentPages()));
+        lines.add("browsers: " + format(statistics.getBrowserStatistics()));
+        lines.add("operatingSystems: " + format(statistics.getOperatingSystemStatistics()));
+        for (SpaceSaving.Entry client : statistics.getTopClients(3)) {
+            lines.add("topClient: " + client.getKey() + " " + client.getCount());
+        }
+        for (SpaceSaving.Entry referer : statistics.getTopReferers(3)) {
+            lines.add("topReferer: " + referer.getKey() + " " + referer.getCount());
+        }
+        return lines;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.6f", value);
+    }
+
+    private static String format(Map<String, Double> shares) {
+        Map<String, String> sorted = new TreeMap<>();
+        shares.forEach((key, value) -> sorted.put(key, format(value)));
+        return sorted.toString();
+    }
+
+    static List<String> read(String resource) {
+        try (InputStream in = LogEntryGoldenTest.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IllegalStateException("Нет ресурса " + resource);
+            }
+            List<String> lines = new ArrayList<>();
+            for (String line : new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\n", -1)) {
+                lines.add(line);
+            }
+            // Последний перевод строки не даёт отдельной строки
+            if (lines.get(lines.size() - 1).isEmpty()) {
+                lines.remove(lines.size() - 1);
+            }
+            return lines;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class LogFilterTest {
+    private static final List<String> LINES = LogEntryGoldenTest.read("golden/access.log");
+
+    @AfterEach
+    void restoreDefaults() throws IOException {
+        LogFilter.configure(LogFilter.all());
+        Quarantine.configure(Quarantine.open(Quarantine.Policy.SKIP, null));
+    }
+
+    @Test
+    void timeRangeMatchesParseThenFilter() throws IOException {
+        LocalDateTime from = LocalDateTime.parse("2022-09-25T07:00");
+        LocalDateTime to = LocalDateTime.parse("2022-09-25T08:00");
+        assertSameAsParseThenFilter("time=2022-09-25T07:00/2022-09-25T08:00",
+                entry -> !entry.getTime().isBefore(from) && entry.getTime().isBefore(to));
+        assertSameAsParseThenFilter("time=/2022-09-25T07:00", entry -> entry.getTime().isBefore(from));
+    }
+
+    @Test
+    void otherConditionsMatchParseThenFilter() throws IOException {
+        assertSameAsParseThenFilter("status=4xx", entry -> entry.getStatusCode() / 100 == 4);
+        assertSameAsParseThenFilter("method=POST,HEAD", entry -> entry.getMethod() == HttpMethod.POST
+                || entry.getMethod() == HttpMethod.HEAD);
+        assertSameAsParseThenFilter("path=/api/", entry -> entry.getPath().startsWith("/api/"));
+        assertSameAsParseThenFilter("ip=10.0.0.0/8", entry -> entry.getIpVersion() == 4 && (entry.getIpLow() >>> 24) == 10);
+        assertSameAsParseThenFilter("bot=true", entry -> entry.getUserAgent().isBot());
+    }
+
+    // Строки отбираются фильтром до построения записи и, отдельно, сначала разбираются, а потом отбираются
+    // условием на записи; статистика и число строк в карантине должны совпасть
+    private static void assertSameAsParseThenFilter(String expression, Predicate<LogEntry> condition) throws IOException {
+        Quarantine filtered = Quarantine.open(Quarantine.Policy.SKIP, null);
+        Quarantine.configure(filtered);
+        LogFilter.configure(LogFilter.parse(expression));
+        StatisticsLineHandler handler = new StatisticsLineHandler(new ProcessingResult(), "access.log", null);
+        long position = 0;
+        for (String line : LINES) {
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            handler.onLine(ByteBuffer.wrap(bytes), 0, bytes.length, position);
+            position += bytes.length + 1;
+        }
+
+        Statistics expected = new Statistics();
+        int malformed = 0;
+        LogTokenizer tokens = new LogTokenizer(null);
+        for (String line : LINES) {
+            if (tokens.tokenize(line).validate() != null) {
+                malformed++;
+                continue;
+            }
+            LogEntry entry = new LogEntry(tokens);
+            if (condition.test(entry)) {
+                expected.addEntry(entry);
+            }
+        }
+
+        assertEquals(LogEntryGoldenTest.describe(expected), LogEntryGoldenTest.describe(handler.getResult().getStatistics()),
+                expression);
+        assertEquals(malformed, filtered.getCount(MalformedReason.MISSING_TIME) + filtered.getCount(MalformedReason.INVALID_TIME),
+                expression);
+    }
+}
@@ -0,0 +1,63 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LogFollowerTest {
+    private static final List<String> LINES = LogEntryGoldenTest.read("golden/access.log");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void restartContinuesWithSavedStatistics() throws IOException {
+        Path log = directory.resolve("access.log");
+        Path checkpoint = directory.resolve("access.log.checkpoint");
+        append(log, 0, 40);
+
+        LogFollower first = new LogFollower(log, checkpoint, 100);
+        first.resume();
+        first.poll();
+        // Дописанное после контрольной точки разбирается заново после перезапуска
+        append(log, 40, LINES.size());
+        first.poll();
+
+        LogFollower second = new LogFollower(log, checkpoint, 100);
+        second.resume();
+        second.poll();
+        assertEquals(LINES.size(), second.getResult().getTotalLines());
+        assertEquals(LogEntryGoldenTest.read("golden/statistics.txt"),
+                LogEntryGoldenTest.describe(second.getResult().getStatistics()));
+    }
+
+    @Test
+    void truncatedAndRewrittenFileIsReadFromStart() throws IOException {
+        Path log = directory.resolve("access.log");
+        append(log, 0, 10);
+        LogFollower follower = new LogFollower(log, directory.resolve("access.log.checkpoint"), 100);
+        follower.resume();
+        follower.poll();
+
+        // copytruncate, после которого до следующего опроса файл вырос больше прочитанного
+        Files.write(log, new byte[0]);
+        append(log, 20, 50);
+        follower.poll();
+        assertEquals(40, follower.getResult().getTotalLines());
+    }
+
+    private static void append(Path log, int from, int to) throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (String line : LINES.subList(from, to)) {
+            text.append(line).append('\n');
+        }
+        Files.write(log, text.toString().getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
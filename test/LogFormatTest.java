@@ -0,0 +1,101 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+class LogFormatTest {
+    private static final Pattern WELL_FORMED =
+            Pattern.compile("\\S+ \\S+ \\S+ \\[[^\\]]+\\] \"[^\"]*\" \\d{3} \\d+ \"[^\"]*\" \"[^\"]*\"");
+
+    @Test
+    void compilesCombinedFormat() {
+        LogFormat format = LogFormat.compile("combined");
+        assertArrayEquals(new LogFormat.Field[]{LogFormat.Field.REMOTE_ADDR, LogFormat.Field.SKIP, LogFormat.Field.TIME,
+                LogFormat.Field.REQUEST, LogFormat.Field.STATUS, LogFormat.Field.BYTES, LogFormat.Field.REFERER,
+                LogFormat.Field.USER_AGENT}, format.fields);
+        assertArrayEquals(new String[]{"", " - ", " [", "] \"", "\" ", " ", " \"", "\" \"", "\""}, format.literals);
+        assertEquals(LogFormat.COMBINED, format.toString());
+    }
+
+    @Test
+    void compilesNginxVariables() {
+        LogFormat format = LogFormat.compile("$remote_addr ${request_time}s \"$request\" $status "
+                + "$upstream_response_time $http_x_forwarded_for $connection_requests $$");
+        assertArrayEquals(new LogFormat.Field[]{LogFormat.Field.REMOTE_ADDR, LogFormat.Field.REQUEST_TIME_SECONDS,
+                LogFormat.Field.REQUEST, LogFormat.Field.STATUS, LogFormat.Field.UPSTREAM_RESPONSE_TIME,
+                LogFormat.Field.FORWARDED_FOR, LogFormat.Field.SKIP}, format.fields);
+        // Неизвестная переменная пропускается как поле, одиночный $ без имени остаётся литералом
+        assertEquals(" $$", format.literals[7]);
+    }
+
+    @Test
+    void compilesApacheDirectives() {
+        LogFormat format = LogFormat.compile("%h %l %u %t \"%r\" %>s %b \"%{Referer}i\" \"%{user-agent}i\" %D %{ms}T "
+                + "%{X-Forwarded-For}i %{%d/%b}t %X 100%%");
+        assertArrayEquals(new LogFormat.Field[]{LogFormat.Field.REMOTE_ADDR, LogFormat.Field.SKIP, LogFormat.Field.SKIP,
+                LogFormat.Field.BRACKETED_TIME, LogFormat.Field.REQUEST, LogFormat.Field.STATUS, LogFormat.Field.BYTES,
+                LogFormat.Field.REFERER, LogFormat.Field.USER_AGENT, LogFormat.Field.REQUEST_TIME_MICROS,
+                LogFormat.Field.REQUEST_TIME_MILLIS, LogFormat.Field.FORWARDED_FOR, LogFormat.Field.SKIP,
+                LogFormat.Field.SKIP}, format.fields);
+        assertEquals(" 100%", format.literals[14]);
+    }
+
+    @Test
+    void rejectsInvalidFormats() {
+        for (String invalid : List.of("$remote_addr$status", "%h%s", "${remote_addr", "%{Referer", "%h %>")) {
+            assertThrows(IllegalArgumentException.class, () -> LogFormat.compile(invalid), invalid);
+        }
+    }
+
+    @Test
+    void combinedFormatMatchesBuiltInScan() {
+        LogTokenizer builtIn = new LogTokenizer(null);
+        LogTokenizer compiled = new LogTokenizer(LogFormat.compile("combined"));
+        int compared = 0;
+        for (String line : LogEntryGoldenTest.read("golden/access.log")) {
+            // Встроенный разбор снисходителен к испорченным строкам образца, а формат разбирает только строки
+            // точно в формате; \" в полях встроенный разбор, как и прежний разбор регулярным выражением, не понимает
+            if (!WELL_FORMED.matcher(line).matches() || line.contains("\\\"")) {
+                continue;
+            }
+            assertEquals(describe(builtIn.tokenize(line)), describe(compiled.tokenize(line)), line);
+            compared++;
+        }
+        assertTrue(compared > 40, "сравнено строк: " + compared);
+    }
+
+    @Test
+    void escapedQuoteDoesNotEndField() {
+        LogTokenizer tokens = new LogTokenizer(LogFormat.compile("combined")).tokenize("10.0.0.4 - - "
+                + "[25/Sep/2022:10:15:10 +0300] \"GET /q HTTP/1.1\" 200 5 \"https://a/?q=\\\"x\\\"\" \"Mozilla/5.0 \\\"quoted\\\" agent\"");
+        assertNull(tokens.validate());
+        assertEquals("https://a/?q=\\\"x\\\"", tokens.referer());
+        assertEquals("Mozilla/5.0 \\\"quoted\\\" agent", tokens.userAgent());
+    }
+
+    @Test
+    void fieldEndsAtWholeNextLiteral() {
+        // Без экранирования (escape=none в nginx) кавычка внутри поля не заканчивает его, пока за ней нет всего литерала
+        LogTokenizer tokens = new LogTokenizer(LogFormat.compile("$remote_addr [$time_local] \"$request\" $status "
+                + "$body_bytes_sent ref=\"$http_referer\" ua=\"$http_user_agent\"")).tokenize("10.0.0.1 "
+                + "[25/Sep/2022:10:15:10 +0300] \"GET / HTTP/1.1\" 200 5 ref=\"https://a/?q=\" b\" ua=\"curl/8.0\"");
+        assertEquals("https://a/?q=\" b", tokens.referer());
+        assertEquals("curl/8.0", tokens.userAgent());
+        assertEquals(200, tokens.statusCode());
+    }
+
+    private static String describe(LogTokenizer tokens) {
+        if (tokens.validate() != null) {
+            return "ERROR " + tokens.validate();
+        }
+        return String.join(" | ", tokens.ipAddr(), String.valueOf(tokens.epochSecond()), String.valueOf(tokens.method()),
+                tokens.path(), tokens.responseCode(), String.valueOf(tokens.responseSize()), tokens.referer(),
+                tokens.userAgent());
+    }
+}
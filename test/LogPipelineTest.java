@@ -0,0 +1,122 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LogPipelineTest {
+    private static final String LINE = "10.0.%d.%d - - [%02d/Sep/2022:%02d:%02d:00 +0000] \"GET /page/%d HTTP/1.1\" %d %d \"-\" \"%s\"";
+    private static final String[] AGENTS = {
+            "Mozilla/5.0 (X11; Linux x86_64; rv:104.0) Gecko/20100101 Firefox/104.0",
+            "Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)"};
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void restoreDefault() throws IOException {
+        Quarantine.configure(Quarantine.open(Quarantine.Policy.SKIP, null));
+    }
+
+    @Test
+    void matchesSequentialProcessingWithEntriesOutOfOrder() throws IOException {
+        // Строки за 10 дней вперемешку: больше недели в кольце часов, так что часть интервалов вытесняется
+        List<String> lines = new ArrayList<>();
+        Random random = new Random(11);
+        for (int i = 0; i < 20_000; i++) {
+            int client = random.nextInt(500);
+            lines.add(String.format(LINE, client >> 8, client & 0xFF, 20 + random.nextInt(10), random.nextInt(24),
+                    random.nextInt(60), random.nextInt(50), random.nextInt(10) == 0 ? 404 : 200, random.nextInt(5000),
+                    AGENTS[random.nextInt(AGENTS.length)]));
+        }
+        lines.addAll(LogEntryGoldenTest.read("golden/access.log"));
+        Collections.shuffle(lines, random);
+        Path log = directory.resolve("access.log");
+        Files.write(log, lines, StandardCharsets.UTF_8);
+
+        ProcessingResult sequential = new ParallelLogProcessor(1).process(log.toString());
+        // Маленькие пакеты, чтобы три разборщика чередовались и записи приходили к агрегатору не по порядку
+        ProcessingResult pipelined = new LogPipeline(3, 2048, 2).process(log.toString());
+
+        assertEquals(sequential.getTotalLines(), pipelined.getTotalLines());
+        assertEquals(describe(sequential.getStatistics()), describe(pipelined.getStatistics()));
+        assertTrue(sequential.getStatistics().getEntryCount() > 20_000);
+    }
+
+    @Test
+    void longLinesAcrossBatchesAreQuarantinedOnce() throws IOException {
+        // Пакет 2048 байт: первая длинная строка занимает несколько пакетов целиком, вторая - часть одного
+        List<String> golden = LogEntryGoldenTest.read("golden/access.log");
+        String first = golden.get(1);
+        String text = first + "\n" + "x".repeat(5000) + "\n" + golden.get(2) + "\n" + "y".repeat(1500) + "\n" + golden.get(3);
+        Path file = directory.resolve("quarantine.log");
+        Quarantine quarantine = Quarantine.open(Quarantine.Policy.SKIP, file);
+        Quarantine.configure(quarantine);
+
+        ProcessingResult result = new LogPipeline(2, 2048, 1)
+                .process("long", new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+        quarantine.close();
+
+        assertEquals(5, result.getTotalLines());
+        assertEquals(3, result.getStatistics().getEntryCount());
+        assertEquals(2, quarantine.getCount(MalformedReason.LINE_TOO_LONG));
+        // Смещения строк считаются от начала входа, а не пакета
+        List<String> records = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            records.add(line.substring(0, line.indexOf('\t', line.indexOf('\t') + 1)));
+        }
+        long second = first.length() + 1;
+        long fourth = second + 5001 + golden.get(2).length() + 1;
+        assertEquals(List.of("long\t" + second, "long\t" + fourth), records);
+    }
+
+    @Test
+    void abortStopsEveryStage() throws IOException {
+        // Испорченная строка в середине входа с маленькими пакетами: остальные стадии не должны зависнуть
+        StringBuilder text = new StringBuilder();
+        List<String> lines = LogEntryGoldenTest.read("golden/access.log");
+        for (int round = 0; round < 200; round++) {
+            for (int i = 1; i < 7; i++) {
+                text.append(lines.get(i)).append('\n');
+            }
+            if (round == 100) {
+                text.append("garbage\n");
+            }
+        }
+        Quarantine.configure(Quarantine.open(Quarantine.Policy.ABORT, null));
+
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            assertThrows(MalformedLineException.class, () -> new LogPipeline(2, 2048, 1)
+                    .process("abort", new ByteArrayInputStream(text.toString().getBytes(StandardCharsets.UTF_8))));
+        });
+    }
+
+    private static List<String> describe(Statistics statistics) {
+        List<String> lines = new ArrayList<>(LogEntryGoldenTest.describe(statistics));
+        for (TimeBuckets.Metric metric : TimeBuckets.Metric.values()) {
+            lines.add(metric + ": " + statistics.getHourlyBreakdown(metric, 7 * 24));
+        }
+        lines.add("hourlyUniqueNonBotIps: " + statistics.getHourlyUniqueNonBotIps(7 * 24));
+        lines.add("p50: " + statistics.getResponseSizeQuantile(0.5) + ", p99: " + statistics.getResponseSizeQuantile(0.99));
+        // Страниц меньше ёмкости набора, поэтому частоты точные; страницы с равной частотой идут в любом порядке
+        List<String> pages = new ArrayList<>();
+        statistics.getTopExistingPages(100).forEach(page -> pages.add(page.toString()));
+        Collections.sort(pages);
+        lines.add("pages: " + pages);
+        return lines;
+    }
+}
@@ -0,0 +1,110 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedLineReaderTest {
+    private static final int MAX_LINE_LENGTH = 100;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void linesAcrossSegmentBoundariesAreReadWhole() throws IOException {
+        // Строки от пустых до вдвое длиннее допустимой, часть с \r\n, последняя без перевода строки
+        Random random = new Random(42);
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        List<Long> lineStarts = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            lineStarts.add((long) text.size());
+            int length = random.nextInt(10) == 0 ? MAX_LINE_LENGTH + random.nextInt(MAX_LINE_LENGTH) : random.nextInt(80);
+            for (int j = 0; j < length; j++) {
+                text.write('a' + random.nextInt(26));
+            }
+            if (random.nextBoolean()) {
+                text.write('\r');
+            }
+            text.write('\n');
+        }
+        lineStarts.add((long) text.size());
+        text.writeBytes("tail".getBytes(StandardCharsets.US_ASCII));
+        byte[] bytes = text.toByteArray();
+        Path file = directory.resolve("lines.log");
+        Files.write(file, bytes);
+
+        List<String> expected = expected(bytes, 0, bytes.length);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // Сегменты чуть больше строки, некратные и кратные восьми байтам поиска перевода строки
+            for (long segmentSize : new long[]{MAX_LINE_LENGTH + 3, 128, 1000, 4096, bytes.length}) {
+                assertEquals(expected, read(channel, segmentSize, 0, bytes.length), "сегмент " + segmentSize);
+            }
+            // Диапазон из середины файла, как у ParallelLogProcessor, с границами в началах строк
+            long start = lineStarts.get(1234);
+            long end = lineStarts.get(3456);
+            assertEquals(expected(bytes, (int) start, (int) end), read(channel, 128, start, end));
+        }
+    }
+
+    @Test
+    void longLineSpanningSegmentsIsSkippedOnce() throws IOException {
+        // Строка длиннее нескольких сегментов: продолжение пропускается до перевода строки в другом сегменте
+        String text = "first\n" + "x".repeat(1000) + "\nsecond\r\nthird";
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        Path file = directory.resolve("long.log");
+        Files.write(file, bytes);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            assertEquals(List.of("0 first", "6 TOO_LONG", "1007 second", "1015 third"),
+                    read(channel, MAX_LINE_LENGTH + 3, 0, bytes.length));
+        }
+    }
+
+    private static List<String> read(FileChannel channel, long segmentSize, long start, long end) throws IOException {
+        List<String> lines = new ArrayList<>();
+        new MappedLineReader(channel, MAX_LINE_LENGTH, segmentSize).read(start, end, new LineHandler() {
+            @Override
+            public void onLine(ByteBuffer buffer, int offset, int length, long position) {
+                byte[] line = new byte[length];
+                buffer.get(offset, line, 0, length);
+                lines.add(position + " " + new String(line, StandardCharsets.US_ASCII));
+            }
+
+            @Override
+            public void onLineTooLong(ByteBuffer buffer, int offset, int length, long position) {
+                lines.add(position + " TOO_LONG");
+            }
+        });
+        return lines;
+    }
+
+    // Те же строки, найденные простым побайтовым проходом
+    private static List<String> expected(byte[] bytes, int start, int end) {
+        List<String> lines = new ArrayList<>();
+        int lineStart = start;
+        while (lineStart < end) {
+            int newline = lineStart;
+            while (newline < end && bytes[newline] != '\n') {
+                newline++;
+            }
+            int length = newline - lineStart;
+            if (length > 0 && bytes[newline - 1] == '\r') {
+                length--;
+            }
+            lines.add(lineStart + " " + (length > MAX_LINE_LENGTH ? "TOO_LONG"
+                    : new String(bytes, lineStart, length, StandardCharsets.US_ASCII)));
+            lineStart = newline + 1;
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,103 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ParallelLogProcessorTest {
+    private static final long MIB = ParallelLogProcessor.MIN_CHUNK_SIZE;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void boundsStartLinesAndCoverWholeFile() throws IOException {
+        // Строки разной длины, так что расчётные точки деления попадают в середину строк
+        Path file = write("access.log", goldenText(5 * MIB + 12345));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[] bounds = ParallelLogProcessor.splitByLines(channel, 8);
+            // Диапазонов не больше, чем целых мебибайт в файле
+            assertEquals(6, bounds.length);
+            assertEquals(0, bounds[0]);
+            assertEquals(channel.size(), bounds[bounds.length - 1]);
+            for (int i = 1; i + 1 < bounds.length; i++) {
+                assertEquals(true, bounds[i] > bounds[i - 1], "границы не возрастают");
+                assertEquals('\n', byteAt(channel, bounds[i] - 1), "граница " + bounds[i] + " не в начале строки");
+            }
+        }
+    }
+
+    @Test
+    void pointAtLineStartIsKept() throws IOException {
+        // Строки по 1024 байта: середина файла - ровно начало строки, и она не сдвигается к следующей
+        String line = "x".repeat(1023) + "\n";
+        Path file = write("lines.log", line.repeat((int) (2 * MIB / line.length())));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            assertArrayEquals(new long[]{0, MIB, 2 * MIB}, ParallelLogProcessor.splitByLines(channel, 2));
+        }
+    }
+
+    @Test
+    void lineAcrossSeveralPointsGivesOneRange() throws IOException {
+        // Первая строка длиннее двух мебибайт: обе точки деления внутри неё дают одну границу после неё
+        String longLine = "y".repeat((int) (2 * MIB + MIB / 2)) + "\n";
+        Path file = write("long.log", longLine + "z\n".repeat((int) (MIB / 4)));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            assertArrayEquals(new long[]{0, longLine.length(), channel.size()},
+                    ParallelLogProcessor.splitByLines(channel, 3));
+        }
+    }
+
+    @Test
+    void parallelResultMatchesSequential() throws IOException {
+        Path file = write("access.log", goldenText(6 * MIB));
+        ProcessingResult sequential = new ParallelLogProcessor(1).process(file.toString());
+        ProcessingResult parallel = new ParallelLogProcessor(4).process(file.toString());
+
+        // Каждая строка разобрана ровно одним диапазоном
+        assertEquals(sequential.getTotalLines(), parallel.getTotalLines());
+        assertEquals(sequential.getStatistics().getEntryCount(), parallel.getStatistics().getEntryCount());
+        assertEquals(sorted(LogEntryGoldenTest.describe(sequential.getStatistics())),
+                sorted(LogEntryGoldenTest.describe(parallel.getStatistics())));
+    }
+
+    private Path write(String name, String text) throws IOException {
+        Path file = directory.resolve(name);
+        Files.writeString(file, text, StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static String goldenText(long size) {
+        StringBuilder text = new StringBuilder();
+        List<String> lines = LogEntryGoldenTest.read("golden/access.log");
+        while (text.length() < size) {
+            for (String line : lines) {
+                text.append(line).append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    private static byte byteAt(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        channel.read(buffer, position);
+        return buffer.get(0);
+    }
+
+    private static List<String> sorted(List<String> lines) {
+        List<String> copy = new ArrayList<>(lines);
+        Collections.sort(copy);
+        return copy;
+    }
+}
@@ -0,0 +1,89 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class ProcessingMetricsTest {
+    private static final int ROUNDS = 10;
+
+    @AfterEach
+    void restoreDefault() throws IOException {
+        Quarantine.configure(Quarantine.open(Quarantine.Policy.SKIP, null));
+    }
+
+    @Test
+    void handlerCountsLinesBytesAndMalformedReasons() throws IOException {
+        Quarantine quarantine = Quarantine.open(Quarantine.Policy.SKIP, null);
+        Quarantine.configure(quarantine);
+        byte[] bytes = goldenBytes();
+        ProcessingMetrics metrics = new ProcessingMetrics();
+        handle(bytes, metrics);
+
+        List<String> lines = LogEntryGoldenTest.read("golden/access.log");
+        assertEquals((long) ROUNDS * lines.size(), metrics.getLinesRead());
+        // К длине каждой строки добавляется перевод строки, поэтому байты совпадают с размером входа
+        assertEquals(bytes.length, metrics.getBytesRead());
+
+        Map<String, Long> expected = new TreeMap<>();
+        long malformed = 0;
+        for (MalformedReason reason : MalformedReason.values()) {
+            if (quarantine.getCount(reason) > 0) {
+                expected.put(reason.name(), quarantine.getCount(reason));
+                malformed += quarantine.getCount(reason);
+            }
+        }
+        assertEquals(ROUNDS * 15, malformed);
+        assertEquals(malformed, metrics.getMalformedLines());
+        assertEquals(expected, metrics.getMalformedLinesByReason());
+
+        // Замеряется каждая 64-я строка, среди них есть разобранные
+        assertTrue(metrics.getParseNanosPerLine() > 0);
+        assertTrue(metrics.getAggregateNanosPerLine() > 0);
+
+        metrics.reset();
+        assertEquals(0, metrics.getLinesRead());
+        assertEquals(0, metrics.getBytesRead());
+        assertEquals(0, metrics.getMalformedLines());
+        assertEquals(Map.of(), metrics.getMalformedLinesByReason());
+        assertEquals(0, metrics.getParseNanosPerLine());
+    }
+
+    @Test
+    void metricsDoNotChangeStatistics() {
+        byte[] bytes = goldenBytes();
+        ProcessingResult withMetrics = handle(bytes, new ProcessingMetrics());
+        ProcessingResult withoutMetrics = handle(bytes, null);
+
+        assertEquals(withoutMetrics.getTotalLines(), withMetrics.getTotalLines());
+        assertEquals(LogEntryGoldenTest.describe(withoutMetrics.getStatistics()),
+                LogEntryGoldenTest.describe(withMetrics.getStatistics()));
+    }
+
+    private static ProcessingResult handle(byte[] bytes, ProcessingMetrics metrics) {
+        ProcessingResult result = new ProcessingResult();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        CompressedLineReader.emitLines(buffer, bytes.length, 0, false, 1024,
+                new StatisticsLineHandler(result, "golden", metrics));
+        return result;
+    }
+
+    // Золотой лог несколько раз подряд, чтобы замеров этапов было больше одного
+    private static byte[] goldenBytes() {
+        StringBuilder text = new StringBuilder();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (String line : LogEntryGoldenTest.read("golden/access.log")) {
+                text.append(line).append('\n');
+            }
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,117 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class QuarantineTest {
+    private static final List<String> LINES = LogEntryGoldenTest.read("golden/access.log");
+    private static final List<String> EXPECTED = LogEntryGoldenTest.read("golden/entries.txt");
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void restoreDefault() throws IOException {
+        Quarantine.configure(Quarantine.open(Quarantine.Policy.SKIP, null));
+    }
+
+    @Test
+    void skipWritesEveryMalformedLineToFile() throws IOException {
+        Path file = directory.resolve("quarantine.tsv");
+        Quarantine quarantine = Quarantine.open(Quarantine.Policy.SKIP, file);
+        Quarantine.configure(quarantine);
+        StatisticsLineHandler handler = new StatisticsLineHandler(new ProcessingResult(), "access.log", null);
+
+        List<String> expected = new ArrayList<>();
+        int entries = 0;
+        long position = 0;
+        for (int i = 0; i < LINES.size(); i++) {
+            if (EXPECTED.get(i).startsWith("ERROR ")) {
+                // источник TAB смещение TAB причина TAB исходная строка
+                expected.add("access.log\t" + position + "\t" + EXPECTED.get(i).substring(6) + "\t" + LINES.get(i));
+            } else {
+                entries++;
+            }
+            position = feed(handler, LINES.get(i), position);
+        }
+        quarantine.close();
+
+        assertEquals(expected, Files.readAllLines(file, StandardCharsets.UTF_8));
+        assertEquals(entries, handler.getResult().getStatistics().getEntryCount());
+        assertEquals(expected.size(), quarantine.getCount(MalformedReason.MISSING_TIME)
+                + quarantine.getCount(MalformedReason.INVALID_TIME));
+    }
+
+    @Test
+    void abortStopsAtFirstMalformedLine() throws IOException {
+        Quarantine.configure(Quarantine.open(Quarantine.Policy.ABORT, null));
+        StatisticsLineHandler handler = new StatisticsLineHandler(new ProcessingResult(), "access.log", null);
+
+        // Первая строка образца испорчена, поэтому начинаем со второй
+        int first = 1;
+        while (!EXPECTED.get(first).startsWith("ERROR ")) {
+            first++;
+        }
+        String malformed = LINES.get(first);
+        long position = 0;
+        for (int i = 1; i < first; i++) {
+            position = feed(handler, LINES.get(i), position);
+        }
+        long abortedAt = position;
+        MalformedLineException e = assertThrows(MalformedLineException.class,
+                () -> feed(handler, malformed, abortedAt));
+
+        assertEquals(MalformedReason.valueOf(EXPECTED.get(first).substring(6)), e.getReason());
+        assertEquals(first - 1, handler.getResult().getStatistics().getEntryCount());
+    }
+
+    @Test
+    void withoutFileCountsReasonsForOneSummary() throws IOException {
+        Quarantine quarantine = Quarantine.open(Quarantine.Policy.SKIP, null);
+        assertNull(quarantine.summary());
+        Quarantine.configure(quarantine);
+        StatisticsLineHandler handler = new StatisticsLineHandler(new ProcessingResult(), "access.log", null);
+        long position = 0;
+        for (String line : LINES) {
+            position = feed(handler, line, position);
+        }
+
+        long missing = EXPECTED.stream().filter("ERROR MISSING_TIME"::equals).count();
+        long invalid = EXPECTED.stream().filter("ERROR INVALID_TIME"::equals).count();
+        assertEquals("Не разобрано строк: " + (missing + invalid) + " (MISSING_TIME: " + missing
+                + ", INVALID_TIME: " + invalid + ")", quarantine.summary());
+    }
+
+    @Test
+    void failureAfterParsingIsNotReportedAsMalformedLine() throws IOException {
+        Quarantine quarantine = Quarantine.open(Quarantine.Policy.SKIP, null);
+        Quarantine.configure(quarantine);
+        StatisticsLineHandler handler = new StatisticsLineHandler(new ProcessingResult(), "access.log", null) {
+            @Override
+            void accept(LogEntry entry) {
+                throw new IllegalStateException("ошибка агрегации");
+            }
+        };
+
+        assertThrows(IllegalStateException.class, () -> feed(handler, LINES.get(1), 0));
+        assertEquals(0, quarantine.getCount(MalformedReason.UNEXPECTED));
+    }
+
+    // Передаёт строку обработчику, как читатель файла; возвращает смещение следующей строки
+    private static long feed(StatisticsLineHandler handler, String line, long position) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        handler.onLine(ByteBuffer.wrap(bytes), 0, bytes.length, position);
+        return position + bytes.length + 1;
+    }
+}
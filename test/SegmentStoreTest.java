@@ -0,0 +1,62 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SegmentStoreTest {
+    @TempDir
+    Path store;
+
+    @Test
+    void reportMatchesParsedEntries() throws IOException {
+        Statistics expected = StatisticsSnapshotTest.golden();
+        try (SegmentStore.Writer writer = SegmentStore.openWriter(store)) {
+            LogTokenizer tokens = new LogTokenizer();
+            for (String line : LogEntryGoldenTest.read("golden/access.log")) {
+                if (tokens.tokenize(line).validate() == null) {
+                    writer.add(new LogEntry(tokens));
+                }
+            }
+        }
+
+        Statistics stored = SegmentStore.report(store, null, null, null).getStatistics();
+        assertEquals(expected.getEntryCount(), stored.getEntryCount());
+        assertEquals(expected.getTotalTraffic(), stored.getTotalTraffic());
+        assertEquals(expected.getMinTime(), stored.getMinTime());
+        assertEquals(expected.getMaxTime(), stored.getMaxTime());
+
+        // Сентябрь 2022 года в UTC: строки за другие годы и месяцы не входят
+        LocalDateTime from = LocalDateTime.of(2022, 9, 1, 0, 0);
+        LocalDateTime to = LocalDateTime.of(2022, 10, 1, 0, 0);
+        int inRange = 0;
+        LogTokenizer tokens = new LogTokenizer();
+        for (String line : LogEntryGoldenTest.read("golden/access.log")) {
+            if (tokens.tokenize(line).validate() == null) {
+                LocalDateTime time = new LogEntry(tokens).getTime();
+                if (!time.isBefore(from) && time.isBefore(to)) {
+                    inRange++;
+                }
+            }
+        }
+        assertEquals(inRange, SegmentStore.report(store, from, to, null).getStatistics().getEntryCount());
+    }
+
+    @Test
+    void reportFailsOnSegmentOfOtherVersion() throws IOException {
+        try (OutputStream stream = Files.newOutputStream(store.resolve("20220925-10.0.seg"))) {
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(0x414C5347);
+            out.writeShort(2);
+            out.writeInt(0);
+        }
+        assertThrows(UnsupportedVersionException.class, () -> SegmentStore.report(store, null, null, null));
+    }
+}
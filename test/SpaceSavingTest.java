@@ -0,0 +1,100 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class SpaceSavingTest {
+    private static final int CAPACITY = 50;
+
+    @Test
+    void countsAreExactWithinCapacity() {
+        SpaceSaving first = new SpaceSaving(CAPACITY);
+        SpaceSaving second = new SpaceSaving(CAPACITY);
+        for (int i = 0; i < 20; i++) {
+            for (int j = 0; j <= i; j++) {
+                (j % 2 == 0 ? first : second).add("/page/" + i);
+            }
+        }
+        first.merge(second);
+
+        assertEquals(210, first.getTotal());
+        assertEquals(20, first.getMaxCount());
+        for (SpaceSaving.Entry entry : first.top(CAPACITY)) {
+            int page = Integer.parseInt(entry.getKey().substring("/page/".length()));
+            assertEquals(page + 1, entry.getCount(), entry.getKey());
+            assertEquals(0, entry.getError(), entry.getKey());
+        }
+    }
+
+    @Test
+    void errorBoundsHoldForSequentialAndMerged() {
+        // Частоты по закону Ципфа: 1000 ключей на ёмкость 50, частые ключи заметно отделены друг от друга
+        Random random = new Random(5);
+        List<String> stream = new ArrayList<>();
+        for (int key = 1; key <= 1000; key++) {
+            for (int i = 0; i < 20_000 / key; i++) {
+                stream.add("/page/" + key);
+            }
+        }
+        Collections.shuffle(stream, random);
+        Map<String, Long> exact = new HashMap<>();
+        stream.forEach(key -> exact.merge(key, 1L, Long::sum));
+
+        SpaceSaving sequential = new SpaceSaving(CAPACITY);
+        stream.forEach(sequential::add);
+        SpaceSaving merged = new SpaceSaving(CAPACITY);
+        int parts = 4;
+        for (int part = 0; part < parts; part++) {
+            SpaceSaving partial = new SpaceSaving(CAPACITY);
+            stream.subList(stream.size() * part / parts, stream.size() * (part + 1) / parts).forEach(partial::add);
+            merged.merge(partial);
+        }
+
+        long bound = stream.size() / CAPACITY;
+        for (SpaceSaving sketch : List.of(sequential, merged)) {
+            assertEquals(stream.size(), sketch.getTotal());
+            for (SpaceSaving.Entry entry : sketch.top(CAPACITY)) {
+                long count = exact.get(entry.getKey());
+                // Оценка не меньше настоящей частоты, гарантированная - не больше, погрешность не больше N / ёмкость
+                assertTrue(entry.getGuaranteedCount() <= count && count <= entry.getCount(), entry.toString());
+                assertTrue(entry.getError() <= bound, entry + " погрешность больше " + bound);
+            }
+            // Ключ чаще N / ёмкость всегда остаётся в наборе
+            exact.forEach((key, count) -> assertTrue(count <= bound || sketch.contains(key), key));
+            assertEquals(List.of("/page/1", "/page/2", "/page/3", "/page/4", "/page/5"), keys(sketch.topGuaranteed(5)));
+        }
+    }
+
+    @Test
+    void guaranteedOrderIgnoresInflatedNewcomers() {
+        // Ключ, вытеснивший другой в конце потока, догоняет частые ключи по оценке только за счёт погрешности
+        SpaceSaving sketch = new SpaceSaving(3);
+        for (int i = 0; i < 10; i++) {
+            sketch.add("/b");
+            sketch.add("/a");
+        }
+        for (int i = 0; i < 9; i++) {
+            sketch.add("/rare/" + i);
+        }
+        sketch.add("/late");
+
+        SpaceSaving.Entry late = sketch.top(3).stream().filter(entry -> entry.getKey().equals("/late")).findFirst().get();
+        assertEquals(10, late.getCount());
+        assertEquals(1, late.getGuaranteedCount());
+        // При равной гарантированной частоте порядок - по ключу
+        assertEquals(List.of("/a", "/b", "/late"), keys(sketch.topGuaranteed(3)));
+    }
+
+    private static List<String> keys(List<SpaceSaving.Entry> entries) {
+        List<String> keys = new ArrayList<>();
+        entries.forEach(entry -> keys.add(entry.getKey()));
+        return keys;
+    }
+}
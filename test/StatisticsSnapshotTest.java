@@ -0,0 +1,47 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class StatisticsSnapshotTest {
+    @Test
+    void roundTripKeepsStatistics() throws IOException {
+        Statistics statistics = golden();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        StatisticsSnapshot.write(statistics, bytes);
+
+        Statistics restored = StatisticsSnapshot.read(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(LogEntryGoldenTest.describe(statistics), LogEntryGoldenTest.describe(restored));
+    }
+
+    @Test
+    void rejectsOtherVersions() throws IOException {
+        for (int version : new int[]{0, 2, 9}) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0x414C5053);
+            out.writeShort(version);
+            out.flush();
+            assertThrows(UnsupportedVersionException.class,
+                    () -> StatisticsSnapshot.read(new ByteArrayInputStream(bytes.toByteArray())));
+        }
+    }
+
+    static Statistics golden() {
+        Statistics statistics = new Statistics();
+        List<String> lines = LogEntryGoldenTest.read("golden/access.log");
+        LogTokenizer tokens = new LogTokenizer();
+        for (String line : lines) {
+            if (tokens.tokenize(line).validate() == null) {
+                statistics.addEntry(new LogEntry(tokens));
+            }
+        }
+        return statistics;
+    }
+}
@@ -0,0 +1,107 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class StatisticsTest {
+    private static final String LINE = "%s - - [25/Sep/2022:10:%02d:00 +0000] \"GET /page HTTP/1.1\" 200 100 \"-\""
+            + " \"Mozilla/5.0 (X11; Linux x86_64; rv:104.0) Gecko/20100101 Firefox/104.0\"";
+    private static final String PATH_LINE = "10.0.0.1 - - [25/Sep/2022:10:00:00 +0000] \"GET %s HTTP/1.1\" 200 %d \"-\" \"-\"";
+
+    @Test
+    void maxVisitsPerUserStaysCloseWithMoreAddressesThanCapacity() {
+        Statistics statistics = new Statistics();
+        int heavy = 0;
+        int others = 20_000;
+        for (int i = 0; i < others; i++) {
+            statistics.addEntry(entry("10." + (i >> 16) + "." + (i >> 8 & 0xFF) + "." + (i & 0xFF), i % 60));
+            if (i % 64 == 0) {
+                statistics.addEntry(entry("192.168.0.1", i % 60));
+                heavy++;
+            }
+        }
+
+        long visits = statistics.getNonBotVisits();
+        assertEquals(others + heavy, visits);
+        int max = statistics.getMaxVisitsPerUser();
+        // Оценка сверху с погрешностью не больше числа посещений, делённого на ёмкость набора (1000)
+        assertTrue(max >= heavy && max <= heavy + visits / 1000, "оценка " + max);
+    }
+
+    @Test
+    void ipv4AndMappedIpv6CountAsOneUniqueAddress() {
+        Statistics statistics = new Statistics();
+        statistics.addEntry(entry("10.0.0.7", 0));
+        statistics.addEntry(entry("::ffff:10.0.0.7", 1));
+        statistics.addEntry(entry("2001:db8::1", 2));
+        assertEquals(2, statistics.getUniqueNonBotIps());
+        assertEquals(2, statistics.getMaxVisitsPerUser());
+    }
+
+    @Test
+    void sizedPathsDoNotDependOnHowInputWasSplit() {
+        // 10 частых страниц среди 5000 редких - больше, чем помещается в набор страниц с распределениями (100)
+        List<LogEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            entries.add(new LogEntry(String.format(PATH_LINE, "/rare/" + i, i % 1000)));
+            if (i % 5 == 0) {
+                entries.add(new LogEntry(String.format(PATH_LINE, "/hot/" + i / 5 % 10, i % 1000)));
+            }
+        }
+
+        Statistics sequential = new Statistics();
+        entries.forEach(sequential::addEntry);
+        Statistics merged = new Statistics();
+        int parts = 7;
+        for (int part = 0; part < parts; part++) {
+            Statistics partial = new Statistics();
+            entries.subList(entries.size() * part / parts, entries.size() * (part + 1) / parts).forEach(partial::addEntry);
+            merged.merge(partial);
+        }
+
+        assertEquals(hotPaths(), keys(sequential.getTopSizedPaths(10)));
+        assertEquals(hotPaths(), keys(merged.getTopSizedPaths(10)));
+    }
+
+    @Test
+    void pathSizesAppearOnlyWithPages() {
+        // Статистика без записей, как у потоков разбора, не держит набор страниц и распределения
+        Statistics empty = new Statistics();
+        assertEquals(List.of(), empty.getTopSizedPaths(10));
+
+        Statistics partial = new Statistics();
+        for (int i = 1; i <= 100; i++) {
+            partial.addEntry(new LogEntry(String.format(PATH_LINE, "/page", i * 10)));
+        }
+        Statistics merged = new Statistics();
+        merged.merge(empty);
+        merged.merge(partial);
+        partial.merge(empty);
+        for (Statistics statistics : List.of(merged, partial)) {
+            assertEquals(List.of("/page"), keys(statistics.getTopSizedPaths(10)));
+            assertEquals(100, statistics.getPathResponseSizeCount("/page"));
+            assertEquals(500, statistics.getPathResponseSizeQuantile("/page", 0.5), 500 * 0.02);
+        }
+    }
+
+    private static List<String> hotPaths() {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            paths.add("/hot/" + i);
+        }
+        return paths;
+    }
+
+    private static List<String> keys(List<SpaceSaving.Entry> entries) {
+        List<String> keys = new ArrayList<>();
+        entries.forEach(entry -> keys.add(entry.getKey()));
+        return keys;
+    }
+
+    private static LogEntry entry(String ip, int minute) {
+        return new LogEntry(String.format(LINE, ip, minute));
+    }
+}
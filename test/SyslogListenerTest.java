@@ -0,0 +1,161 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SyslogListenerTest {
+    private static final List<String> LINES = LogEntryGoldenTest.read("golden/access.log");
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    @TempDir
+    Path directory;
+
+    @AfterEach
+    void restoreDefault() throws IOException {
+        Quarantine.configure(Quarantine.open(Quarantine.Policy.SKIP, null));
+    }
+
+    @Test
+    void udpAndTcpFramesAreParsed() throws Exception {
+        List<String> lines = LINES.subList(1, 7);
+        try (SyslogListener listener = open(1);
+             DatagramSocket udp = new DatagramSocket();
+             Socket tcp = new Socket()) {
+            listener.start();
+            // RFC 3164, как пишет nginx, RFC 5424 со структурированными данными и строка без заголовка
+            send(udp, listener, "<190>Sep 25 00:00:00 web nginx: " + lines.get(0));
+            send(udp, listener, "<190>1 2022-09-25T00:00:00+03:00 web nginx 42 access "
+                    + "[origin ip=\"10.0.0.1\" note=\"a \\] b\"] " + lines.get(1));
+            send(udp, listener, lines.get(2));
+
+            // Кадры с подсчётом октетов идут подряд без разделителя, последний - обычный, с переводом строки
+            StringBuilder stream = new StringBuilder();
+            for (String line : List.of("<190>Sep 25 00:00:00 web nginx: " + lines.get(3),
+                    "<190>1 2022-09-25T00:00:00+03:00 web nginx - - - " + lines.get(4))) {
+                stream.append(line.getBytes(StandardCharsets.UTF_8).length).append(' ').append(line);
+            }
+            stream.append("<190>Sep 25 00:00:00 web nginx: ").append(lines.get(5)).append('\n');
+            tcp.connect(listener.getTcpAddress());
+            OutputStream out = tcp.getOutputStream();
+            byte[] bytes = stream.toString().getBytes(StandardCharsets.UTF_8);
+            // Кадр разрезан посередине длины, чтобы проверить дочитывание
+            out.write(bytes, 0, 2);
+            out.flush();
+            Thread.sleep(50);
+            out.write(bytes, 2, bytes.length - 2);
+            out.flush();
+
+            await(() -> listener.snapshot().getTotalLines() == lines.size());
+            ProcessingResult result = listener.snapshot();
+            assertEquals(lines.size(), listener.getMessages());
+            assertEquals(0, listener.getDroppedMessages());
+
+            Statistics expected = new Statistics();
+            LogTokenizer tokens = new LogTokenizer();
+            for (String line : lines) {
+                expected.addEntry(new LogEntry(tokens.tokenize(line)));
+            }
+            assertEquals(lines.size(), result.getStatistics().getEntryCount());
+            assertEquals(expected.getTotalTraffic(), result.getStatistics().getTotalTraffic());
+            assertEquals(sorted(LogEntryGoldenTest.describe(expected)),
+                    sorted(LogEntryGoldenTest.describe(result.getStatistics())));
+        }
+    }
+
+    @Test
+    void datagramsAreDroppedWhileParsingIsBlocked() throws Exception {
+        // Запись в файл карантина идёт под блокировкой карантина: держа её, тест останавливает разбор
+        Quarantine quarantine = Quarantine.open(Quarantine.Policy.SKIP, directory.resolve("quarantine.log"));
+        Quarantine.configure(quarantine);
+        StringBuilder padded = new StringBuilder(LINES.get(1));
+        padded.setLength(padded.length() - 1);
+        while (padded.length() < 900) {
+            padded.append('x');
+        }
+        String line = padded.append('"').toString();
+
+        long sent = 0;
+        SyslogListener listener = open(1);
+        try (DatagramSocket udp = new DatagramSocket()) {
+            listener.start();
+            synchronized (quarantine) {
+                send(udp, listener, "garbage");
+                await(() -> parserBlocked());
+                // Пакеты заполняются, пока не кончатся свободные, после этого датаграммы отбрасываются
+                long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+                while (listener.getDroppedMessages() == 0 && System.currentTimeMillis() < deadline) {
+                    send(udp, listener, line);
+                    if (++sent % 16 == 0) {
+                        Thread.sleep(1);
+                    }
+                }
+                assertTrue(listener.getDroppedMessages() > 0, "нет отброшенных датаграмм");
+            }
+            long messages = listener.getMessages();
+            // Ядро тоже может отбросить датаграммы, но сверх отправленных ничего не принимается
+            assertTrue(messages + listener.getDroppedMessages() <= sent + 1);
+            await(() -> listener.snapshot().getTotalLines() == messages);
+        } finally {
+            listener.close();
+        }
+        quarantine.close();
+
+        ProcessingResult result = listener.snapshot();
+        assertEquals(listener.getMessages(), result.getTotalLines());
+        assertEquals(listener.getMessages() - 1, result.getStatistics().getEntryCount());
+        long malformed = 0;
+        for (MalformedReason reason : MalformedReason.values()) {
+            malformed += quarantine.getCount(reason);
+        }
+        assertEquals(1, malformed);
+    }
+
+    private static SyslogListener open(int parsers) throws IOException {
+        InetSocketAddress any = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        return new SyslogListener(any, any, parsers);
+    }
+
+    private static void send(DatagramSocket udp, SyslogListener listener, String message) throws IOException {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        udp.send(new DatagramPacket(bytes, bytes.length, listener.getUdpAddress()));
+    }
+
+    private static boolean parserBlocked() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("syslog-parse-0") && thread.getState() == Thread.State.BLOCKED) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "не дождались");
+            Thread.sleep(10);
+        }
+    }
+
+    private static List<String> sorted(List<String> lines) {
+        List<String> copy = new ArrayList<>(lines);
+        Collections.sort(copy);
+        return copy;
+    }
+}
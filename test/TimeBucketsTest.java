@@ -0,0 +1,87 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class TimeBucketsTest {
+    private static final int SIZE = 5;
+
+    @Test
+    void wrapKeepsOnlyNewestIntervals() throws IOException {
+        // Десять минут в кольце на пять: минута m получает m + 1 запросов
+        TimeBuckets buckets = new TimeBuckets(60, SIZE);
+        for (int minute = 0; minute < 10; minute++) {
+            for (int i = 0; i <= minute; i++) {
+                buckets.add(minute * 60L + i, i % 2 == 0, i % 3 == 0, 100);
+            }
+        }
+
+        for (int minute = 0; minute < 10; minute++) {
+            long expected = minute < 10 - SIZE ? 0 : minute + 1;
+            assertEquals(expected, buckets.get(TimeBuckets.Metric.REQUESTS, minute), "минута " + minute);
+        }
+        // Окно шире кольца обрезается до его размера
+        assertEquals(6 + 7 + 8 + 9 + 10, buckets.sum(TimeBuckets.Metric.REQUESTS, 0, 10 * 60 - 1));
+        assertEquals(100 * (6 + 7 + 8 + 9 + 10), buckets.sum(TimeBuckets.Metric.BYTES, 0, 10 * 60 - 1));
+        assertEquals(9 + 10, buckets.sum(TimeBuckets.Metric.REQUESTS, 8 * 60 + 30, 9 * 60));
+
+        // Запоздавшая запись вытесненной минуты не портит ячейку, которую заняла более новая
+        buckets.add(3 * 60, true, true, 100);
+        assertEquals(9, buckets.get(TimeBuckets.Metric.REQUESTS, 8));
+        assertEquals(0, buckets.get(TimeBuckets.Metric.REQUESTS, 3));
+
+        assertEquals(describe(buckets), describe(roundTrip(buckets)));
+    }
+
+    @Test
+    void resultDoesNotDependOnOrderOrSplit() {
+        // Записи за несколько оборотов кольца в случайном порядке и в двух частях
+        List<Long> times = new ArrayList<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            times.add((long) random.nextInt(60 * 3 * SIZE));
+        }
+        TimeBuckets sequential = new TimeBuckets(60, SIZE);
+        times.stream().sorted().forEach(time -> add(sequential, time));
+
+        Collections.shuffle(times, random);
+        TimeBuckets first = new TimeBuckets(60, SIZE);
+        TimeBuckets second = new TimeBuckets(60, SIZE);
+        for (int i = 0; i < times.size(); i++) {
+            add(i % 3 == 0 ? first : second, times.get(i));
+        }
+        first.merge(second);
+        assertEquals(describe(sequential), describe(first));
+    }
+
+    private static void add(TimeBuckets buckets, long time) {
+        buckets.add(time, time % 2 == 0, time % 5 == 0, time);
+    }
+
+    private static List<String> describe(TimeBuckets buckets) {
+        List<String> lines = new ArrayList<>();
+        for (long minute = 0; minute < 3 * SIZE; minute++) {
+            StringBuilder line = new StringBuilder().append(minute);
+            for (TimeBuckets.Metric metric : TimeBuckets.Metric.values()) {
+                line.append(' ').append(buckets.get(metric, minute));
+            }
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+
+    private static TimeBuckets roundTrip(TimeBuckets buckets) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        buckets.writeTo(new DataOutputStream(bytes));
+        return TimeBuckets.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+}
@@ -0,0 +1,115 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.junit.jupiter.api.Test;
+
+class UserAgentCacheTest {
+    private static final String CHROME = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36"
+            + " (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36";
+
+    @Test
+    void hitReturnsTheParsedInstance() {
+        UserAgentCache cache = new UserAgentCache(64);
+        UserAgent first = cache.get(CHROME);
+        assertSame(first, cache.get(CHROME));
+        assertEquals(describe(new UserAgent(CHROME)), describe(first));
+        // Отсутствующий User-Agent кэшируется как пустая строка
+        assertSame(cache.get(null), cache.get(""));
+
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(0.5, cache.getHitRate());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void leastRecentlyUsedIsEvictedWithinSegment() {
+        // 32 записи на 16 сегментов - по две в сегменте; строки подобраны в один сегмент
+        UserAgentCache cache = new UserAgentCache(32);
+        List<String> keys = sameSegment(3);
+        cache.get(keys.get(0));
+        cache.get(keys.get(1));
+        cache.get(keys.get(0));
+        cache.get(keys.get(2));
+        assertEquals(1, cache.getHits());
+
+        // Вытеснена вторая строка: к первой обращались позже
+        cache.get(keys.get(0));
+        assertEquals(2, cache.getHits());
+        cache.get(keys.get(1));
+        assertEquals(4, cache.getMisses());
+    }
+
+    @Test
+    void sizeStaysWithinCapacity() {
+        UserAgentCache cache = new UserAgentCache(64);
+        for (int i = 0; i < 10_000; i++) {
+            cache.get(CHROME + " build/" + i);
+        }
+        assertTrue(cache.size() <= 64, "в кэше " + cache.size() + " записей");
+        assertEquals(10_000, cache.getMisses());
+    }
+
+    @Test
+    void concurrentLookupsAgreeWithClassification() throws InterruptedException {
+        UserAgentCache cache = new UserAgentCache(64);
+        List<String> agents = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            agents.add((i % 2 == 0 ? CHROME : "Googlebot/2.1 (+http://www.google.com/bot.html)") + " #" + i);
+        }
+        ConcurrentMap<String, String> mismatches = new ConcurrentHashMap<>();
+        int rounds = 200;
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int round = 0; round < rounds; round++) {
+                    for (String agent : agents) {
+                        String expected = describe(new UserAgent(agent));
+                        String actual = describe(cache.get(agent));
+                        if (!expected.equals(actual)) {
+                            mismatches.put(agent, actual);
+                        }
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(Map.of(), mismatches);
+        assertEquals(4L * rounds * agents.size(), cache.getHits() + cache.getMisses());
+        assertTrue(cache.size() <= 64);
+    }
+
+    private static String describe(UserAgent userAgent) {
+        return userAgent.getBrowser() + " " + userAgent.getOperatingSystem() + (userAgent.isBot() ? " bot" : "");
+    }
+
+    // Строки, которые попадают в тот же сегмент, что и первая
+    private static List<String> sameSegment(int count) {
+        List<String> keys = new ArrayList<>();
+        int segment = -1;
+        for (int i = 0; keys.size() < count; i++) {
+            String key = CHROME + " build/" + i;
+            int hash = key.hashCode();
+            int index = (hash ^ (hash >>> 16)) & 15;
+            if (segment < 0) {
+                segment = index;
+            }
+            if (index == segment) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+}
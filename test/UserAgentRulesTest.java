@@ -0,0 +1,69 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.jupiter.api.Test;
+
+class UserAgentRulesTest {
+    // Строка User-Agent | браузер | ОС | bot или human
+    private static final String[] CASES = {
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36"
+                    + " | Chrome | Windows | human",
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36 Edg/120.0.0.0"
+                    + " | Edge | Windows | human",
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36 OPR/106.0.0.0"
+                    + " | Opera | Windows | human",
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/118.0.0.0 YaBrowser/23.11.0.0 Safari/537.36"
+                    + " | Yandex | Windows | human",
+            "Mozilla/5.0 (Linux; Android 13; SM-S911B) AppleWebKit/537.36 (KHTML, like Gecko) SamsungBrowser/23.0 Chrome/115.0.0.0 Mobile Safari/537.36"
+                    + " | Samsung | Android | human",
+            "Mozilla/5.0 (Linux; U; Android 10; en-US; RMX2185) AppleWebKit/537.36 (KHTML, like Gecko) Version/4.0 Chrome/100.0.4896.58 UCBrowser/13.4.0.1306 Mobile Safari/537.36"
+                    + " | UCBrowser | Android | human",
+            "Mozilla/5.0 (X11; Ubuntu; Linux x86_64; rv:121.0) Gecko/20100101 Firefox/121.0 | Firefox | Linux | human",
+            "Mozilla/5.0 (iPhone; CPU iPhone OS 17_1 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.1 Mobile/15E148 Safari/604.1"
+                    + " | Safari | iOS | human",
+            "Mozilla/5.0 (iPhone; CPU iPhone OS 17_1 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) CriOS/120.0.6099.119 Mobile/15E148 Safari/604.1"
+                    + " | Chrome | iOS | human",
+            "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.1 Safari/605.1.15"
+                    + " | Safari | macOS | human",
+            "Mozilla/5.0 (X11; CrOS x86_64 14541.0.0) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36"
+                    + " | Chrome | ChromeOS | human",
+            "Mozilla/5.0 (compatible; MSIE 10.0; Windows NT 6.2; Trident/6.0) | IE | Windows | human",
+            "Mozilla/5.0 (Windows Phone 10.0; Android 6.0.1; Microsoft; Lumia 950) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/52.0.2743.116 Mobile Safari/537.36 Edge/15.15063"
+                    + " | Edge | WindowsPhone | human",
+            "Microsoft-WebDAV-MiniRedir/10.0.19041 | Other | Unknown | human",
+            "Mozilla/5.0 (Linux; Android 6.0.1; Nexus 5X Build/MMB29P) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.6099.71 Mobile Safari/537.36"
+                    + " (compatible; Googlebot/2.1; +http://www.google.com/bot.html) | GoogleBot | Android | bot",
+            "Mozilla/5.0 (compatible; YandexMetrika/2.0; +http://yandex.com/bots yabs01) | YandexBot | Unknown | bot",
+            "Mozilla/5.0 AppleWebKit/537.36 (KHTML, like Gecko; compatible; ClaudeBot/1.0; +claudebot@anthropic.com) | ClaudeBot | Unknown | bot",
+            "facebookexternalhit/1.1 (+http://www.facebook.com/externalhit_uatext.php) | FacebookBot | Unknown | bot",
+            "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) HeadlessChrome/120.0.0.0 Safari/537.36"
+                    + " | Chrome | Linux | bot",
+            "curl/8.4.0 | Other | Unknown | bot",
+            "python-requests/2.31.0 | Other | Unknown | bot",
+            " | Unknown | Unknown | human"
+    };
+
+    @Test
+    void classifiesCommonUserAgents() {
+        check(UserAgentRules.getDefault());
+    }
+
+    @Test
+    void builtInRulesKeepMainClasses() throws IOException {
+        UserAgentRules rules = UserAgentRules.load(new StringReader(String.join("\n", UserAgentRules.BUILT_IN_RULES)));
+        assertEquals("Yandex", rules.classify(CASES[3].split(" \\| ")[0]).getBrowser());
+        assertEquals("iOS", rules.classify(CASES[7].split(" \\| ")[0]).getOperatingSystem());
+        assertEquals(true, rules.classify(CASES[14].split(" \\| ")[0]).isBot());
+    }
+
+    private static void check(UserAgentRules rules) {
+        for (String line : CASES) {
+            String[] fields = line.split(" \\| ", -1);
+            UserAgentRules.Classification classification = rules.classify(fields[0]);
+            assertEquals(String.join(" | ", fields[1], fields[2], fields[3]), String.join(" | ", classification.getBrowser(),
+                    classification.getOperatingSystem(), classification.isBot() ? "bot" : "human"), fields[0]);
+        }
+    }
+}